@@ -0,0 +1,74 @@
+
+package chatty.util;
+
+import chatty.util.ffz.FrankerFaceZParsing;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * Compares parsing a large FFZ room response into a JSONObject tree with
+ * parsing it using the streaming parser. Run the main method manually.
+ */
+public class JSONReaderBenchmark {
+
+    private static final int EMOTES = 5000;
+    private static final int RUNS = 50;
+
+    public static void main(String[] args) throws Exception {
+        String json = makeRoomJson(EMOTES);
+        System.out.println("JSON length: "+json.length());
+
+        // Warmup
+        for (int i = 0; i < RUNS; i++) {
+            new JSONParser().parse(json);
+            FrankerFaceZParsing.parseRoomEmotes(json, "test");
+        }
+
+        measure("Tree (JSONParser only)", () -> new JSONParser().parse(json));
+        measure("Streaming (incl. Emoticons)", () -> FrankerFaceZParsing.parseRoomEmotes(json, "test"));
+    }
+
+    private static void measure(String name, Task task) throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean sunBean = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            sunBean = (com.sun.management.ThreadMXBean) bean;
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = sunBean != null ? sunBean.getThreadAllocatedBytes(threadId) : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            task.run();
+        }
+        long duration = (System.nanoTime() - start) / RUNS;
+        long allocated = sunBean != null ? (sunBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / RUNS : -1;
+        System.out.println(String.format("%s: %.2fms, %dKB allocated per run",
+                name, duration / 1000000.0, allocated / 1024));
+    }
+
+    private static String makeRoomJson(int count) {
+        StringBuilder b = new StringBuilder();
+        b.append("{\"room\":{\"_id\":1,\"id\":\"test\",\"set\":1,\"css\":null},");
+        b.append("\"sets\":{\"1\":{\"_type\":1,\"title\":\"Channel: test\",\"emoticons\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                b.append(",");
+            }
+            b.append("{\"id\":").append(i)
+                    .append(",\"name\":\"emote").append(i).append("\"")
+                    .append(",\"width\":28,\"height\":28,\"hidden\":false,\"public\":true")
+                    .append(",\"owner\":{\"_id\":1,\"name\":\"owner\",\"display_name\":\"Owner\"}")
+                    .append(",\"urls\":{\"1\":\"//cdn.frankerfacez.com/emoticon/").append(i).append("/1\"")
+                    .append(",\"2\":\"//cdn.frankerfacez.com/emoticon/").append(i).append("/2\"}")
+                    .append(",\"margins\":null,\"offset\":null,\"css\":null}");
+        }
+        b.append("]}}}");
+        return b.toString();
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+}
@@ -138,6 +138,13 @@ public class Chatty {
             }
         }
         
+        if (parsedArgs.containsKey("headless")) {
+            System.setProperty("java.awt.headless", "true");
+            new HeadlessClient(parsedArgs);
+            LogUtil.startMemoryUsageLogging();
+            return;
+        }
+        
         final TwitchClient client = new TwitchClient(parsedArgs);
         
         // Adding listener just in case, will do nothing if not used
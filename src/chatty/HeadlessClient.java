@@ -0,0 +1,478 @@
+
+package chatty;
+
+import chatty.gui.Highlighter;
+import chatty.gui.Highlighter.HighlightItem;
+import chatty.lang.Language;
+import chatty.util.DateTime;
+import chatty.util.StringUtil;
+import chatty.util.chatlog.ChatLog;
+import chatty.util.irc.MsgTags;
+import chatty.util.settings.Settings;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+import org.json.simple.JSONObject;
+
+/**
+ * Runs a connection without any GUI, only logging chat (as configured in the
+ * settings) and reporting highlights. Started with the "-headless" commandline
+ * parameter, which doesn't require a display.
+ *
+ * <p>
+ * Highlights are logged and written to stdout, and if "-highlightport" is
+ * specified, sent as one JSON object per line to any client connected to that
+ * port on localhost.
+ * </p>
+ *
+ * <p>
+ * Channels are joined from the "-channel" parameter (or setting) and the file
+ * given with "-channelfile" (one channel per line). Settings are read, but
+ * never saved.
+ * </p>
+ */
+public class HeadlessClient {
+
+    private static final Logger LOGGER = Logger.getLogger(HeadlessClient.class.getName());
+
+    private final Settings settings;
+    private final TwitchConnection c;
+    private final ChatLog chatLog;
+    private final Highlighter highlighter = new Highlighter();
+    private final Highlighter ignoreList = new Highlighter();
+    private final Addressbook addressbook;
+    private final HighlightServer highlightServer;
+
+    public HeadlessClient(Map<String, String> args) {
+        new Logging(null);
+        Thread.setDefaultUncaughtExceptionHandler(new ErrorHandler());
+
+        LOGGER.info("### Log start ("+DateTime.fullDateTime()+") [headless]");
+        LOGGER.info(Chatty.chattyVersion());
+        LOGGER.info(Helper.systemInfo());
+
+        settings = new Settings(Chatty.getUserDataDirectory()+"settings");
+        SettingsManager settingsManager = new SettingsManager(settings);
+        settingsManager.defineSettings();
+        settingsManager.loadSettingsFromFile();
+        settingsManager.loadCommandLineSettings(args);
+        settingsManager.overrideSettings();
+
+        Language.setLanguage(settings.getString("language"));
+
+        // Used for highlight/ignore matching, never saved
+        addressbook = new Addressbook(Chatty.getUserDataDirectory()+"addressbook",
+                Chatty.getUserDataDirectory()+"addressbookImport.txt", settings);
+        addressbook.loadFromFile();
+        addressbook.setSomewhatUniqueCategories(settings.getString("abUniqueCats"));
+
+        // Userlists aren't shown, so don't request JOIN/PART for every user
+        settings.setBoolean("membershipEnabled", false);
+
+        highlighter.update(StringUtil.getStringList(settings.getList("highlight")));
+        highlighter.updateBlacklist(StringUtil.getStringList(settings.getList("highlightBlacklist")));
+        highlighter.setHighlightUsername(settings.getBoolean("highlightUsername"));
+        highlighter.setHighlightNextMessages(settings.getBoolean("highlightNextMessages"));
+        ignoreList.update(StringUtil.getStringList(settings.getList("ignore")));
+
+        chatLog = new ChatLog(settings);
+        chatLog.start();
+
+        highlightServer = createHighlightServer(args.get("highlightport"));
+
+        // Rooms are only used for regular channels here, so no API required
+        RoomManager roomManager = new RoomManager(null, room -> {});
+        c = new TwitchConnection(new Messages(), settings, "headless", roomManager);
+        c.setMaxReconnectionAttempts(settings.getLong("maxReconnectionAttempts"));
+        c.setAddressbook(addressbook);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            c.quit();
+            chatLog.close();
+        }, "HeadlessShutdown"));
+
+        connect(args.get("channelfile"));
+    }
+
+    private void connect(String channelFile) {
+        Set<String> channels = new LinkedHashSet<>(
+                Helper.parseChannelsFromString(settings.getString("channel"), true));
+        if (channelFile != null) {
+            try {
+                for (String line : Files.readAllLines(Paths.get(channelFile), StandardCharsets.UTF_8)) {
+                    channels.addAll(Helper.parseChannelsFromString(line, true));
+                }
+            } catch (IOException ex) {
+                LOGGER.warning("Error reading channel file: "+ex);
+            }
+        }
+        String username = settings.getString("username");
+        String token = settings.getString("token");
+        String login = settings.getBoolean("usePassword")
+                ? settings.getString("password")
+                : (token.isEmpty() ? "" : "oauth:"+token);
+        if (channels.isEmpty() || username.isEmpty() || login.isEmpty()) {
+            LOGGER.warning("Cannot connect: Username, token and at least one channel required.");
+            return;
+        }
+        highlighter.setUsername(username);
+
+        String server = settings.getString("server");
+        if (server.isEmpty()) {
+            server = settings.getString("serverDefault");
+        }
+        String ports = settings.getString("port");
+        if (ports.isEmpty()) {
+            ports = settings.getString("portDefault");
+        }
+        LOGGER.info("Connecting to "+server+" and joining "+channels.size()+" channels");
+        c.connect(server, ports, username, login, channels.toArray(new String[0]));
+    }
+
+    private static HighlightServer createHighlightServer(String port) {
+        if (port == null) {
+            return null;
+        }
+        try {
+            HighlightServer server = new HighlightServer(Integer.parseInt(port));
+            server.start();
+            return server;
+        } catch (NumberFormatException | IOException ex) {
+            LOGGER.warning("Couldn't start highlight server: "+ex);
+        }
+        return null;
+    }
+
+    private void channelMessage(User user, String text, boolean action, MsgTags tags) {
+        Room room = user.getRoom();
+        boolean isOwnMessage = user.getName().equalsIgnoreCase(c.getUsername());
+        boolean ignored = settings.listContains("ignoredUsers", user.getName())
+                || check(ignoreList, "ignore", text, user, tags, isOwnMessage);
+
+        if (!ignored || settings.getBoolean("logIgnored")) {
+            chatLog.message(room.getFilename(), user, text, action);
+        }
+
+        if ((settings.getBoolean("highlightIgnored") || !ignored)
+                && !settings.listContains("noHighlightUsers", user.getName())
+                && check(highlighter, "highlight", text, user, tags, isOwnMessage)) {
+            highlight(user, text);
+        }
+    }
+
+    private boolean check(Highlighter hl, String setting, String text,
+            User user, MsgTags tags, boolean isOwnMessage) {
+        if (settings.getBoolean(setting + "Enabled")
+                && (settings.getBoolean(setting + "OwnText") || !isOwnMessage)) {
+            return hl.check(HighlightItem.Type.REGULAR, text, user.getChannel(),
+                    addressbook, user, tags);
+        }
+        return false;
+    }
+
+    private void highlight(User user, String text) {
+        String line = String.format("[Highlight] %s %s <%s> %s",
+                DateTime.currentTime(), user.getChannel(), user.getRegularDisplayNick(), text);
+        LOGGER.info(line);
+        System.out.println(line);
+        if (highlightServer != null) {
+            JSONObject data = new JSONObject();
+            put(data, "time", System.currentTimeMillis());
+            put(data, "channel", user.getChannel());
+            put(data, "user", user.getName());
+            put(data, "display", user.getRegularDisplayNick());
+            put(data, "text", text);
+            highlightServer.send(data.toJSONString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(JSONObject data, String key, Object value) {
+        data.put(key, value);
+    }
+
+    /**
+     * Sends each line to all clients connected to the port on localhost. Each
+     * client is written to in its own thread, so a slow client doesn't block
+     * the connection, and dropped if it can't keep up.
+     */
+    private static class HighlightServer {
+
+        /**
+         * How many lines can be waiting to be sent to a client.
+         */
+        private static final int CLIENT_QUEUE_SIZE = 100;
+
+        /**
+         * How long to wait before accepting connections again after an error
+         * (milliseconds).
+         */
+        private static final int ERROR_DELAY = 1000;
+
+        private final ServerSocket socket;
+        private final List<Client> clients = new CopyOnWriteArrayList<>();
+
+        HighlightServer(int port) throws IOException {
+            socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        }
+
+        void start() {
+            Thread thread = new Thread(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        Client client = new Client(socket.accept());
+                        clients.add(client);
+                        client.start();
+                        LOGGER.info("Highlight client connected: "+client.socket.getRemoteSocketAddress());
+                    } catch (IOException ex) {
+                        if (socket.isClosed()) {
+                            break;
+                        }
+                        LOGGER.warning("Highlight server error: "+ex);
+                        try {
+                            Thread.sleep(ERROR_DELAY);
+                        } catch (InterruptedException ex2) {
+                            break;
+                        }
+                    }
+                }
+            }, "HighlightServer");
+            thread.setDaemon(true);
+            thread.start();
+            LOGGER.info("Highlight server listening on port "+socket.getLocalPort());
+        }
+
+        /**
+         * Queue the line for all clients, without waiting for it to be
+         * written.
+         * 
+         * @param line 
+         */
+        void send(String line) {
+            for (Client client : clients) {
+                if (!client.queue.offer(line)) {
+                    LOGGER.warning("Highlight client too slow, disconnecting: "
+                            +client.socket.getRemoteSocketAddress());
+                    remove(client);
+                }
+            }
+        }
+
+        private void remove(Client client) {
+            clients.remove(client);
+            // Writer thread may be waiting for lines that won't come anymore
+            client.thread.interrupt();
+            try {
+                client.socket.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+
+        private class Client {
+
+            private final Socket socket;
+            private final Writer writer;
+            private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CLIENT_QUEUE_SIZE);
+            private final Thread thread;
+
+            Client(Socket socket) throws IOException {
+                this.socket = socket;
+                this.writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                this.thread = new Thread(() -> {
+                    try {
+                        while (!socket.isClosed()) {
+                            String line = queue.take();
+                            writer.write(line);
+                            writer.write("\n");
+                            writer.flush();
+                        }
+                    } catch (IOException | InterruptedException ex) {
+                        // Disconnected
+                    }
+                    remove(this);
+                }, "HighlightClient");
+                thread.setDaemon(true);
+            }
+
+            void start() {
+                thread.start();
+            }
+
+        }
+
+    }
+
+    /**
+     * Only handles what is logged or may be a highlight.
+     */
+    private class Messages implements TwitchConnection.ConnectionListener {
+
+        @Override
+        public void onChannelMessage(User user, String msg, boolean action, MsgTags tags) {
+            channelMessage(user, msg, action, tags);
+        }
+
+        @Override
+        public void onInfo(Room room, String infoMessage, MsgTags tags) {
+            chatLog.info(room.getFilename(), infoMessage);
+        }
+
+        @Override
+        public void onSubscriberNotification(User user, String text, String message, int months, MsgTags tags) {
+            onUsernotice("Notification", user, text, message, tags);
+        }
+
+        @Override
+        public void onUsernotice(String type, User user, String text, String message, MsgTags tags) {
+            String line = "["+type+"] "+text;
+            if (!StringUtil.isNullOrEmpty(message)) {
+                line += " ["+message+"]";
+            }
+            chatLog.info(user.getRoom().getFilename(), line);
+        }
+
+        @Override
+        public void onBan(User user, long length, String reason, String targetMsgId) {
+            chatLog.userBanned(user.getRoom().getFilename(), user.getRegularDisplayNick(),
+                    length, reason, null);
+        }
+
+        @Override
+        public void onMsgDeleted(User user, String targetMsgId, String msg) {
+            chatLog.msgDeleted(user, msg);
+        }
+
+        @Override
+        public void onChannelJoined(User user) {
+            LOGGER.info("Joined "+user.getChannel());
+        }
+
+        @Override
+        public void onChannelLeft(Room room) {
+            LOGGER.info("Left "+room.getChannel());
+        }
+
+        @Override
+        public void onJoinError(Set<String> toJoin, String errorChannel, TwitchConnection.JoinError error) {
+            LOGGER.warning("Error joining "+errorChannel+": "+error);
+        }
+
+        @Override
+        public void onNotice(String message) {
+            LOGGER.info("[Notice] "+message);
+        }
+
+        @Override
+        public void onInfo(String infoMessage) {
+            LOGGER.info(infoMessage);
+        }
+
+        @Override
+        public void onGlobalInfo(String message) {
+            LOGGER.info(message);
+        }
+
+        @Override
+        public void onConnectError(String message) {
+            LOGGER.warning("Connect error: "+message);
+        }
+
+        @Override
+        public void onDisconnect(int reason, String reasonMessage) {
+            LOGGER.info("Disconnected: "+reasonMessage);
+        }
+
+        @Override
+        public void onJoinAttempt(Room room) {
+        }
+
+        @Override
+        public void onJoin(User user) {
+        }
+
+        @Override
+        public void onPart(User user) {
+        }
+
+        @Override
+        public void onUserAdded(User user) {
+        }
+
+        @Override
+        public void onUserRemoved(User user) {
+        }
+
+        @Override
+        public void onUserlistCleared(String channel) {
+        }
+
+        @Override
+        public void onUserUpdated(User user) {
+        }
+
+        @Override
+        public void onWhisper(User user, String message, String emotes) {
+        }
+
+        @Override
+        public void onRegistered() {
+        }
+
+        @Override
+        public void onMod(User user) {
+        }
+
+        @Override
+        public void onUnmod(User user) {
+        }
+
+        @Override
+        public void onConnectionStateChanged(int state) {
+        }
+
+        @Override
+        public void onEmotesets(Set<String> emotesets) {
+        }
+
+        @Override
+        public void onRawReceived(String text) {
+        }
+
+        @Override
+        public void onRawSent(String text) {
+        }
+
+        @Override
+        public void onHost(Room room, String target) {
+        }
+
+        @Override
+        public void onChannelCleared(Room room) {
+        }
+
+        @Override
+        public void onSpecialMessage(String name, String message) {
+        }
+
+        @Override
+        public void onRoomId(String channel, String id) {
+        }
+
+    }
+
+}
@@ -17,6 +17,7 @@ import java.net.URLEncoder;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -729,8 +730,17 @@ public class Helper {
     
     private static final Map<String, String> EMPTY_BADGES = Collections.unmodifiableMap(new LinkedHashMap<String, String>());
     
+    private static final int MAX_CACHED_BADGES = 2000;
+    
     /**
-     * Parses the badges tag. The resulting map is unmodifiable.
+     * Parsed badges by tag value, since the same combinations of badges are
+     * received over and over.
+     */
+    private static final Map<String, Map<String, String>> badgesCache = new ConcurrentHashMap<>();
+    
+    /**
+     * Parses the badges tag. The resulting map is unmodifiable and may be
+     * shared with other callers that got the same tag value.
      * 
      * @param data
      * @return 
@@ -739,6 +749,19 @@ public class Helper {
         if (data == null || data.isEmpty()) {
             return EMPTY_BADGES;
         }
+        Map<String, String> cached = badgesCache.get(data);
+        if (cached != null) {
+            return cached;
+        }
+        if (badgesCache.size() >= MAX_CACHED_BADGES) {
+            badgesCache.clear();
+        }
+        Map<String, String> result = parseBadgesUncached(data);
+        badgesCache.put(data, result);
+        return result;
+    }
+    
+    private static Map<String, String> parseBadgesUncached(String data) {
         LinkedHashMap<String, String> result = new LinkedHashMap<>();
         String[] badges = data.split(",");
         for (String badge : badges) {
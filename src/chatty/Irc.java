@@ -4,6 +4,7 @@ package chatty;
 import chatty.util.DateTime;
 import chatty.util.DelayedActionQueue;
 import chatty.util.DelayedActionQueue.DelayedActionListener;
+import chatty.util.Metrics;
 import chatty.util.irc.MsgParameters;
 import chatty.util.irc.MsgTags;
 import chatty.util.irc.ParsedMsg;
@@ -21,6 +22,15 @@ public abstract class Irc {
     
     private static final Logger LOGGER = Logger.getLogger(Irc.class.getName());
     
+    private static final Metrics.Counter LINES_RECEIVED = Metrics.counter(
+            "chatty_irc_lines_received_total",
+            "IRC lines received, by channel (empty if not channel-specific)",
+            "channel");
+    
+    private static final Metrics.Histogram PARSE_TIME = Metrics.histogram(
+            "chatty_irc_parse_seconds",
+            "Time to parse a received IRC line");
+    
     /**
      * Delay between JOINs (in milliseconds).
      */
@@ -259,9 +269,15 @@ public abstract class Irc {
         }
         raw(data);
         
+        long start = System.nanoTime();
         ParsedMsg p = ParsedMsg.parse(data);
+        PARSE_TIME.observeSince(start);
 
         if (p != null) {
+            if (Metrics.isEnabled()) {
+                MsgParameters parameters = p.getParameters();
+                LINES_RECEIVED.inc(parameters.isChan(0) ? parameters.get(0) : "");
+            }
             receivedCommand(p.getPrefix(), p.getNick(), p.getCommand(),
                     p.getParameters(), p.getTags());
         }
@@ -71,6 +71,11 @@ public class Logging {
             Logger.getLogger(Logging.class.getName()).log(Level.WARNING, null, ex);
         }
         
+        if (client == null) {
+            // Headless, no GUI to output to
+            return;
+        }
+        
         // Add handler for the GUI (display errors, log into debug window)
         Handler guiHandler = new Handler() {
 
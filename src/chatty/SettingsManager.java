@@ -89,6 +89,8 @@ public class SettingsManager {
         settings.addBoolean("debugCommands", false, false);
         settings.addBoolean("debugLogIrc", false);
         settings.addBoolean("debugLogIrcFile", false);
+        // EDT tasks taking longer than this (ms) are recorded (0 to disable)
+        settings.addLong("edtStallThreshold", 500);
         settings.addBoolean("autoRequestMods", false);
         
         // Backup
@@ -238,6 +240,11 @@ public class SettingsManager {
                 Setting.STRING);
         
         settings.addBoolean("imageCache", true);
+        settings.addLong("imageCacheMaxSize", 200);
+        
+        // Metrics (served on localhost in Prometheus text format)
+        settings.addBoolean("metricsServer", false);
+        settings.addLong("metricsPort", 61325);
         
         // Colors
         settings.addString("foregroundColor","#111111");
@@ -407,11 +414,13 @@ public class SettingsManager {
         settings.addBoolean("inputEnabled", true);
         settings.addLong("bufferSize", 500);
         settings.addMap("bufferSizes", new HashMap<>(), Setting.LONG);
+        settings.addLong("scrollbackSize", 0);
 
         settings.addString("liveStreamsSorting", "recent");
         settings.addBoolean("liveStreamsSortingFav", true);
         settings.addLong("historyRange", 0);
         settings.addBoolean("historyVerticalZoom", false);
+        settings.addBoolean("historyPersist", false);
 
         //=======
         // Sounds
@@ -559,6 +568,7 @@ public class SettingsManager {
         settings.addBoolean("logSubdirectories", false);
         settings.addString("logTimestamp", "[yyyy-MM-dd HH:mm:ss]");
         settings.addBoolean("logLockFiles", true);
+        settings.addLong("logHistoryLines", 0);
         
         // TAB Completion
         settings.addMap("customCompletion", new HashMap(), Setting.STRING);
@@ -35,6 +35,8 @@ import chatty.util.EmoticonListener;
 import chatty.util.ffz.FrankerFaceZ;
 import chatty.util.ffz.FrankerFaceZListener;
 import chatty.util.ImageCache;
+import chatty.util.ImageScaler;
+import chatty.util.Metrics;
 import chatty.util.LogUtil;
 import chatty.util.MiscUtil;
 import chatty.util.OtherBadges;
@@ -67,6 +69,7 @@ import chatty.util.api.pubsub.PubSubListener;
 import chatty.util.chatlog.ChatLog;
 import chatty.util.commands.CustomCommand;
 import chatty.util.commands.Parameters;
+import chatty.util.http.HttpClient;
 import chatty.util.irc.MsgTags;
 import chatty.util.settings.Settings;
 import chatty.util.settings.SettingsListener;
@@ -174,6 +177,7 @@ public class TwitchClient {
     private final StreamInfo testStreamInfo = new StreamInfo("testStreamInfo", null);
     
     private Webserver webserver;
+    private Webserver metricsServer;
     private final SettingsManager settingsManager;
     private final SpamProtection spamProtection;
     public final CustomCommands customCommands;
@@ -228,7 +232,11 @@ public class TwitchClient {
 
         createTestUser("tduva", "");
         
+        HttpClient.get().setCacheDirectory(Paths.get(Chatty.getCacheDirectory()+"http"));
         api = new TwitchApi(new TwitchApiResults(), new MyStreamInfoListener());
+        if (settings.getBoolean("historyPersist")) {
+            api.setStreamHistoryDirectory(Paths.get(Chatty.getUserDataDirectory(), "history"));
+        }
         bttvEmotes = new BTTVEmotes(new EmoteListener(), api);
         TwitchEmotesApi.api.setTwitchApi(api);
         
@@ -241,6 +249,7 @@ public class TwitchClient {
         
         ImageCache.setDefaultPath(Paths.get(Chatty.getCacheDirectory()+"img"));
         ImageCache.setCachingEnabled(settings.getBoolean("imageCache"));
+        ImageCache.setMaxSize(settings.getLong("imageCacheMaxSize")*1024*1024);
         ImageCache.deleteExpiredFiles();
         EmoticonSizeCache.loadFromFile();
 
@@ -290,6 +299,17 @@ public class TwitchClient {
         streamStatusWriter.setEnabled(settings.getBoolean("enableStatusWriter"));
         settings.addSettingChangeListener(streamStatusWriter);
         
+        updateMetricsServer();
+        settings.setAutoSave(!settings.getBoolean("dontSaveSettings"));
+        settings.addSettingChangeListener((s, t, v) -> {
+            if (s.equals("metricsServer") || s.equals("metricsPort")) {
+                updateMetricsServer();
+            }
+            if (s.equals("dontSaveSettings")) {
+                settings.setAutoSave(!(Boolean) v);
+            }
+        });
+        
         LaF.setLookAndFeel(LaFSettings.fromSettings(settings));
         GuiUtil.addMacKeyboardActions();
         
@@ -1153,6 +1173,7 @@ public class TwitchClient {
         }
         else if (command.equals("clearemotecache")) {
             g.printLine("Clearing Emoticon image cache for type "+parameter+".");
+            ImageScaler.clearCache();
             int result = ImageCache.clearCache("emote_"+parameter);
             if (result == -1) {
                 g.printLine("Failed clearing image cache.");
@@ -2333,6 +2354,27 @@ public class TwitchClient {
         }
     }
     
+    /**
+     * Start or stop recording metrics and the server providing them, based
+     * on the current settings.
+     */
+    private synchronized void updateMetricsServer() {
+        if (metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+        boolean enabled = settings.getBoolean("metricsServer");
+        Metrics.setEnabled(enabled);
+        if (enabled) {
+            int port = (int) settings.getLong("metricsPort");
+            metricsServer = new Webserver(null, port, true);
+            Thread thread = new Thread(metricsServer, "MetricsServer");
+            thread.setDaemon(true);
+            thread.start();
+            LOGGER.info("Metrics available at http://127.0.0.1:"+port+"/metrics");
+        }
+    }
+    
     private class WebserverListener implements Webserver.WebserverListener {
 
         @Override
@@ -2625,11 +2667,13 @@ public class TwitchClient {
         shuttingDown = true;
         saveSettings(true);
         logAllViewerstats();
+        api.saveStreamHistory();
         c.disconnect();
         frankerFaceZ.disconnectWs();
         pubsub.disconnect();
         g.cleanUp();
         chatLog.close();
+        ImageCache.close();
         System.exit(0);
     }
     
@@ -2657,7 +2701,12 @@ public class TwitchClient {
         // Actually write settings to file
         if (!onExit || !settings.getBoolean("dontSaveSettings")) {
             addressbook.saveToFile();
-            settings.saveSettingsToJson();
+            if (onExit) {
+                // Wait for the files to be written before exiting
+                settings.saveSettingsToJson();
+            } else {
+                settings.saveSettingsToJsonAsync();
+            }
         }
     }
     
@@ -2673,6 +2722,7 @@ public class TwitchClient {
             }
             settings.setString("previousChannel", Helper.buildStreamsString(openChans));
             EmoticonSizeCache.saveToFile();
+            api.saveStreamHistory();
         }
         
     }
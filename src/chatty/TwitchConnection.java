@@ -878,74 +878,9 @@ public class TwitchConnection {
         }
         
         private void updateUserFromTags(User user, MsgTags tags) {
-            if (tags.isEmpty()) {
-                return;
-            }
-            /**
-             * Any and all tag values may be null, so account for that when
-             * checking against them.
-             */
-            // Whether anything in the user changed to warrant an update
-            boolean changed = false;
-            
-            Map<String, String> badges = Helper.parseBadges(tags.get("badges"));
-            if (user.setTwitchBadges(badges)) {
-                changed = true;
-            }
-            
-            if (settings.getBoolean("ircv3CapitalizedNames")) {
-                if (user.setDisplayNick(StringUtil.trim(tags.get("display-name")))) {
-                    changed = true;
-                }
-            }
-            
-            // Update color
-            String color = tags.get("color");
-            if (color != null && !color.isEmpty()) {
-                user.setColor(color);
-            }
-            
-            // Update user status
-            boolean turbo = tags.isTrue("turbo") || badges.containsKey("turbo") || badges.containsKey("premium");
-            if (user.setTurbo(turbo)) {
-                changed = true;
-            }
-            boolean subscriber = badges.containsKey("subscriber") || badges.containsKey("founder");
-            if (user.setSubscriber(subscriber)) {
-                changed = true;
-            }
-            if (user.setVip(badges.containsKey("vip"))) {
-                changed = true;
-            }
-            if (user.setModerator(badges.containsKey("moderator"))) {
-                changed = true;
-            }
-            if (user.setAdmin(badges.containsKey("admin"))) {
-                changed = true;
-            }
-            if (user.setStaff(badges.containsKey("staff"))) {
-                changed = true;
-            }
-            
-            // Temporarily check both for containing a value as Twitch is
-            // changing it
-//            String userType = tags.get("user-type");
-//            if (user.setModerator("mod".equals(userType))) {
-//                changed = true;
-//            }
-//            if (user.setStaff("staff".equals(userType))) {
-//                changed = true;
-//            }
-//            if (user.setAdmin("admin".equals(userType))) {
-//                changed = true;
-//            }
-//            if (user.setGlobalMod("global_mod".equals(userType))) {
-//                changed = true;
-//            }
-            
-            user.setId(tags.get("user-id"));
-            
-            if (changed && user != users.specialUser) {
+            boolean displayNames = settings.getBoolean("ircv3CapitalizedNames");
+            if (TwitchConnection.updateUserFromTags(user, tags, displayNames)
+                    && user != users.specialUser) {
                 listener.onUserUpdated(user);
             }
         }
@@ -1566,6 +1501,96 @@ public class TwitchConnection {
         
     }
     
+    /**
+     * Update the user from the given message tags. Skipped if the tags are
+     * the same as the ones the user was last updated from, and nothing else
+     * changed the user since.
+     * 
+     * @param user The user to update
+     * @param tags The message tags
+     * @param displayNames Whether to set the display name from the tags
+     * @return true if anything in the user changed to warrant an update
+     */
+    static boolean updateUserFromTags(User user, MsgTags tags, boolean displayNames) {
+        if (tags.isEmpty()) {
+            return false;
+        }
+        // Other changes are synchronized on the user as well, so the state can
+        // only be set if nothing else changed the user in the meantime
+        synchronized (user) {
+            if (user.getTagState().matches(tags, displayNames)) {
+                // Same tags as last time, so nothing would change
+                return false;
+            }
+            /**
+             * Any and all tag values may be null, so account for that when
+             * checking against them.
+             */
+            // Whether anything in the user changed to warrant an update
+            boolean changed = false;
+
+            Map<String, String> badges = Helper.parseBadges(tags.get("badges"));
+            if (user.setTwitchBadges(badges)) {
+                changed = true;
+            }
+
+            if (displayNames) {
+                if (user.setDisplayNick(StringUtil.trim(tags.get("display-name")))) {
+                    changed = true;
+                }
+            }
+
+            // Update color
+            String color = tags.get("color");
+            if (color != null && !color.isEmpty()) {
+                user.setColor(color);
+            }
+
+            // Update user status
+            boolean turbo = tags.isTrue("turbo") || badges.containsKey("turbo") || badges.containsKey("premium");
+            if (user.setTurbo(turbo)) {
+                changed = true;
+            }
+            boolean subscriber = badges.containsKey("subscriber") || badges.containsKey("founder");
+            if (user.setSubscriber(subscriber)) {
+                changed = true;
+            }
+            if (user.setVip(badges.containsKey("vip"))) {
+                changed = true;
+            }
+            if (user.setModerator(badges.containsKey("moderator"))) {
+                changed = true;
+            }
+            if (user.setAdmin(badges.containsKey("admin"))) {
+                changed = true;
+            }
+            if (user.setStaff(badges.containsKey("staff"))) {
+                changed = true;
+            }
+
+            // Temporarily check both for containing a value as Twitch is
+            // changing it
+//            String userType = tags.get("user-type");
+//            if (user.setModerator("mod".equals(userType))) {
+//                changed = true;
+//            }
+//            if (user.setStaff("staff".equals(userType))) {
+//                changed = true;
+//            }
+//            if (user.setAdmin("admin".equals(userType))) {
+//                changed = true;
+//            }
+//            if (user.setGlobalMod("global_mod".equals(userType))) {
+//                changed = true;
+//            }
+
+            user.setId(tags.get("user-id"));
+            // Changes made above cleared the state, so get it only now
+            user.setTagState(user.getTagState(), new User.TagState(tags, displayNames));
+            return changed;
+        }
+    }
+    
     /**
      * Helps to hide the echo to sent messages in chatrooms.
      */
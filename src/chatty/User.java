@@ -10,6 +10,7 @@ import chatty.gui.components.textpane.ModLogInfo;
 import chatty.util.Debugging;
 import chatty.util.StringUtil;
 import chatty.util.api.pubsub.ModeratorActionData;
+import chatty.util.irc.MsgTags;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -17,6 +18,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents a single user on a specific channel.
@@ -83,6 +85,14 @@ public class User implements Comparable<User> {
     
     private volatile Addressbook addressbook;
     
+    /**
+     * The tags this user was last updated from. Replaced, not modified, and
+     * cleared whenever anything the tags affect is changed, so it only
+     * matches if the user state is still what the tags set. Cleared with a
+     * new object each time, so a change can be detected by comparing it.
+     */
+    private final AtomicReference<TagState> tagState = new AtomicReference<>(TagState.cleared());
+    
     //===========
     // Usericons
     //===========
@@ -166,6 +176,7 @@ public class User implements Comparable<User> {
     public synchronized boolean setTwitchBadges(Map<String, String> badges) {
         if (!Objects.equals(badges, this.twitchBadges)) {
             this.twitchBadges = badges;
+            tagState.set(TagState.cleared());
             updateFullNick();
             return true;
         }
@@ -534,11 +545,37 @@ public class User implements Comparable<User> {
     }
     
     public synchronized void setId(String id) {
-        if (id != null) {
+        if (id != null && !id.equals(this.id)) {
             this.id = id;
+            tagState.set(TagState.cleared());
         }
     }
     
+    /**
+     * The tags this user was last updated from. If not updated from tags or
+     * changed otherwise since, a cleared state is returned, which doesn't
+     * match any tags.
+     * 
+     * @return The state, never null
+     */
+    public TagState getTagState() {
+        return tagState.get();
+    }
+    
+    /**
+     * Set the tags this user was updated from, but only if the state hasn't
+     * changed since the given one was retrieved, since any change from
+     * another thread in the meantime clears it. Should be set after all
+     * changes from the tags have been applied.
+     * 
+     * @param expected The state retrieved before applying the tags
+     * @param state The new state
+     * @return true if the state was set
+     */
+    public boolean setTagState(TagState expected, TagState state) {
+        return tagState.compareAndSet(expected, state);
+    }
+    
     public synchronized String getDisplayNick() {
         return displayNick;
     }
@@ -575,6 +612,7 @@ public class User implements Comparable<User> {
             return false;
         }
         this.displayNick = newDisplayNick;
+        tagState.set(TagState.cleared());
         updateFullNick();
         checkForRegularDisplayNick();
         return true;
@@ -702,8 +740,11 @@ public class User implements Comparable<User> {
     }
     
     public synchronized void setColor(Color color) {
-        hasDefaultColor = false;
-        this.color = color;
+        if (hasDefaultColor || !Objects.equals(this.color, color)) {
+            hasDefaultColor = false;
+            this.color = color;
+            tagState.set(TagState.cleared());
+        }
     }
     
     public synchronized void setColor(String htmlColor) {
@@ -901,6 +942,7 @@ public class User implements Comparable<User> {
     public synchronized boolean setModerator(boolean mod) {
         if (isModerator != mod) {
             isModerator = mod;
+            tagState.set(TagState.cleared());
             updateFullNick();
             return true;
         }
@@ -910,6 +952,7 @@ public class User implements Comparable<User> {
     public synchronized boolean setAdmin(boolean admin) {
         if (isAdmin != admin) {
             isAdmin = admin;
+            tagState.set(TagState.cleared());
             updateFullNick();
             return true;
         }
@@ -919,6 +962,7 @@ public class User implements Comparable<User> {
     public synchronized boolean setStaff(boolean staff) {
         if (isStaff != staff) {
             isStaff = staff;
+            tagState.set(TagState.cleared());
             updateFullNick();
             return true;
         }
@@ -928,6 +972,7 @@ public class User implements Comparable<User> {
     public synchronized boolean setTurbo(boolean turbo) {
         if (hasTurbo != turbo) {
             hasTurbo = turbo;
+            tagState.set(TagState.cleared());
             updateFullNick();
             return true;
         }
@@ -937,6 +982,7 @@ public class User implements Comparable<User> {
     public synchronized boolean setSubscriber(boolean subscriber) {
         if (isSubscriber != subscriber) {
             isSubscriber = subscriber;
+            tagState.set(TagState.cleared());
             updateFullNick();
             return true;
         }
@@ -960,6 +1006,7 @@ public class User implements Comparable<User> {
     public synchronized boolean setVip(boolean vip) {
         if (isVip != vip) {
             isVip = vip;
+            tagState.set(TagState.cleared());
             updateFullNick();
             return true;
         }
@@ -1174,6 +1221,72 @@ public class User implements Comparable<User> {
         
     }
     
+    /**
+     * The message tag values that affect the user state. Used to skip
+     * updating the user when a message has the same tags as the previous one.
+     */
+    public static class TagState {
+        
+        private final String badges;
+        private final String displayName;
+        private final String color;
+        private final String turbo;
+        private final String userId;
+        private final boolean cleared;
+        
+        /**
+         * Create a state from the given tags.
+         * 
+         * @param tags The message tags
+         * @param displayName Whether the display name is used, if false it is
+         * ignored
+         */
+        public TagState(MsgTags tags, boolean displayName) {
+            this.badges = tags.get("badges");
+            this.displayName = displayName ? tags.get("display-name") : null;
+            this.color = tags.get("color");
+            this.turbo = tags.get("turbo");
+            this.userId = tags.get("user-id");
+            this.cleared = false;
+        }
+        
+        private TagState() {
+            this.badges = null;
+            this.displayName = null;
+            this.color = null;
+            this.turbo = null;
+            this.userId = null;
+            this.cleared = true;
+        }
+        
+        /**
+         * Create a new state that doesn't match any tags.
+         * 
+         * @return A new object, never the same as any other
+         */
+        private static TagState cleared() {
+            return new TagState();
+        }
+        
+        /**
+         * Check if the relevant values of the given tags are the same as in
+         * this state, without creating any objects.
+         * 
+         * @param tags The message tags
+         * @param displayName Whether the display name is used
+         * @return true if the tags would result in the same user state
+         */
+        public boolean matches(MsgTags tags, boolean displayName) {
+            return !cleared
+                    && Objects.equals(badges, tags.get("badges"))
+                    && Objects.equals(this.displayName, displayName ? tags.get("display-name") : null)
+                    && Objects.equals(color, tags.get("color"))
+                    && Objects.equals(turbo, tags.get("turbo"))
+                    && Objects.equals(userId, tags.get("user-id"));
+        }
+        
+    }
+    
 //    public static final void main(String[] args) {
 //        ArrayList<User> list = new ArrayList<>();
 //        for (int i=0;i<100000;i++) {
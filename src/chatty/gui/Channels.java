@@ -359,6 +359,9 @@ public class Channels {
             }
         }
         channels.put(room.getChannel(), panel);
+        if (type == Channel.Type.CHANNEL) {
+            gui.channelAdded(panel);
+        }
         return panel;
     }
     
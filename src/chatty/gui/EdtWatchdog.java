@@ -0,0 +1,283 @@
+
+package chatty.gui;
+
+import chatty.util.DateTime;
+import chatty.util.Metrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Times tasks that are run on the EDT, tagged by where they were posted from
+ * (e.g. "printMessage"). If a task takes longer than the threshold, the stack
+ * of the EDT is captured while it is still running and recorded as a stall,
+ * so it can later be seen what the EDT was busy with.
+ *
+ * <p>
+ * The stalls and a summary of all tasks can be viewed in the Debug window.
+ * </p>
+ */
+public class EdtWatchdog {
+
+    private static final Logger LOGGER = Logger.getLogger(EdtWatchdog.class.getName());
+
+    private static final Metrics.Histogram TASK_TIME = Metrics.histogram(
+            "chatty_edt_task_seconds",
+            "Time the EDT spent running tasks, by origin",
+            "origin");
+
+    /**
+     * How many stalls are kept (the oldest are removed first).
+     */
+    private static final int MAX_STALLS = 50;
+
+    /**
+     * How many stack frames are kept for a stall.
+     */
+    private static final int MAX_STACK_DEPTH = 40;
+
+    private static volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * The currently running task, read by the monitor thread.
+     */
+    private static volatile Task current;
+    private static volatile Thread edt;
+    private static Thread monitor;
+
+    // Only accessed on the EDT
+    private static final Stall[] stalls = new Stall[MAX_STALLS];
+    private static int stallsStart;
+    private static int stallsCount;
+    private static final Map<String, Stats> stats = new TreeMap<>();
+
+    /**
+     * Run the task on the EDT, like
+     * {@link SwingUtilities#invokeLater(Runnable)}, and time it.
+     *
+     * @param origin Where the task came from, usually the method name
+     * @param task The task
+     */
+    public static void invokeLater(String origin, Runnable task) {
+        SwingUtilities.invokeLater(() -> run(origin, task));
+    }
+
+    /**
+     * Run the task immediately and time it, for code that isn't posted
+     * through {@link #invokeLater(String, Runnable)} (e.g. from a
+     * SwingWorker). If not called on the EDT, the task is just run.
+     *
+     * @param origin Where the task came from
+     * @param task The task
+     */
+    public static void run(String origin, Runnable task) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            task.run();
+            return;
+        }
+        Task previous = current;
+        Task t = new Task(origin);
+        edt = Thread.currentThread();
+        current = t;
+        try {
+            task.run();
+        } finally {
+            long duration = System.nanoTime() - t.start;
+            current = previous;
+            finished(t, duration);
+        }
+    }
+
+    /**
+     * Set after how long a task is considered a stall.
+     *
+     * @param millis The threshold in milliseconds, 0 to disable recording
+     * stalls (tasks are still timed)
+     */
+    public static synchronized void setThreshold(long millis) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+        if (millis > 0 && monitor == null) {
+            monitor = new Thread(EdtWatchdog::monitor, "EdtWatchdog");
+            monitor.setDaemon(true);
+            monitor.start();
+        }
+    }
+
+    private static void finished(Task task, long duration) {
+        Stats s = stats.get(task.origin);
+        if (s == null) {
+            s = new Stats();
+            stats.put(task.origin, s);
+        }
+        s.add(duration);
+        TASK_TIME.observeNanos(duration, task.origin);
+
+        long threshold = thresholdNanos;
+        if (threshold > 0 && duration >= threshold) {
+            s.stalls++;
+            addStall(new Stall(task.origin, task.startTime, duration, task.stack));
+            LOGGER.info(String.format("EDT stall: %s took %dms",
+                    task.origin, TimeUnit.NANOSECONDS.toMillis(duration)));
+        }
+    }
+
+    private static void addStall(Stall stall) {
+        if (stallsCount < MAX_STALLS) {
+            stalls[(stallsStart + stallsCount) % MAX_STALLS] = stall;
+            stallsCount++;
+        } else {
+            stalls[stallsStart] = stall;
+            stallsStart = (stallsStart + 1) % MAX_STALLS;
+        }
+    }
+
+    /**
+     * Regularly check if the current task has been running for longer than
+     * the threshold and capture the EDT stack if so.
+     */
+    private static void monitor() {
+        while (true) {
+            long threshold = thresholdNanos;
+            try {
+                if (threshold == 0) {
+                    Thread.sleep(1000);
+                    continue;
+                }
+                Thread.sleep(Math.max(TimeUnit.NANOSECONDS.toMillis(threshold) / 4, 20));
+            } catch (InterruptedException ex) {
+                return;
+            }
+            Task task = current;
+            Thread thread = edt;
+            if (task != null && thread != null && task.stack == null
+                    && System.nanoTime() - task.start > threshold) {
+                task.stack = thread.getStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Get the recorded stalls, oldest first. Must be called on the EDT.
+     *
+     * @return A new list
+     */
+    public static List<Stall> getStalls() {
+        List<Stall> result = new ArrayList<>(stallsCount);
+        for (int i = 0; i < stallsCount; i++) {
+            result.add(stalls[(stallsStart + i) % MAX_STALLS]);
+        }
+        return result;
+    }
+
+    /**
+     * Get a text summary of the timed tasks and the recorded stalls, newest
+     * first. Must be called on the EDT.
+     *
+     * @return
+     */
+    public static String getSummary() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("Stall threshold: %dms%n%n",
+                TimeUnit.NANOSECONDS.toMillis(thresholdNanos)));
+        b.append(String.format("%-28s %9s %10s %8s %8s %7s%n",
+                "Origin", "Count", "Total(ms)", "Avg(ms)", "Max(ms)", "Stalls"));
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            b.append(String.format("%-28s %9d %10d %8.2f %8d %7d%n",
+                    entry.getKey(), s.count,
+                    TimeUnit.NANOSECONDS.toMillis(s.total),
+                    s.total / (double) s.count / 1000000,
+                    TimeUnit.NANOSECONDS.toMillis(s.max),
+                    s.stalls));
+        }
+        List<Stall> list = getStalls();
+        b.append(String.format("%n%d recent stalls:%n", list.size()));
+        for (int i = list.size() - 1; i >= 0; i--) {
+            b.append("\n").append(list.get(i));
+        }
+        return b.toString();
+    }
+
+    private static class Task {
+
+        private final String origin;
+        private final long start = System.nanoTime();
+        private final long startTime = System.currentTimeMillis();
+
+        /**
+         * Set by the monitor thread if the task is taking too long.
+         */
+        private volatile StackTraceElement[] stack;
+
+        Task(String origin) {
+            this.origin = origin;
+        }
+
+    }
+
+    private static class Stats {
+
+        private long count;
+        private long total;
+        private long max;
+        private long stalls;
+
+        void add(long duration) {
+            count++;
+            total += duration;
+            max = Math.max(max, duration);
+        }
+
+    }
+
+    public static class Stall {
+
+        public final String origin;
+        public final long startTime;
+        public final long duration;
+        private final StackTraceElement[] stack;
+
+        Stall(String origin, long startTime, long duration, StackTraceElement[] stack) {
+            this.origin = origin;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.stack = stack;
+        }
+
+        /**
+         * The EDT stack, captured after the task has run for longer than the
+         * threshold.
+         *
+         * @return The stack, or null if it wasn't captured (e.g. if the task
+         * finished before the monitor thread checked)
+         */
+        public StackTraceElement[] getStack() {
+            return stack;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            b.append(String.format("[%s] %s took %dms%n",
+                    DateTime.formatExact(startTime), origin,
+                    TimeUnit.NANOSECONDS.toMillis(duration)));
+            if (stack == null) {
+                b.append("    (stack not captured)\n");
+            } else {
+                for (int i = 0; i < stack.length && i < MAX_STACK_DEPTH; i++) {
+                    b.append("    at ").append(stack[i]).append("\n");
+                }
+                if (stack.length > MAX_STACK_DEPTH) {
+                    b.append("    ...\n");
+                }
+            }
+            return b.toString();
+        }
+
+    }
+
+}
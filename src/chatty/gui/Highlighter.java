@@ -14,6 +14,7 @@ import chatty.util.api.usericons.BadgeType;
 import chatty.util.irc.MsgTags;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -46,6 +47,8 @@ public class Highlighter {
     private final Map<String, HighlightItem> lastHighlightedItem = new HashMap<>();
     private final List<HighlightItem> items = new ArrayList<>();
     private final List<HighlightItem> blacklistItems = new ArrayList<>();
+    private RuleIndex<HighlightItem> itemsIndex = createIndex(items);
+    private RuleIndex<HighlightItem> blacklistIndex = createIndex(blacklistItems);
     private HighlightItem usernameItem;
     private Color lastMatchColor;
     private Color lastMatchBackgroundColor;
@@ -66,10 +69,16 @@ public class Highlighter {
      */
     public void update(List<String> newItems) {
         compile(newItems, items);
+        itemsIndex = createIndex(items);
     }
     
     public void updateBlacklist(List<String> newItems) {
         compile(newItems, blacklistItems);
+        blacklistIndex = createIndex(blacklistItems);
+    }
+    
+    private static RuleIndex<HighlightItem> createIndex(List<HighlightItem> items) {
+        return new RuleIndex<>(items, item -> item);
     }
     
     private void compile(List<String> newItems, List<HighlightItem> into) {
@@ -187,9 +196,12 @@ public class Highlighter {
      */
     public boolean check(HighlightItem.Type type, String text, String channel,
             Addressbook ab, User user, MsgTags tags) {
-        Blacklist blacklist = null;
-        if (!blacklistItems.isEmpty()) {
-            blacklist = new Blacklist(type, text, channel, ab, user, tags, blacklistItems);
+        Blacklist blacklist;
+        if (!blacklistIndex.isEmpty()) {
+            blacklist = new Blacklist(type, text, channel, ab, user, tags,
+                    blacklistIndex.findCandidates(text, null));
+        } else {
+            blacklist = null;
         }
         
         /**
@@ -207,13 +219,13 @@ public class Highlighter {
             return true;
         }
         
-        // Then try to match against the items
-        for (HighlightItem item : items) {
-            if (item.matches(type, text, blacklist, channel, ab, user, tags)) {
-                fillLastMatchVariables(item, text);
-                addMatch(user, item);
-                return true;
-            }
+        // Then try to match against the items that may match the text
+        HighlightItem match = itemsIndex.findFirst(text, null,
+                item -> item.matches(type, text, blacklist, channel, ab, user, tags));
+        if (match != null) {
+            fillLastMatchVariables(match, text);
+            addMatch(user, match);
+            return true;
         }
         
         // Then see if there is a recent match ("Highlight follow-up")
@@ -392,6 +404,7 @@ public class Highlighter {
         private boolean patternWarning;
         private String textWithoutPrefix = "";
         private String mainPrefix;
+        private String requiredText;
         
         private enum Status {
             MOD("m"), SUBSCRIBER("s"), BROADCASTER("b"), ADMIN("a"), STAFF("f"),
@@ -428,6 +441,13 @@ public class Highlighter {
             addPatternPrefix(text -> "(?iu)" + Pattern.quote(text), "text:");
         }
         
+        /**
+         * Text matching prefixes where the pattern is made from a quoted
+         * text, which means the message has to contain that text.
+         */
+        private static final Set<String> literalPrefixes = new HashSet<>(
+                Arrays.asList("w:", "wcs:", "cs:", "start:", "text:"));
+        
         public HighlightItem(String item) {
             raw = item;
             prepare(item);
@@ -628,6 +648,7 @@ public class Highlighter {
                 //--------------------------
                 else {
                     textWithoutPrefix = item;
+                    requiredText = item;
                     pattern = compilePattern("(?iu)" + Pattern.quote(item));
                 }
             }
@@ -826,6 +847,9 @@ public class Highlighter {
                     textWithoutPrefix = withoutPrefix;
                     mainPrefix = prefix;
                     this.pattern = compilePattern(completePattern);
+                    if (literalPrefixes.contains(prefix)) {
+                        requiredText = withoutPrefix;
+                    }
                     return true;
                 }
             }
@@ -1026,6 +1050,17 @@ public class Highlighter {
             return textWithoutPrefix;
         }
         
+        /**
+         * Text that a message has to contain (ignoring case) for the text
+         * pattern of this item to match.
+         * 
+         * @return The text, or null if not known (e.g. no text pattern or a
+         * regex)
+         */
+        public String getRequiredText() {
+            return requiredText;
+        }
+        
         /**
          * Get the main prefix for this item (such as "reg:" or "!reg:"). Could
          * be null.
@@ -75,6 +75,10 @@ import chatty.util.commands.CustomCommand;
 import chatty.util.commands.Parameters;
 import chatty.util.hotkeys.HotkeyManager;
 import chatty.util.irc.MsgTags;
+import chatty.util.search.LogIndex;
+import chatty.util.search.MessageIndex;
+import chatty.util.search.SearchQuery;
+import chatty.util.search.SearchResult;
 import chatty.util.settings.Setting;
 import chatty.util.settings.SettingChangeListener;
 import chatty.util.settings.Settings;
@@ -82,6 +86,7 @@ import chatty.util.settings.SettingsListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -106,6 +111,15 @@ import javax.swing.event.MenuListener;
  */
 public class MainGui extends JFrame implements Runnable { 
     
+    private static final Metrics.Histogram EDT_LAG = Metrics.histogram(
+            "chatty_edt_message_lag_seconds",
+            "Time between a chat message being received and the EDT processing it");
+    
+    private static final Metrics.Histogram HIGHLIGHT_TIME = Metrics.histogram(
+            "chatty_highlight_check_seconds",
+            "Time to check a message against highlight/ignore/filter and message color rules",
+            "type");
+    
     public final Emoticons emoticons = new Emoticons();
     
     // Reference back to the client to give back data etc.
@@ -128,6 +142,7 @@ public class MainGui extends JFrame implements Runnable {
     private JoinDialog joinDialog;
     private HighlightedMessages highlightedMessages;
     private HighlightedMessages ignoredMessages;
+    private final MessageIndex messageIndex = new MessageIndex();
     private MainMenu menu;
     private LiveStreamsDialog liveStreamsDialog;
     private NotificationWindowManager<String> notificationWindowManager;
@@ -156,6 +171,8 @@ public class MainGui extends JFrame implements Runnable {
     private final StateUpdater state = new StateUpdater();
     private WindowStateManager windowStateManager;
     private final IgnoredMessages ignoredMessagesHelper = new IgnoredMessages(this);
+    private final UserlistUpdater userlistUpdater;
+    private final ModerationEventQueue moderationEvents;
     public final HotkeyManager hotkeyManager = new HotkeyManager(this);
 
     // Listeners that need to be returned by methods
@@ -167,8 +184,17 @@ public class MainGui extends JFrame implements Runnable {
     
     public MainGui(TwitchClient client) {
         this.client = client;
+        userlistUpdater = new UserlistUpdater(() -> channels,
+                this::shouldUpdateUserlist,
+                user -> userInfoDialog.update(user, client.getUsername()),
+                channel -> {
+                    if (channels.getActiveChannel() == channel) {
+                        state.update();
+                    }
+                });
+        moderationEvents = new ModerationEventQueue(this::applyModerationEvents);
         msgColorManager = new MsgColorManager(client.settings);
-        SwingUtilities.invokeLater(this);
+        EdtWatchdog.invokeLater("createGui", this);
     }
     
     @Override
@@ -251,6 +277,7 @@ public class MainGui extends JFrame implements Runnable {
         //GuiUtil.installEscapeCloseOperation(liveStreamsDialog);
         EmoteContextMenu.setEmoteManager(emoticons);
         emotesDialog = new EmotesDialog(this, emoticons, this, contextMenuListener);
+        emoticons.addChangeListener(change -> emotesDialog.update(change));
         GuiUtil.installEscapeCloseOperation(emotesDialog);
         followerDialog = new FollowersDialog(FollowersDialog.Type.FOLLOWERS,
                 this, client.api, contextMenuListener);
@@ -361,6 +388,22 @@ public class MainGui extends JFrame implements Runnable {
         hotkeyManager.registerPopout(popout);
     }
     
+    /**
+     * Show the last lines from the log files in a newly added channel, if
+     * enabled.
+     * 
+     * @param chan 
+     */
+    protected void channelAdded(Channel chan) {
+        int count = (int)Math.min(client.settings.getLong("logHistoryLines"),
+                client.settings.getLong("bufferSize"));
+        if (count > 0) {
+            client.chatLog.getLastLines(chan.getFilename(), count, lines -> {
+                EdtWatchdog.invokeLater("printHistory", () -> chan.printHistory(lines));
+            });
+        }
+    }
+    
     private SettingsDialog getSettingsDialog() {
         if (settingsDialog == null) {
             settingsDialog = new SettingsDialog(this,client.settings);
@@ -816,7 +859,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void showGui() {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("showGui", new Runnable() {
 
             @Override
             public void run() {
@@ -834,7 +877,7 @@ public class MainGui extends JFrame implements Runnable {
                 
                 // If not invokeLater() seemed to move dialogs on start when
                 // maximized and not restoring location due to off-screen
-                SwingUtilities.invokeLater(() -> {
+                EdtWatchdog.invokeLater("showGui", () -> {
                     windowStateManager.setAttachedWindowsEnabled(client.settings.getBoolean("attachedWindows"));
                 });
 
@@ -900,7 +943,7 @@ public class MainGui extends JFrame implements Runnable {
      * Loads settings
      */
     public void loadSettings() {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("loadSettings", new Runnable() {
 
             @Override
             public void run() {
@@ -927,6 +970,7 @@ public class MainGui extends JFrame implements Runnable {
         updateConnectionDialog(null);
         userInfoDialog.setUserDefinedButtonsDef(client.settings.getString("timeoutButtons"));
         debugWindow.getLogIrcCheckBox().setSelected(client.settings.getBoolean("debugLogIrc"));
+        EdtWatchdog.setThreshold(client.settings.getLong("edtStallThreshold"));
         updateLiveStreamsDialog(); 
         
         // Set window maximized state
@@ -1198,17 +1242,17 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void updateUserinfo(final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
-
-            @Override
-            public void run() {
-                updateUserInfoDialog(user);
-            }
-        });
+        userlistUpdater.userInfoChanged(user);
     }
     
+    /**
+     * Update the User Info Dialog for the given user (if it is open for that
+     * user). Several changes for the same user are combined.
+     * 
+     * @param user 
+     */
     private void updateUserInfoDialog(User user) {
-        userInfoDialog.update(user, client.getUsername());
+        userlistUpdater.userInfoChanged(user);
     }
     
     private void updateLiveStreamsDialog() {
@@ -1242,7 +1286,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void addStreamInfo(final StreamInfo streamInfo) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("addStreamInfo", new Runnable() {
 
             @Override
             public void run() {
@@ -1567,7 +1611,7 @@ public class MainGui extends JFrame implements Runnable {
     private boolean forcedRoomsRefresh = false;
     
     public void setRooms(RoomsInfo info) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("setRooms", () -> {
             //System.out.println(channels.getActiveChannel().getStreamName());
             if (Objects.equals(channels.getActiveChannel().getStreamName(), info.stream)) {
                 menu.setRooms(info.rooms);
@@ -1603,7 +1647,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void updateRoom(Room room) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("updateRoom", () -> {
             channels.updateRoom(room);
         });
     }
@@ -2372,7 +2416,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void insert(final String text, final boolean spaces) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("insert", new Runnable() {
 
             @Override
             public void run() {
@@ -2520,11 +2564,11 @@ public class MainGui extends JFrame implements Runnable {
          * which already runs in invokeLater(), and then calling this which also
          * ran in invokeLater().
          */
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("openReleaseInfo", new Runnable() {
 
             @Override
             public void run() {
-                SwingUtilities.invokeLater(new Runnable() {
+                EdtWatchdog.invokeLater("openReleaseInfo", new Runnable() {
 
                     @Override
                     public void run() {
@@ -2717,18 +2761,19 @@ public class MainGui extends JFrame implements Runnable {
      */
     
     public void removeChannel(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("removeChannel", new Runnable() {
 
             @Override
             public void run() {
                 channels.removeChannel(channel);
+                messageIndex.clear(channel);
                 state.update();
             }
         });
     }
     
     public void switchToChannel(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("switchToChannel", new Runnable() {
 
             @Override
             public void run() {
@@ -2738,7 +2783,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void userJoined(final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("userJoined", new Runnable() {
 
             @Override
             public void run() {
@@ -2748,7 +2793,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void userLeft(final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("userLeft", new Runnable() {
 
             @Override
             public void run() {
@@ -2758,19 +2803,19 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void newFollowers(final FollowerInfo info) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("newFollowers", () -> {
             notificationManager.newFollowers(info);
         });
     }
     
     public void setChannelNewStatus(final String ownerChannel, final String newStatus) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("setChannelNewStatus", () -> {
                 channels.setChannelNewStatus(ownerChannel);
         });
     }
     
     public void statusNotification(final String channel, final StreamInfo info) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("statusNotification", new Runnable() {
 
             @Override
             public void run() {
@@ -2795,7 +2840,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void showTestNotification(final String channel, String title, String text) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("showTestNotification", new Runnable() {
 
             @Override
             public void run() {
@@ -2849,9 +2894,13 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printMessage(User user, String text, boolean action, MsgTags tags) {
-        SwingUtilities.invokeLater(new Runnable() {
+        long queued = System.nanoTime();
+        // Parse on the calling thread, to keep the EDT task shorter
+        TagEmotes tagEmotes = Emoticons.parseEmotesTag(tags.getRawEmotes(), text);
+        EdtWatchdog.invokeLater("printMessage", new Runnable() {
             @Override
             public void run() {
+                EDT_LAG.observeSince(queued);
                 Channel chan;
                 String channel = user.getChannel();
                 boolean whisper = false;
@@ -2902,8 +2951,6 @@ public class MainGui extends JFrame implements Runnable {
                     highlighted = checkMsg(highlighter, "highlight", text, user, tags, isOwnMessage);
                 }
                 
-                TagEmotes tagEmotes = Emoticons.parseEmotesTag(tags.getRawEmotes());
-                
                 // Do stuff if highlighted, without printing message
                 if (highlighted) {
                     highlightMatches = highlighter.getLastTextMatches();
@@ -2967,7 +3014,9 @@ public class MainGui extends JFrame implements Runnable {
                         message.backgroundColor = highlighter.getLastMatchBackgroundColor();
                     }
                     if (!(highlighted || hlByPoints) || client.settings.getBoolean("msgColorsPrefer")) {
+                        long colorStart = System.nanoTime();
                         ColorItem colorItem = msgColorManager.getMsgColor(user, text, tags);
+                        HIGHLIGHT_TIME.observeSince(colorStart, "msgColors");
                         if (!colorItem.isEmpty()) {
                             message.color = colorItem.getForegroundIfEnabled();
                             message.backgroundColor = colorItem.getBackgroundIfEnabled();
@@ -2985,6 +3034,8 @@ public class MainGui extends JFrame implements Runnable {
                         message.ignored_compact = true;
                     }
                     chan.printMessage(message);
+                    messageIndex.add(channel, user.getName(), text,
+                            message.highlighted, System.currentTimeMillis());
                     if (highlighted) {
                         highlightedMessages.addMessage(channel, message);
                     }
@@ -3007,9 +3058,9 @@ public class MainGui extends JFrame implements Runnable {
     
     public void printSubscriberMessage(final User user, final String text,
             final String message, final MsgTags tags) {
-        SwingUtilities.invokeLater(() -> {
-            SubscriberMessage m = new SubscriberMessage(user, text, message, tags);
-
+        // Created here, so the emotes tag is parsed on the calling thread
+        SubscriberMessage m = new SubscriberMessage(user, text, message, tags);
+        EdtWatchdog.invokeLater("printSubscriberMessage", () -> {
             boolean printed = printUsernotice(m);
             if (printed) {
                 notificationManager.newSubscriber(user, text, message);
@@ -3018,8 +3069,8 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printPointsNotice(final User user, final String text, final String message, final MsgTags tags) {
-        SwingUtilities.invokeLater(() -> {
-            UserNotice m = new UserNotice("Points", user, text, message, tags);
+        UserNotice m = new UserNotice("Points", user, text, message, tags);
+        EdtWatchdog.invokeLater("printPointsNotice", () -> {
             if (message != null) {
                 Helper.pointsMerge(m, this);
             }
@@ -3031,8 +3082,8 @@ public class MainGui extends JFrame implements Runnable {
     
     public void printUsernotice(final String type, final User user, final String text,
             final String message, final MsgTags tags) {
-        SwingUtilities.invokeLater(() -> {
-            UserNotice m = new UserNotice(type, user, text, message, tags);
+        UserNotice m = new UserNotice(type, user, text, message, tags);
+        EdtWatchdog.invokeLater("printUsernotice", () -> {
             printUsernotice(m);
         });
     }
@@ -3078,7 +3129,10 @@ public class MainGui extends JFrame implements Runnable {
         if (client.settings.getBoolean(setting + "Enabled")) {
             if (client.settings.getBoolean(setting + "OwnText") ||
                     !isOwnMessage) {
-                return hl.check(type, text, channel, ab, user, tags);
+                long start = System.nanoTime();
+                boolean result = hl.check(type, text, channel, ab, user, tags);
+                HIGHLIGHT_TIME.observeSince(start, setting);
+                return result;
             }
         }
         return false;
@@ -3116,29 +3170,51 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void userBanned(final User user, final long duration, final String reason, final String id) {
-        SwingUtilities.invokeLater(new Runnable() {
-
-            @Override
-            public void run() {
-                channels.getChannel(user.getRoom()).userBanned(user, duration, reason, id);
-                user.addBan(duration, reason, id);
-                updateUserInfoDialog(user);
-                if (client.settings.listContains("streamChatChannels", user.getChannel())) {
-                    streamChat.userBanned(user, duration, reason, id);
-                }
-            }
-        });
+        moderationEvents.ban(user, duration, reason, id);
     }
     
     public void msgDeleted(final User user, String targetMsgId, String msg) {
-        SwingUtilities.invokeLater(() -> {
-            channels.getChannel(user.getRoom()).userBanned(user, -2, null, targetMsgId);
-            user.addMsgDeleted(targetMsgId, msg);
-            updateUserInfoDialog(user);
-            if (client.settings.listContains("streamChatChannels", user.getChannel())) {
-                streamChat.userBanned(user, -2, null, targetMsgId);
+        moderationEvents.msgDeleted(user, targetMsgId, msg);
+    }
+    
+    /**
+     * Apply a batch of moderation events from IRC and/or PubSub. The IRC part
+     * is applied first, so that the ModAction info can be attached to the
+     * line just printed.
+     * 
+     * @param events 
+     */
+    private void applyModerationEvents(List<ModerationEventQueue.Event> events) {
+        for (ModerationEventQueue.Event event : events) {
+            if (event.user != null) {
+                if (event.isMsgDeleted()) {
+                    applyMsgDeleted(event.user, event.targetMsgId, event.msg);
+                } else {
+                    applyUserBanned(event.user, event.duration, event.reason, event.targetMsgId);
+                }
             }
-        });
+            if (event.modAction != null) {
+                applyModerationAction(event.modAction, event.ownAction);
+            }
+        }
+    }
+    
+    private void applyUserBanned(User user, long duration, String reason, String id) {
+        channels.getChannel(user.getRoom()).userBanned(user, duration, reason, id);
+        user.addBan(duration, reason, id);
+        updateUserInfoDialog(user);
+        if (client.settings.listContains("streamChatChannels", user.getChannel())) {
+            streamChat.userBanned(user, duration, reason, id);
+        }
+    }
+    
+    private void applyMsgDeleted(User user, String targetMsgId, String msg) {
+        channels.getChannel(user.getRoom()).userBanned(user, -2, null, targetMsgId);
+        user.addMsgDeleted(targetMsgId, msg);
+        updateUserInfoDialog(user);
+        if (client.settings.listContains("streamChatChannels", user.getChannel())) {
+            streamChat.userBanned(user, -2, null, targetMsgId);
+        }
     }
 
     public void clearChat() {
@@ -3146,7 +3222,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void clearChat(final Room room) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("clearChat", new Runnable() {
             @Override
             public void run() {
                 Channel panel;
@@ -3166,7 +3242,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void testHotkey() {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("testHotkey", new Runnable() {
             @Override
             public void run() {
                 Channel panel = channels.getLastActiveChannel();
@@ -3178,7 +3254,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printLine(final String line) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("printLine", () -> {
             Channel panel = channels.getLastActiveChannel();
             if (panel != null) {
                 printInfo(panel, InfoMessage.createInfo(line));
@@ -3187,7 +3263,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printSystem(final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("printSystem", new Runnable() {
             @Override
             public void run() {
                 Channel panel = channels.getActiveChannel();
@@ -3199,13 +3275,13 @@ public class MainGui extends JFrame implements Runnable {
     }
 
     public void printLine(final Room room, final String line) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("printLine", () -> {
             printInfo(room, line, null);
         });
     }
     
     public void printInfo(final Room room, final String line, MsgTags tags) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("printInfo", new Runnable() {
             @Override
             public void run() {
                 if (room == null || room == Room.EMPTY) {
@@ -3218,7 +3294,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printLineAll(final String line) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("printLineAll", () -> {
             for (Channel channel : channels.allChannels()) {
                 // Separate for each channel, since it could be modified based
                 // on channel
@@ -3228,7 +3304,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printLineByOwnerChannel(final String channel, final String text) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("printLineByOwnerChannel", () -> {
             for (Channel chan : channels.getExistingChannelsByOwner(channel)) {
                 printInfo(chan, InfoMessage.createInfo(text));
             }
@@ -3317,7 +3393,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param user The User object of who was the target of this event (mod/..).
      */
     public void printCompact(final String type, final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("printCompact", new Runnable() {
             @Override
             public void run() {
                 channels.getChannel(user.getRoom()).printCompact(type, user);
@@ -3341,8 +3417,29 @@ public class MainGui extends JFrame implements Runnable {
         return chan.search(searchText);
     }
     
+    /**
+     * Search the recent messages of all channels (or the channel given in the
+     * query), and optionally the log files. Should only be called from the
+     * EDT.
+     * 
+     * @param query
+     * @param includeLogs Whether to also search the log files
+     * @param listener Receives the results in the EDT, first for the recent
+     * messages, then another time for the log files (if enabled)
+     */
+    public void searchAll(SearchQuery query, boolean includeLogs,
+            Consumer<List<SearchResult>> listener) {
+        listener.accept(messageIndex.search(query));
+        LogIndex logIndex = client.chatLog.getIndex();
+        if (includeLogs && logIndex != null) {
+            logIndex.search(query, result -> {
+                EdtWatchdog.invokeLater("searchAll", () -> listener.accept(result));
+            });
+        }
+    }
+    
     public void resetSearch(final Window window) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("resetSearch", new Runnable() {
             @Override
             public void run() {
                 Channel chan = channels.getChannelFromWindow(window);
@@ -3354,7 +3451,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void showMessage(final String message) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("showMessage", new Runnable() {
 
             @Override
             public void run() {
@@ -3374,7 +3471,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param line 
      */
     public void printDebug(final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("printDebug", new Runnable() {
             @Override
             public void run() {
                 debugWindow.printLine(line);
@@ -3383,7 +3480,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printDebugFFZ(final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("printDebugFFZ", new Runnable() {
 
             @Override
             public void run() {
@@ -3393,7 +3490,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printDebugPubSub(final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("printDebugPubSub", new Runnable() {
 
             @Override
             public void run() {
@@ -3404,54 +3501,52 @@ public class MainGui extends JFrame implements Runnable {
     
     public void printModerationAction(final ModeratorActionData data,
             final boolean ownAction) {
-        SwingUtilities.invokeLater(new Runnable() {
-
-            @Override
-            public void run() {
-                moderationLog.add(data);
-                autoModDialog.addData(data);
-                
-                String channel = Helper.toValidChannel(data.stream);
-                
-                // AutoMod only seems to work in Stream Chat
-                if (channels.isChannel(channel)) {
-                    Channel chan = channels.getExistingChannel(channel);
-                    if (data.type == ModeratorActionData.Type.AUTOMOD_REJECTED
-                            && data.args.size() > 1) {
-                        // Automod
-                        String username = data.args.get(0);
-                        String message = data.args.get(1);
-                        if (client.settings.getBoolean("showAutoMod")) {
-                            User user = client.getUser(channel, username);
-                            printInfo(chan, new AutoModMessage(user, message, data.msgId));
-                        }
-                        notificationManager.autoModMessage(channel, username, message);
-                    }
-                }
-                
-                // Moderator Actions apparently apply to all rooms
-                Collection<Channel> chans = channels.getExistingChannelsByOwner(channel);
-                if (!chans.isEmpty()
-                        && data.type != ModeratorActionData.Type.AUTOMOD_REJECTED
-                        && data.type != ModeratorActionData.Type.UNMODDED) {
-                    boolean showActions = client.settings.getBoolean("showModActions");
-                    boolean showActionsRestrict = client.settings.getBoolean("showModActionsRestrict");
-                    boolean showMessage =
-                               showActions
-                            && (!ownAction || ModLogInfo.isIndirectAction(data))
-                            && !(showActionsRestrict && ModLogInfo.isAssociated(data));
-                    boolean showActionby = client.settings.getBoolean("showActionBy");
-                    for (Channel chan : chans) {
-                        // Create for each channel, just in case (since they get
-                        // modified)
-                        // TODO: Output that output of reason or by isn't affected by ignore etc.
-                        ModLogInfo infoMessage = new ModLogInfo(chan, data, showActionby, ownAction);
-                        infoMessage.setHidden(!showMessage);
-                        printInfo(chan, infoMessage);
-                    }
+        moderationEvents.modAction(data, ownAction);
+    }
+    
+    private void applyModerationAction(ModeratorActionData data, boolean ownAction) {
+        moderationLog.add(data);
+        autoModDialog.addData(data);
+        
+        String channel = Helper.toValidChannel(data.stream);
+        
+        // AutoMod only seems to work in Stream Chat
+        if (channels.isChannel(channel)) {
+            Channel chan = channels.getExistingChannel(channel);
+            if (data.type == ModeratorActionData.Type.AUTOMOD_REJECTED
+                    && data.args.size() > 1) {
+                // Automod
+                String username = data.args.get(0);
+                String message = data.args.get(1);
+                if (client.settings.getBoolean("showAutoMod")) {
+                    User user = client.getUser(channel, username);
+                    printInfo(chan, new AutoModMessage(user, message, data.msgId));
                 }
+                notificationManager.autoModMessage(channel, username, message);
             }
-        });
+        }
+        
+        // Moderator Actions apparently apply to all rooms
+        Collection<Channel> chans = channels.getExistingChannelsByOwner(channel);
+        if (!chans.isEmpty()
+                && data.type != ModeratorActionData.Type.AUTOMOD_REJECTED
+                && data.type != ModeratorActionData.Type.UNMODDED) {
+            boolean showActions = client.settings.getBoolean("showModActions");
+            boolean showActionsRestrict = client.settings.getBoolean("showModActionsRestrict");
+            boolean showMessage =
+                       showActions
+                    && (!ownAction || ModLogInfo.isIndirectAction(data))
+                    && !(showActionsRestrict && ModLogInfo.isAssociated(data));
+            boolean showActionby = client.settings.getBoolean("showActionBy");
+            for (Channel chan : chans) {
+                // Create for each channel, just in case (since they get
+                // modified)
+                // TODO: Output that output of reason or by isn't affected by ignore etc.
+                ModLogInfo infoMessage = new ModLogInfo(chan, data, showActionby, ownAction);
+                infoMessage.setHidden(!showMessage);
+                printInfo(chan, infoMessage);
+            }
+        }
     }
     
     /**
@@ -3468,7 +3563,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void autoModRequestResult(final String result, final String msgId) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("autoModRequestResult", new Runnable() {
             
             @Override
             public void run() {
@@ -3487,7 +3582,7 @@ public class MainGui extends JFrame implements Runnable {
         if (SwingUtilities.isEventDispatchThread()) {
             debugWindow.printLineIrc(line);
         } else {
-            SwingUtilities.invokeLater(new Runnable() {
+            EdtWatchdog.invokeLater("printDebugIrc", new Runnable() {
                 @Override
                 public void run() {
                     debugWindow.printLineIrc(line);
@@ -3505,15 +3600,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param user 
      */
     public void addUser(final User user) {
-        SwingUtilities.invokeLater(() -> {
-            if (shouldUpdateUser(user)) {
-                Channel c = channels.getChannel(user.getRoom());
-                c.addUser(user);
-                if (channels.getActiveChannel() == c) {
-                    state.update();
-                }
-            }
-        });
+        userlistUpdater.userAdded(user);
     }
     
     /**
@@ -3523,15 +3610,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param user 
      */
     public void removeUser(final User user) {
-        SwingUtilities.invokeLater(() -> {
-            if (shouldUpdateUser(user)) {
-                Channel c = channels.getChannel(user.getRoom());
-                c.removeUser(user);
-                if (channels.getActiveChannel() == c) {
-                    state.update();
-                }
-            }
-        });
+        userlistUpdater.userRemoved(user);
     }
     
     /**
@@ -3540,16 +3619,11 @@ public class MainGui extends JFrame implements Runnable {
      * @param user 
      */
     public void updateUser(final User user) {
-        SwingUtilities.invokeLater(() -> {
-            if (shouldUpdateUser(user)) {
-                channels.getChannel(user.getRoom()).updateUser(user);
-                state.update();
-            }
-        });
+        userlistUpdater.userUpdated(user);
     }
     
-    private boolean shouldUpdateUser(User user) {
-        return !user.getChannel().equals(WhisperManager.WHISPER_CHANNEL)
+    private boolean shouldUpdateUserlist(String channel) {
+        return !channel.equals(WhisperManager.WHISPER_CHANNEL)
             || channels.isChannel(WhisperManager.WHISPER_CHANNEL);
     }
     
@@ -3559,30 +3633,16 @@ public class MainGui extends JFrame implements Runnable {
      * @param room
      */
     public void resortUsers(final Room room) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("resortUsers", () -> {
             channels.getChannel(room).resortUserlist();
         });
     }
     
     /**
-     * Clears the userlist on all channels.
+     * Clears the userlist of the given channel, or of all channels if null.
      */
     public void clearUsers(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                if (channel != null) {
-                    Channel c = channels.getExistingChannel(channel);
-                    if (c != null) {
-                        c.clearUsers();
-                    }
-                } else {
-                    for (Channel channel : channels.channels()) {
-                        channel.clearUsers();
-                    }
-                }
-            }
-        });
+        userlistUpdater.clear(channel);
     }
     
     public User getUser(String channel, String name) {
@@ -3594,7 +3654,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void setUpdateAvailable(final String newVersion, final GitHub.Releases releases) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("setUpdateAvailable", () -> {
             menu.setUpdateNotification(true);
             //updateMessage.setNewVersion(newVersion);
             updateDialog.setInfo(releases);
@@ -3606,7 +3666,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void showSettings() {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("showSettings", new Runnable() {
 
             @Override
             public void run() {
@@ -3616,7 +3676,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void setColor(final String item) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("setColor", new Runnable() {
 
             @Override
             public void run() {
@@ -3626,7 +3686,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void setCustomName(final String item) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("setCustomName", new Runnable() {
 
             @Override
             public void run() {
@@ -3636,7 +3696,7 @@ public class MainGui extends JFrame implements Runnable {
     }
 
     public void updateChannelInfo(StreamInfo info) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("updateChannelInfo", new Runnable() {
             @Override
             public void run() {
                 updateChannelInfoDialog(info);
@@ -3649,7 +3709,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void updateState(final boolean forced) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("updateState", new Runnable() {
             @Override
             public void run() {
                 state.update(forced);
@@ -3889,7 +3949,7 @@ public class MainGui extends JFrame implements Runnable {
     }
 
     public void openConnectDialog(final String channelPreset) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("openConnectDialog", new Runnable() {
 
             @Override
             public void run() {
@@ -3914,7 +3974,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void updateEmotesDialog(Set<String> emotesets) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("updateEmotesDialog", new Runnable() {
 
             @Override
             public void run() {
@@ -3930,29 +3990,27 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void updateEmoticons(final EmoticonUpdate update) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("updateEmoticons", new Runnable() {
 
             @Override
             public void run() {
                 emoticons.updateEmoticons(update);
-                emotesDialog.update();
             }
         });
     }
     
     public void addEmoticons(final Set<Emoticon> emotes) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("addEmoticons", new Runnable() {
 
             @Override
             public void run() {
                 emoticons.addEmoticons(emotes);
-                emotesDialog.update();
             }
         });
     }
     
     public void setCheerEmotes(final Set<CheerEmoticon> emotes) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("setCheerEmotes", new Runnable() {
 
             @Override
             public void run() {
@@ -3966,7 +4024,7 @@ public class MainGui extends JFrame implements Runnable {
      */
     
     public void webserverStarted() {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("webserverStarted", new Runnable() {
 
             @Override
             public void run() {
@@ -3978,7 +4036,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void webserverError(final String error) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("webserverError", new Runnable() {
 
             @Override
             public void run() {
@@ -3990,7 +4048,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void webserverTokenReceived(final String token) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("webserverTokenReceived", new Runnable() {
 
             @Override
             public void run() {
@@ -4031,7 +4089,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void tokenVerified(final String token, final TokenInfo tokenInfo) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("tokenVerified", new Runnable() {
 
             @Override
             public void run() {
@@ -4043,7 +4101,7 @@ public class MainGui extends JFrame implements Runnable {
     private String manuallyChangedToken = null;
     
     public void changeToken(final String token) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("changeToken", new Runnable() {
 
             @Override
             public void run() {
@@ -4183,7 +4241,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void showTokenWarning() {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("showTokenWarning", new Runnable() {
 
             @Override
             public void run() {
@@ -4203,7 +4261,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void setSubscriberInfo(final FollowerInfo info) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("setSubscriberInfo", new Runnable() {
 
             @Override
             public void run() {
@@ -4213,7 +4271,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void setFollowerInfo(final FollowerInfo info) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("setFollowerInfo", new Runnable() {
 
             @Override
             public void run() {
@@ -4223,11 +4281,11 @@ public class MainGui extends JFrame implements Runnable {
     }
 
     public void setFollowInfo(final String stream, final String user, RequestResultCode result, Follower follower) {
-        SwingUtilities.invokeLater(() -> userInfoDialog.setFollowInfo(stream, user, result, follower));
+        EdtWatchdog.invokeLater("setFollowInfo", () -> userInfoDialog.setFollowInfo(stream, user, result, follower));
     }
 
     public void setChannelInfo(final String stream, final ChannelInfo info, final RequestResultCode result) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("setChannelInfo", () -> {
             adminDialog.setChannelInfo(stream, info, result);
             userInfoDialog.setChannelInfo(stream, info);
         });
@@ -4280,7 +4338,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void putChannelInfoResult(final RequestResultCode result) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("putChannelInfoResult", new Runnable() {
 
             @Override
             public void run() {
@@ -4313,7 +4371,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void commercialResult(final String stream, final String text, final RequestResultCode result) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("commercialResult", new Runnable() {
 
             @Override
             public void run() {
@@ -4361,7 +4419,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param channel 
      */
     public void printStreamInfo(final Room room) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("printStreamInfo", new Runnable() {
 
             @Override
             public void run() {
@@ -4405,7 +4463,7 @@ public class MainGui extends JFrame implements Runnable {
             if (SwingUtilities.isEventDispatchThread()) {
                 settingChangedInternal(setting, type, value);
             } else {
-                SwingUtilities.invokeLater(new Runnable() {
+                EdtWatchdog.invokeLater("settingChanged", new Runnable() {
 
                     @Override
                     public void run() {
@@ -4496,6 +4554,10 @@ public class MainGui extends JFrame implements Runnable {
                     streamChat.setMessageTimeout(((Long)value).intValue());
                 } else if (setting.equals("emoteScaleDialog")) {
                     emotesDialog.setEmoteScale(((Long)value).intValue());
+                } else if (setting.equals("imageCacheMaxSize")) {
+                    ImageCache.setMaxSize((Long)value*1024*1024);
+                } else if (setting.equals("edtStallThreshold")) {
+                    EdtWatchdog.setThreshold((Long)value);
                 }
             }
             if (setting.equals("liveStreamsSorting")
@@ -4589,7 +4651,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void updateEmoteNames(Set<String> emotesets) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("updateEmoteNames", new Runnable() {
 
             @Override
             public void run() {
@@ -4690,7 +4752,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void showPopupMessage(String text) {
-        SwingUtilities.invokeLater(() -> {
+        EdtWatchdog.invokeLater("showPopupMessage", () -> {
             JOptionPane.showMessageDialog(this, text);
         });
     }
@@ -4704,7 +4766,7 @@ public class MainGui extends JFrame implements Runnable {
      * context
      */
     public void error(final LogRecord error, final LinkedList<LogRecord> previous) {
-        SwingUtilities.invokeLater(new Runnable() {
+        EdtWatchdog.invokeLater("error", new Runnable() {
 
             @Override
             public void run() {
@@ -0,0 +1,339 @@
+
+package chatty.gui;
+
+import chatty.Helper;
+import chatty.User;
+import chatty.gui.components.textpane.ModLogInfo;
+import chatty.util.StringUtil;
+import chatty.util.api.pubsub.ModeratorActionData;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.swing.Timer;
+
+/**
+ * Collects moderation events, which come in from IRC (bans, deleted messages)
+ * and PubSub (moderator actions) in different threads, and hands them to the
+ * EDT in batches, at most once every {@link #DELAY} milliseconds.
+ *
+ * <p>
+ * A PubSub ban, timeout or delete is usually also received through IRC. The
+ * PubSub action is held back for up to {@link #WINDOW} milliseconds waiting
+ * for the matching IRC event (same channel and target user, and same message
+ * id for deleted messages), and is then merged into the same event, so both
+ * are applied together. The same PubSub action received again within the
+ * window is dropped.
+ * </p>
+ */
+public class ModerationEventQueue {
+
+    /**
+     * How long to collect events before applying them (milliseconds).
+     */
+    private static final int DELAY = 16;
+
+    /**
+     * How long to wait for the matching event from the other source
+     * (milliseconds).
+     */
+    static final int WINDOW = 500;
+
+    /**
+     * A moderation event, with the info from IRC, PubSub or both.
+     */
+    public static class Event {
+
+        /**
+         * The affected user, null if this event is only from PubSub.
+         */
+        public final User user;
+
+        /**
+         * The ban duration in seconds, 0 for permanent, -2 for a deleted
+         * message.
+         */
+        public final long duration;
+        public final String reason;
+        public final String targetMsgId;
+
+        /**
+         * The deleted message, only for deleted messages.
+         */
+        public final String msg;
+
+        /**
+         * The PubSub action, null if this event is only from IRC.
+         */
+        public final ModeratorActionData modAction;
+        public final boolean ownAction;
+
+        Event(User user, long duration, String reason, String targetMsgId,
+                String msg, ModeratorActionData modAction, boolean ownAction) {
+            this.user = user;
+            this.duration = duration;
+            this.reason = reason;
+            this.targetMsgId = targetMsgId;
+            this.msg = msg;
+            this.modAction = modAction;
+            this.ownAction = ownAction;
+        }
+
+        public boolean isMsgDeleted() {
+            return duration == -2;
+        }
+
+        @Override
+        public String toString() {
+            return user+"/"+duration+"/"+modAction;
+        }
+
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private final long time;
+
+        private User user;
+        private long duration;
+        private String reason;
+        private String targetMsgId;
+        private String msg;
+        private ModeratorActionData modAction;
+        private boolean ownAction;
+
+        Entry(String key, long time) {
+            this.key = key;
+            this.time = time;
+        }
+
+        /**
+         * Whether this can be applied, or is still waiting for a matching IRC
+         * event.
+         */
+        boolean isReady(long now) {
+            return user != null || key == null || now - time >= WINDOW;
+        }
+
+        Event toEvent() {
+            return new Event(user, duration, reason, targetMsgId, msg,
+                    modAction, ownAction);
+        }
+
+    }
+
+    private final Consumer<List<Event>> handler;
+    private final Timer timer;
+
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private final List<Entry> pending = new ArrayList<>();
+    private final Map<String, Long> recentIrc = new HashMap<>();
+    private final Map<ModeratorActionData, Long> recentActions = new HashMap<>();
+    private boolean scheduled;
+    private long scheduledTime;
+
+    /**
+     * Create a new queue.
+     *
+     * @param handler Receives the batches of events on the EDT, in the order
+     * they were received (except for held back PubSub actions), null to
+     * only collect them (for testing)
+     */
+    public ModerationEventQueue(Consumer<List<Event>> handler) {
+        this.handler = handler;
+        this.timer = new Timer(DELAY, e -> EdtWatchdog.run("moderationEvents", this::flush));
+        this.timer.setRepeats(false);
+    }
+
+    public void ban(User user, long duration, String reason, String targetMsgId) {
+        addIrc(user, duration, reason, targetMsgId, null,
+                System.currentTimeMillis());
+    }
+
+    public void msgDeleted(User user, String targetMsgId, String msg) {
+        addIrc(user, -2, null, targetMsgId, msg, System.currentTimeMillis());
+    }
+
+    public void modAction(ModeratorActionData data, boolean ownAction) {
+        addModAction(data, ownAction, System.currentTimeMillis());
+    }
+
+    void addIrc(User user, long duration, String reason, String targetMsgId,
+            String msg, long now) {
+        String key = makeKey(user.getChannel(), user.getName(),
+                duration == -2 ? targetMsgId : null, duration == -2);
+        synchronized (lock) {
+            Entry entry = null;
+            for (Entry e : pending) {
+                if (e.user == null && key.equals(e.key)) {
+                    // Merge into waiting PubSub action
+                    entry = e;
+                    break;
+                }
+            }
+            if (entry == null) {
+                entry = new Entry(key, now);
+                pending.add(entry);
+                recentIrc.put(key, now);
+            }
+            entry.user = user;
+            entry.duration = duration;
+            entry.reason = reason;
+            entry.targetMsgId = targetMsgId;
+            entry.msg = msg;
+            schedule(DELAY, now);
+        }
+    }
+
+    void addModAction(ModeratorActionData data, boolean ownAction, long now) {
+        String key = makeKey(data);
+        synchronized (lock) {
+            Long seen = recentActions.get(data);
+            if (seen != null && now - seen < WINDOW) {
+                // Duplicate
+                return;
+            }
+            recentActions.put(data, now);
+            Entry entry = null;
+            if (key != null) {
+                for (Entry e : pending) {
+                    if (e.modAction == null && key.equals(e.key)) {
+                        // Merge into IRC event that hasn't been applied yet
+                        entry = e;
+                        break;
+                    }
+                }
+                Long ircTime = recentIrc.get(key);
+                if (entry == null && ircTime != null && now - ircTime < WINDOW) {
+                    // Already applied IRC event, so don't wait
+                    key = null;
+                }
+            }
+            if (entry == null) {
+                entry = new Entry(key, now);
+                pending.add(entry);
+            }
+            entry.modAction = data;
+            entry.ownAction = ownAction;
+            schedule(DELAY, now);
+        }
+    }
+
+    /**
+     * Remove and return all events that can be applied.
+     *
+     * @param now The current time
+     * @return The events in the order they were received
+     */
+    List<Event> takeReady(long now) {
+        synchronized (lock) {
+            List<Event> result = new ArrayList<>();
+            Iterator<Entry> it = pending.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.isReady(now)) {
+                    result.add(entry.toEvent());
+                    it.remove();
+                }
+            }
+            recentIrc.values().removeIf(time -> now - time >= WINDOW);
+            recentActions.values().removeIf(time -> now - time >= WINDOW);
+            return result;
+        }
+    }
+
+    /**
+     * The delay until the next held back event can be applied.
+     *
+     * @param now The current time
+     * @return The delay in milliseconds, or -1 if nothing is pending
+     */
+    long getNextDelay(long now) {
+        synchronized (lock) {
+            long result = -1;
+            for (Entry entry : pending) {
+                long delay = Math.max(entry.time + WINDOW - now, 0);
+                if (result == -1 || delay < result) {
+                    result = delay;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Start the timer to flush after the given delay, unless it is already
+     * scheduled to fire sooner. Must be called while holding the lock.
+     *
+     * @param delay The delay in milliseconds
+     * @param now The current time
+     */
+    private void schedule(int delay, long now) {
+        if (handler == null) {
+            return;
+        }
+        if (!scheduled || now + delay < scheduledTime) {
+            scheduled = true;
+            scheduledTime = now + delay;
+            timer.setInitialDelay(delay);
+            timer.restart();
+        }
+    }
+
+    /**
+     * When the timer is scheduled to flush.
+     *
+     * @return The time in milliseconds, or -1 if not scheduled
+     */
+    long getScheduledTime() {
+        synchronized (lock) {
+            return scheduled ? scheduledTime : -1;
+        }
+    }
+
+    /**
+     * Apply all ready events. Must be called on the EDT.
+     */
+    private void flush() {
+        long now = System.currentTimeMillis();
+        List<Event> events = takeReady(now);
+        synchronized (lock) {
+            scheduled = false;
+            long delay = getNextDelay(now);
+            if (delay != -1) {
+                schedule((int) Math.max(delay, DELAY), now);
+            }
+        }
+        if (!events.isEmpty()) {
+            handler.accept(events);
+        }
+    }
+
+    /**
+     * The key to match a PubSub action with an IRC event.
+     *
+     * @param data
+     * @return The key, or null if no IRC event is expected for this action
+     */
+    static String makeKey(ModeratorActionData data) {
+        String username = ModLogInfo.getBannedUsername(data);
+        if (username == null || data.stream == null) {
+            return null;
+        }
+        boolean delete = data.moderation_action.equals("delete");
+        return makeKey(Helper.toChannel(data.stream), username,
+                delete ? data.getArg(2, "") : null, delete);
+    }
+
+    private static String makeKey(String channel, String username,
+            String msgId, boolean delete) {
+        return (delete ? "d " : "b ")+channel+" "+StringUtil.toLowerCase(username)
+                +(msgId != null ? " "+msgId : "");
+    }
+
+}
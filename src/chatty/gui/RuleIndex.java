@@ -0,0 +1,306 @@
+
+package chatty.gui;
+
+import chatty.gui.Highlighter.HighlightItem;
+import chatty.util.StringUtil;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * An ordered list of rules that each have a {@link HighlightItem}, indexed so
+ * that only rules that can possibly match a message have to be checked.
+ *
+ * <p>
+ * Many items require a certain text to be contained in the message (e.g. no
+ * prefix, "text:", "w:", "start:", "cs:"). The required texts of all rules
+ * are combined into one automaton (Aho-Corasick), so a single pass over the
+ * message finds all rules whose text occurs in it, instead of running each
+ * rule's regex. Rules that don't have a required text (e.g. regex or only
+ * user/channel requirements) are always candidates.
+ * </p>
+ *
+ * <p>
+ * Rules can optionally belong to a group (e.g. a channel), in which case they
+ * are only candidates when that group is requested.
+ * </p>
+ *
+ * <p>
+ * Immutable after creation, so it can be used from several threads (although
+ * the rules themselves may not be thread-safe).
+ * </p>
+ * @param <T> The type of the rules
+ */
+public class RuleIndex<T> {
+
+    private final List<T> rules;
+
+    /**
+     * Rules that have to be checked regardless of the text.
+     */
+    private final BitSet noText = new BitSet();
+
+    /**
+     * Rules without a group.
+     */
+    private final BitSet noGroup = new BitSet();
+
+    private final Map<String, BitSet> groups = new HashMap<>();
+
+    //--------------------------
+    // Automaton
+    //--------------------------
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<BitSet> outputs = new ArrayList<>();
+    private int[] fail;
+
+    /**
+     * Create a new index.
+     *
+     * @param rules The rules, in the order they should be checked
+     * @param getItem Get the item of a rule, may return null if the rule
+     * doesn't depend on the text
+     * @param getGroup Get the group of a rule, may be null or return null if
+     * the rule should apply to all groups
+     */
+    public RuleIndex(List<T> rules, Function<T, HighlightItem> getItem,
+            Function<T, String> getGroup) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        newState();
+        for (int i = 0; i < this.rules.size(); i++) {
+            T rule = this.rules.get(i);
+            HighlightItem item = getItem.apply(rule);
+            String text = item != null ? fold(item.getRequiredText()) : null;
+            if (text == null || text.isEmpty()) {
+                noText.set(i);
+            } else {
+                addText(text, i);
+            }
+            String group = getGroup != null ? getGroup.apply(rule) : null;
+            if (group == null) {
+                noGroup.set(i);
+            } else {
+                groups.computeIfAbsent(StringUtil.toLowerCase(group), k -> new BitSet()).set(i);
+            }
+        }
+        buildFailLinks();
+    }
+
+    /**
+     * Create a new index without groups.
+     *
+     * @param rules
+     * @param getItem
+     */
+    public RuleIndex(List<T> rules, Function<T, HighlightItem> getItem) {
+        this(rules, getItem, null);
+    }
+
+    public List<T> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Get the rules that may match the given text and group.
+     *
+     * @param text The text, if null all rules are candidates regarding text
+     * @param group The group (case-insensitive), if null all rules are
+     * candidates regarding the group
+     * @return The indices of the rules that may match (modifiable)
+     */
+    public BitSet getCandidates(String text, String group) {
+        BitSet result;
+        if (text == null) {
+            result = new BitSet(rules.size());
+            result.set(0, rules.size());
+        } else {
+            result = findText(text);
+            result.or(noText);
+        }
+        if (group != null) {
+            BitSet inGroup = (BitSet) noGroup.clone();
+            BitSet groupRules = groups.get(StringUtil.toLowerCase(group));
+            if (groupRules != null) {
+                inGroup.or(groupRules);
+            }
+            result.and(inGroup);
+        }
+        return result;
+    }
+
+    /**
+     * Get the first rule, in the original order, that may match the text and
+     * group and also matches the given check.
+     *
+     * @param text The text, may be null
+     * @param group The group, may be null
+     * @param check Performs the complete check of a candidate rule
+     * @return The rule, or null if none matched
+     */
+    public T findFirst(String text, String group, Predicate<T> check) {
+        BitSet candidates = getCandidates(text, group);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            T rule = rules.get(i);
+            if (check.test(rule)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get all rules, in the original order, that may match the text and
+     * group.
+     *
+     * @param text The text, may be null
+     * @param group The group, may be null
+     * @return The rules, may be empty
+     */
+    public List<T> findCandidates(String text, String group) {
+        return findAll(text, group, rule -> true);
+    }
+
+    /**
+     * Get all rules, in the original order, that may match the text and group
+     * and also match the given check.
+     *
+     * @param text The text, may be null
+     * @param group The group, may be null
+     * @param check Performs the complete check of a candidate rule
+     * @return The matching rules, may be empty
+     */
+    public List<T> findAll(String text, String group, Predicate<T> check) {
+        BitSet candidates = getCandidates(text, group);
+        List<T> result = new ArrayList<>();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            T rule = rules.get(i);
+            if (check.test(rule)) {
+                result.add(rule);
+            }
+        }
+        return result;
+    }
+
+    //==========================
+    // Automaton
+    //==========================
+
+    private int newState() {
+        transitions.add(new HashMap<>());
+        outputs.add(null);
+        return transitions.size() - 1;
+    }
+
+    private void addText(String text, int rule) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = transitions.get(state).get(c);
+            if (next == null) {
+                next = newState();
+                transitions.get(state).put(c, next);
+            }
+            state = next;
+        }
+        if (outputs.get(state) == null) {
+            outputs.set(state, new BitSet());
+        }
+        outputs.get(state).set(rule);
+    }
+
+    private void buildFailLinks() {
+        fail = new int[transitions.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : transitions.get(0).values()) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> entry : transitions.get(state).entrySet()) {
+                int child = entry.getValue();
+                int f = next(fail[state], entry.getKey());
+                fail[child] = f;
+                // Include output of the longest suffix that is also a text
+                if (outputs.get(f) != null) {
+                    if (outputs.get(child) == null) {
+                        outputs.set(child, new BitSet());
+                    }
+                    outputs.get(child).or(outputs.get(f));
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            Integer next = transitions.get(state).get(c);
+            if (next != null) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private BitSet findText(String text) {
+        BitSet result = new BitSet(rules.size());
+        if (transitions.get(0).isEmpty()) {
+            return result;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, fold(text.charAt(i)));
+            BitSet output = outputs.get(state);
+            if (output != null) {
+                result.or(output);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Case folding that is consistent with case-insensitive Unicode regex
+     * matching, so that characters that the regex considers equal are equal
+     * after folding.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Fold the given text.
+     *
+     * @param text
+     * @return The folded text, or null if the text is null or contains
+     * characters that can't be folded by char
+     */
+    private static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder b = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return null;
+            }
+            b.append(fold(c));
+        }
+        return b.toString();
+    }
+
+}
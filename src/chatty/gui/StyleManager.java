@@ -52,6 +52,7 @@ public class StyleManager implements StyleServer {
             "nickColorCorrection",
             "mentions", "mentionsInfo", "markHoveredUser", "highlightMatchesAll",
             "nickColorBackground",
+            "scrollbackSize",
             "inputHistoryMultirowRequireCtrl" // Not delievered through this
             ));
     
@@ -2,7 +2,10 @@
 package chatty.gui;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import javax.swing.AbstractListModel;
 
 /**
@@ -66,6 +69,63 @@ public class UserlistModel<T extends Comparable<T>> extends AbstractListModel<T>
         }
     }
     
+    /**
+     * Remove the changed items and insert the ones that should be present
+     * (which may include items that are already in the list, but whose sort
+     * order may have changed) in a single pass over the data. Only the range
+     * that actually changed is reported to the listeners.
+     * 
+     * @param changed All changed items, which are removed
+     * @param present The changed items that should be in the list afterwards
+     */
+    public void applyChanges(Set<T> changed, Collection<T> present) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<T> toAdd = new ArrayList<>(present);
+        Collections.sort(toAdd);
+        ArrayList<T> result = new ArrayList<>(data.size() + toAdd.size());
+        int a = 0;
+        for (T item : data) {
+            if (changed.contains(item)) {
+                continue;
+            }
+            while (a < toAdd.size() && toAdd.get(a).compareTo(item) < 0) {
+                result.add(toAdd.get(a++));
+            }
+            result.add(item);
+        }
+        while (a < toAdd.size()) {
+            result.add(toAdd.get(a++));
+        }
+        
+        // Find the range that differs
+        ArrayList<T> old = data;
+        data = result;
+        int first = 0;
+        int min = Math.min(old.size(), result.size());
+        while (first < min && old.get(first) == result.get(first)) {
+            first++;
+        }
+        int oldEnd = old.size() - 1;
+        int newEnd = result.size() - 1;
+        while (oldEnd >= first && newEnd >= first && old.get(oldEnd) == result.get(newEnd)) {
+            oldEnd--;
+            newEnd--;
+        }
+        int oldCount = oldEnd - first + 1;
+        int newCount = newEnd - first + 1;
+        if (newCount > oldCount) {
+            super.fireIntervalAdded(this, first + oldCount, first + newCount - 1);
+        } else if (newCount < oldCount) {
+            super.fireIntervalRemoved(this, first + newCount, first + oldCount - 1);
+        }
+        int common = Math.min(oldCount, newCount);
+        if (common > 0) {
+            super.fireContentsChanged(this, first, first + common - 1);
+        }
+    }
+    
     /**
      * Manually sort entries. This may sometimes fix the sorting.
      */
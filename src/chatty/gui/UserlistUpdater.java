@@ -0,0 +1,289 @@
+
+package chatty.gui;
+
+import chatty.Room;
+import chatty.User;
+import chatty.gui.components.Channel;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.swing.Timer;
+
+/**
+ * Collects changes to the userlists and user info dialogs, which can come
+ * from any thread, and applies them on the EDT at most once every
+ * {@link #DELAY} milliseconds. A burst of events for the same users (e.g.
+ * several updates for a single message) only results in one update of each
+ * affected userlist.
+ *
+ * <p>
+ * Changes for channels that are not currently showing (e.g. another tab is
+ * selected) are kept until the channel is shown.
+ * </p>
+ */
+public class UserlistUpdater {
+
+    /**
+     * How long to collect changes before applying them (milliseconds).
+     */
+    private static final int DELAY = 50;
+
+    private final Supplier<Channels> channels;
+    private final Predicate<String> shouldUpdate;
+    private final Consumer<User> userInfoUpdate;
+    private final Consumer<Channel> updated;
+    private final Timer timer;
+
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private Map<String, Pending> pending = new HashMap<>();
+    private Set<User> userInfo = new LinkedHashSet<>();
+    private boolean clearAll;
+    private boolean scheduled;
+
+    // Only accessed on the EDT
+    private final Map<String, Pending> deferred = new HashMap<>();
+    private final Set<Channel> waitingForShowing
+            = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Create a new updater.
+     *
+     * @param channels Supplies the channels (only called on the EDT)
+     * @param shouldUpdate Whether the userlist of the channel with the given
+     * name should be updated
+     * @param userInfoUpdate Updates the user info dialog for the given user
+     * @param updated Called after the userlist of the given channel has been
+     * updated
+     */
+    public UserlistUpdater(Supplier<Channels> channels,
+            Predicate<String> shouldUpdate,
+            Consumer<User> userInfoUpdate,
+            Consumer<Channel> updated) {
+        this.channels = channels;
+        this.shouldUpdate = shouldUpdate;
+        this.userInfoUpdate = userInfoUpdate;
+        this.updated = updated;
+        this.timer = new Timer(DELAY, e -> EdtWatchdog.run("userlistUpdate", this::flush));
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * The user should be in the userlist, either added or updated (e.g. if
+     * the sorting may have changed).
+     *
+     * @param user
+     */
+    public void userAdded(User user) {
+        userChanged(user, true);
+    }
+
+    public void userUpdated(User user) {
+        userChanged(user, true);
+    }
+
+    public void userRemoved(User user) {
+        userChanged(user, false);
+    }
+
+    private void userChanged(User user, boolean present) {
+        synchronized (lock) {
+            Pending p = pending.get(user.getChannel());
+            if (p == null) {
+                p = new Pending();
+                pending.put(user.getChannel(), p);
+            }
+            p.room = user.getRoom();
+            // Re-insert so the latest change is applied last
+            p.users.remove(user);
+            p.users.put(user, present);
+            schedule();
+        }
+    }
+
+    /**
+     * Clear the userlist of the given channel, or of all channels if null.
+     * Any changes before this call for those channels are discarded.
+     *
+     * @param channel The channel name, or null
+     */
+    public void clear(String channel) {
+        synchronized (lock) {
+            if (channel == null) {
+                pending.clear();
+                clearAll = true;
+            } else {
+                Pending p = new Pending();
+                p.clear = true;
+                pending.put(channel, p);
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * Update the user info dialog, if it shows the given user.
+     *
+     * @param user
+     */
+    public void userInfoChanged(User user) {
+        synchronized (lock) {
+            userInfo.add(user);
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            timer.restart();
+        }
+    }
+
+    /**
+     * Apply all collected changes. Must be called on the EDT.
+     */
+    private void flush() {
+        Map<String, Pending> changes;
+        Set<User> userInfoChanges;
+        boolean clear;
+        synchronized (lock) {
+            changes = pending;
+            userInfoChanges = userInfo;
+            clear = clearAll;
+            pending = new HashMap<>();
+            userInfo = new LinkedHashSet<>();
+            clearAll = false;
+            scheduled = false;
+        }
+        Channels chans = channels.get();
+        if (clear) {
+            deferred.clear();
+            for (Channel chan : chans.channels()) {
+                chan.clearUsers();
+                updated.accept(chan);
+            }
+        }
+        for (Map.Entry<String, Pending> entry : changes.entrySet()) {
+            String name = entry.getKey();
+            Pending previous = deferred.remove(name);
+            Pending p = entry.getValue();
+            if (previous != null && previous.channel == chans.getExistingChannel(name)) {
+                previous.merge(p);
+                p = previous;
+            }
+            Channel chan = getChannel(chans, name, p);
+            if (chan != null) {
+                apply(name, chan, p);
+            }
+        }
+        // Deferred changes for channels that may be showing now
+        Iterator<Map.Entry<String, Pending>> it = deferred.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Pending> entry = it.next();
+            Pending p = entry.getValue();
+            if (chans.getExistingChannel(entry.getKey()) != p.channel) {
+                // Channel has been closed in the meantime
+                it.remove();
+            } else if (p.channel.isShowing()) {
+                it.remove();
+                p.channel.updateUsers(p.clear, p.users);
+                updated.accept(p.channel);
+            }
+        }
+        for (User user : userInfoChanges) {
+            userInfoUpdate.accept(user);
+        }
+    }
+
+    private Channel getChannel(Channels chans, String name, Pending p) {
+        if (p.channel != null) {
+            return p.channel;
+        }
+        if (!shouldUpdate.test(name)) {
+            return null;
+        }
+        if (p.users.isEmpty() || p.room == null) {
+            // Only clear, which doesn't need to create the channel
+            return chans.getExistingChannel(name);
+        }
+        return chans.getChannel(p.room);
+    }
+
+    private void apply(String name, Channel chan, Pending p) {
+        if (chan.isShowing()) {
+            chan.updateUsers(p.clear, p.users);
+            updated.accept(chan);
+        } else {
+            p.channel = chan;
+            deferred.put(name, p);
+            waitForShowing(chan);
+        }
+    }
+
+    /**
+     * Apply the deferred changes once the channel is shown.
+     *
+     * @param chan
+     */
+    private void waitForShowing(Channel chan) {
+        if (!waitingForShowing.add(chan)) {
+            return;
+        }
+        chan.addHierarchyListener(new HierarchyListener() {
+
+            @Override
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0
+                        && chan.isShowing()) {
+                    chan.removeHierarchyListener(this);
+                    waitingForShowing.remove(chan);
+                    synchronized (lock) {
+                        schedule();
+                    }
+                }
+            }
+        });
+    }
+
+    private static class Pending {
+
+        private Room room;
+        private Channel channel;
+        private boolean clear;
+        private Map<User, Boolean> users = new LinkedHashMap<>();
+
+        /**
+         * Add the newer changes to these changes.
+         *
+         * @param newer
+         */
+        void merge(Pending newer) {
+            if (newer.room != null) {
+                room = newer.room;
+            }
+            if (newer.clear) {
+                clear = true;
+                users = newer.users;
+            } else {
+                for (Map.Entry<User, Boolean> entry : newer.users.entrySet()) {
+                    users.remove(entry.getKey());
+                    users.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+    }
+
+}
@@ -29,4 +29,8 @@ public class MsgColorItem extends ColorItem {
         return search.matches(type, text, null, channel, ab, user, tags);
     }
     
+    public Highlighter.HighlightItem getMatcherItem() {
+        return search;
+    }
+    
 }
@@ -4,6 +4,7 @@ package chatty.gui.colors;
 import chatty.Addressbook;
 import chatty.User;
 import chatty.gui.Highlighter.HighlightItem;
+import chatty.gui.RuleIndex;
 import chatty.util.colors.HtmlColors;
 import chatty.util.irc.MsgTags;
 import chatty.util.settings.Settings;
@@ -28,6 +29,7 @@ public class MsgColorManager {
     
     private final Settings settings;
     private volatile List<MsgColorItem> data;
+    private volatile RuleIndex<MsgColorItem> index;
     
     public MsgColorManager(Settings settings) {
         this.settings = settings;
@@ -77,6 +79,11 @@ public class MsgColorManager {
             }
         }
         data = loadedData;
+        index = createIndex(loadedData);
+    }
+    
+    private static RuleIndex<MsgColorItem> createIndex(List<MsgColorItem> items) {
+        return new RuleIndex<>(items, MsgColorItem::getMatcherItem);
     }
     
     /**
@@ -111,35 +118,37 @@ public class MsgColorManager {
      */
     public synchronized void setData(List<MsgColorItem> newData) {
         data = new ArrayList<>(newData);
+        index = createIndex(data);
         saveToSettings();
     }
     
     /**
-     * Returns the color for this user and text (message), or null if no items
-     * matched.
+     * Returns the color for this user and text (message), or an empty item if
+     * no items matched.
+     * 
+     * <p>Only items that can match the text are checked, and since the index
+     * is immutable no lock is required.</p>
      * 
      * @param user
      * @param text
      * @return 
      */
-    public synchronized ColorItem getColor(HighlightItem.Type type, User user,
+    public ColorItem getColor(HighlightItem.Type type, User user,
             String text, String channel, MsgTags tags, Addressbook ab) {
-        if (data == null || !settings.getBoolean(ENABLED_SETTING)) {
+        RuleIndex<MsgColorItem> index = this.index;
+        if (index == null || !settings.getBoolean(ENABLED_SETTING)) {
             return EMPTY;
         }
-        for (MsgColorItem item : data) {
-            if (item.matches(type, text, channel, ab, user, tags)) {
-                return item;
-            }
-        }
-        return EMPTY;
+        MsgColorItem result = index.findFirst(text, null,
+                item -> item.matches(type, text, channel, ab, user, tags));
+        return result != null ? result : EMPTY;
     }
     
-    public synchronized ColorItem getMsgColor(User user, String text, MsgTags tags) {
+    public ColorItem getMsgColor(User user, String text, MsgTags tags) {
         return getColor(HighlightItem.Type.REGULAR, user, text, user.getChannel(), tags, user.getAddressbook());
     }
     
-    public synchronized ColorItem getInfoColor(String text, String channel, Addressbook ab, User user, MsgTags tags) {
+    public ColorItem getInfoColor(String text, String channel, Addressbook ab, User user, MsgTags tags) {
         return getColor(HighlightItem.Type.INFO, user, text, channel, tags, ab);
     }
     
@@ -3,12 +3,15 @@ package chatty.gui.colors;
 
 import chatty.Helper;
 import chatty.User;
+import chatty.util.StringUtil;
 import chatty.util.colors.HtmlColors;
 import chatty.util.settings.Settings;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages {@link UsercolorItem}s, loading them from the settings on start,
@@ -28,6 +31,7 @@ public class UsercolorManager {
     
     private final Settings settings;
     private volatile List<UsercolorItem> data;
+    private volatile Index index = new Index(new ArrayList<>());
     
     public UsercolorManager(Settings settings) {
         this.settings = settings;
@@ -60,6 +64,7 @@ public class UsercolorManager {
             }
         }
         data = loadedData;
+        index = new Index(loadedData);
     }
     
     /**
@@ -89,6 +94,7 @@ public class UsercolorManager {
      */
     public synchronized void setData(List<UsercolorItem> newData) {
         data = new ArrayList<>(newData);
+        index = new Index(data);
         saveToSettings();
     }
     
@@ -104,28 +110,74 @@ public class UsercolorManager {
         if (data == null || !settings.getBoolean("customUsercolors")) {
             return null;
         }
-        for (UsercolorItem item : data) {
-            if (item.type == UsercolorItem.TYPE_COLOR) {
-                if (item.idColor.equals(user.getPlainColor())) {
-                    return item.color;
-                }
-            } else if (item.type == UsercolorItem.TYPE_NAME) {
-                if (item.id.equalsIgnoreCase(user.getName())) {
-                    return item.color;
+        return index.getColor(user);
+    }
+    
+    /**
+     * Name and color items are looked up directly, so only the remaining items
+     * before the first name/color match have to be checked in order.
+     */
+    private static class Index {
+        
+        private final List<UsercolorItem> items;
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Map<Color, Integer> colors = new HashMap<>();
+        private final List<Integer> others = new ArrayList<>();
+        
+        Index(List<UsercolorItem> items) {
+            this.items = items;
+            for (int i = 0; i < items.size(); i++) {
+                UsercolorItem item = items.get(i);
+                switch (item.type) {
+                    case UsercolorItem.TYPE_COLOR:
+                        colors.putIfAbsent(item.idColor, i);
+                        break;
+                    case UsercolorItem.TYPE_NAME:
+                        names.putIfAbsent(StringUtil.toLowerCase(item.id), i);
+                        break;
+                    case UsercolorItem.TYPE_UNDEFINED:
+                        // Never matches
+                        break;
+                    default:
+                        others.add(i);
                 }
-            } else if (item.type == UsercolorItem.TYPE_STATUS) {
-                if (Helper.matchUserStatus(item.id, user)) {
-                    return item.color;
+            }
+        }
+        
+        Color getColor(User user) {
+            int first = Integer.MAX_VALUE;
+            Integer nameMatch = names.get(user.getName());
+            if (nameMatch != null) {
+                first = nameMatch;
+            }
+            Integer colorMatch = colors.get(user.getPlainColor());
+            if (colorMatch != null && colorMatch < first) {
+                first = colorMatch;
+            }
+            for (int i : others) {
+                if (i > first) {
+                    break;
                 }
-            } else if (item.type == UsercolorItem.TYPE_CATEGORY) {
-                if (user.hasCategory(item.category)) {
-                    return item.color;
+                if (matches(items.get(i), user)) {
+                    first = i;
+                    break;
                 }
-            } else if (item.type == UsercolorItem.TYPE_ALL) {
-                return item.color;
             }
+            return first != Integer.MAX_VALUE ? items.get(first).color : null;
+        }
+        
+        private static boolean matches(UsercolorItem item, User user) {
+            switch (item.type) {
+                case UsercolorItem.TYPE_STATUS:
+                    return Helper.matchUserStatus(item.id, user);
+                case UsercolorItem.TYPE_CATEGORY:
+                    return user.hasCategory(item.category);
+                case UsercolorItem.TYPE_ALL:
+                    return true;
+            }
+            return false;
         }
-        return null;
+        
     }
     
 }
@@ -18,6 +18,8 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.util.List;
+import java.util.Map;
 import javax.swing.AbstractAction;
 import javax.swing.InputMap;
 import javax.swing.JPanel;
@@ -46,6 +48,7 @@ public final class Channel extends JPanel {
     private final ChannelEditBox input;
     private final ChannelTextPane text;
     private final UserList users;
+    private final UserCompletionIndex completionIndex = new UserCompletionIndex();
     private final JSplitPane mainPane;
     private final JScrollPane userlist;
     private final JScrollPane west;
@@ -71,6 +74,8 @@ public final class Channel extends JPanel {
         // Text Pane
         text = new ChannelTextPane(main,styleManager);
         text.setContextMenuListener(contextMenuListener);
+        // Only render messages when the channel is actually visible
+        text.setDeferWhenHidden(true);
         
         setTextPreferredSizeTemporarily();
         
@@ -103,7 +108,7 @@ public final class Channel extends JPanel {
         // Text input
         input = new ChannelEditBox(40);
         input.addActionListener(main.getActionListener());
-        input.setCompletionServer(new ChannelCompletion(this, main, input, users));
+        input.setCompletionServer(new ChannelCompletion(this, main, input, completionIndex));
         // Remove PAGEUP/DOWN so it can scroll chat (as before JTextArea)
         input.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_UP, 0), "-");
         input.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_DOWN, 0), "-");
@@ -213,14 +218,38 @@ public final class Channel extends JPanel {
     
     public void addUser(User user) {
         users.addUser(user);
+        completionIndex.add(user);
     }
     
     public void removeUser(User user) {
         users.removeUser(user);
+        completionIndex.remove(user);
     }
     
     public void updateUser(User user) {
         users.updateUser(user);
+        completionIndex.update(user);
+    }
+    
+    /**
+     * Apply several userlist changes at once.
+     * 
+     * @param clear Whether to clear the userlist first
+     * @param changes Users that should be added or updated (true) or removed
+     * (false)
+     */
+    public void updateUsers(boolean clear, Map<User, Boolean> changes) {
+        if (clear) {
+            clearUsers();
+        }
+        for (Map.Entry<User, Boolean> entry : changes.entrySet()) {
+            if (entry.getValue()) {
+                completionIndex.update(entry.getKey());
+            } else {
+                completionIndex.remove(entry.getKey());
+            }
+        }
+        users.updateUsers(changes);
     }
     
     public void resortUserlist() {
@@ -229,6 +258,7 @@ public final class Channel extends JPanel {
     
     public void clearUsers() {
         users.clearUsers();
+        completionIndex.clear();
     }
     
     public int getNumUsers() {
@@ -273,6 +303,10 @@ public final class Channel extends JPanel {
         text.printLine(line);
     }
     
+    public void printHistory(List<String> lines) {
+        text.printHistory(lines);
+    }
+    
     public void printInfoMessage(InfoMessage message) {
         text.printInfoMessage(message);
     }
@@ -312,6 +346,7 @@ public final class Channel extends JPanel {
     private void refreshBufferSize() {
         Long bufferSize = (Long)main.getSettings().mapGet("bufferSizes", StringUtil.toLowerCase(getChannel()));
         text.setBufferSize(bufferSize != null ? bufferSize.intValue() : -1);
+        text.setScrollbackSize((int)main.getSettings().getLong("scrollbackSize"));
     }
     
     public void clearChat() {
@@ -39,10 +39,10 @@ public class ChannelCompletion implements AutoCompletionServer {
     private final Channel channel;
     private final ChannelEditBox input;
     private final MainGui main;
-    private final UserList users;
+    private final UserCompletionIndex users;
 
     public ChannelCompletion(Channel channel, MainGui main,
-            ChannelEditBox input, UserList users) {
+            ChannelEditBox input, UserCompletionIndex users) {
         this.channel = channel;
         this.main = main;
         this.input = input;
@@ -322,14 +322,7 @@ public class ChannelCompletion implements AutoCompletionServer {
 
     private void findEmoji(Collection<Emoticon> result, Function<String, Boolean> matcher) {
         // Find Emoji items
-        List<Emoticon> searchResult = new LinkedList<>();
-        for (Emoticon emote : main.emoticons.getEmoji()) {
-            if (emote.stringId != null && matcher.apply(emote.stringId)) {
-                searchResult.add(emote);
-            } else if (emote.stringIdAlias != null && matcher.apply(emote.stringIdAlias)) {
-                searchResult.add(emote);
-            }
-        }
+        List<Emoticon> searchResult = main.emoticons.getEmojiCatalog().findByName(matcher::apply);
         Collections.sort(searchResult, EMOJI_SORTER);
         result.addAll(searchResult);
     }
@@ -427,49 +420,54 @@ public class ChannelCompletion implements AutoCompletionServer {
     //===========
     // Usernames
     //===========
-    private final UserSorterNew userSorterNew = new UserSorterNew();
+    
+    /**
+     * The maximum number of users returned for a name completion. Since they
+     * are sorted first, the ones further down would very rarely be used.
+     */
+    private static final int MAX_NAME_RESULTS = 200;
+    
     private final UserSorterAlphabetic userSorterAlphabetical = new UserSorterAlphabetic();
 
     private AutoCompletionServer.CompletionItems getCompletionItemsNames(String search, boolean preferUsernames) {
-        List<User> matchedUsers = new ArrayList<>();
-        Set<User> regularMatched = new HashSet<>();
-        Set<User> customMatched = new HashSet<>();
-        Set<User> localizedMatched = new HashSet<>();
-        for (User user : users.getData()) {
-            matchUser(user, search, matchedUsers, regularMatched, localizedMatched, customMatched);
-        }
-        
-        // Try to match current channel name if not matched yet
-        if (channel.getRoom().hasStream()) {
-            User channelUser = new User(channel.getStreamName(), Room.EMPTY);
-            boolean channelUserMatched = false;
-            for (User user : matchedUsers) {
-                if (user.getName().equals(channelUser.getName())) {
-                    channelUserMatched = true;
-                }
-            }
-            if (!channelUserMatched) {
-                matchUser(channelUser, search, matchedUsers, regularMatched, localizedMatched, customMatched);
-            }
-        }
+        Comparator<User> sorting;
         switch (main.getSettings().getString("completionSorting")) {
             case "predictive":
-                Collections.sort(matchedUsers, userSorterNew);
+                sorting = new UserSorterNew();
                 break;
             case "alphabetical":
-                Collections.sort(matchedUsers, userSorterAlphabetical);
+                sorting = userSorterAlphabetical;
                 break;
             default:
-                Collections.sort(matchedUsers);
+                sorting = Comparator.naturalOrder();
+        }
+        UserCompletionIndex.Result found = users.find(search, sorting, MAX_NAME_RESULTS);
+        List<User> matchedUsers = found.users;
+        int totalMatched = found.total;
+        
+        // Try to match current channel name if not matched yet
+        User channelUser = null;
+        if (channel.getRoom().hasStream()) {
+            String stream = channel.getStreamName();
+            if (stream.startsWith(search) && !users.containsName(stream)) {
+                channelUser = new User(stream, Room.EMPTY);
+                matchedUsers = new ArrayList<>(matchedUsers);
+                matchedUsers.add(channelUser);
+                Collections.sort(matchedUsers, sorting);
+                totalMatched++;
+            }
         }
         boolean includeAllNameTypes = main.getSettings().getBoolean("completionAllNameTypes");
         boolean includeAllNameTypesRestriction = main.getSettings().getBoolean("completionAllNameTypesRestriction");
         List<String> nicks = new ArrayList<>();
         Map<String, String> info = new HashMap<>();
         for (User user : matchedUsers) {
+            boolean regularMatched = user == channelUser || found.matched(user, UserCompletionIndex.REGULAR);
+            boolean localizedMatched = found.matched(user, UserCompletionIndex.LOCALIZED);
+            boolean customMatched = found.matched(user, UserCompletionIndex.CUSTOM);
             if (includeAllNameTypes
-                    && (!includeAllNameTypesRestriction || matchedUsers.size() <= 2)) {
-                if (customMatched.contains(user) && !preferUsernames) {
+                    && (!includeAllNameTypesRestriction || totalMatched <= 2)) {
+                if (customMatched && !preferUsernames) {
                     nicks.add(user.getCustomNick());
                     if (!user.hasRegularDisplayNick()) {
                         nicks.add(user.getDisplayNick());
@@ -477,7 +475,7 @@ public class ChannelCompletion implements AutoCompletionServer {
                     if (user.hasCustomNickSet() && !user.getCustomNick().equalsIgnoreCase(user.getRegularDisplayNick())) {
                         nicks.add(user.getRegularDisplayNick());
                     }
-                } else if (localizedMatched.contains(user) && !preferUsernames) {
+                } else if (localizedMatched && !preferUsernames) {
                     nicks.add(user.getDisplayNick());
                     if (user.hasCustomNickSet() && !user.getCustomNick().equalsIgnoreCase(user.getRegularDisplayNick())) {
                         nicks.add(user.getCustomNick());
@@ -493,13 +491,13 @@ public class ChannelCompletion implements AutoCompletionServer {
                     }
                 }
             } else {
-                if (regularMatched.contains(user) || preferUsernames) {
+                if (regularMatched || preferUsernames) {
                     nicks.add(user.getRegularDisplayNick());
                 }
-                if (localizedMatched.contains(user) && !preferUsernames) {
+                if (localizedMatched && !preferUsernames) {
                     nicks.add(user.getDisplayNick());
                 }
-                if (customMatched.contains(user) && !preferUsernames) {
+                if (customMatched && !preferUsernames) {
                     nicks.add(user.getCustomNick());
                 }
             }
@@ -521,28 +519,6 @@ public class ChannelCompletion implements AutoCompletionServer {
         return new CompletionItems(result, "");
     }
     
-    private static void matchUser(User user, String search,
-            List<User> matchedUsers, Set<User> regularMatched,
-            Set<User> localizedMatched, Set<User> customMatched) {
-        boolean matched = false;
-        if (user.getName().startsWith(search)) {
-            matched = true;
-            regularMatched.add(user);
-        }
-        if (!user.hasRegularDisplayNick() && StringUtil.toLowerCase(user.getDisplayNick()).startsWith(search)) {
-            matched = true;
-            localizedMatched.add(user);
-        }
-        if (user.hasCustomNickSet() && StringUtil.toLowerCase(user.getCustomNick()).startsWith(search)) {
-            matched = true;
-            customMatched.add(user);
-        }
-
-        if (matched) {
-            matchedUsers.add(user);
-        }
-    }
-
     /**
      * Only auto-start if enabled and if it's either one of the fixed prefixes
      * or the value of "completionEmotePrefix". Also check that there is a space
@@ -563,13 +539,18 @@ public class ChannelCompletion implements AutoCompletionServer {
         return false;
     }
 
-    private class UserSorterNew implements Comparator<User> {
+    /**
+     * Sorts by activity score. The score of each user is only retrieved once,
+     * so a new instance should be used for each search.
+     */
+    private static class UserSorterNew implements Comparator<User> {
+        
+        private final Map<User, Integer> scores = new HashMap<>();
 
         @Override
         public int compare(User o1, User o2) {
-            int s1 = o1.getActivityScore();
-            int s2 = o2.getActivityScore();
-            //System.out.println(o1+" "+s1+" "+o2+" "+s2);
+            int s1 = scores.computeIfAbsent(o1, User::getActivityScore);
+            int s2 = scores.computeIfAbsent(o2, User::getActivityScore);
             if (s1 == s2) {
                 return o1.compareTo(o2);
             } else if (s1 > s2) {
@@ -1,6 +1,7 @@
 
 package chatty.gui.components;
 
+import chatty.gui.EdtWatchdog;
 import chatty.gui.components.textpane.ChannelTextPane;
 import chatty.util.DateTime;
 import chatty.util.Debugging;
@@ -31,6 +32,7 @@ public class DebugWindow extends JFrame {
     private final JTextArea textFFZLog;
     private final JTextArea textPubSubLog;
     private final JTextArea otherLog;
+    private final JTextArea edtInfo;
     
     public DebugWindow(ItemListener listener) {
         setTitle("Debug");
@@ -53,6 +55,14 @@ public class DebugWindow extends JFrame {
             SwingUtilities.invokeLater(() -> printLine(otherLog, line));
         });
 
+        // EDT stalls (EdtWatchdog), only updated when requested
+        edtInfo = createLogArea();
+        JButton edtRefresh = new JButton("Refresh");
+        edtRefresh.addActionListener(e -> updateEdtInfo());
+        JPanel edtPanel = new JPanel(new BorderLayout());
+        edtPanel.add(new JScrollPane(edtInfo), BorderLayout.CENTER);
+        edtPanel.add(edtRefresh, BorderLayout.SOUTH);
+
         // Tabs
         JTabbedPane tabs = new JTabbedPane();
         tabs.addTab("Log", new JScrollPane(text));
@@ -60,6 +70,12 @@ public class DebugWindow extends JFrame {
         tabs.addTab("FFZ-WS", new JScrollPane(textFFZLog));
         tabs.addTab("PubSub", new JScrollPane(textPubSubLog));
         tabs.addTab("Other", new JScrollPane(otherLog));
+        tabs.addTab("EDT", edtPanel);
+        tabs.addChangeListener(e -> {
+            if (tabs.getSelectedComponent() == edtPanel) {
+                updateEdtInfo();
+            }
+        });
         
         // Settings (Checkboxes)
         logIrc.setToolTipText("Logging IRC traffic can reduce performance");
@@ -94,6 +110,11 @@ public class DebugWindow extends JFrame {
         printLine(text, line);
     }
     
+    private void updateEdtInfo() {
+        edtInfo.setText(EdtWatchdog.getSummary());
+        edtInfo.setCaretPosition(0);
+    }
+    
     public void printLineIrc(String line) {
         printLine(textIrcLog, line);
     }
@@ -0,0 +1,377 @@
+
+package chatty.gui.components;
+
+import chatty.util.api.Emoticon;
+import chatty.util.api.Emoticon.EmoticonImage;
+import chatty.util.api.Emoticon.EmoticonUser;
+import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
+import javax.swing.UIManager;
+
+/**
+ * Paints emotes in rows like a FlowLayout (centered, wrapping to the width of
+ * the component), without creating a component for each emote. A separator is
+ * added between emotes of different emotesets.
+ *
+ * <p>
+ * Only the emotes in the painted area request their image, so images of emotes
+ * that are never scrolled into view aren't loaded. Use
+ * {@link #getEmoteAt(Point)} to find the emote for mouse events.
+ * </p>
+ */
+@SuppressWarnings("serial") // Not serialized
+class EmoteGrid extends JComponent implements EmoticonUser {
+
+    private static final int GAP = 5;
+    private static final int BORDER = 2;
+    private static final int SEPARATOR_WIDTH = 2;
+    private static final int SEPARATOR_HEIGHT = 24;
+
+    private final EmoticonImage[] images;
+    private final boolean[] separatorBefore;
+    private final int count;
+
+    //--------
+    // Layout
+    //--------
+    private final int[] width;
+    private final int[] height;
+    private final int[] x;
+    private final int[] y;
+    private final int[] separatorX;
+    private final int[] separatorY;
+
+    /**
+     * The index of the first emote in each row, with an additional entry for
+     * the end of the last row.
+     */
+    private int[] rowStart = new int[1];
+    private int[] rowY = new int[0];
+    private int[] rowHeight = new int[0];
+    private int rows;
+
+    private boolean sizesValid;
+    private int layoutWidth = -1;
+    private int layoutHeight;
+
+    private boolean handCursor;
+
+    /**
+     * Create a new grid. The images of the emotes are only retrieved, but not
+     * loaded yet.
+     *
+     * @param emotes The emotes, in the order they should be displayed
+     * @param scale The scale to use for the images
+     */
+    EmoteGrid(Collection<Emoticon> emotes, float scale) {
+        count = emotes.size();
+        images = new EmoticonImage[count];
+        separatorBefore = new boolean[count];
+        width = new int[count];
+        height = new int[count];
+        x = new int[count];
+        y = new int[count];
+        separatorX = new int[count];
+        separatorY = new int[count];
+
+        String prevEmoteset = null;
+        int i = 0;
+        for (Emoticon emote : emotes) {
+            // Separator between different emotesets (and thus tiers)
+            separatorBefore[i] = i > 0 && !Objects.equals(prevEmoteset, emote.emoteset);
+            prevEmoteset = emote.emoteset;
+            images[i] = emote.getIcon(scale, 0, this);
+            i++;
+        }
+
+        ToolTipManager.sharedInstance().registerComponent(this);
+        MouseAdapter hoverListener = new MouseAdapter() {
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                updateCursor(getEmoteAt(e.getPoint()) != null);
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                updateCursor(false);
+            }
+        };
+        addMouseListener(hoverListener);
+        addMouseMotionListener(hoverListener);
+    }
+
+    private void updateCursor(boolean overEmote) {
+        if (overEmote != handCursor) {
+            handCursor = overEmote;
+            setCursor(Cursor.getPredefinedCursor(overEmote ? Cursor.HAND_CURSOR : Cursor.DEFAULT_CURSOR));
+        }
+    }
+
+    public int getEmoteCount() {
+        return count;
+    }
+
+    /**
+     * Get the emote image at the given location.
+     *
+     * @param p The location, relative to this component
+     * @return The emote image, or null if there is no emote at the location
+     */
+    public EmoticonImage getEmoteAt(Point p) {
+        int index = getIndexAt(p.x, p.y);
+        return index == -1 ? null : images[index];
+    }
+
+    int getIndexAt(int px, int py) {
+        updateLayout(getWidth());
+        int row = findRow(py);
+        if (row == -1 || py < rowY[row] || py >= rowY[row] + rowHeight[row]) {
+            return -1;
+        }
+        for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+            if (px >= x[i] && px < x[i] + width[i]
+                    && py >= y[i] && py < y[i] + height[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The bounds of the emote (including the border), only for testing.
+     */
+    Rectangle getEmoteBounds(int index) {
+        updateLayout(getWidth());
+        return new Rectangle(x[index], y[index], width[index], height[index]);
+    }
+
+    /**
+     * Find the last row starting at or above the given y coordinate.
+     *
+     * @param py
+     * @return The row index, or -1 if there are no rows or py is above the
+     * first row
+     */
+    private int findRow(int py) {
+        int low = 0;
+        int high = rows - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (rowY[mid] <= py) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    //========
+    // Layout
+    //========
+
+    /**
+     * The preferred height depends on the current width. The preferred width
+     * is only as wide as the widest emote, so that the grid can always be
+     * shrunk by the surrounding layout (which should stretch it horizontally).
+     *
+     * @return
+     */
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        updateLayout(getWidth() > 0 ? getWidth() : Integer.MAX_VALUE);
+        int maxWidth = 0;
+        for (int i = 0; i < count; i++) {
+            maxWidth = Math.max(maxWidth, width[i]);
+        }
+        return new Dimension(maxWidth + GAP * 2, layoutHeight);
+    }
+
+    @Override
+    public Dimension getMinimumSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public void setBounds(int x, int y, int w, int h) {
+        boolean widthChanged = w != getWidth();
+        super.setBounds(x, y, w, h);
+        if (widthChanged) {
+            int prevHeight = layoutHeight;
+            updateLayout(w);
+            if (layoutHeight != prevHeight || layoutHeight != h) {
+                // Amount of rows changed, so the preferred height changed
+                revalidate();
+            }
+        }
+    }
+
+    /**
+     * Performs the layout for the given width, if necessary.
+     *
+     * @param targetWidth
+     */
+    private void updateLayout(int targetWidth) {
+        if (!sizesValid) {
+            for (int i = 0; i < count; i++) {
+                Dimension d = images[i].getSize();
+                width[i] = d.width + BORDER * 2;
+                height[i] = d.height + BORDER * 2;
+            }
+            sizesValid = true;
+            layoutWidth = -1;
+        }
+        if (targetWidth == layoutWidth) {
+            return;
+        }
+        layoutWidth = targetWidth;
+        int maxWidth = targetWidth - GAP * 2;
+
+        rows = 0;
+        int rowWidth = 0;
+        int currentRowHeight = 0;
+        int currentY = GAP;
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int separator = separatorBefore[i] ? SEPARATOR_WIDTH + GAP : 0;
+            if (rowWidth > 0 && rowWidth + separator + GAP + width[i] > maxWidth) {
+                addRow(start, i, rowWidth, currentRowHeight, currentY, maxWidth);
+                currentY += currentRowHeight + GAP;
+                rowWidth = 0;
+                currentRowHeight = 0;
+                start = i;
+            }
+            if (rowWidth > 0) {
+                rowWidth += GAP;
+            }
+            if (separatorBefore[i]) {
+                separatorX[i] = rowWidth;
+                rowWidth += SEPARATOR_WIDTH + GAP;
+                currentRowHeight = Math.max(currentRowHeight, SEPARATOR_HEIGHT);
+            }
+            x[i] = rowWidth;
+            rowWidth += width[i];
+            currentRowHeight = Math.max(currentRowHeight, height[i]);
+        }
+        if (count > 0) {
+            addRow(start, count, rowWidth, currentRowHeight, currentY, maxWidth);
+            layoutHeight = currentY + currentRowHeight + GAP;
+        } else {
+            layoutHeight = 0;
+        }
+    }
+
+    /**
+     * Finish a row, centering the emotes horizontally and vertically.
+     */
+    private void addRow(int start, int end, int rowWidth, int currentRowHeight,
+            int currentY, int maxWidth) {
+        if (rows + 1 >= rowStart.length) {
+            int newLength = Math.max(8, rowStart.length * 2);
+            rowStart = Arrays.copyOf(rowStart, newLength);
+            rowY = Arrays.copyOf(rowY, newLength);
+            rowHeight = Arrays.copyOf(rowHeight, newLength);
+        }
+        int offset = GAP + Math.max(0, (maxWidth - rowWidth) / 2);
+        for (int i = start; i < end; i++) {
+            x[i] += offset;
+            y[i] = currentY + (currentRowHeight - height[i]) / 2;
+            if (separatorBefore[i]) {
+                separatorX[i] += offset;
+                separatorY[i] = currentY + (currentRowHeight - SEPARATOR_HEIGHT) / 2;
+            }
+        }
+        rowStart[rows] = start;
+        rowY[rows] = currentY;
+        rowHeight[rows] = currentRowHeight;
+        rows++;
+        rowStart[rows] = end;
+    }
+
+    //==========
+    // Painting
+    //==========
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (isOpaque()) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+        updateLayout(getWidth());
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        Color shadow = UIManager.getColor("Separator.foreground");
+        Color highlight = UIManager.getColor("Separator.background");
+        int row = Math.max(0, findRow(clip.y));
+        for (; row < rows && rowY[row] < clip.y + clip.height; row++) {
+            for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                if (separatorBefore[i]) {
+                    paintSeparator(g, separatorX[i], separatorY[i], shadow, highlight);
+                }
+                if (x[i] < clip.x + clip.width && x[i] + width[i] > clip.x) {
+                    // Requests the image to be loaded, if not already loaded
+                    images[i].getImageIcon().paintIcon(this, g, x[i] + BORDER, y[i] + BORDER);
+                }
+            }
+        }
+    }
+
+    private static void paintSeparator(Graphics g, int sx, int sy, Color shadow, Color highlight) {
+        g.setColor(shadow != null ? shadow : Color.GRAY);
+        g.drawLine(sx, sy, sx, sy + SEPARATOR_HEIGHT - 1);
+        g.setColor(highlight != null ? highlight : Color.WHITE);
+        g.drawLine(sx + 1, sy, sx + 1, sy + SEPARATOR_HEIGHT - 1);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        EmoticonImage emote = getEmoteAt(e.getPoint());
+        if (emote == null) {
+            return null;
+        }
+        return getToolTipText(emote.getEmoticon());
+    }
+
+    static String getToolTipText(Emoticon emote) {
+        if (emote.type == Emoticon.Type.EMOJI
+                || emote.subType == Emoticon.SubType.CHEER) {
+            return emote.getInfos().toString();
+        }
+        return emote.code;
+    }
+
+    /**
+     * An image of this grid finished loading. Only repaint, unless the size
+     * changed, which requires updating the layout.
+     */
+    @Override
+    public void iconLoaded(Image oldImage, Image newImage, boolean sizeChanged) {
+        if (sizeChanged) {
+            sizesValid = false;
+            revalidate();
+        }
+        repaint();
+    }
+
+}
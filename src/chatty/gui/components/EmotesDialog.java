@@ -7,6 +7,7 @@ import chatty.gui.LaF;
 import chatty.gui.MainGui;
 import chatty.gui.components.menus.ContextMenuListener;
 import chatty.gui.components.menus.EmoteContextMenu;
+import chatty.gui.emoji.EmojiCatalog;
 import chatty.lang.Language;
 import chatty.util.Debugging;
 import chatty.util.StringUtil;
@@ -16,6 +17,7 @@ import chatty.util.api.CheerEmoticon;
 import chatty.util.api.Emoticon;
 import chatty.util.api.Emoticon.EmoticonImage;
 import chatty.util.api.Emoticon.EmoticonUser;
+import chatty.util.api.EmoticonChange;
 import chatty.util.api.Emoticons;
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
@@ -46,6 +48,7 @@ import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
@@ -54,7 +57,6 @@ import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JToggleButton;
-import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 
@@ -72,6 +74,9 @@ public class EmotesDialog extends JDialog {
     public final int UPDATE_EMOTESET_CHANGED = 1;
     public final int UPDATE_CHANNEL_CHANGED = 2;
     public final int UPDATE_FAVORITES = 4;
+    public final int UPDATE_GLOBAL_EMOTES = 8;
+    public final int UPDATE_CHANNEL_EMOTES = 16;
+    public final int UPDATE_EMOTESET_EMOTES = 32;
     
     //------------------
     // Layout Constants
@@ -159,12 +164,15 @@ public class EmotesDialog extends JDialog {
         //------------------
         panels.add(new FavoritesPanel(FAVORITE_EMOTES,
                 UPDATE_CHANNEL_CHANGED | UPDATE_EMOTESET_CHANGED |
-                        UPDATE_FAVORITES));
-        panels.add(new SubemotesPanel(MY_EMOTES, UPDATE_EMOTESET_CHANGED));
+                        UPDATE_FAVORITES | UPDATE_GLOBAL_EMOTES |
+                        UPDATE_CHANNEL_EMOTES | UPDATE_EMOTESET_EMOTES));
+        panels.add(new SubemotesPanel(MY_EMOTES,
+                UPDATE_EMOTESET_CHANGED | UPDATE_EMOTESET_EMOTES));
         panels.add(new ChannelEmotesPanel(CHANNEL_EMOTES,
-                UPDATE_CHANNEL_CHANGED | UPDATE_EMOTESET_CHANGED));
-        panels.add(new TwitchEmotesPanel(TWITCH_EMOTES,0));
-        panels.add(new OtherEmotesPanel(OTHER_EMOTES,0));
+                UPDATE_CHANNEL_CHANGED | UPDATE_EMOTESET_CHANGED |
+                        UPDATE_CHANNEL_EMOTES | UPDATE_EMOTESET_EMOTES));
+        panels.add(new TwitchEmotesPanel(TWITCH_EMOTES, UPDATE_GLOBAL_EMOTES));
+        panels.add(new OtherEmotesPanel(OTHER_EMOTES, UPDATE_GLOBAL_EMOTES));
         if (Chatty.DEBUG) {
             panels.add(new BitsPanel(BITS, 0));
         }
@@ -221,9 +229,9 @@ public class EmotesDialog extends JDialog {
                     if (e.getClickCount() == 2 && closeOnDoubleClick) {
                         setVisible(false);
                     } else {
-                        EmoteLabel label = (EmoteLabel) e.getSource();
-                        if (!label.noInsert) {
-                            main.insert(Emoticons.toWriteable(label.code), true);
+                        EmoticonImage emote = getEmote(e);
+                        if (emote != null && !isNoInsert(emote.getEmoticon())) {
+                            main.insert(Emoticons.toWriteable(emote.getEmoticon().code), true);
                         }
                     }
                 }
@@ -312,12 +320,42 @@ public class EmotesDialog extends JDialog {
      */
     private void openContextMenu(MouseEvent e) {
         if (e.isPopupTrigger()) {
-            EmoticonImage emote = ((EmoteLabel)e.getSource()).emote;
+            EmoticonImage emote = getEmote(e);
+            if (emote == null) {
+                return;
+            }
             JPopupMenu m = new EmoteContextMenu(emote, contextMenuListener);
             m.show(e.getComponent(), e.getX(), e.getY());
         }
     }
     
+    /**
+     * Get the emote the mouse event occured on, either on an EmoteLabel or on
+     * an EmoteGrid.
+     * 
+     * @param e
+     * @return The emote image, or null if not on an emote
+     */
+    private static EmoticonImage getEmote(MouseEvent e) {
+        if (e.getSource() instanceof EmoteGrid) {
+            return ((EmoteGrid) e.getSource()).getEmoteAt(e.getPoint());
+        }
+        if (e.getSource() instanceof EmoteLabel) {
+            return ((EmoteLabel) e.getSource()).emote;
+        }
+        return null;
+    }
+    
+    /**
+     * Cheers can't be inserted by clicking on them.
+     * 
+     * @param emote
+     * @return 
+     */
+    private static boolean isNoInsert(Emoticon emote) {
+        return emote.subType == Emoticon.SubType.CHEER;
+    }
+    
     /**
      * Opens the dialog, using the given emotesets and stream.
      *
@@ -375,6 +413,32 @@ public class EmotesDialog extends JDialog {
             showEmotes();
         }
     }
+    
+    /**
+     * Reloads only the panels affected by the given change of emotes, if
+     * visible. Other panels keep their current emotes.
+     * 
+     * @param change The emotes that were added/removed
+     */
+    public void update(EmoticonChange change) {
+        int reasons = 0;
+        if (change.hasGlobal()) {
+            reasons |= UPDATE_GLOBAL_EMOTES;
+        }
+        if (change.hasEmoteset()) {
+            reasons |= UPDATE_EMOTESET_EMOTES;
+        }
+        if (change.hasStream(currentStream) || change.hasStream(tempStream)) {
+            reasons |= UPDATE_CHANNEL_EMOTES;
+        }
+        if (reasons == 0) {
+            return;
+        }
+        setUpdated(reasons);
+        if (isVisible()) {
+            showEmotes();
+        }
+    }
 
     /**
      * Changes the current stream and updates the channel-specific emotes if
@@ -533,30 +597,16 @@ public class EmotesDialog extends JDialog {
         
         private static final Border BORDER = BorderFactory.createEmptyBorder(2, 2, 2, 2);
         
-        public final String code;
         public final EmoticonImage emote;
-        public final boolean noInsert;
 
         public EmoteLabel(Emoticon emote, MouseListener mouseListener, float scale,
                 EmoticonUser emoteUser) {
             setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
             addMouseListener(mouseListener);
             EmoticonImage emoteImage = emote.getIcon(scale, 0, emoteUser);
-            this.code = emote.code;
             this.emote = emoteImage;
             setIcon(emoteImage.getImageIcon());
-            setToolTipText(emote.code);
-            if (emote.type == Emoticon.Type.EMOJI) {
-                setToolTipText(emote.getInfos().toString());
-            }
-            if (emote.subType == Emoticon.SubType.CHEER) {
-                setToolTipText(emote.getInfos().toString());
-            }
-            if (emote.subType == Emoticon.SubType.CHEER) {
-                noInsert = true;
-            } else {
-                noInsert = false;
-            }
+            setToolTipText(EmoteGrid.getToolTipText(emote));
             setBorder(BORDER);
         }
         
@@ -635,10 +685,10 @@ public class EmotesDialog extends JDialog {
          * Update the emotes on this panel the next time it is shown, but only
          * if the update reason matches what this panel is configured for.
          * 
-         * @param reason 
+         * @param reason One or several (combined) reasons
          */
         public void setUpdated(int reason) {
-            if ((updateOn & reason) == reason) {
+            if ((updateOn & reason) != 0) {
                 shouldUpdate = true;
             }
         }
@@ -751,34 +801,21 @@ public class EmotesDialog extends JDialog {
         }
         
         /**
-         * Adds the given emotes to a new panel.
+         * Adds the given emotes to a new grid, which only loads the images of
+         * emotes that are actually shown.
          *
          * @param emotes The emotes to add
          */
         void addEmotesPanel(Collection<Emoticon> emotes) {
-            JPanel panel = new JPanel();
+            EmoteGrid panel = new EmoteGrid(emotes, scale);
             panel.setBackground(emotesBackground);
-            panel.setLayout(new WrapLayout());
+            panel.addMouseListener(mouseListener);
             /**
-             * Using getParent() twice to get to JScrollPane viewport width,
-             * however it still doesn't always seem to work, depending on the
-             * width of the dialog. Substracting too much increases the gap in
-             * between panels (probably because it layouts the emotes in a
-             * narrower but higher panel). Manually resizing the dialog fixes
-             * the layout.
+             * Using getParent() twice to get to JScrollPane viewport width, so
+             * the initial preferred height is about right. The grid updates
+             * its layout once it gets the actual width.
              */
             panel.setSize(getParent().getParent().getWidth() - 20, 1);
-            //System.out.println(targetPanel.getParent().getParent());
-
-            String prevEmoteset = null;
-            for (Emoticon emote : emotes) {
-                if (!Objects.equals(prevEmoteset, emote.emoteset) && prevEmoteset != null) {
-                    // Separator between different emotesets (and thus tiers)
-                    panel.add(makeSeparator());
-                }
-                prevEmoteset = emote.emoteset;
-                panel.add(new EmoteLabel(emote, mouseListener, scale, emoteUser));
-            }
             gbc.fill = GridBagConstraints.HORIZONTAL;
             gbc.insets = EMOTE_INSETS;
             gbc.anchor = GridBagConstraints.WEST;
@@ -789,12 +826,6 @@ public class EmotesDialog extends JDialog {
             gbc.gridy++;
         }
         
-        private JSeparator makeSeparator() {
-            JSeparator separator = new JSeparator(SwingConstants.VERTICAL);
-            separator.setPreferredSize(new Dimension(2, 24));
-            return separator;
-        }
-        
         void addEmotes(Collection<Emoticon> emotes, String title) {
             if (!emotes.isEmpty()) {
                 addTitle(title+" ("+emotes.size()+" emotes)");
@@ -1158,34 +1189,51 @@ public class EmotesDialog extends JDialog {
         
     }
     
+    /**
+     * Shows the Emoji of one category at a time, so only the Emoticon objects
+     * of that category have to be created.
+     */
     private class EmojiPanel extends EmotesPanel {
+        
+        private final JComboBox<String> category = new JComboBox<>();
+        private boolean fillingCategories;
 
         public EmojiPanel(String name, int updateOn) {
             super(name, updateOn);
+            category.addActionListener(e -> {
+                if (!fillingCategories) {
+                    updateEmotes();
+                }
+            });
         }
 
         @Override
         protected void updateEmotes() {
             reset();
             
-            Map<String, Set<Emoticon>> categories = new HashMap<>();
-            Set<Emoticon> emotes = emoteManager.getEmoji();
-            for (Emoticon emote : emotes) {
-                for (String info : emote.getInfos()) {
-                    if (!info.startsWith("Category: ")) {
-                        continue;
-                    }
-                    if (!categories.containsKey(info)) {
-                        categories.put(info, new HashSet<Emoticon>());
-                    }
-                    categories.get(info).add(emote);
+            EmojiCatalog catalog = emoteManager.getEmojiCatalog();
+            List<String> categories = catalog.getCategories();
+            if (!categories.contains(category.getSelectedItem())) {
+                // Emoji Set changed, or first update
+                fillingCategories = true;
+                category.removeAllItems();
+                for (String c : categories) {
+                    category.addItem(c);
                 }
+                fillingCategories = false;
             }
-            for (String category : categories.keySet()) {
-                addEmotes(categories.get(category), category);
-            }
+            gbc.fill = GridBagConstraints.NONE;
+            gbc.insets = TITLE_INSETS;
+            gbc.anchor = GridBagConstraints.CENTER;
+            gbc.gridwidth = GridBagConstraints.REMAINDER;
+            add(category, gbc);
+            gbc.gridx = 0;
+            gbc.gridy++;
             
-            //addEmotes(emoteManager.getEmoji(), "Emoji");
+            String selected = (String) category.getSelectedItem();
+            if (selected != null) {
+                addEmotesPanel(catalog.getByCategory(selected));
+            }
             
             relayout();
         }
@@ -226,7 +226,7 @@ public class HighlightedMessages extends JDialog {
         }
         
         public void clear() {
-            setText("");
+            clearAll();
         }
         
     }
@@ -4,7 +4,14 @@ package chatty.gui.components;
 import chatty.gui.GuiUtil;
 import chatty.gui.MainGui;
 import chatty.lang.Language;
+import chatty.util.DateTime;
+import chatty.util.search.SearchQuery;
+import chatty.util.search.SearchResult;
+import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -14,15 +21,26 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.Timer;
 
 /**
- * Dialog to search text in the chat.
+ * Dialog to search text in the chat. Searches in the current channel by
+ * default, or in the recent messages of all channels (and optionally the log
+ * files) with the results shown in a list.
  * 
  * @author tduva
  */
@@ -37,6 +55,26 @@ public class SearchDialog extends JDialog {
     private final JTextField searchText = new JTextField(20);
     private final JButton searchButton = new JButton(Language.getString("searchDialog.button.search"));
     //private final JCheckBox highlightAll = new JCheckBox("Highlight all occurences");
+    private final JCheckBox allChannels = new JCheckBox(Language.getString("searchDialog.allChannels"));
+    private final JCheckBox includeLogs = new JCheckBox(Language.getString("searchDialog.includeLogs"));
+    private final JCheckBox highlightedOnly = new JCheckBox(Language.getString("searchDialog.highlightedOnly"));
+    private final JTextField user = new JTextField(10);
+    private final JComboBox<String> timeRange = new JComboBox<>(new String[]{
+        Language.getString("searchDialog.time.any"),
+        Language.getString("searchDialog.time.hour"),
+        Language.getString("searchDialog.time.day"),
+        Language.getString("searchDialog.time.week")
+    });
+    private static final long[] TIME_RANGES = new long[]{0,
+        TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7)};
+    private final DefaultListModel<SearchResult> results = new DefaultListModel<>();
+    private final JScrollPane resultsPane;
+    
+    /**
+     * Counts searches, so results of an older search arriving late are
+     * ignored.
+     */
+    private int searchId;
     
     private static final Map<Window, SearchDialog> created = new HashMap<>();
     
@@ -69,6 +107,41 @@ public class SearchDialog extends JDialog {
         searchButton.setMargin(GuiUtil.SMALL_BUTTON_INSETS);
         searchButton.setFocusable(false);
         add(searchButton, gbc);
+        
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        options.add(allChannels);
+        options.add(includeLogs);
+        options.add(highlightedOnly);
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        gbc.gridwidth = 2;
+        gbc.insets = new Insets(0, 0, 0, 0);
+        add(options, gbc);
+        
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        filters.add(new JLabel(Language.getString("searchDialog.user")));
+        filters.add(user);
+        filters.add(timeRange);
+        gbc.gridy = 2;
+        gbc.insets = new Insets(0, 0, 5, 0);
+        add(filters, gbc);
+        
+        JList<SearchResult> resultsList = new JList<>(results);
+        resultsList.setCellRenderer(new ResultRenderer());
+        resultsPane = new JScrollPane(resultsList);
+        resultsPane.setPreferredSize(new Dimension(500, 250));
+        resultsPane.setVisible(false);
+        gbc.gridy = 3;
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.weightx = 1;
+        gbc.weighty = 1;
+        gbc.insets = new Insets(0, 5, 5, 5);
+        add(resultsPane, gbc);
+        
+        includeLogs.setEnabled(false);
+        allChannels.addItemListener(e -> {
+            includeLogs.setEnabled(allChannels.isSelected());
+        });
 
         timer = new Timer(NO_RESULT_COLOR_TIME, new ActionListener() {
 
@@ -82,7 +155,9 @@ public class SearchDialog extends JDialog {
 
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (!g.search(owner, searchText.getText())) {
+                if (allChannels.isSelected()) {
+                    searchAll(g);
+                } else if (!g.search(owner, searchText.getText())) {
                     searchText.setBackground(COLOR_NO_RESULT);
                     timer.restart();
                 }
@@ -97,10 +172,65 @@ public class SearchDialog extends JDialog {
                 g.resetSearch(owner);
                 searchText.setText(null);
                 searchText.setBackground(COLOR_NORMAL);
+                results.clear();
             }
         });
         
         pack();
     }
     
+    /**
+     * Search all channels using the current options, with the results shown
+     * in the list.
+     * 
+     * @param g 
+     */
+    private void searchAll(MainGui g) {
+        long range = TIME_RANGES[timeRange.getSelectedIndex()];
+        SearchQuery query = new SearchQuery(searchText.getText(), null,
+                user.getText().trim(),
+                range > 0 ? System.currentTimeMillis() - range : 0, 0,
+                highlightedOnly.isSelected(), SearchQuery.DEFAULT_LIMIT);
+        final int id = ++searchId;
+        results.clear();
+        if (!resultsPane.isVisible()) {
+            resultsPane.setVisible(true);
+            setResizable(true);
+            pack();
+        }
+        g.searchAll(query, includeLogs.isSelected(), r -> {
+            if (id != searchId) {
+                return;
+            }
+            for (SearchResult result : r) {
+                results.addElement(result);
+            }
+            if (results.isEmpty()) {
+                searchText.setBackground(COLOR_NO_RESULT);
+                timer.restart();
+            }
+        });
+    }
+    
+    @SuppressWarnings("serial") // Not serialized
+    private static class ResultRenderer extends DefaultListCellRenderer {
+        
+        @Override
+        public Component getListCellRendererComponent(JList<?> list,
+                Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            SearchResult result = (SearchResult) value;
+            String text;
+            if (result.fromLog) {
+                text = String.format("%s %s", result.channel, result.text);
+            } else {
+                text = String.format("[%s] %s %s: %s",
+                        DateTime.format(result.time), result.channel,
+                        result.user, result.text);
+            }
+            return super.getListCellRendererComponent(list, text, index,
+                    isSelected, cellHasFocus);
+        }
+        
+    }
+    
 }
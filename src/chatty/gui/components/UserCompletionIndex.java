@@ -0,0 +1,199 @@
+
+package chatty.gui.components;
+
+import chatty.User;
+import chatty.util.StringUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Index of the names of the users in a channel, so users can be found by the
+ * start of their name without going through all users.
+ *
+ * <p>
+ * The names (regular, localized display name and custom name) are read from
+ * the User when it is added or updated, so {@link #update(User)} has to be
+ * called whenever names of the user change.
+ * </p>
+ */
+public class UserCompletionIndex {
+
+    /**
+     * Matched the username.
+     */
+    public static final int REGULAR = 1;
+
+    /**
+     * Matched the localized display name (which differs from the username by
+     * more than case).
+     */
+    public static final int LOCALIZED = 2;
+
+    /**
+     * Matched the custom name.
+     */
+    public static final int CUSTOM = 4;
+
+    /**
+     * Key is the lowercase name, followed by a separator, the type and the
+     * username, so that the same name can be indexed for several users.
+     */
+    private final TreeMap<String, IndexedName> index = new TreeMap<>();
+
+    /**
+     * The keys for each user, to remove them again.
+     */
+    private final Map<User, List<String>> keys = new HashMap<>();
+
+    public synchronized void add(User user) {
+        remove(user);
+        List<String> userKeys = new ArrayList<>(3);
+        String name = user.getName();
+        addName(user, name, REGULAR, userKeys);
+        if (!user.hasRegularDisplayNick()) {
+            addName(user, StringUtil.toLowerCase(user.getDisplayNick()), LOCALIZED, userKeys);
+        }
+        if (user.hasCustomNickSet()) {
+            addName(user, StringUtil.toLowerCase(user.getCustomNick()), CUSTOM, userKeys);
+        }
+        keys.put(user, userKeys);
+    }
+
+    private void addName(User user, String lowercaseName, int type, List<String> userKeys) {
+        String key = makeKey(lowercaseName, type, user.getName());
+        index.put(key, new IndexedName(user, type));
+        userKeys.add(key);
+    }
+
+    public synchronized void update(User user) {
+        add(user);
+    }
+
+    public synchronized void remove(User user) {
+        List<String> userKeys = keys.remove(user);
+        if (userKeys != null) {
+            for (String key : userKeys) {
+                index.remove(key);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        index.clear();
+        keys.clear();
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    /**
+     * Check if a user with the given username is in the index.
+     *
+     * @param username The username (lowercase)
+     * @return
+     */
+    public synchronized boolean containsName(String username) {
+        return index.containsKey(makeKey(username, REGULAR, username));
+    }
+
+    /**
+     * Find users with any name starting with the given search.
+     *
+     * @param search The search, all-lowercase
+     * @param comparator How to sort the result
+     * @param limit The maximum number of users to return, the first ones
+     * according to the comparator
+     * @return The result, never null
+     */
+    public Result find(String search, Comparator<User> comparator, int limit) {
+        Map<User, Integer> matched = new HashMap<>();
+        synchronized (this) {
+            for (IndexedName name : index.subMap(search, search+Character.MAX_VALUE).values()) {
+                matched.merge(name.user, name.type, (a, b) -> a | b);
+            }
+        }
+        return new Result(top(matched.keySet(), comparator, limit), matched);
+    }
+
+    /**
+     * Get the first users of the given collection according to the
+     * comparator, without sorting the whole collection.
+     *
+     * @param users
+     * @param comparator
+     * @param limit
+     * @return Sorted list of at most limit users
+     */
+    private static List<User> top(Iterable<User> users, Comparator<User> comparator, int limit) {
+        // Largest at head, so it can be removed if a smaller one is found
+        PriorityQueue<User> queue = new PriorityQueue<>(Math.min(limit, 64) + 1, comparator.reversed());
+        for (User user : users) {
+            queue.add(user);
+            if (queue.size() > limit) {
+                queue.poll();
+            }
+        }
+        List<User> result = new ArrayList<>(queue);
+        Collections.sort(result, comparator);
+        return result;
+    }
+
+    private static String makeKey(String lowercaseName, int type, String username) {
+        return lowercaseName+"\u0000"+type+username;
+    }
+
+    private static class IndexedName {
+
+        private final User user;
+        private final int type;
+
+        IndexedName(User user, int type) {
+            this.user = user;
+            this.type = type;
+        }
+
+    }
+
+    public static class Result {
+
+        /**
+         * The sorted users.
+         */
+        public final List<User> users;
+
+        /**
+         * The total number of matched users, which may be more than were
+         * returned due to the limit.
+         */
+        public final int total;
+
+        private final Map<User, Integer> matched;
+
+        private Result(List<User> users, Map<User, Integer> matched) {
+            this.users = users;
+            this.total = matched.size();
+            this.matched = matched;
+        }
+
+        /**
+         * Check which of the user's names matched.
+         *
+         * @param user The user
+         * @param type {@link #REGULAR}, {@link #LOCALIZED} or {@link #CUSTOM}
+         * @return true if the given name type matched for the user
+         */
+        public boolean matched(User user, int type) {
+            Integer types = matched.get(user);
+            return types != null && (types & type) != 0;
+        }
+
+    }
+
+}
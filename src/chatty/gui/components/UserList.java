@@ -13,6 +13,8 @@ import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.JList;
 
@@ -106,6 +108,26 @@ public class UserList extends JList<User> {
         //userlistData.updated(user);
     }
     
+    /**
+     * Apply several changes at once.
+     * 
+     * @param changes Users that should be added or updated (true) or removed
+     * (false)
+     */
+    public void updateUsers(Map<User, Boolean> changes) {
+        List<User> present = new ArrayList<>();
+        for (Map.Entry<User, Boolean> entry : changes.entrySet()) {
+            if (entry.getValue()) {
+                present.add(entry.getKey());
+            }
+        }
+        User selected = getSelectedValue();
+        data.applyChanges(changes.keySet(), present);
+        if (selected != null && selected != getSelectedValue()) {
+            setSelectedValue(selected, false);
+        }
+    }
+    
     public void resort() {
         data.sort();
     }
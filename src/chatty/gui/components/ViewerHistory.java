@@ -9,17 +9,16 @@ import chatty.gui.components.menus.ContextMenuAdapter;
 import chatty.gui.components.menus.ContextMenuListener;
 import chatty.gui.components.menus.HistoryContextMenu;
 import chatty.lang.Language;
+import chatty.util.api.StreamHistory;
 import chatty.util.api.StreamTagManager.StreamTag;
 import chatty.util.api.StreamInfo;
 import chatty.util.api.StreamInfo.StreamType;
-import chatty.util.api.StreamInfoHistoryItem;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.logging.Logger;
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
@@ -91,7 +90,7 @@ public class ViewerHistory extends JComponent {
     /**
      * Store the current history.
      */
-    private LinkedHashMap<Long,StreamInfoHistoryItem> history;
+    private StreamHistory.Snapshot history;
     
     /*
      * Values that only change when the history is updated, so it's enough to
@@ -102,6 +101,8 @@ public class ViewerHistory extends JComponent {
     private long startTime;
     private long endTime;
     private long duration;
+    private int startIndex;
+    private int endIndex;
     /**
      * Time in milliseconds that is displayed, going back from the newest.
      * Values <= 0 indicate that the whole data currentRange is displayed.
@@ -117,14 +118,27 @@ public class ViewerHistory extends JComponent {
     
     
     /**
-     * Store the actual locations of points on the component, this is updated
-     * with every redraw.
+     * The indices of the entries that are drawn (selected from the displayed
+     * range based on the width), only updated when the data, range or width
+     * changes.
      */
-    private LinkedHashMap<Point, Long> locations = new LinkedHashMap<>();
+    private int[] drawn;
+    private int drawnWidth = -1;
+    
     /**
-     * Store color for every entry, this is updated when a new history is set.
+     * Store the actual locations of points on the component (and the index of
+     * the entry), this is updated with every redraw.
      */
-    private LinkedHashMap<Long, Color> colors = new LinkedHashMap<>();
+    private int[] pointX = new int[0];
+    private int[] pointY = new int[0];
+    private int[] pointIndex = new int[0];
+    private int pointCount;
+    
+    /**
+     * Store color for every status segment, this is updated when a new
+     * history is set.
+     */
+    private Color[] segmentColors = new Color[0];
     
     private final HistoryContextMenu contextMenu = new HistoryContextMenu();
     
@@ -144,7 +158,7 @@ public class ViewerHistory extends JComponent {
         // Starting with 1 because selecting fixed range checks for 0 (which it
         // shouldn't be outside testing)
         public long currentTime = 1;
-        public LinkedHashMap<Long, StreamInfoHistoryItem> history = new LinkedHashMap<>();
+        public StreamHistory history = new StreamHistory();
         public long startTime;
         public long picnicStartTime;
         
@@ -155,9 +169,8 @@ public class ViewerHistory extends JComponent {
             } else {
                 c = Arrays.asList(communities);
             }
-            history.put(currentTime, new StreamInfoHistoryItem(currentTime,
-                    viewers, title, game, streamType, c,
-                    startTime, picnicStartTime));
+            history.add(currentTime, viewers, title, game, streamType, c,
+                    startTime, picnicStartTime);
             currentTime += 120*1000;
         }
         
@@ -170,7 +183,6 @@ public class ViewerHistory extends JComponent {
             HistoryTest test = new HistoryTest();
             
             
-            history = new LinkedHashMap<>();
             StreamTag c1 = new StreamTag("abc", "VarietyStreaming");
             StreamTag c2 = new StreamTag("abc", "Speedrunning");
             StreamTag c3 = new StreamTag("abc", "Pro-Audio");
@@ -230,7 +242,7 @@ public class ViewerHistory extends JComponent {
 //        history.put((long)3000*1000,123);
 //        history.put((long)3300*1000,-1);
 //        history.put((long)3600*1000,0);
-            setHistory("", test.history);
+            setHistory("", test.history.getSnapshot());
         }
         MyMouseListener mouseListener = new MyMouseListener();
         addMouseListener(mouseListener);
@@ -265,7 +277,7 @@ public class ViewerHistory extends JComponent {
      */
     @Override
     public void paintComponent(Graphics g) {
-        locations.clear();
+        pointCount = 0;
         
         // This color is used for everything until drawing the points
         g.setColor(foreground_color);
@@ -295,7 +307,7 @@ public class ViewerHistory extends JComponent {
         // viewercount
         int nowTextX = 0;
         if (history != null && hoverEntry == -1) {
-            Integer viewers = history.get(endTime).getViewers();
+            int viewers = history.getViewers(endIndex);
             long ago = System.currentTimeMillis() - endTime;
             String text;
             if (ago > CONSIDERED_AS_NOW) {
@@ -351,7 +363,8 @@ public class ViewerHistory extends JComponent {
         boolean displayMaxValue = true;
         
         if (hoverEntry != -1) {
-            Integer viewers = history.get(hoverEntry).getViewers();
+            int hoverIndex = history.indexOf(hoverEntry);
+            int viewers = hoverIndex != -1 ? history.getViewers(hoverIndex) : -1;
             Date d = new Date(hoverEntry);
             String text = Language.getString("channelInfo.viewers.hover", Helper.formatViewerCount(viewers))+" ("+sdf.format(d)+")";
             if (viewers == -1) {
@@ -414,19 +427,20 @@ public class ViewerHistory extends JComponent {
         
         int prevX = -1;
         int prevY = -1;
-        StreamInfoHistoryItem prevItem = null;
-        Iterator<Entry<Long,StreamInfoHistoryItem>> it = history.entrySet().iterator();
-        while (it.hasNext()) { 
-            Entry<Long,StreamInfoHistoryItem> entry = it.next();
+        int prevIndex = -1;
+        int[] indices = getDrawn((int)width);
+        if (pointX.length < indices.length) {
+            pointX = new int[indices.length];
+            pointY = new int[indices.length];
+            pointIndex = new int[indices.length];
+        }
+        for (int index : indices) {
             
             // Get time and value to draw next
-            long time = entry.getKey();
-            if (time < startTime || time > endTime) {
-                continue;
-            }
+            long time = history.getTime(index);
             long offsetTime = time - startTime;
             
-            int viewers = entry.getValue().getViewers();
+            int viewers = history.getViewers(index);
             if (viewers == -1) {
                 viewers = 0;
             }
@@ -443,8 +457,8 @@ public class ViewerHistory extends JComponent {
             
             // Draw connecting line
             if (prevX != -1) {
-                if (entry.getValue().getStreamType() != StreamType.LIVE &&
-                        prevItem != null && prevItem.getStreamType() != StreamType.LIVE) {
+                if (history.getStreamType(index) != StreamType.LIVE &&
+                        history.getStreamType(prevIndex) != StreamType.LIVE) {
                     g.setColor(Color.LIGHT_GRAY);
                 } else {
                     g.setColor(foreground_color);
@@ -455,36 +469,37 @@ public class ViewerHistory extends JComponent {
             // Save point coordinates to be able to draw the line next iteration
             prevX = x;
             prevY = y;
-            prevItem = entry.getValue();
+            prevIndex = index;
             
             // Save point locations to draw points and to find entries on hover
-            locations.put(new Point(x,y),time);
+            pointX[pointCount] = x;
+            pointY[pointCount] = y;
+            pointIndex[pointCount] = index;
+            pointCount++;
         }
         
         
-        prevItem = null;
+        prevIndex = -1;
         // Draw points (after lines, so they are in front)
-        for (Point point : locations.keySet()) {
-            int x = point.x;
-            int y = point.y;
-            long seconds = locations.get(point);
-            
-            StreamInfoHistoryItem historyObject = history.get(seconds);
+        for (int i = 0; i < pointCount; i++) {
+            int x = pointX[i];
+            int y = pointY[i];
+            int index = pointIndex[i];
             
             // Highlight hovered entry
-            if (seconds == hoverEntry) {
+            if (history.getTime(index) == hoverEntry) {
                 g.setColor(HOVER_COLOR);
             } else {
                 // Draw offline points differently
-                if (!historyObject.isOnline()) {
+                if (!history.isOnline(index)) {
                     g.setColor(OFFLINE_COLOR);
                 } else {
-                    g.setColor(colors.get(seconds));
+                    g.setColor(segmentColors[history.getSegment(index)]);
                 }
             }
             int pointSize = POINT_SIZE;
             
-            if (prevItem != null && !Objects.equals(prevItem.getCommunities(), historyObject.getCommunities())) {
+            if (prevIndex != -1 && !Objects.equals(history.getCommunities(prevIndex), history.getCommunities(index))) {
                 pointSize += 1;
                 g.fillRect(x - pointSize / 2, y - pointSize / 2, pointSize, pointSize);
             } else {
@@ -492,10 +507,26 @@ public class ViewerHistory extends JComponent {
             }
             
             
-            prevItem = historyObject;
+            prevIndex = index;
         }
     }
     
+    /**
+     * Get the indices of the entries to draw for the current range. If there
+     * are a lot of entries, only some are selected, so that painting only
+     * depends on the width, not on the amount of data.
+     * 
+     * @param width The width available for the graph
+     * @return 
+     */
+    private int[] getDrawn(int width) {
+        if (drawn == null || drawnWidth != width) {
+            drawn = history.downsample(startIndex, endIndex, width / POINT_SIZE);
+            drawnWidth = width;
+        }
+        return drawn;
+    }
+    
     /**
      * Make the text for the start and end time, taking into consideration
      * whether a specific range is displayed.
@@ -548,10 +579,7 @@ public class ViewerHistory extends JComponent {
         if (range <= 0) {
             return 0;
         }
-        long end = -1;
-        for (long time : history.keySet()) {
-            end = time;
-        }
+        long end = history.getTime(history.size() - 1);
         long startAt = end - range;
         if (startAt < 0) {
             startAt = 0;
@@ -577,21 +605,20 @@ public class ViewerHistory extends JComponent {
         int min = -1;
         long start = -1;
         long end = -1;
-        for (Long time : history.keySet()) {
-            if (time < startAt) {
-                continue;
-            }
-            if (endAt > startAt && time > endAt) {
-                continue;
-            }
+        int from = history.findFirstAtOrAfter(startAt);
+        int to = history.size() - 1;
+        if (endAt > startAt) {
+            to = history.findLastAtOrBefore(endAt);
+        }
+        for (int i = from; i <= to; i++) {
+            long time = history.getTime(i);
             // Start/End time
             if (start == -1) {
                 start = time;
             }
             end = time;
             // Max/min value
-            StreamInfoHistoryItem historyObj = history.get(time);
-            int viewerCount = historyObj.getViewers();
+            int viewerCount = history.getViewers(i);
             if (viewerCount < min || min == -1) {
                 min = viewerCount;
             }
@@ -605,26 +632,26 @@ public class ViewerHistory extends JComponent {
         
         maxValue = max;
         minValue = min;
+        startIndex = from;
+        endIndex = to;
+        drawn = null;
         startTime = start;
         endTime = end;
         duration = end - start;
     }
     
     /**
-     * Updates the map of colors used for rendering. This creates the
-     * alternating colors based on the full stream status, which should only
-     * be changed when new data is set.
+     * Updates the colors used for rendering. This creates the alternating
+     * colors based on the full stream status, which should only be changed
+     * when new data is set. Only has to go through the status segments, not
+     * every entry.
      */
     private void makeColors() {
-        colors.clear();
-        Iterator<Entry<Long, StreamInfoHistoryItem>> it = history.entrySet().iterator();
+        segmentColors = new Color[history.getSegmentCount()];
         String prevStatus = null;
         Color currentColor = FIRST_COLOR;
-        while (it.hasNext()) {
-            Entry<Long, StreamInfoHistoryItem> entry = it.next();
-            long time = entry.getKey();
-            StreamInfoHistoryItem item = entry.getValue();
-            String newStatus = item.getStatusAndGame();
+        for (int segment = 0; segment < segmentColors.length; segment++) {
+            String newStatus = history.getSegmentStatusAndGame(segment);
             // Only change color if neither the previous nor the new status
             // are null (offline) and the previous and new status are not equal.
             if (prevStatus != null && newStatus != null
@@ -636,7 +663,7 @@ public class ViewerHistory extends JComponent {
                     currentColor = FIRST_COLOR;
                 }
             }
-            colors.put(time, currentColor);
+            segmentColors[segment] = currentColor;
             // Save this status as previous status, but only if it's not
             // offline.
             if (newStatus != null) {
@@ -652,9 +679,9 @@ public class ViewerHistory extends JComponent {
      * @param stream
      * @param newHistory 
      */
-    public void setHistory(String stream, LinkedHashMap<Long,StreamInfoHistoryItem> newHistory) {
+    public void setHistory(String stream, StreamHistory.Snapshot newHistory) {
         manageChannelSpecificVars(stream);
-        // Make a copy so changes are not reflected in this
+        // Snapshot is immutable, so changes are not reflected in this
         history = newHistory;
         // Only update variables when the history contains something, else
         // set to null so nothing is rendered that isn't supposed to
@@ -858,11 +885,11 @@ public class ViewerHistory extends JComponent {
     private long findHoverEntry(Point p) {
         double smallestDistance = HOVER_RADIUS;
         long foundHoverEntry = -1;
-        for (Point point : locations.keySet()) {
-            double distance = p.distance(point);
+        for (int i = 0; i < pointCount; i++) {
+            double distance = p.distance(pointX[i], pointY[i]);
             if (distance < HOVER_RADIUS) {
                 if (distance < smallestDistance) {
-                    foundHoverEntry = locations.get(point);
+                    foundHoverEntry = history.getTime(pointIndex[i]);
                     smallestDistance = distance;
                 }
             }
@@ -886,8 +913,8 @@ public class ViewerHistory extends JComponent {
                 if (hoverEntry == -1) {
                     listener.noItemSelected();
                 } else {
-                    StreamInfoHistoryItem item = history.get(hoverEntry);
-                    if (item == null) {
+                    int index = history != null ? history.indexOf(hoverEntry) : -1;
+                    if (index == -1) {
                         /**
                          * This shouldn't happen, because the hover entry is set
                          * just before and selected from the current data (and
@@ -897,7 +924,7 @@ public class ViewerHistory extends JComponent {
                         LOGGER.warning("Hovered Entry "+hoverEntry+" was null");
                         hoverEntry = -1;
                     } else {
-                        listener.itemSelected(item);
+                        listener.itemSelected(history.getItem(index));
                     }
                 }
             }
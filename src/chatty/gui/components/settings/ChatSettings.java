@@ -3,6 +3,7 @@ package chatty.gui.components.settings;
 
 import chatty.gui.GuiUtil;
 import chatty.gui.components.LinkLabel;
+import java.awt.FlowLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -64,15 +65,25 @@ public class ChatSettings extends SettingsPanel {
         main.add(bufferSizesButton,
                 gbc);
         
-        gbc = d.makeGbc(0, 5, 3, 1, GridBagConstraints.WEST);
+        gbc = d.makeGbc(0, 5, 1, 1, GridBagConstraints.WEST);
+        main.add(new JLabel("Scrollback size:"),
+                gbc);
+        
+        gbc = d.makeGbc(1, 5, 2, 1, GridBagConstraints.WEST);
+        JPanel scrollbackPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        scrollbackPanel.add(d.addSimpleLongSetting("scrollbackSize", 5, true));
+        scrollbackPanel.add(new JLabel(" messages (kept for scrolling up, 0 = off)"));
+        main.add(scrollbackPanel, gbc);
+        
+        gbc = d.makeGbc(0, 6, 3, 1, GridBagConstraints.WEST);
         main.add(d.addSimpleBooleanSetting("inputHistoryMultirowRequireCtrl",
                 "On a multirow inputbox require Ctrl to navigate input history",
                 null), gbc);
         
-        gbc = d.makeGbc(0, 6, 3, 1, GridBagConstraints.WEST);
+        gbc = d.makeGbc(0, 7, 3, 1, GridBagConstraints.WEST);
         main.add(d.addSimpleBooleanSetting("showImageTooltips"), gbc);
         
-        gbc = d.makeGbcSub(0, 7, 3, 1, GridBagConstraints.WEST);
+        gbc = d.makeGbcSub(0, 8, 3, 1, GridBagConstraints.WEST);
         main.add(d.addSimpleBooleanSetting("showTooltipImages"), gbc);
         
         JPanel pauseChat = addTitledPanel("Pause Chat", 1);
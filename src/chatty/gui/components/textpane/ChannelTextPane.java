@@ -2,6 +2,7 @@
 package chatty.gui.components.textpane;
 
 import chatty.Chatty;
+import chatty.gui.EdtWatchdog;
 import chatty.gui.components.ChannelEditBox;
 import chatty.Helper;
 import chatty.SettingsManager;
@@ -24,6 +25,7 @@ import chatty.util.ChattyMisc.CombinedEmotesInfo;
 import chatty.util.CombinedEmoticon;
 import chatty.util.DateTime;
 import chatty.util.Debugging;
+import chatty.util.Metrics;
 import chatty.util.MiscUtil;
 import chatty.util.RingBuffer;
 import chatty.util.StringUtil;
@@ -31,6 +33,7 @@ import chatty.util.api.CheerEmoticon;
 import chatty.util.api.Emoticon;
 import chatty.util.api.Emoticon.EmoticonImage;
 import chatty.util.api.Emoticon.EmoticonUser;
+import chatty.util.api.EmoticonSnapshot;
 import chatty.util.api.Emoticons;
 import chatty.util.api.Emoticons.TagEmotes;
 import chatty.util.api.pubsub.ModeratorActionData;
@@ -45,6 +48,7 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
+import java.awt.event.HierarchyEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
@@ -64,6 +68,7 @@ import javax.swing.*;
 import static javax.swing.JComponent.WHEN_FOCUSED;
 import javax.swing.border.Border;
 import javax.swing.text.*;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
 import javax.swing.text.html.HTML;
 
 
@@ -90,6 +95,11 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     
     private static final Logger LOGGER = Logger.getLogger(ChannelTextPane.class.getName());
     
+    private static final Metrics.Histogram PRINT_TIME = Metrics.histogram(
+            "chatty_chat_message_print_seconds",
+            "Time to print a chat message into the chat, total and finding emotes",
+            "phase");
+    
     private final DefaultStyledDocument doc;
     
     private static AtomicLong idCounter = new AtomicLong();
@@ -110,6 +120,11 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      */
     private static final int BUFFER_SIZE_MIN = 10;
     private static final int BUFFER_SIZE_MAX = 10000;
+    
+    /**
+     * Max scrollback size, for which messages are stored in compact form.
+     */
+    private static final int SCROLLBACK_SIZE_MAX = 500000;
 
     /**
      * The Matcher to use for finding URLs in messages.
@@ -139,7 +154,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         CUSTOM_BACKGROUND, CUSTOM_FOREGROUND,
         
         IS_REPLACEMENT, REPLACEMENT_FOR, REPLACED_WITH, COMMAND, ACTION_BY,
-        ACTION_REASON
+        ACTION_REASON, SCROLLBACK_ID
     }
     
     /**
@@ -178,6 +193,69 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     
     private final javax.swing.Timer updateTimer;
     
+    /**
+     * Delay for removing old lines after new ones have been added, so that
+     * it's only done once for all lines added during about one frame.
+     */
+    private static final int CLEAR_CHAT_DELAY = 16;
+    
+    private final javax.swing.Timer clearChatTimer = new javax.swing.Timer(CLEAR_CHAT_DELAY, e -> clearSomeChat());
+    
+    /**
+     * Delay for printing output while showing, so that all output received
+     * during about one frame is added in one pass.
+     */
+    private static final int PRINT_DELAY = 16;
+    
+    private final javax.swing.Timer printTimer = new javax.swing.Timer(PRINT_DELAY, e -> printDeferred());
+    
+    //------------
+    // Scrollback
+    //------------
+    /**
+     * Messages that have been printed, so older messages than the ones that
+     * fit into the buffer can be shown again when scrolling up. Only the
+     * messages of the currently shown section are added to the document.
+     */
+    private final Scrollback scrollback = new Scrollback();
+    
+    /**
+     * When showing older messages from the scrollback, the id of the entry
+     * after the last shown one. New messages are not printed while showing
+     * older messages. -1 when showing the most recent messages.
+     */
+    private long scrollbackHistoryEnd = -1;
+    
+    /**
+     * Whether scrollback entries are currently being printed again.
+     */
+    private boolean scrollbackReplay;
+    
+    /**
+     * The time of the scrollback entry currently being printed again, -1 when
+     * printing new messages.
+     */
+    private long printTime = -1;
+    
+    private boolean scrollbackUpdatePending;
+    
+    //-----------------
+    // Deferred output
+    //-----------------
+    /**
+     * Output that hasn't been added to the document yet, either because this
+     * isn't showing or because it is printed with the next frame. Printed in
+     * order.
+     */
+    private final ArrayDeque<Deferred> deferred = new ArrayDeque<>();
+    
+    private boolean deferWhenHidden;
+    
+    /**
+     * Whether deferred output is currently being printed.
+     */
+    private boolean printingDeferred;
+    
     public ChannelTextPane(MainGui main, StyleServer styleServer) {
         this(main, styleServer, false, true);
     }
@@ -198,7 +276,9 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         this.addMouseMotionListener(scrollManager);
         kit = new MyEditorKit(startAtBottom);
         setEditorKit(kit);
-        this.setDocument(new MyDocument());
+        MyDocument myDoc = new MyDocument();
+        myDoc.setBeforeAccess(this::beforeDocumentAccess);
+        this.setDocument(myDoc);
         doc = (DefaultStyledDocument)getStyledDocument();
         setEditable(false);
         DefaultCaret caret = new NoScrollCaret();
@@ -219,6 +299,9 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         updateTimer.setRepeats(true);
         updateTimer.start();
         
+        clearChatTimer.setRepeats(false);
+        printTimer.setRepeats(false);
+        
         FixSelection.install(this);
     }
     
@@ -230,6 +313,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         if (updateTimer != null) {
             updateTimer.stop();
         }
+        clearChatTimer.stop();
+        printTimer.stop();
         scrollManager.cleanUp();
         linkController.cleanUp();
         // Clearing the images returns false on imageUpdate() to stop animator
@@ -274,18 +359,20 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      */
     @Override
     public void iconLoaded(Image oldImage, Image newImage, boolean sizeChanged) {
-        kit.changeImage(oldImage, newImage);
-        boolean repainted = false;
-        if (!sizeChanged) {
-            repainted = repaintImage(newImage);
-        }
-        if (!repainted) {
-            ((MyDocument)doc).refresh();
-            if (Debugging.isEnabled("gifd", "gifd2")) {
-                Debugging.println("Refresh");
+        EdtWatchdog.run("iconLoaded", () -> {
+            kit.changeImage(oldImage, newImage);
+            boolean repainted = false;
+            if (!sizeChanged) {
+                repainted = repaintImage(newImage);
+            }
+            if (!repainted) {
+                ((MyDocument)doc).refresh();
+                if (Debugging.isEnabled("gifd", "gifd2")) {
+                    Debugging.println("Refresh");
+                }
             }
-        }
-        scrollDownIfNecessary();
+            scrollDownIfNecessary();
+        });
     }
     
     /**
@@ -341,7 +428,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
             Rectangle r = new Rectangle();
             for (final MyIconView v : set) {
                 if (!Debugging.isEnabled("gift") && v.shouldCheckVisibility()) {
-                    SwingUtilities.invokeLater(() -> {
+                    EdtWatchdog.invokeLater("repaintImage", () -> {
                         checkViewVisibility(v);
                     });
                 }
@@ -433,8 +520,22 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      */
     public void printMessage(Message message) {
         if (message instanceof UserMessage) {
-            printUserMessage((UserMessage)message);
+            long id = scrollback.add(message);
+            if (defer(() -> printMessage((UserMessage) message, id))) {
+                return;
+            }
+            printMessage((UserMessage) message, id);
+        }
+    }
+    
+    private void printMessage(UserMessage message, long id) {
+        if (isShowingScrollbackHistory()) {
+            return;
         }
+        long start = System.nanoTime();
+        printUserMessage(message);
+        setLineScrollbackId(id);
+        PRINT_TIME.observeSince(start, "total");
     }
     
     /**
@@ -541,10 +642,10 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
                 message.replaceMatches, message.replacement);
         
         if (message.highlighted) {
-            setLineHighlighted(doc.getLength());
+            setLineHighlighted();
         }
         if (message.backgroundColor != null) {
-            setCustomBackgroundColor(doc.getLength(), message.backgroundColor);
+            setCustomBackgroundColor(message.backgroundColor);
         }
         finishLine();
         
@@ -552,6 +653,28 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     }
     
     public void printInfoMessage(InfoMessage message) {
+        long id = -1;
+        if (!message.isHidden()) {
+            id = scrollback.add(message);
+        }
+        long scrollbackId = id;
+        if (defer(() -> printInfoMessage(message, scrollbackId))) {
+            return;
+        }
+        printInfoMessage(message, id);
+    }
+    
+    private void printInfoMessage(InfoMessage message, long id) {
+        if (isShowingScrollbackHistory()) {
+            return;
+        }
+        printInfoMessageLine(message);
+        if (!message.isHidden()) {
+            setLineScrollbackId(id);
+        }
+    }
+    
+    private void printInfoMessageLine(InfoMessage message) {
         //-------
         // Style
         //-------
@@ -568,7 +691,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
             //-------------
             // May be an extra message or just for adding name behind action
             ModLogInfo modLogInfo = (ModLogInfo)message;
-            if (modLogInfo.showActionBy) {
+            if (modLogInfo.showActionBy && !scrollbackReplay) {
                 // Add the mod name behind actions
                 boolean success = printModLogInfo(modLogInfo);
                 if (!success) {
@@ -591,7 +714,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
             
             String command = message.makeCommand();
             if (command != null) {
-                setLineCommand(doc.getLength(), command);
+                setLineCommand(command);
             }
             
             replayModLogInfo();
@@ -601,10 +724,10 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         //-----------------
         if (!message.isHidden()) {
             if (message.highlighted) {
-                setLineHighlighted(doc.getLength());
+                setLineHighlighted();
             }
             if (message.bgColor != null) {
-                setCustomBackgroundColor(doc.getLength(), message.bgColor);
+                setCustomBackgroundColor(message.bgColor);
             }
         }
     }
@@ -779,7 +902,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     private long getTimeAgo(Element element) {
         Long timestamp = (Long)element.getAttributes().getAttribute(Attribute.TIMESTAMP);
         if (timestamp != null) {
-            return System.currentTimeMillis() - timestamp;
+            return getPrintTime() - timestamp;
         }
         return Long.MAX_VALUE;
     }
@@ -988,6 +1111,32 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      * @param targetMsgId The id of the deleted message, null if no specific message
      */
     public void userBanned(User user, long duration, String reason, String targetMsgId) {
+        scrollback.add(new Scrollback.Ban(user, duration, reason, targetMsgId));
+        // When removed because there are too many, still apply it to the
+        // lines that are already printed
+        if (defer(() -> printBan(user, duration, reason, targetMsgId),
+                () -> applyBanToLines(user, duration, reason, targetMsgId))) {
+            return;
+        }
+        printBan(user, duration, reason, targetMsgId);
+    }
+    
+    private void printBan(User user, long duration, String reason, String targetMsgId) {
+        if (!isShowingScrollbackHistory()) {
+            printBanMessage(user, duration, reason, targetMsgId);
+        }
+        applyBanToLines(user, duration, reason, targetMsgId);
+    }
+    
+    /**
+     * Output the separate ban message, or add to a previous one if enabled.
+     * 
+     * @param user
+     * @param duration
+     * @param reason
+     * @param targetMsgId 
+     */
+    private void printBanMessage(User user, long duration, String reason, String targetMsgId) {
         if (styles.isEnabled(Setting.SHOW_BANMESSAGES)) {
             //-----------------------
             // For extra ban message
@@ -1025,7 +1174,18 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
                 finishLine();
             }
         }
-        
+    }
+    
+    /**
+     * Strike through or delete the affected messages of the user and append
+     * the ban info.
+     * 
+     * @param user
+     * @param duration
+     * @param reason
+     * @param targetMsgId 
+     */
+    private void applyBanToLines(User user, long duration, String reason, String targetMsgId) {
         //--------------------------------------
         // For indicator behind deleted message
         //--------------------------------------
@@ -1291,25 +1451,33 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     }
     
     private void setLineCommand(int offset, String command) {
+        doc.setParagraphAttributes(offset, 1, lineCommand(command), false);
+    }
+    
+    private void setLineCommand(String command) {
+        setLastLineAttributes(lineCommand(command));
+    }
+    
+    private static AttributeSet lineCommand(String command) {
         SimpleAttributeSet attr = new SimpleAttributeSet();
         attr.addAttribute(Attribute.COMMAND, command);
-        doc.setParagraphAttributes(offset, 1, attr, false);
+        return attr;
     }
     
     private void setVariableLineAttributes(int offset, boolean even, boolean updateTimestamp) {
         doc.setParagraphAttributes(offset, 1, styles.variableLineAttributes(even, updateTimestamp), false);
     }
     
-    private void setLineHighlighted(int offset) {
+    private void setLineHighlighted() {
         SimpleAttributeSet attr = new SimpleAttributeSet();
         attr.addAttribute(Attribute.HIGHLIGHT_LINE, true);
-        doc.setParagraphAttributes(offset, 1, attr, false);
+        setLastLineAttributes(attr);
     }
     
-    private void setCustomBackgroundColor(int offset, Color color) {
+    private void setCustomBackgroundColor(Color color) {
         SimpleAttributeSet attr = new SimpleAttributeSet();
         attr.addAttribute(Attribute.CUSTOM_BACKGROUND, color);
-        doc.setParagraphAttributes(offset, 1, attr, false);
+        setLastLineAttributes(attr);
     }
     
     public void selectPreviousUser() {
@@ -1487,7 +1655,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
             currentSelection = null;
             currentUser = null;
             if (shouldReturnFocusTo != null) {
-                SwingUtilities.invokeLater(new Runnable() {
+                EdtWatchdog.invokeLater("disable", new Runnable() {
 
                     @Override
                     public void run() {
@@ -1951,11 +2119,21 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     }
     
     /**
-     * Removes some chat lines from the top, depending on the current
-     * scroll position.
+     * Removes old lines shortly after new lines have been added, so that lines
+     * added in quick succession are removed at once.
+     */
+    private void requestClearSomeChat() {
+        if (!clearChatTimer.isRunning()) {
+            clearChatTimer.start();
+        }
+    }
+    
+    /**
+     * Removes chat lines from the top if the buffer size is exceeded,
+     * depending on the current scroll position.
      */
     private void clearSomeChat() {
-        if (scrollManager.fixedChat) {
+        if (scrollManager.fixedChat || isShowingScrollbackHistory()) {
             return;
         }
         if (!scrollManager.isScrollPositionNearEnd()) {
@@ -1964,7 +2142,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         int count = doc.getDefaultRootElement().getElementCount();
         int max = styles.bufferSize();
         if (count > max) {
-            removeFirstLines(2);
+            removeFirstLines(count - max);
+            scrollDownIfNecessary();
         }
     }
 
@@ -1980,11 +2159,15 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         if (doc.getDefaultRootElement().getElementCount() == 0) {
             return;
         }
-        Element firstToRemove = doc.getDefaultRootElement().getElement(0);
-        Element lastToRemove = doc.getDefaultRootElement().getElement(amount - 1);
-        // TODO: change to fix for amount, maybe change to removing elements
-        clearImages(firstToRemove);
-        clearImages(lastToRemove);
+        Element root = doc.getDefaultRootElement();
+        if (amount > root.getElementCount()) {
+            amount = root.getElementCount();
+        }
+        Element firstToRemove = root.getElement(0);
+        Element lastToRemove = root.getElement(amount - 1);
+        for (int i = 0; i < amount; i++) {
+            clearImages(root.getElement(i));
+        }
         //System.out.println(firstToRemove+" "+lastToRemove);
         int startOffset = firstToRemove.getStartOffset();
         int endOffset = lastToRemove.getEndOffset();
@@ -2020,11 +2203,25 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         }
     }
     
+    /**
+     * Removes all lines, including any stored scrollback.
+     */
     public void clearAll() {
+        deferred.clear();
+        scrollback.clear();
+        scrollbackHistoryEnd = -1;
+        clearDocument();
+    }
+    
+    private void clearDocument() {
+        pendingText.clear();
+        pendingParagraph = null;
+        pendingFinishedLines = 0;
         try {
             doc.remove(0, doc.getLength());
             resetNewlineRequired();
             kit.clearImages();
+            compactMode = null;
         } catch (BadLocationException ex) {
             Logger.getLogger(ChannelTextPane.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -2058,6 +2255,9 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      * @param user 
      */
     public void printCompact(String type, User user) {
+        if (defer(() -> printCompact(type, user))) {
+            return;
+        }
         String seperator = ", ";
         if (startCompactMode(type)) {
             // If compact mode has actually been started for this print,
@@ -2074,6 +2274,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         // start a new line
         if (compactModeLength >= MAX_COMPACTMODE_LENGTH) {
             closeCompactMode();
+        } else if (!printBatch) {
+            flushPrint();
         }
     }
     
@@ -2122,9 +2324,12 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      */
     protected void finishLine() {
         newlineRequired = true;
-        lineSelection.onLineAdded(getLastLine(doc));
         even = !even;
-        setVariableLineAttributes(doc.getLength() - 1, even, true);
+        setLastLineAttributes(styles.variableLineAttributes(even, true));
+        pendingFinishedLines++;
+        if (!printBatch) {
+            flushPrint();
+        }
     }
     
     boolean even = false;
@@ -2134,7 +2339,63 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      * @param line 
      */
     public void printLine(String line) {
+        long id = scrollback.add(line);
+        if (defer(() -> printLine(line, id))) {
+            return;
+        }
+        printLine(line, id);
+    }
+    
+    private void printLine(String line, long id) {
+        if (isShowingScrollbackHistory()) {
+            return;
+        }
         printLine(line, styles.info());
+        setLineScrollbackId(id);
+    }
+    
+    /**
+     * Adds lines from before the channel was opened (e.g. from the log files)
+     * at the top, in a dimmed style and with a single insert. The lines are
+     * not stored in the scrollback.
+     * 
+     * @param lines The lines, oldest first
+     */
+    public void printHistory(java.util.List<String> lines) {
+        if (lines.isEmpty() || isShowingScrollbackHistory()) {
+            return;
+        }
+        boolean empty = doc.getLength() == 0;
+        boolean scrollDown = scrollManager.isScrollPositionNearEnd();
+        StringBuilder b = new StringBuilder();
+        for (String line : lines) {
+            if (b.length() > 0) {
+                b.append("\n");
+            }
+            b.append(line);
+        }
+        if (!empty) {
+            b.append("\n");
+        }
+        try {
+            doc.insertString(0, b.toString(), styles.history());
+            doc.setParagraphAttributes(0, Math.max(b.length(), 1), styles.paragraph(), true);
+            Element root = doc.getDefaultRootElement();
+            for (int i = 0; i < lines.size(); i++) {
+                setVariableLineAttributes(root.getElement(i).getStartOffset(), i % 2 == 0, false);
+            }
+        } catch (BadLocationException ex) {
+            LOGGER.warning("Bad Location");
+        }
+        if (empty) {
+            // Continue after the history as if it had been printed normally
+            newlineRequired = true;
+            even = lines.size() % 2 == 1;
+        }
+        requestClearSomeChat();
+        if (scrollDown) {
+            scrollManager.requestScrollDown();
+        }
     }
 
     /**
@@ -2187,7 +2448,9 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         }
         
         if (styles.isEnabled(Setting.EMOTICONS_ENABLED)) {
+            long emotesStart = System.nanoTime();
             findEmoticons(text, user, ranges, rangesStyle, emotes);
+            PRINT_TIME.observeSince(emotesStart, "emotes");
             if (containsBits) {
                 findBits(main.emoticons.getCheerEmotes(), text, ranges, rangesStyle, user);
             }
@@ -2395,7 +2658,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         Set<String> accessToSets = user.isLocalUser() ? main.emoticons.getLocalEmotesets() : null;
         findEmoticons(user, main.emoticons.getCustomEmotes(), text, ranges, rangesStyle, accessToSets);
         if (Debugging.isEnabled("emoji2") || EmojiUtil.mightContainEmoji(text)) {
-            findEmoticons(user, main.emoticons.getEmoji(), text, ranges, rangesStyle);
+            findEmoji(text, ranges, rangesStyle);
         }
         
         if (tagEmotes != null) {
@@ -2404,23 +2667,26 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
             addTwitchTagsEmoticons(user, emoticonsById, text, ranges, rangesStyle, tagEmotes);
         }
         
+        // Use the same state of the emotes for the whole message
+        EmoticonSnapshot snapshot = main.emoticons.getSnapshot();
+        
         if (user.isLocalUser()) {
             for (String set : main.emoticons.getLocalEmotesets()) {
-                HashSet<Emoticon> emoticons = main.emoticons.getEmoticonsBySet(set);
+                Set<Emoticon> emoticons = snapshot.getByEmoteset(set);
                 findEmoticons(emoticons, text, ranges, rangesStyle);
             }
         }
         
         // Global emotes
         if (tagEmotes == null) {
-            Set<Emoticon> emoticons = main.emoticons.getGlobalTwitchEmotes();
+            Set<Emoticon> emoticons = snapshot.getGlobalTwitch();
             findEmoticons(emoticons, text, ranges, rangesStyle);
         }
-        Set<Emoticon> emoticons = main.emoticons.getOtherGlobalEmotes();
+        Set<Emoticon> emoticons = snapshot.getOtherGlobal();
         findEmoticons(emoticons, text, ranges, rangesStyle);
         
         // Channel based (may also have a emoteset restriction)
-        HashSet<Emoticon> channelEmotes = main.emoticons.getEmoticonsByStream(user.getStream());
+        Set<Emoticon> channelEmotes = snapshot.getByStream(user.getStream());
         findEmoticons(user, channelEmotes, text, ranges, rangesStyle);
         
         // Special Combined Emotes
@@ -2499,64 +2765,44 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         if (emotesDef == null) {
             return;
         }
-        Map<Integer, Emoticons.TagEmote> def = emotesDef.emotes;
         
         /**
-         * Iterate over each character of the message and check if an emote starts
-         * at the current position.
-         * 
-         * The offset is used to handle supplemantary characters that consist
-         * of two UTF-16 characters. Twitch Chat sees these as only one character
-         * so that has to be corrected.
-         * 
-         * https://discuss.dev.twitch.tv/t/jtv-2-receiving-messages/1635/10
-         * 
-         * Example message: "Kappa 𠜎 Kappa"
+         * The ranges have already been converted to UTF-16 indices when
+         * parsing the tag (Twitch Chat sees supplementary characters as only
+         * one character).
          */
-        int offset = 0;
-        for (int i=0;i<text.length();) {
-            
-            if (def.containsKey(i-offset)) {
-                // An emote starts at the current position, so add it.
-                Emoticons.TagEmote emoteData = def.get(i-offset);
-                String id = emoteData.id;
-                int start = i;
-                int end = emoteData.end+offset;
-                
-                // Get and check emote
-                Emoticon emoticon = null;
-                Emoticon customEmote = main.emoticons.getCustomEmoteById(id);
-                if (customEmote != null && customEmote.allowedForStream(user.getStream())) {
-                    emoticon = customEmote;
-                } else {
-                    emoticon = emoticons.get(id);
-                }
-                if (end < text.length()) {
-                    if (emoticon == null) {
-                        /**
-                         * Add emote from message alone
-                         */
-                        String code = text.substring(start, end+1);
-                        String url = Emoticon.getTwitchEmoteUrlById(id, 1);
-                        Emoticon.Builder b = new Emoticon.Builder(
-                                Emoticon.Type.TWITCH, code, url);
-                        b.setStringId(id);
-                        b.setEmoteset(Emoticon.SET_UNKNOWN);
-                        emoticon = b.build();
-                        main.emoticons.addTempEmoticon(emoticon);
-                    }
-                    if (!main.emoticons.isEmoteIgnored(emoticon)) {
-                        addEmoticon(emoticon, start, end, ranges, rangesStyle);
-                    }
-                }
+        for (int i = 0; i < emotesDef.size(); i++) {
+            String id = emotesDef.getId(i);
+            int start = emotesDef.getStart(i);
+            int end = emotesDef.getEnd(i);
+            if (end >= text.length()) {
+                continue;
+            }
+
+            // Get and check emote
+            Emoticon emoticon = null;
+            Emoticon customEmote = main.emoticons.getCustomEmoteById(id);
+            if (customEmote != null && customEmote.allowedForStream(user.getStream())) {
+                emoticon = customEmote;
+            } else {
+                emoticon = emoticons.get(id);
+            }
+            if (emoticon == null) {
+                /**
+                 * Add emote from message alone
+                 */
+                String code = text.substring(start, end+1);
+                String url = Emoticon.getTwitchEmoteUrlById(id, 1);
+                Emoticon.Builder b = new Emoticon.Builder(
+                        Emoticon.Type.TWITCH, code, url);
+                b.setStringId(id);
+                b.setEmoteset(Emoticon.SET_UNKNOWN);
+                emoticon = b.build();
+                main.emoticons.addTempEmoticon(emoticon);
+            }
+            if (!main.emoticons.isEmoteIgnored(emoticon)) {
+                addEmoticon(emoticon, start, end, ranges, rangesStyle);
             }
-            /**
-             * If the current position in the String consists of an character
-             * thats more than one long (some Unicode characters), then add to
-             * the offset and jump ahead accordingly.
-             */
-            offset += Character.charCount(text.codePointAt(i))-1;
-            i += Character.charCount(text.codePointAt(i));
         }
     }
     
@@ -2602,6 +2848,19 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         }
     }
     
+    /**
+     * Find Emoji by looking up the characters in the text, which only creates
+     * Emoticon objects for the Emoji that are actually found.
+     */
+    private void findEmoji(String text, Map<Integer, Integer> ranges,
+            Map<Integer, MutableAttributeSet> rangesStyle) {
+        main.emoticons.getEmojiCatalog().find(text, (emote, start, end) -> {
+            if (!main.emoticons.isEmoteIgnored(emote)) {
+                addEmoticon(emote, start, end, ranges, rangesStyle);
+            }
+        });
+    }
+    
     private void findBits(Set<CheerEmoticon> emotes, String text,
             Map<Integer, Integer> ranges,
             Map<Integer, MutableAttributeSet> rangesStyle,
@@ -2720,52 +2979,253 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     private int lengthSinceNewline = 0;
 
     /**
-     * Prints the given text in the given style. Runs the function that actually
-     * adds the text in the Event Dispatch Thread.
+     * Text sections that haven't been inserted into the document yet.
+     * 
+     * Printing a single message usually consists of many sections (timestamp,
+     * badges, name, text, emotes), each of which would cause document events
+     * and layout invalidation when inserted separately. Instead they are
+     * collected here and inserted together with {@link #flushPrint()}. When
+     * printing deferred output, all lines printed during one frame are
+     * collected and inserted together. Any other access to the document
+     * inserts the pending text first (see {@link MyDocument}).
+     */
+    private final java.util.List<PendingText> pendingText = new ArrayList<>();
+    
+    /**
+     * The paragraph attributes of the last line that hasn't been inserted
+     * yet, null if all pending text is added to the last line in the
+     * document.
+     */
+    private MutableAttributeSet pendingParagraph;
+    
+    /**
+     * The number of lines finished since the last flush.
+     */
+    private int pendingFinishedLines;
+    
+    /**
+     * Whether lines are only inserted at the end of a batch of output, as
+     * opposed to when they are finished.
+     */
+    private boolean printBatch;
+    
+    private boolean flushing;
+    
+    private static class PendingText {
+        
+        public final String text;
+        public final AttributeSet style;
+        
+        /**
+         * The attributes of the paragraph this text starts (if it starts with
+         * a newline), null otherwise.
+         */
+        public final MutableAttributeSet paragraph;
+        
+        PendingText(String text, AttributeSet style, MutableAttributeSet paragraph) {
+            this.text = text;
+            this.style = style;
+            this.paragraph = paragraph;
+        }
+    }
+    
+    /**
+     * Prints the given text in the given style. The text is only added to the
+     * document on the next {@link #flushPrint()}.
      * 
      * @param text
      * @param style 
      */
     private void print(final String text, final AttributeSet style) {
-        try {
-            String newline = "";
-            if (newlineRequired) {
-                lengthSinceNewline = 0;
-                newline = "\n";
-                newlineRequired = false;
-                clearSomeChat();
-            }
-            /**
-             * Split up long sections by a newline. See MAX_TEXT_LENGTH.
-             */
-            lengthSinceNewline += text.length();
-            if (lengthSinceNewline > MAX_TEXT_LENGTH) {
-                // How much is the current text above limit
-                int breakTarget = MAX_TEXT_LENGTH - (lengthSinceNewline - text.length());
-                // Prefer breaking at space, if within reasonable range
-                int firstSpace = text.indexOf(' ', breakTarget);
-                if (firstSpace != -1 && firstSpace - breakTarget < MAX_TEXT_LENGTH / 20) {
-                    breakTarget = firstSpace;
-                }
-                String part = text.substring(0, breakTarget);
-                String remaining = text.substring(breakTarget);
-                doc.insertString(doc.getLength(), newline+part, style);
-                doc.setParagraphAttributes(doc.getLength(), 1, styles.paragraph(), true);
-                newlineRequired = true;
-                print(remaining, style);
-            }
-            else {
-                //System.out.println("1:"+doc.getLength());
-                doc.insertString(doc.getLength(), newline+text, style);
-                //System.out.println("2:"+doc.getLength());
-                //this.getHighlighter().addHighlight(doc.getLength(), 10, null);
-                // TODO: check how this works
-                doc.setParagraphAttributes(doc.getLength(), 1, styles.paragraph(), true);
+        String newline = "";
+        if (newlineRequired) {
+            lengthSinceNewline = 0;
+            newline = "\n";
+            newlineRequired = false;
+            requestClearSomeChat();
+        }
+        /**
+         * Split up long sections by a newline. See MAX_TEXT_LENGTH.
+         */
+        lengthSinceNewline += text.length();
+        if (lengthSinceNewline > MAX_TEXT_LENGTH) {
+            // How much is the current text above limit
+            int breakTarget = MAX_TEXT_LENGTH - (lengthSinceNewline - text.length());
+            // Prefer breaking at space, if within reasonable range
+            int firstSpace = text.indexOf(' ', breakTarget);
+            if (firstSpace != -1 && firstSpace - breakTarget < MAX_TEXT_LENGTH / 20) {
+                breakTarget = firstSpace;
+            }
+            String part = text.substring(0, breakTarget);
+            String remaining = text.substring(breakTarget);
+            addPending(newline+part, style);
+            newlineRequired = true;
+            print(remaining, style);
+        }
+        else {
+            addPending(newline+text, style);
+        }
+    }
+    
+    private void addPending(String text, AttributeSet style) {
+        MutableAttributeSet paragraph = null;
+        if (text.startsWith("\n")) {
+            paragraph = new SimpleAttributeSet(styles.paragraph());
+            pendingParagraph = paragraph;
+        }
+        // Copy, since style objects may be changed before flushing
+        pendingText.add(new PendingText(text, style.copyAttributes(), paragraph));
+    }
+    
+    /**
+     * Add the given attributes to the last line, which may not have been
+     * inserted into the document yet.
+     * 
+     * @param attr 
+     */
+    private void setLastLineAttributes(AttributeSet attr) {
+        if (pendingParagraph != null) {
+            pendingParagraph.addAttributes(attr);
+        } else {
+            flushPrint();
+            doc.setParagraphAttributes(doc.getLength(), 1, attr, false);
+        }
+    }
+    
+    /**
+     * Insert pending text before the document is accessed otherwise, for
+     * example when looking for lines to modify while printing a batch.
+     */
+    private void beforeDocumentAccess() {
+        if (!flushing && !pendingText.isEmpty()
+                && SwingUtilities.isEventDispatchThread()) {
+            flushPrint();
+        }
+    }
+    
+    /**
+     * Inserts all text added by {@link #print(String, AttributeSet)} since the
+     * last flush into the document, using a single insert if possible.
+     * 
+     * The resulting elements are the same as if each section had been added
+     * using insertString() (followed by setting the paragraph attributes of
+     * the last line), which is also used as fallback for the rare cases (like
+     * empty lines) that are difficult to express as ElementSpecs. The
+     * paragraph attributes are part of the inserted elements, except for the
+     * last paragraph, which keeps the attributes of the paragraph it was split
+     * from and has to be set separately.
+     */
+    private void flushPrint() {
+        if (!pendingText.isEmpty()) {
+            flushing = true;
+            try {
+                int offset = doc.getLength();
+                boolean afterNewline = offset > 0 && doc.getText(offset - 1, 1).equals("\n");
+                boolean endsWithNewline = pendingText.get(pendingText.size() - 1).text.equals("\n");
+                if (afterNewline || endsWithNewline) {
+                    AttributeSet paragraph = styles.paragraph();
+                    for (PendingText p : pendingText) {
+                        if (p.paragraph != null) {
+                            paragraph = p.paragraph;
+                        }
+                        doc.insertString(doc.getLength(), p.text, p.style);
+                        doc.setParagraphAttributes(doc.getLength(), 1, paragraph, true);
+                    }
+                } else {
+                    ElementSpec[] specs = makeSpecs(offset);
+                    if (specs.length > 0) {
+                        ((MyDocument) doc).append(specs);
+                    }
+                    if (!pendingText.get(0).text.startsWith("\n") && pendingParagraph != null) {
+                        // Otherwise the first paragraph didn't receive text
+                        doc.setParagraphAttributes(offset, 1, styles.paragraph(), true);
+                    }
+                    doc.setParagraphAttributes(doc.getLength(), 1,
+                            pendingParagraph != null ? pendingParagraph : styles.paragraph(), true);
+                }
+            } catch (BadLocationException e) {
+                System.err.println("BadLocationException");
+            } finally {
+                flushing = false;
+            }
+            pendingText.clear();
+            pendingParagraph = null;
+            if (!printingDeferred) {
+                // Otherwise done once after all deferred output
                 scrollDownIfNecessary();
             }
-        } catch (BadLocationException e) {
-            System.err.println("BadLocationException");
         }
+        if (pendingFinishedLines > 0) {
+            Element root = doc.getDefaultRootElement();
+            // The last line may already have been started
+            int last = root.getElementCount() - (newlineRequired ? 1 : 2);
+            for (int i = Math.max(last - pendingFinishedLines + 1, 0); i <= last; i++) {
+                lineSelection.onLineAdded(root.getElement(i));
+            }
+            pendingFinishedLines = 0;
+        }
+    }
+    
+    /**
+     * Creates the ElementSpecs for appending the pending text at the given
+     * offset (the end of the document, not directly after a newline).
+     * 
+     * Adjacent sections with equal attributes are combined into one element,
+     * the same as insertString() would. The last paragraph started has to
+     * join the fracture, so the remaining implied newline at the end of the
+     * document ends up in it.
+     * 
+     * @param offset
+     * @return 
+     */
+    private ElementSpec[] makeSpecs(int offset) {
+        java.util.List<ElementSpec> specs = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        AttributeSet contentStyle = null;
+        ElementSpec lastStart = null;
+        for (PendingText p : pendingText) {
+            String text = p.text;
+            if (text.startsWith("\n")) {
+                if (contentStyle != null && !contentStyle.isEqual(p.style)) {
+                    addContentSpec(specs, content, contentStyle);
+                }
+                content.append('\n');
+                addContentSpec(specs, content, p.style);
+                contentStyle = null;
+                specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+                lastStart = new ElementSpec(p.paragraph, ElementSpec.StartTagType);
+                specs.add(lastStart);
+                text = text.substring(1);
+            }
+            if (!text.isEmpty()) {
+                if (contentStyle != null && !contentStyle.isEqual(p.style)) {
+                    addContentSpec(specs, content, contentStyle);
+                }
+                content.append(text);
+                contentStyle = p.style;
+            }
+        }
+        if (contentStyle != null) {
+            addContentSpec(specs, content, contentStyle);
+        }
+        if (lastStart != null) {
+            lastStart.setDirection(ElementSpec.JoinFractureDirection);
+        }
+        if (!specs.isEmpty() && offset > 0) {
+            ElementSpec first = specs.get(0);
+            AttributeSet previous = doc.getCharacterElement(offset - 1).getAttributes();
+            if (previous.isEqual(first.getAttributes())) {
+                first.setDirection(ElementSpec.JoinPreviousDirection);
+            }
+        }
+        return specs.toArray(new ElementSpec[specs.size()]);
+    }
+    
+    private static void addContentSpec(java.util.List<ElementSpec> specs,
+            StringBuilder content, AttributeSet style) {
+        char[] chars = content.toString().toCharArray();
+        specs.add(new ElementSpec(style, ElementSpec.ContentType, chars, 0, chars.length));
+        content.setLength(0);
     }
 
     private void scrollDownIfNecessary() {
@@ -2807,7 +3267,10 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      */
     protected void printTimestamp(AttributeSet style) {
         if (styles.timestampFormat() != null) {
-            print(DateTime.currentTime(styles.timestampFormat())+" ", styles.timestamp(style));
+            String timestamp = printTime != -1
+                    ? DateTime.format(printTime, styles.timestampFormat())
+                    : DateTime.currentTime(styles.timestampFormat());
+            print(timestamp+" ", styles.timestamp(style));
         }
         else {
             // Inserts the linebreak with a style that shouldn't break anything
@@ -2822,6 +3285,340 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     public void setBufferSize(int size) {
         styles.setBufferSize(size);
     }
+    
+    /**
+     * Set the number of messages stored for showing again when scrolling up.
+     * 
+     * @param size The number of messages, 0 to disable
+     */
+    public void setScrollbackSize(int size) {
+        size = Math.max(0, Math.min(size, SCROLLBACK_SIZE_MAX));
+        scrollback.setCapacity(size);
+        if (!scrollback.isEnabled() && isShowingScrollbackHistory()) {
+            // No way to get back to the current messages anymore
+            scrollbackHistoryEnd = -1;
+            clearDocument();
+        }
+    }
+    
+    //-----------------
+    // Deferred output
+    //-----------------
+    
+    /**
+     * Output is never added to the document right away, instead all output
+     * received during about one frame is printed together. If enabled, output
+     * is also kept while this isn't showing (e.g. the tab of the channel is
+     * not selected) and printed in one go when this is shown. If there is
+     * more output than fits into the buffer, the oldest is discarded (it's
+     * still available in the scrollback).
+     * 
+     * @param defer 
+     */
+    public void setDeferWhenHidden(boolean defer) {
+        if (defer && !deferWhenHidden) {
+            addHierarchyListener(e -> {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0
+                        && isShowing()) {
+                    long start = System.nanoTime();
+                    int count = printDeferred();
+                    if (count > 0) {
+                        LOGGER.fine(String.format("Printed %d deferred in %s (%dms)",
+                                count, channel != null ? channel.getChannel() : "-",
+                                (System.nanoTime() - start) / 1000000));
+                    }
+                }
+            });
+        }
+        deferWhenHidden = defer;
+        if (!defer) {
+            printDeferred();
+        }
+    }
+    
+    /**
+     * Store the given output for printing later, with the next frame, or when
+     * this is shown if output is deferred while hidden. The output is
+     * discarded if there is too much.
+     * 
+     * @param print Prints the output
+     * @return true if the output was stored, false if it should be printed
+     * right away
+     */
+    private boolean defer(Runnable print) {
+        return defer(print, null);
+    }
+    
+    /**
+     * Store the given output for printing later, with the next frame, or when
+     * this is shown if output is deferred while hidden. If there is too much
+     * output, the oldest is removed first.
+     * 
+     * @param print Prints the output
+     * @param onRemove Run instead of print when the output is removed because
+     * there is too much, may be null
+     * @return true if the output was stored, false if it should be printed
+     * right away
+     */
+    private boolean defer(Runnable print, Runnable onRemove) {
+        if (scrollbackReplay || printingDeferred) {
+            return false;
+        }
+        deferred.add(new Deferred(print, onRemove, System.currentTimeMillis()));
+        if ((isShowing() || !deferWhenHidden) && !printTimer.isRunning()) {
+            printTimer.start();
+        }
+        int max = styles.bufferSize();
+        while (deferred.size() > max) {
+            Deferred removed = deferred.poll();
+            if (removed.onRemove != null) {
+                runRemoved(removed);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Print all output that has been stored, with the time it was originally
+     * printed, and scroll down once afterwards if necessary. The lines are
+     * inserted into the document together, unless something else accesses
+     * the document in between.
+     * 
+     * @return The number of entries printed
+     */
+    private int printDeferred() {
+        printTimer.stop();
+        if (deferred.isEmpty()) {
+            return 0;
+        }
+        int count = deferred.size();
+        printingDeferred = true;
+        printBatch = true;
+        try {
+            while (!deferred.isEmpty()) {
+                Deferred entry = deferred.poll();
+                printTime = entry.time;
+                entry.print.run();
+            }
+            flushPrint();
+        } finally {
+            printingDeferred = false;
+            printBatch = false;
+            printTime = -1;
+        }
+        scrollDownIfNecessary();
+        return count;
+    }
+    
+    /**
+     * Run the action for an entry that was removed because there is too much
+     * output, which may change the document but shouldn't be deferred again.
+     */
+    private void runRemoved(Deferred entry) {
+        printingDeferred = true;
+        printTime = entry.time;
+        try {
+            entry.onRemove.run();
+        } finally {
+            printingDeferred = false;
+            printTime = -1;
+        }
+    }
+    
+    private static class Deferred {
+        
+        private final Runnable print;
+        private final Runnable onRemove;
+        private final long time;
+        
+        Deferred(Runnable print, Runnable onRemove, long time) {
+            this.print = print;
+            this.onRemove = onRemove;
+            this.time = time;
+        }
+        
+    }
+    
+    //------------
+    // Scrollback
+    //------------
+    
+    private boolean isShowingScrollbackHistory() {
+        return scrollbackHistoryEnd != -1;
+    }
+    
+    /**
+     * The time to use for the current line, which is the time of the original
+     * message when printing scrollback entries again.
+     * 
+     * @return 
+     */
+    private long getPrintTime() {
+        return printTime != -1 ? printTime : System.currentTimeMillis();
+    }
+    
+    /**
+     * Mark the last line as showing the given scrollback entry.
+     * 
+     * @param id The id of the entry, -1 if not stored (does nothing)
+     */
+    private void setLineScrollbackId(long id) {
+        if (id != -1) {
+            SimpleAttributeSet attr = new SimpleAttributeSet();
+            attr.addAttribute(Attribute.SCROLLBACK_ID, id);
+            setLastLineAttributes(attr);
+        }
+    }
+    
+    private long getLineScrollbackId(Element line) {
+        Long id = (Long) line.getAttributes().getAttribute(Attribute.SCROLLBACK_ID);
+        return id != null ? id : -1;
+    }
+    
+    /**
+     * Load older or newer messages from the scrollback, if the user manually
+     * scrolled to the top or bottom.
+     * 
+     * @param value The current scroll position
+     * @param extent The visible amount
+     * @param max The maximum scroll position
+     */
+    private void checkScrollbackPosition(int value, int extent, int max) {
+        if (!scrollback.isEnabled() || scrollbackUpdatePending) {
+            return;
+        }
+        if (value == 0) {
+            scrollbackUpdatePending = true;
+            EdtWatchdog.invokeLater("checkScrollbackPosition", () -> showOlderScrollback());
+        } else if (isShowingScrollbackHistory() && value + extent >= max) {
+            scrollbackUpdatePending = true;
+            EdtWatchdog.invokeLater("checkScrollbackPosition", () -> showNewerScrollback());
+        }
+    }
+    
+    /**
+     * Show a section of older messages, so that the currently oldest shown
+     * message is at the top of the visible area.
+     */
+    private void showOlderScrollback() {
+        long firstShown = -1;
+        Element root = doc.getDefaultRootElement();
+        for (int i = 0; i < root.getElementCount() && firstShown == -1; i++) {
+            firstShown = getLineScrollbackId(root.getElement(i));
+        }
+        if (firstShown <= scrollback.firstId()) {
+            // Nothing older available (or no stored message shown at all)
+            scrollbackUpdatePending = false;
+            return;
+        }
+        long from = Math.max(scrollback.firstId(), firstShown - styles.bufferSize() / 2);
+        long to = Math.min(scrollback.endId(), from + styles.bufferSize());
+        showScrollback(from, to, firstShown, true);
+    }
+    
+    /**
+     * Show a section of newer messages, so that the currently newest shown
+     * message is at the bottom of the visible area, or the most recent
+     * messages if the end of the scrollback is reached.
+     */
+    private void showNewerScrollback() {
+        if (!isShowingScrollbackHistory()) {
+            scrollbackUpdatePending = false;
+            return;
+        }
+        long from = Math.max(scrollback.firstId(), scrollbackHistoryEnd - styles.bufferSize() / 2);
+        long to = Math.min(scrollback.endId(), from + styles.bufferSize());
+        showScrollback(from, to, scrollbackHistoryEnd - 1, false);
+    }
+    
+    /**
+     * Replace the document contents with the given section of the scrollback.
+     * 
+     * @param from The id of the first entry to show
+     * @param to The id after the last entry to show, if this is the end of
+     * the scrollback the most recent messages are shown and new messages are
+     * printed again
+     * @param anchorId The id of the entry to scroll to
+     * @param anchorAtTop Whether to scroll the anchor entry to the top or the
+     * bottom of the visible area
+     */
+    private void showScrollback(long from, long to, long anchorId, boolean anchorAtTop) {
+        scrollbackReplay = true;
+        clearDocument();
+        resetSearch();
+        for (long id = from; id < to; id++) {
+            Scrollback.Entry entry = scrollback.get(id);
+            if (entry != null) {
+                printTime = entry.time;
+                printScrollbackEntry(entry.message, id);
+            }
+        }
+        printTime = -1;
+        // Bans that happened after the shown section still apply to it
+        for (long id = to; id < scrollback.endId(); id++) {
+            Scrollback.Entry entry = scrollback.get(id);
+            if (entry.message instanceof Scrollback.Ban) {
+                Scrollback.Ban ban = (Scrollback.Ban) entry.message;
+                applyBanToLines(ban.user, ban.duration, ban.reason, ban.targetMsgId);
+            }
+        }
+        scrollbackReplay = false;
+        if (to < scrollback.endId()) {
+            scrollbackHistoryEnd = to;
+            printLine(String.format("[Scrollback] Showing older messages (%d newer), scroll down to continue",
+                    scrollback.endId() - to), styles.info());
+        } else {
+            scrollbackHistoryEnd = -1;
+        }
+        EdtWatchdog.invokeLater("printLine", () -> {
+            if (!isShowingScrollbackHistory() && !anchorAtTop) {
+                scrollManager.scrollDown();
+            } else {
+                scrollToScrollbackEntry(anchorId, anchorAtTop);
+            }
+            scrollbackUpdatePending = false;
+        });
+    }
+    
+    private void printScrollbackEntry(Object message, long id) {
+        if (message instanceof UserMessage) {
+            printUserMessage((UserMessage) message);
+            setLineScrollbackId(id);
+        } else if (message instanceof InfoMessage) {
+            printInfoMessageLine((InfoMessage) message);
+            setLineScrollbackId(id);
+        } else if (message instanceof Scrollback.Ban) {
+            Scrollback.Ban ban = (Scrollback.Ban) message;
+            printBanMessage(ban.user, ban.duration, ban.reason, ban.targetMsgId);
+            applyBanToLines(ban.user, ban.duration, ban.reason, ban.targetMsgId);
+        } else if (message instanceof String) {
+            printLine((String) message, styles.info());
+            setLineScrollbackId(id);
+        }
+    }
+    
+    private void scrollToScrollbackEntry(long id, boolean atTop) {
+        Element root = doc.getDefaultRootElement();
+        for (int i = 0; i < root.getElementCount(); i++) {
+            Element line = root.getElement(i);
+            if (getLineScrollbackId(line) == id) {
+                try {
+                    Rectangle r = modelToView(line.getStartOffset());
+                    if (r != null) {
+                        JViewport viewport = scrollManager.scrollpane.getViewport();
+                        int y = atTop ? r.y : r.y + r.height - viewport.getExtentSize().height;
+                        // Prevent being detected as manual scrolling
+                        scrollManager.scrollingDownInProgress = true;
+                        viewport.setViewPosition(new Point(0, Math.max(0, y)));
+                        scrollManager.scrollingDownInProgress = false;
+                    }
+                } catch (BadLocationException ex) {
+                    LOGGER.warning("Bad Location");
+                }
+                return;
+            }
+        }
+    }
 
     /**
      * Simply uses UrlOpener to prompt the user to open the given URL. The
@@ -2994,6 +3791,9 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
 
                                 // Any manual scrolling should stop auto scroll
                                 scrollDownRequest = false;
+                                
+                                checkScrollbackPosition(e.getValue(),
+                                        lastExtent, lastMax);
                             }
                             if (scrollDownRequest && !scrollingDownInProgress) {
                                 scrollDown();
@@ -3577,7 +4377,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
                     }
                 }
             }
-            SwingUtilities.invokeLater(new Runnable() {
+            EdtWatchdog.invokeLater("refresh", new Runnable() {
 
                 @Override
                 public void run() {
@@ -3608,6 +4408,20 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
             return styles.get("special");
         }
         
+        /**
+         * Info style with the text color moved towards the background color,
+         * for lines from before the channel was opened.
+         * 
+         * @return 
+         */
+        public MutableAttributeSet history() {
+            SimpleAttributeSet style = new SimpleAttributeSet(info());
+            Color color = ColorCorrectionNew.matchLightness(
+                    StyleConstants.getForeground(style), getBackground(), 0.5f);
+            StyleConstants.setForeground(style, color);
+            return style;
+        }
+        
         public MutableAttributeSet standard(Color color) {
             if (color != null) {
                 SimpleAttributeSet specialColor = new SimpleAttributeSet(standard());
@@ -3648,7 +4462,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         public MutableAttributeSet banMessage(User user, String message) {
             MutableAttributeSet style = new SimpleAttributeSet(standard());
             style.addAttribute(Attribute.IS_BAN_MESSAGE, user);
-            style.addAttribute(Attribute.TIMESTAMP, System.currentTimeMillis());
+            style.addAttribute(Attribute.TIMESTAMP, getPrintTime());
             style.addAttribute(Attribute.BAN_MESSAGE, message);
             return style;
         }
@@ -3685,7 +4499,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         public MutableAttributeSet variableLineAttributes(boolean even, boolean updateTimestamp) {
             MutableAttributeSet style = even ? styles.get("even") : styles.get("odd");
             if (updateTimestamp) {
-                style.addAttribute(Attribute.TIMESTAMP, System.currentTimeMillis());
+                style.addAttribute(Attribute.TIMESTAMP, getPrintTime());
             }
             return style;
         }
@@ -3,8 +3,11 @@ package chatty.gui.components.textpane;
 
 import javax.swing.event.DocumentEvent;
 import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.Element;
+import javax.swing.text.Segment;
 
 /**
  * Adds a way to refresh the (whole) document.
@@ -12,10 +15,92 @@ import javax.swing.text.Element;
  * This is currently used to display Icons after they are fully loaded, although
  * there should be a better way to do this.
  * 
+ * Also exposes inserting several elements at once at the end of the document,
+ * which only fires a single event, and allows content that is collected for
+ * such an insert to be added before the document is accessed otherwise.
+ * 
  * @author tduva
  */
 class MyDocument extends DefaultStyledDocument {
     
+    private Runnable beforeAccess;
+    
+    /**
+     * Set something to run before the content or elements of this document
+     * are accessed through the methods usually used for that.
+     * 
+     * @param beforeAccess 
+     */
+    public void setBeforeAccess(Runnable beforeAccess) {
+        this.beforeAccess = beforeAccess;
+    }
+    
+    private void beforeAccess() {
+        if (beforeAccess != null) {
+            beforeAccess.run();
+        }
+    }
+    
+    @Override
+    public int getLength() {
+        beforeAccess();
+        return super.getLength();
+    }
+    
+    @Override
+    public String getText(int offset, int length) throws BadLocationException {
+        beforeAccess();
+        return super.getText(offset, length);
+    }
+    
+    @Override
+    public void getText(int offset, int length, Segment txt) throws BadLocationException {
+        beforeAccess();
+        super.getText(offset, length, txt);
+    }
+    
+    @Override
+    public Element getDefaultRootElement() {
+        beforeAccess();
+        return super.getDefaultRootElement();
+    }
+    
+    @Override
+    public Element getParagraphElement(int pos) {
+        beforeAccess();
+        return super.getParagraphElement(pos);
+    }
+    
+    @Override
+    public Element getCharacterElement(int pos) {
+        beforeAccess();
+        return super.getCharacterElement(pos);
+    }
+    
+    @Override
+    public void insertString(int offs, String str, AttributeSet a) throws BadLocationException {
+        beforeAccess();
+        super.insertString(offs, str, a);
+    }
+    
+    @Override
+    public void remove(int offs, int len) throws BadLocationException {
+        beforeAccess();
+        super.remove(offs, len);
+    }
+    
+    @Override
+    public void setParagraphAttributes(int offset, int length, AttributeSet s, boolean replace) {
+        beforeAccess();
+        super.setParagraphAttributes(offset, length, s, replace);
+    }
+    
+    @Override
+    public void setCharacterAttributes(int offset, int length, AttributeSet s, boolean replace) {
+        beforeAccess();
+        super.setCharacterAttributes(offset, length, s, replace);
+    }
+    
     public void refresh() {
         refresh(0, getLength());
     }
@@ -29,5 +114,15 @@ class MyDocument extends DefaultStyledDocument {
         changes.end();
         fireChangedUpdate(changes);
     }
+    
+    /**
+     * Insert the given element specs at the end of the document in one batch.
+     * 
+     * @param data The specs, must describe a valid element structure
+     * @throws BadLocationException 
+     */
+    public void append(ElementSpec[] data) throws BadLocationException {
+        insert(getLength(), data);
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.User;
+
+/**
+ * Stores the messages shown in a ChannelTextPane in compact form (the message
+ * objects instead of document elements and views), so that a lot more
+ * messages than the chat buffer size can be kept and shown again when
+ * scrolling up.
+ *
+ * Entries are identified by an id that keeps increasing as entries are added,
+ * so ids stay valid when old entries are removed because the capacity has
+ * been exceeded.
+ *
+ * Should only be used in the EDT.
+ */
+class Scrollback {
+
+    private Entry[] entries = new Entry[0];
+
+    /**
+     * Index in the array of the oldest entry.
+     */
+    private int start;
+
+    /**
+     * Current number of entries.
+     */
+    private int size;
+
+    /**
+     * The id of the oldest entry.
+     */
+    private long firstId;
+
+    /**
+     * Change the maximum number of stored entries. If the capacity is reduced,
+     * the oldest entries are removed.
+     *
+     * @param capacity The number of entries, 0 to disable storing entries
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            capacity = 0;
+        }
+        if (capacity == entries.length) {
+            return;
+        }
+        int keep = Math.min(size, capacity);
+        Entry[] resized = new Entry[capacity];
+        for (int i = 0; i < keep; i++) {
+            resized[i] = entries[(start + size - keep + i) % entries.length];
+        }
+        firstId += size - keep;
+        entries = resized;
+        start = 0;
+        size = keep;
+    }
+
+    public boolean isEnabled() {
+        return entries.length > 0;
+    }
+
+    /**
+     * Adds an entry, removing the oldest one if the capacity is reached.
+     *
+     * @param message The message object (UserMessage, InfoMessage, Ban or a
+     * String for a simple info line)
+     * @return The id of the added entry, or -1 if storing entries is disabled
+     */
+    public long add(Object message) {
+        if (entries.length == 0) {
+            return -1;
+        }
+        Entry entry = new Entry(message, System.currentTimeMillis());
+        if (size == entries.length) {
+            entries[start] = entry;
+            start = (start + 1) % entries.length;
+            firstId++;
+        } else {
+            entries[(start + size) % entries.length] = entry;
+            size++;
+        }
+        return firstId + size - 1;
+    }
+
+    /**
+     * Get the entry with the given id.
+     *
+     * @param id
+     * @return The entry, or null if no entry with that id is stored (anymore)
+     */
+    public Entry get(long id) {
+        if (id < firstId || id >= firstId + size) {
+            return null;
+        }
+        return entries[(int) ((start + id - firstId) % entries.length)];
+    }
+
+    /**
+     * The id of the oldest entry that is still stored.
+     *
+     * @return
+     */
+    public long firstId() {
+        return firstId;
+    }
+
+    /**
+     * The id the next added entry will have (so one more than the id of the
+     * newest entry).
+     *
+     * @return
+     */
+    public long endId() {
+        return firstId + size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        firstId += size;
+        start = 0;
+        size = 0;
+    }
+
+    public static class Entry {
+
+        public final Object message;
+        public final long time;
+
+        private Entry(Object message, long time) {
+            this.message = message;
+            this.time = time;
+        }
+
+    }
+
+    /**
+     * A ban/timeout/message deletion, stored so that the ban message and
+     * strike-through can be applied again when showing older messages.
+     */
+    public static class Ban {
+
+        public final User user;
+        public final long duration;
+        public final String reason;
+        public final String targetMsgId;
+
+        public Ban(User user, long duration, String reason, String targetMsgId) {
+            this.user = user;
+            this.duration = duration;
+            this.reason = reason;
+            this.targetMsgId = targetMsgId;
+        }
+
+    }
+
+}
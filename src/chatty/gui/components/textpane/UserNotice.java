@@ -24,7 +24,7 @@ public class UserNotice extends InfoMessage {
         this.type = type;
         this.user = user;
         this.attachedMessage = message;
-        this.emotes = Emoticons.parseEmotesTag(tags.getRawEmotes());
+        this.emotes = Emoticons.parseEmotesTag(tags.getRawEmotes(), message);
         this.infoText = infoText;
     }
     
@@ -0,0 +1,394 @@
+
+package chatty.gui.emoji;
+
+import chatty.gui.emoji.EmojiUtil.EmojiSet;
+import chatty.util.api.Emoticon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * All Emoji of an Emoji Set, stored as plain data. Emoticon objects (which
+ * include the image URL and a Pattern) are only created for the Emoji that
+ * are actually found in messages or otherwise used.
+ *
+ * <p>
+ * The data is only filled in from the table in {@link EmojiUtil} when it is
+ * first needed, and the indices for finding Emoji in a text or by shortcode
+ * only when they are first used. Finding Emoji in a text is done with a lookup
+ * by the first codepoint instead of checking the text for every Emoji.
+ * </p>
+ *
+ * <p>
+ * Thread-safe.
+ * </p>
+ */
+public class EmojiCatalog {
+
+    private static final Pattern SHORTCODE = Pattern.compile(":[^:\\s]+:");
+
+    private static final int[] NO_CANDIDATES = new int[0];
+
+    public static final EmojiCatalog EMPTY = new EmojiCatalog("");
+
+    private final String sourceId;
+
+    private boolean loaded;
+    private boolean indexed;
+    private EmojiSet set;
+    private int size;
+    private String[] codes = new String[0];
+    private String[] filenames = new String[0];
+    private String[] names = new String[0];
+    private String[] aliases = new String[0];
+    private String[] categories = new String[0];
+    private String[] versions = new String[0];
+
+    /**
+     * The Emoticon objects that have been created so far, by index.
+     */
+    private Emoticon[] emotes;
+
+    /**
+     * Indices of Emoji by the first codepoint of their code, longest code
+     * first.
+     */
+    private Map<Integer, int[]> byFirstCodepoint;
+
+    /**
+     * Index of Emoji by their shortcode and alias shortcode.
+     */
+    private Map<String, Integer> byName;
+
+    /**
+     * Index of Emoji by their code.
+     */
+    private Map<String, Integer> byCode;
+
+    /**
+     * Create a catalog for the given Emoji Set. The data is loaded when it is
+     * first accessed.
+     *
+     * @param sourceId The id of the Emoji Set, if no valid Emoji Set is given,
+     * then the catalog will be empty (used for example when no Emoji are to
+     * be used)
+     */
+    public EmojiCatalog(String sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    /**
+     * Adds the data of an Emoji, used by the table in {@link EmojiUtil}.
+     */
+    void add(EmojiSet set, String code, String filename, String name,
+            String alias, String category, String unicodeVersion) {
+        this.set = set;
+        if (size == codes.length) {
+            int capacity = Math.max(16, size * 2);
+            codes = Arrays.copyOf(codes, capacity);
+            filenames = Arrays.copyOf(filenames, capacity);
+            names = Arrays.copyOf(names, capacity);
+            aliases = Arrays.copyOf(aliases, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+        }
+        codes[size] = code;
+        filenames[size] = filename;
+        names[size] = name;
+        aliases[size] = alias;
+        // Only few different values, so share the same String objects
+        categories[size] = category != null ? category.intern() : null;
+        versions[size] = unicodeVersion != null ? unicodeVersion.intern() : null;
+        size++;
+    }
+
+    /**
+     * Fill in the data and create the index by code, if not already done.
+     */
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        EmojiUtil.fillCatalog(sourceId, this);
+        emotes = new Emoticon[size];
+
+        byCode = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            byCode.putIfAbsent(codes[i], i);
+        }
+    }
+
+    /**
+     * Create the indices for finding Emoji in text and by shortcode, if not
+     * already done.
+     */
+    private synchronized void index() {
+        if (indexed) {
+            return;
+        }
+        load();
+        indexed = true;
+        byName = new HashMap<>(size * 4);
+        Map<Integer, List<Integer>> firstCodepoint = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (names[i] != null) {
+                byName.putIfAbsent(names[i], i);
+            }
+            if (aliases[i] != null && !aliases[i].isEmpty()) {
+                byName.putIfAbsent(aliases[i], i);
+            }
+            Integer c = codes[i].codePointAt(0);
+            if (!firstCodepoint.containsKey(c)) {
+                firstCodepoint.put(c, new ArrayList<>());
+            }
+            firstCodepoint.get(c).add(i);
+        }
+        byFirstCodepoint = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : firstCodepoint.entrySet()) {
+            List<Integer> indices = entry.getValue();
+            // Longer Emoji (which can be combinations of several short Emoji
+            // characters) should be checked first
+            indices.sort((a, b) -> Integer.compare(codes[b].length(), codes[a].length()));
+            int[] result = new int[indices.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = indices.get(i);
+            }
+            byFirstCodepoint.put(entry.getKey(), result);
+        }
+    }
+
+    /**
+     * For testing.
+     */
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized int size() {
+        load();
+        return size;
+    }
+
+    /**
+     * Get the Emoticon for the Emoji with the given index, creating it if
+     * necessary.
+     *
+     * @param index
+     * @return
+     */
+    public synchronized Emoticon get(int index) {
+        load();
+        Emoticon emote = emotes[index];
+        if (emote == null) {
+            emote = EmojiUtil.createEmoticon(set, codes[index], filenames[index],
+                    names[index], aliases[index], categories[index], versions[index]);
+            emotes[index] = emote;
+        }
+        return emote;
+    }
+
+    /**
+     * Get the Emoticon for the Emoji with the given code. A code without any
+     * non-ASCII characters can't be an Emoji, so it doesn't load the data
+     * (e.g. when looking up the code of a regular emote favorite).
+     *
+     * @param code The unicode characters
+     * @return The Emoticon, or null if no Emoji with that code exists
+     */
+    public synchronized Emoticon getByCode(String code) {
+        if (!hasNonAscii(code)) {
+            return null;
+        }
+        load();
+        Integer index = byCode.get(code);
+        return index != null ? get(index) : null;
+    }
+
+    /**
+     * Creates all Emoticon objects and returns them, longest code first. This
+     * should only be used when all Emoji are actually needed.
+     *
+     * @return
+     */
+    public synchronized List<Emoticon> getAll() {
+        load();
+        Integer[] indices = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        Arrays.sort(indices, (a, b) -> {
+            int cmp = Integer.compare(codes[b].length(), codes[a].length());
+            return cmp != 0 ? cmp : codes[a].compareTo(codes[b]);
+        });
+        List<Emoticon> result = new ArrayList<>(size);
+        for (Integer index : indices) {
+            result.add(get(index));
+        }
+        return result;
+    }
+
+    private static boolean hasNonAscii(String code) {
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) > 0x7F) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the names of the categories, in the order they first appear.
+     *
+     * @return
+     */
+    public synchronized List<String> getCategories() {
+        load();
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (categories[i] != null) {
+                result.add(categories[i]);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Get the Emoji of a single category. Emoticon objects are only created
+     * for the Emoji in that category.
+     *
+     * @param category The category name, as returned by
+     * {@link #getCategories()}
+     * @return
+     */
+    public synchronized List<Emoticon> getByCategory(String category) {
+        load();
+        List<Emoticon> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (category.equals(categories[i])) {
+                result.add(get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the Emoji whose shortcode or alias shortcode is accepted by the
+     * given matcher. Emoticon objects are only created for the matching
+     * Emoji.
+     *
+     * @param nameMatcher
+     * @return
+     */
+    public synchronized List<Emoticon> findByName(Predicate<String> nameMatcher) {
+        load();
+        List<Emoticon> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if ((names[i] != null && nameMatcher.test(names[i]))
+                    || (aliases[i] != null && nameMatcher.test(aliases[i]))) {
+                result.add(get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find all Emoji in the given text. Emoji that are followed by the text
+     * style variation selector are not returned.
+     *
+     * @param text
+     * @param listener Receives the found Emoji, with the start and end
+     * (inclusive, including a variation selector)
+     */
+    public void find(String text, MatchListener listener) {
+        int i = 0;
+        while (i < text.length()) {
+            int codepoint = text.codePointAt(i);
+            int[] candidates;
+            synchronized (this) {
+                index();
+                candidates = byFirstCodepoint.getOrDefault(codepoint, NO_CANDIDATES);
+            }
+            int matchEnd = -1;
+            int matchIndex = -1;
+            for (int index : candidates) {
+                if (text.startsWith(codes[index], i)) {
+                    matchIndex = index;
+                    matchEnd = i + codes[index].length();
+                    break;
+                }
+            }
+            if (matchIndex == -1) {
+                i += Character.charCount(codepoint);
+                continue;
+            }
+            boolean textEmoji = false;
+            if (matchEnd < text.length()) {
+                char next = text.charAt(matchEnd);
+                if (next == '\uFE0E') {
+                    textEmoji = true;
+                    matchEnd++;
+                } else if (next == '\uFE0F') {
+                    matchEnd++;
+                }
+            }
+            if (!textEmoji) {
+                listener.found(get(matchIndex), i, matchEnd - 1);
+            }
+            i = matchEnd;
+        }
+    }
+
+    /**
+     * Replace Emoji shortcodes (e.g. ":smile:") in the given text with the
+     * corresponding Emoji characters.
+     *
+     * @param input
+     * @return
+     */
+    public String replaceShortcodes(String input) {
+        if (input.indexOf(':') == -1) {
+            return input;
+        }
+        StringBuilder b = null;
+        int appended = 0;
+        Matcher m = SHORTCODE.matcher(input);
+        int start = 0;
+        while (start < input.length() && m.find(start)) {
+            Integer index;
+            synchronized (this) {
+                index();
+                index = byName.get(m.group());
+            }
+            if (index == null) {
+                // The closing colon may start another shortcode
+                start = m.end() - 1;
+                continue;
+            }
+            if (b == null) {
+                b = new StringBuilder();
+            }
+            b.append(input, appended, m.start());
+            b.append(codes[index]);
+            appended = m.end();
+            start = m.end();
+        }
+        if (b == null) {
+            return input;
+        }
+        b.append(input, appended, input.length());
+        return b.toString();
+    }
+
+    public interface MatchListener {
+
+        void found(Emoticon emote, int start, int end);
+    }
+
+}
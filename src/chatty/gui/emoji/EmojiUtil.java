@@ -3,14 +3,11 @@ package chatty.gui.emoji;
 
 import chatty.util.StringUtil;
 import chatty.util.api.Emoticon;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 /**
- * Creates Emoticon objects for the selected Emoji Set.
+ * Creates the catalog and Emoticon objects for the selected Emoji Set.
  * 
  * The code in this file has been pre-processed since it appears to be kind of
  * inconvenient to get a list of assets from a jar file.
@@ -65,11 +62,10 @@ public class EmojiUtil {
     }
     
     /**
-     * Creates an Emoticon of type EMOJI with the given info and adds it to the
-     * Collection.
+     * Adds the info of an Emoji to the catalog. Used by the table below.
      * 
      * @param set The Emoji Set containing info on which set it is
-     * @param emotes The Collection to add the Emoticon to
+     * @param catalog The catalog to add the Emoji to
      * @param code The unicode characters as escaped string
      * @param filename The filename of the image
      * @param name A short description of the Emoji, or null
@@ -77,7 +73,24 @@ public class EmojiUtil {
      * @param category The category of the Emoji, or null
      * @param unicodeVersion
      */
-    public static void add(EmojiSet set, Collection<Emoticon> emotes, String code,
+    private static void add(EmojiSet set, EmojiCatalog catalog, String code,
+            String filename, String name, String alias, String category, String unicodeVersion) {
+        catalog.add(set, code, filename, name, alias, category, unicodeVersion);
+    }
+    
+    /**
+     * Creates an Emoticon of type EMOJI with the given info.
+     * 
+     * @param set The Emoji Set containing info on which set it is
+     * @param code The unicode characters
+     * @param filename The filename of the image
+     * @param name A short description of the Emoji, or null
+     * @param alias
+     * @param category The category of the Emoji, or null
+     * @param unicodeVersion
+     * @return The Emoticon
+     */
+    static Emoticon createEmoticon(EmojiSet set, String code,
             String filename, String name, String alias, String category, String unicodeVersion) {
         String url = EmojiUtil.class.getResource(set.internalPath+filename).toString();
         //System.out.println(url);
@@ -97,33 +110,40 @@ public class EmojiUtil {
                 b.addInfo(category);
             }
         }
-        emotes.add(b.build());
+        return b.build();
     }
     
     /**
-     * Create Emoticon objects for the Emoji in the given set.
+     * Create a catalog of the Emoji in the given set. The Emoji data is only
+     * loaded when the catalog is first used.
      * 
-     * If no valid set is given, then the returned Set will be empty (used for
+     * If no valid set is given, then the catalog will be empty (used for
      * example when no Emoji are to be used).
      * 
      * @param sourceId The name of the Emoji set
-     * @return A Set of Emoticon objects representing the selected Emoji
+     * @return The EmojiCatalog for the selected Emoji
      */
-    public static Set<Emoticon> makeEmoticons(String sourceId) {
-        Set<Emoticon> result = new HashSet<>();
-        
+    public static EmojiCatalog makeCatalog(String sourceId) {
+        return new EmojiCatalog(sourceId);
+    }
+    
+    /**
+     * Fill the given catalog with the data of the Emoji in the given set.
+     * 
+     * @param sourceId The name of the Emoji set
+     * @param catalog The catalog to fill
+     */
+    static void fillCatalog(String sourceId, EmojiCatalog catalog) {
         /**
          * Check which set should be added, or empty if none matches.
          */
         if (sourceId.equals(EmojiSet.E1.id)) {
-            e1(EmojiSet.E1, result);
+            e1(EmojiSet.E1, catalog);
         } else if (sourceId.equals(EmojiSet.TWEMOJI.id)) {
-            twemoji(EmojiSet.TWEMOJI, result);
+            twemoji(EmojiSet.TWEMOJI, catalog);
         }
         
-        LOGGER.info("Created "+result.size()+" emoji from source "+sourceId);
-        
-        return result;
+        LOGGER.info("Loaded "+catalog.size()+" emoji from source "+sourceId);
     }
     
     
@@ -133,11 +153,11 @@ public class EmojiUtil {
      * @param args 
      */
     public static void main(String[] args) {
-        Set<Emoticon> emotes = makeEmoticons("twemoji");
-        System.out.println("#"+emotes.size());
+        EmojiCatalog catalog = makeCatalog("twemoji");
+        System.out.println("#"+catalog.size());
     }
     
-    private static void twemoji(EmojiSet set, Set<Emoticon> result) {
+    private static void twemoji(EmojiSet set, EmojiCatalog result) {
         add(set, result, "\uD83C\uDC04","1f004.png",":mahjong:",null,"Activities","");
         add(set, result, "\uD83C\uDCCF","1f0cf.png",":black_joker:",null,"Activities","6.0");
         add(set, result, "\uD83C\uDD70","1f170.png",":a:",null,"Symbols","6.0");
@@ -3222,7 +3242,7 @@ public class EmojiUtil {
         add(set, result, "\uE50A","e50a.png",null,null,null,null);
     }
 
-    private static void e1(EmojiSet set, Set<Emoticon> result) {
+    private static void e1(EmojiSet set, EmojiCatalog result) {
         add(set, result, "\u0023\u20E3","0023-20e3.png",":hash:",null,"Symbols","");
         add(set, result, "\u002A\u20E3","002a-20e3.png",":asterisk:",null,"Symbols","");
         add(set, result, "\u0030\u20E3","0030-20e3.png",":zero:",null,"Symbols","");
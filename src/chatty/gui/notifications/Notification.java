@@ -310,6 +310,15 @@ public class Notification {
         return matcherItem != null;
     }
     
+    /**
+     * The item used for matching.
+     * 
+     * @return The item, or null if no matcher is set
+     */
+    public Highlighter.HighlightItem getMatcherItem() {
+        return matcherItem;
+    }
+    
     public boolean hasSound() {
         return soundFile != null && !soundFile.isEmpty();
     }
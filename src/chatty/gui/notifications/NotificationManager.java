@@ -8,6 +8,7 @@ import chatty.Helper;
 import chatty.Room;
 import chatty.User;
 import chatty.gui.MainGui;
+import chatty.gui.RuleIndex;
 import chatty.gui.notifications.Notification.State;
 import static chatty.gui.notifications.Notification.State.APP_NOT_ACTIVE;
 import static chatty.gui.notifications.Notification.State.CHANNEL_ACTIVE;
@@ -27,7 +28,7 @@ import chatty.util.settings.Settings;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -43,6 +44,17 @@ public class NotificationManager {
     private final ChannelFavorites channelFavorites;
     
     private final List<Notification> properties = new ArrayList<>();
+    
+    /**
+     * Enabled notifications, by type and channel, for checking only the
+     * notifications that may match.
+     */
+    private volatile Map<Type, RuleIndex<Notification>> indexByType = new EnumMap<>(Type.class);
+    
+    /**
+     * All enabled notifications, by channel.
+     */
+    private volatile RuleIndex<Notification> index = createIndex(new ArrayList<>());
     private static final String SETTING_NAME = "notifications";
     public static final String COLOR_PRESETS_SETTING_NAME = "nColorPresets";
 
@@ -69,9 +81,31 @@ public class NotificationManager {
     public synchronized void setData(List<Notification> data) {
         properties.clear();
         properties.addAll(data);
+        updateIndex();
         saveToSettings();
     }
     
+    private void updateIndex() {
+        List<Notification> enabled = new ArrayList<>();
+        Map<Type, List<Notification>> byType = new EnumMap<>(Type.class);
+        for (Notification n : properties) {
+            if (n.hasEnabled()) {
+                enabled.add(n);
+                byType.computeIfAbsent(n.type, t -> new ArrayList<>()).add(n);
+            }
+        }
+        Map<Type, RuleIndex<Notification>> newIndexByType = new EnumMap<>(Type.class);
+        for (Map.Entry<Type, List<Notification>> entry : byType.entrySet()) {
+            newIndexByType.put(entry.getKey(), createIndex(entry.getValue()));
+        }
+        indexByType = newIndexByType;
+        index = createIndex(enabled);
+    }
+    
+    private static RuleIndex<Notification> createIndex(List<Notification> list) {
+        return new RuleIndex<>(list, Notification::getMatcherItem, n -> n.channel);
+    }
+    
     private void saveToSettings() {
         List<List<Object>> entriesToSave = new ArrayList<>();
         for (Notification p : properties) {
@@ -89,6 +123,7 @@ public class NotificationManager {
                 properties.add(p);
             }
         }
+        updateIndex();
     }
     
     public void streamInfoChanged(String channel, StreamInfo info) {
@@ -313,37 +348,39 @@ public class NotificationManager {
     private void check(Type type, String channel, User user,
             String message, MsgTags tags, boolean noNotify, boolean noSound,
             NotificationChecker c) {
+        RuleIndex<Notification> index = type == null ? this.index : indexByType.get(type);
+        if (index == null) {
+            return;
+        }
+        // Only notifications of the type/channel that may match the text
+        List<Notification> matched = index.findAll(message, channel, n -> {
+            return n.matches(message, channel, ab, user, tags)
+                    && (!n.hasOption(TypeOption.FAV_CHAN) || channelFavorites.isFavorite(channel))
+                    && !hideOnStart(n);
+        });
         boolean shown = false;
         boolean played = false;
-        for (Notification n : properties) {
-            if (n.hasEnabled()
-                    && (type == n.type || type == null)
-                    && n.matchesChannel(channel)
-                    && n.matches(message, channel, ab, user, tags)
-                    && (!n.hasOption(TypeOption.FAV_CHAN) || channelFavorites.isFavorite(channel))
-                    && !hideOnStart(n)) {
-                
-                NotificationData d = c.check(n);
-                if (d != null) {
-                    if (!shown
-                            && !noNotify
-                            && checkRequirements(n.desktopState, channel)) {
-                        shown = true;
-                        showNotification(n, d.title, d.message, channel, channel);
-                    }
-                    if (!played
-                            && !noSound
-                            && checkRequirements(n.soundState, channel)
-                            && n.hasSound()) {
-                        // Don't remember why it's not using the playSound()
-                        // return value, but this is the behavior now
-                        played = true;
-                        // This may not actually play the sound, if waiting for
-                        // cooldown
-                        playSound(n);
-                    }
-                    n.setMatched();
+        for (Notification n : matched) {
+            NotificationData d = c.check(n);
+            if (d != null) {
+                if (!shown
+                        && !noNotify
+                        && checkRequirements(n.desktopState, channel)) {
+                    shown = true;
+                    showNotification(n, d.title, d.message, channel, channel);
+                }
+                if (!played
+                        && !noSound
+                        && checkRequirements(n.soundState, channel)
+                        && n.hasSound()) {
+                    // Don't remember why it's not using the playSound()
+                    // return value, but this is the behavior now
+                    played = true;
+                    // This may not actually play the sound, if waiting for
+                    // cooldown
+                    playSound(n);
                 }
+                n.setMatched();
             }
         }
     }
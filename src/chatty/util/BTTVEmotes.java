@@ -7,9 +7,6 @@ import chatty.util.api.TwitchApi;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Logger;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -64,6 +61,7 @@ public class BTTVEmotes {
     private void requestNow(String url, String stream) {
         UrlRequest request = new UrlRequest(url);
         request.setLabel("BTTV");
+        request.setCached(true);
         request.async((result, responseCode) -> {
             if (responseCode == 200 && result != null) {
                 loadEmotes(result, stream);
@@ -95,18 +93,17 @@ public class BTTVEmotes {
      * @return 
      */
     private int loadEmotes(String json, String streamRestriction) {
-        Set<Emoticon> emotes;
+        Set<Emoticon> emotes = new HashSet<>();
         Set<String> bots = new HashSet<>();
         if (streamRestriction != null && streamRestriction.equals("$global$")) {
             streamRestriction = null;
         }
         
         if (streamRestriction == null) {
-            emotes = parseGlobalEmotes(json);
+            parseGlobalEmotes(json, emotes);
         }
         else {
-            emotes = parseChannelEmotes(json, streamRestriction);
-            bots = parseBots(json);
+            parseChannel(json, streamRestriction, emotes, bots);
         }
         LOGGER.info("|[BTTV] Found " + emotes.size() + " emotes / "+bots.size()+" bots");
         listener.receivedEmoticons(emotes);
@@ -114,200 +111,224 @@ public class BTTVEmotes {
         return emotes.size();
     }
     
-    /**
-     * Parse list of bots from the given JSON.
-     * 
-     * @param json
-     * @return 
-     */
-    private static Set<String> parseBots(String json) {
-        Set<String> result = new HashSet<>();
-        if (json == null) {
-            return result;
-        }
-        JSONParser parser = new JSONParser();
+    private static void parseGlobalEmotes(String json, Set<Emoticon> emotes) {
         try {
-            JSONObject root = (JSONObject)parser.parse(json);
-            JSONArray botsArray = (JSONArray)root.get("bots");
-            if (botsArray == null) {
-                // No bots for this channel
-                return result;
-            }
-            for (Object o : botsArray) {
-                result.add((String)o);
-            }
-        } catch (ParseException | ClassCastException ex) {
-            LOGGER.warning("|[BTTV] Error parsing bots: "+ex);
-        }
-        return result;
-    }
-    
-    private static Set<Emoticon> parseGlobalEmotes(String json) {
-        try {
-            JSONParser parser = new JSONParser();
-            JSONArray root = (JSONArray)parser.parse(json);
-            if (root != null) {
-                return parseEmotes(root, null);
-            }
+            JSONReader reader = new JSONReader(json);
+            parseEmotes(reader, null, emotes);
         }
         catch (Exception ex) {
             LOGGER.warning("|[BTTV] Error parsing global emotes: "+ex);
         }
-        return new HashSet<>();
     }
     
-    private static Set<Emoticon> parseChannelEmotes(String json, String streamRestriction) {
-        Set<Emoticon> result = new HashSet<>();
+    /**
+     * Parse the channel emotes and list of bots from the given JSON.
+     * 
+     * @param json
+     * @param streamRestriction
+     * @param emotes The set to add the emotes to
+     * @param bots The set to add the bots to
+     */
+    private static void parseChannel(String json, String streamRestriction,
+            Set<Emoticon> emotes, Set<String> bots) {
+        if (json == null) {
+            return;
+        }
         try {
-            JSONParser parser = new JSONParser();
-            JSONObject root = (JSONObject)parser.parse(json);
-            if (root != null) {
-                
-                result.addAll(parseEmotes((JSONArray)root.get("channelEmotes"), streamRestriction));
-                result.addAll(parseEmotes((JSONArray)root.get("sharedEmotes"), streamRestriction));
+            JSONReader reader = new JSONReader(json);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "channelEmotes":
+                    case "sharedEmotes":
+                        parseEmotes(reader, streamRestriction, emotes);
+                        break;
+                    case "bots":
+                        if (reader.peek() == JSONReader.Token.NULL) {
+                            // No bots for this channel
+                            reader.nextNull();
+                            break;
+                        }
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            bots.add(reader.nextString());
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
             }
         }
         catch (Exception ex) {
             LOGGER.warning("|[BTTV] Error parsing channel emotes: "+ex);
         }
-        return result;
     }
     
     /**
-     * Parse emotes from the given JSON.
+     * Parse an array of emotes.
      * 
-     * @param json
+     * @param reader The reader, with the array as next value
      * @param channelRestriction
-     * @return 
+     * @param emotes The set to add the emotes to
+     * @throws ParseException 
      */
-    private static Set<Emoticon> parseEmotes(JSONArray data, String channelRestriction) {
-        Set<Emoticon> emotes = new HashSet<>();
-        try {
-            for (Object o : data) {
-                if (o instanceof JSONObject) {
-                    Emoticon emote = parseEmote((JSONObject)o, TEMPLATE,
-                            channelRestriction);
-                    if (emote != null) {
-                        emotes.add(emote);
-                    }
-                }
+    private static void parseEmotes(JSONReader reader, String channelRestriction,
+            Set<Emoticon> emotes) throws ParseException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Emoticon emote = parseEmote(reader, TEMPLATE, channelRestriction);
+            if (emote != null) {
+                emotes.add(emote);
             }
-        } catch (ClassCastException ex) {
-            // ClassCastException is also caught in parseEmote(), so it won't
-            // quit completely when one emote is invalid.
-            LOGGER.warning("|[BTTV] Error parsing emotes: "+ex);
         }
-        return emotes;
+        reader.endArray();
     }
     
     /**
-     * Parse a single emote from the given JSONObject.
+     * Parse a single emote.
      * 
-     * @param o The object containing the emote info
+     * @param reader The reader, with the object containing the emote info as
+     * next value
      * @param urlTemplate The URL Template to use for this emote
      * @param channelRestriction The channel restriction to use
-     * @return 
+     * @return The emote, or null if required data is missing or it has
+     * unknown restrictions
+     * @throws ParseException 
      */
-    private static Emoticon parseEmote(JSONObject o, String urlTemplate, String channelRestriction) {
-        try {
-            String code = (String)o.get("code");
-            JSONObject user = (JSONObject)o.get("user");
-            String userName = null;
-            if (user != null) {
-                userName = JSONUtil.getString(user, "name");
-            }
-            else {
-                userName = channelRestriction;
-            }
-            String id = (String)o.get("id");
-            String imageType = null;
-            if (o.get("imageType") instanceof String) {
-                imageType = (String)o.get("imageType");
-            }
-            
-            if (code == null || code.isEmpty() || id == null || id.isEmpty()) {
-                return null;
-            }
-
-            Emoticon.Builder builder = new Emoticon.Builder(Emoticon.Type.BTTV,
-                    code, urlTemplate);
-            builder.setCreator(userName);
-            builder.setLiteral(true);
-            builder.setStringId(id);
-            if (channelRestriction != null) {
-                builder.addStreamRestriction(channelRestriction);
-                builder.setStream(channelRestriction);
-            }
-            if (imageType != null && imageType.equals("gif")) {
-                builder.setAnimated(true);
-            }
-            
-            // Adds restrictions to emote (if present)
-            Object restriction = o.get("restrictions");
-            if (restriction != null && restriction instanceof JSONObject) {
-                 JSONObject restrictions = (JSONObject)restriction;
-                for (Object r : restrictions.keySet()) {
-                    boolean knownAndValid = addRestriction(r, restrictions,
-                            builder);
-                    // Don't add emotes with unknown or invalid restrictions
-                    if (!knownAndValid) {
-                        return null;
+    private static Emoticon parseEmote(JSONReader reader, String urlTemplate,
+            String channelRestriction) throws ParseException {
+        if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String code = null;
+        String userName = channelRestriction;
+        String id = null;
+        String imageType = null;
+        Set<String> channels = new HashSet<>();
+        String emoteset = null;
+        boolean knownAndValid = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "code":
+                    code = reader.nextStringOrNull();
+                    break;
+                case "id":
+                    id = reader.nextStringOrNull();
+                    break;
+                case "imageType":
+                    imageType = reader.nextStringOrNull();
+                    break;
+                case "user":
+                    userName = null;
+                    if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
                     }
-                }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("name")) {
+                            userName = reader.nextStringOrNull();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "restrictions":
+                    if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        // Don't add emotes with unknown or invalid restrictions
+                        if (key.equals("channels")) {
+                            if (readStrings(reader, channels) == -1) {
+                                knownAndValid = false;
+                            }
+                        } else if (key.equals("emoticonSet")) {
+                            if (reader.peek() == JSONReader.Token.NUMBER) {
+                                emoteset = String.valueOf(reader.nextLong());
+                            } else {
+                                // String also includes "night"
+                                reader.skipValue();
+                                knownAndValid = false;
+                            }
+                        } else if (reader.peek() == JSONReader.Token.NULL) {
+                            reader.nextNull();
+                        } else {
+                            /**
+                             * Unknown or unhandled restriction, ignore
+                             * restriction if restriction value is empty.
+                             */
+                            if (readStrings(reader, new HashSet<>()) != 0) {
+                                knownAndValid = false;
+                            }
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
             }
-            return builder.build();
-        } catch (ClassCastException | NullPointerException ex) {
-            LOGGER.warning("|[BTTV] Error parsing emote: "+o+" ["+ex+"]");
+        }
+        reader.endObject();
+        
+        if (code == null || code.isEmpty() || id == null || id.isEmpty()
+                || !knownAndValid) {
             return null;
         }
+
+        Emoticon.Builder builder = new Emoticon.Builder(Emoticon.Type.BTTV,
+                code, urlTemplate);
+        builder.setCreator(userName);
+        builder.setLiteral(true);
+        builder.setStringId(id);
+        if (channelRestriction != null) {
+            builder.addStreamRestriction(channelRestriction);
+            builder.setStream(channelRestriction);
+        }
+        if (imageType != null && imageType.equals("gif")) {
+            builder.setAnimated(true);
+        }
+        for (String chan : channels) {
+            builder.addStreamRestriction(chan);
+        }
+        if (emoteset != null) {
+            builder.setEmoteset(emoteset);
+        }
+        return builder.build();
     }
     
     /**
-     * Helper to add a restriction to the emote. Returns whether the restriction
-     * is known and valid, so unknown restrictions can prevent the emote from
-     * being added at all.
+     * Reads an array, adding the Strings it contains to the given set.
      * 
-     * @param restriction The name of the restriction
-     * @param restrictions The value(s) of the restriction
-     * @param builder Emote builder to put the restriction in
-     * @return true if the restriction is known and valid, false otherwise
+     * @param reader The reader, with the array as next value
+     * @param result The set to add the Strings to
+     * @return The number of elements in the array, or -1 if the value is not
+     * an array (in which case it is skipped)
+     * @throws ParseException 
      */
-    private static boolean addRestriction(Object restriction,
-            JSONObject restrictions, Emoticon.Builder builder) {
-        try {
-            String key = (String)restriction;
-            if (key.equals("channels")) {
-                for (Object chan : (JSONArray) restrictions.get(restriction)) {
-                    if (chan instanceof String) {
-                        builder.addStreamRestriction((String) chan);
-                    }
-                }
-                return true;
-            } else if (key.equals("emoticonSet")) {
-                Object emoticon_set = restrictions.get(key);
-                if (emoticon_set != null) {
-                    if (emoticon_set instanceof String) {
-                        // This also includes "night"
-                        return false;
-                    } else {
-                        builder.setEmoteset(String.valueOf(((Number) emoticon_set).intValue()));
-                        return true;
-                    }
-                }
-            } else {
-                /**
-                 * Unknown or unhandled restriction, ignore restriction and
-                 * return true anyway if restriction value is empty.
-                 */
-                Object value = restrictions.get(restriction);
-                if (value == null || ((JSONArray)value).isEmpty()) {
-                    return true;
-                }
+    private static int readStrings(JSONReader reader, Set<String> result) throws ParseException {
+        if (reader.peek() != JSONReader.Token.BEGIN_ARRAY) {
+            reader.skipValue();
+            return -1;
+        }
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = reader.nextStringOrNull();
+            if (value != null) {
+                result.add(value);
             }
-        } catch (NullPointerException | ClassCastException ex) {
-            // Don't do anything, just return false
+            count++;
         }
-        return false;
+        reader.endArray();
+        return count;
     }
     
 }
@@ -3,25 +3,19 @@ package chatty.util;
 
 import chatty.util.gif.GifUtil;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ImageIcon;
@@ -29,38 +23,59 @@ import javax.swing.ImageIcon;
 /**
  * Allows the use of getImage() methods that get an image from an URL, while
  * automatically caching it on file for the next request. Each request can have
- * a prefix, which is added to the cache filename and makes it possible to only
- * delete some of the cache files with the also contained clear cache functions.
+ * a prefix, which is added to the cache key and makes it possible to only
+ * delete some of the cached images with the also contained clear cache
+ * functions.
  * 
  * A global path for the cache can be set with {@link setDefaultPath(Path)}, but
  * a different path can also be specified for each method. It is also possible
  * to globally enable/disable the cache.
  * 
+ * The images are stored in an {@link ImagePack} for each path. Expired images
+ * are revalidated with the server, so unchanged images don't have to be
+ * downloaded again. GIFs are normalized (see {@link GifUtil#normalize}) before
+ * being stored, so loading a cached image only has to decode it once.
+ * 
  * @author tduva
  */
 public class ImageCache {
     
     private static final Logger LOGGER = Logger.getLogger(ImageCache.class.getName());
     
+    private static final Metrics.Counter LOADS = Metrics.counter(
+            "chatty_image_cache_loads_total",
+            "Images requested from the image cache, by result",
+            "result");
+    
     /**
-     * Prefix for all image cache files (in front of the prefix defined in the
-     * individual method calls).
+     * Prefix for all image cache files in the old format, where each image was
+     * stored in a separate file.
      */
     private static final String GLOBAL_PREFIX = "imgcache-";
     
+    /**
+     * The directory within the cache path that the pack files are stored in.
+     */
+    private static final String PACK_DIR = "imgpack";
+    
+    /**
+     * Flag for stored image data that has already been normalized.
+     */
+    private static final int NORMALIZED = 1;
+    
     /**
      * Used as expire time for {@link #deleteExpiredFiles()} and
      * {@link #deleteExpiredFiles(Path)}.
      */
     private static final int DELETE_FILES_OLDER_THAN = 60*60*24*30;
     
-    /**
-     * Number of files checked that will stop it going to the next directory.
-     */
-    private static final int EXPIRED_FILES_CHECK_CAP = 100;
+    private static final long DEFAULT_MAX_SIZE = 200*1024*1024;
     
     private static volatile Path defaultPath = Paths.get("");
     private static volatile boolean cachingEnabled = true;
+    private static volatile long maxSize = DEFAULT_MAX_SIZE;
+    
+    private static final Map<Path, ImagePack> packs = new HashMap<>();
     
     /**
      * Sets the default image cache Path, used by some functions.
@@ -85,6 +100,43 @@ public class ImageCache {
         cachingEnabled = enabled;
     }
     
+    /**
+     * Set the maximum size of the cached images for each cache path. If the
+     * size is exceeded, the least recently used images are removed.
+     * 
+     * @param bytes The maximum size in bytes
+     */
+    public static void setMaxSize(long bytes) {
+        synchronized(packs) {
+            maxSize = bytes;
+            for (ImagePack pack : packs.values()) {
+                pack.setMaxSize(bytes);
+            }
+        }
+    }
+    
+    /**
+     * Saves the index of all image caches that have been used, if necessary.
+     */
+    public static void close() {
+        synchronized(packs) {
+            for (ImagePack pack : packs.values()) {
+                pack.close();
+            }
+        }
+    }
+    
+    private static ImagePack getPack(Path path) {
+        synchronized(packs) {
+            ImagePack pack = packs.get(path);
+            if (pack == null) {
+                pack = new ImagePack(path.resolve(PACK_DIR), maxSize);
+                packs.put(path, pack);
+            }
+            return pack;
+        }
+    }
+    
     /**
      * Some testing stuff.
      * 
@@ -104,25 +156,26 @@ public class ImageCache {
     }
     
     /**
-     * Deletes all image cache files with the given prefix, or all image cache
-     * files if the prefix is null. Uses the default path.
+     * Deletes all cached images with the given prefix, or all cached images if
+     * the prefix is null. Uses the default path.
      * 
-     * @param prefix The prefix, or null to delete all image cache files
-     * @return The number of deleted files, or -1 if failed
+     * @param prefix The prefix, or null to delete all cached images
+     * @return The number of deleted images, or -1 if failed
      */
     public static int clearCache(String prefix) {
         return clearCache(defaultPath, prefix);
     }
     
     /**
-     * Deletes all image cache files with the given prefix, or all image cache
-     * files if the prefix is null. Deletes folders as possible.
+     * Deletes all cached images with the given prefix, or all cached images if
+     * the prefix is null. Also deletes any files of the old cache format.
      * 
-     * @param path The path to delete the files from
-     * @param prefix The prefix, or null to delete all image cache files
-     * @return The number of deleted files, or -1 if failed
+     * @param path The path to delete the images from
+     * @param prefix The prefix, or null to delete all cached images
+     * @return The number of deleted images, or -1 if failed
      */
     private static int clearCache(Path path, String prefix) {
+        int deletedCount = getPack(path).removeByPrefix(prefix == null ? null : prefix+"__");
         try {
             File dir = path.toRealPath().toFile();
             String fullPrefix;
@@ -131,10 +184,10 @@ public class ImageCache {
             } else {
                 fullPrefix = GLOBAL_PREFIX+prefix+"__";
             }
-            int deletedFilesCount = MiscUtil.deleteInDir(dir, fullPrefix, false);
-            LOGGER.info(String.format("ImageCache: Deleted %d files in %s",
-                    deletedFilesCount, dir));
-            return deletedFilesCount;
+            deletedCount += MiscUtil.deleteInDir(dir, fullPrefix, false);
+            LOGGER.info(String.format("ImageCache: Deleted %d images in %s",
+                    deletedCount, dir));
+            return deletedCount;
         } catch (IOException ex) {
             LOGGER.warning("ImageCache: Failed to resolve path ["+ex+"]");
             return -1;
@@ -142,133 +195,49 @@ public class ImageCache {
     }
     
     /**
-     * Deletes any cache files in the old format, where all files were in one
-     * directory.
+     * Deletes any cache files in the old format, where each image was stored in
+     * a separate file. This can take a while, so it's run in a separate thread.
      */
-    private static void removeOldCache() {
-        try {
-            int deletedCount = 0;
-            File dir = defaultPath.toRealPath().toFile();
-            File[] files = dir.listFiles(file -> {
-                return file.isFile() && file.getName().startsWith(GLOBAL_PREFIX);
-            });
-            if (files != null) {
-                for (File file : files) {
-                    if (file.delete()) {
-                        deletedCount++;
-                    }
+    private static void removeOldCache(Path path) {
+        Thread thread = new Thread(() -> {
+            try {
+                File dir = path.toRealPath().toFile();
+                int deletedCount = MiscUtil.deleteInDir(dir, GLOBAL_PREFIX, false);
+                if (deletedCount > 0) {
+                    LOGGER.info(String.format("Deleted %d files from old cache",
+                            deletedCount));
                 }
+            } catch (IOException ex) {
+                LOGGER.warning("ImageCache: Error deleting old cache ("+ex+")");
             }
-            if (deletedCount > 0) {
-                LOGGER.info(String.format("Deleted %d files from old cache",
-                        deletedCount));
-            }
-        } catch (IOException ex) {
-            LOGGER.warning("ImageCache: Error deleting old cache ("+ex+")");
-        }
+        }, "ImageCacheCleanup");
+        thread.setDaemon(true);
+        thread.start();
     }
     
     /**
-     * Remove all the image cache files (that are starting with the global
-     * prefix) from the path set with setDefaultPath() that have
-     * expired according to the default expire time (roughly 2 months).
+     * Remove all the cached images from the path set with setDefaultPath()
+     * that haven't been used in the default expire time (roughly 1 month).
      * 
      * @see setDefaultPath(Path path)
      * @see #deleteExpiredFiles(Path)
-     * @see clearOldFiles(Path path, int expireTime)
      */
     public static void deleteExpiredFiles() {
         deleteExpiredFiles(defaultPath);
     }
     
     /**
-     * Remove all the image cache files (that are starting with the global
-     * prefix) from the given Path that have expired according to the default
-     * expire time.
+     * Remove all the cached images from the given Path that haven't been used
+     * in the default expire time. Also removes any files of the old cache
+     * format.
      * 
-     * @param imgCachePath The path to delete the files from
+     * @param imgCachePath The path to delete the images from
      */
     public static void deleteExpiredFiles(Path imgCachePath) {
-        removeOldCache();
-        LOGGER.info("ImageCache: Checking for old files in random directory..");
-        try {
-            File[] dirs = imgCachePath.toRealPath().toFile().listFiles(file -> {
-                return file.isDirectory() && file.getName().startsWith(GLOBAL_PREFIX);
-            });
-            if (dirs != null && dirs.length > 0) {
-                File random = dirs[ThreadLocalRandom.current().nextInt(dirs.length)];
-                File[] subdirs = random.listFiles(file -> {
-                    return file.isDirectory();
-                });
-                deleteExpiredFilesInSubDirs(subdirs);
-            }
-        } catch (IOException ex) {
-            LOGGER.warning("ImageCache: Failed clearing old files ["+ex+"]");
-        }
-    }
-    
-    /**
-     * Clears old cache files in one or more of the given directories, in random
-     * order, with a cap on how many files are checked.
-     *
-     * @param dirsArray
-     * @throws IOException 
-     */
-    private static void deleteExpiredFilesInSubDirs(File[] dirsArray) throws IOException {
-        if (dirsArray == null || dirsArray.length == 0) {
-            return;
-        }
-        // Take dir from this list and remove when checked
-        List<File> dirs = new ArrayList<>(Arrays.asList(dirsArray));
-        int fileCount = 0;
-        while (!dirs.isEmpty() && fileCount < EXPIRED_FILES_CHECK_CAP) {
-            File random = dirs.get(ThreadLocalRandom.current().nextInt(dirs.size()));
-            fileCount += deleteExpiredFilesInDir(random.getCanonicalFile(), DELETE_FILES_OLDER_THAN);
-            dirs.remove(random);
-        }
-        LOGGER.info(String.format("ImageCache: Checked %d files in %d subdirs (%s)",
-                fileCount,
-                dirsArray.length - dirs.size(),
-                dirsArray[0].getParent()));
-    }
-    
-    /**
-     * Remove all image cache files (that are starting with the global prefix)
-     * from the given Path that have expired according to the given number of
-     * seconds.
-     * 
-     * @param path The path to delete the files from
-     * @param expireTime The time in seconds that needs to have passed since the
-     * files last modification date for it to be considered expired
-     * @return The number of files checked
-     */
-    private static int deleteExpiredFilesInDir(File dir, int expireTime) {
-        File[] files = dir.listFiles();
-        if (files != null) {
-            int deleted = 0;
-            int toDelete = 0;
-            for (File file : files) {
-                // If not a image cache file according to prefix, go to the next
-                if (!file.getName().startsWith(GLOBAL_PREFIX)) {
-                    continue;
-                }
-                // Check last modified date and delete if appropriate
-                long lastModified = file.lastModified();
-                long ago = (System.currentTimeMillis() - lastModified) / 1000;
-                if (ago > expireTime) {
-                    toDelete++;
-                    if (file.delete()) {
-                        deleted++;
-                    }
-                }
-            }
-            if (toDelete > 0) {
-                LOGGER.info(String.format("ImageCache: Deleted %d/%d files (checked %d in %s)",
-                        deleted, toDelete, files.length, dir));
-            }
-            return files.length;
-        }
-        return 0;
+        removeOldCache(imgCachePath);
+        int deletedCount = getPack(imgCachePath).removeNotAccessedSince(DELETE_FILES_OLDER_THAN);
+        LOGGER.info(String.format("ImageCache: Deleted %d unused images",
+                deletedCount));
     }
     
     /**
@@ -290,14 +259,15 @@ public class ImageCache {
      * Gets the image from the given URL, with caching on the given path.
      * 
      * <p>
-     * Images are cached in files on the given path, with the given prefix.
+     * Images are cached on the given path, with the given prefix.
      * </p>
      * 
      * <p>
      * If the requested image is already cached and not expired, the cached
      * image will be used. If the requested image is cached, but expired, it
-     * will be requested from the URL and the new image used, unless the request
-     * from the URL failed, then the cached image will be used. If the requested
+     * will be revalidated with the server and a new image used if it has been
+     * modified, unless the request failed, then the cached image will be used.
+     * If the requested
      * image is not in the cache, it will be requested from the URL and if that
      * requests fails, null is returned.
      * </p>
@@ -314,9 +284,10 @@ public class ImageCache {
      * </p>
      * 
      * <p>
-     * Expired files will not be deleted, they may even still be used (see
-     * above), it simply means a new image requested from the URL is preferred.
-     * You can actually delete the cache with {@see clearOldFiles(Path, int)}.
+     * Expired images will not be deleted, they may even still be used (see
+     * above), it simply means it should be checked whether there is a new
+     * image. Images that haven't been used in a while are deleted with
+     * {@link #deleteExpiredFiles(Path)}.
      * </p>
      *
      * @param url The URL to get the image from
@@ -354,115 +325,168 @@ public class ImageCache {
      * Gets the image from the given URL, with caching on the given path.
      * 
      * <p>
-     * Images are cached in files on the given path, with the given prefix.
+     * Images are cached on the given path, with the given prefix.
      * </p>
      * 
      * <p>
      * If the requested image is already cached and not expired, the cached
      * image will be used. If the requested image is cached, but expired, it
-     * will be requested from the URL and the new image used, unless the request
-     * from the URL failed, then the cached image will be used. If the requested
-     * image is not in the cache, it will be requested from the URL and if that
-     * requests fails, null is returned.
-     * </p>
-     * 
-     * <p>
-     * If writing/reading the files doesn't work at all (e.g. access denied),
-     * then null will always be returned since this requires the files to be
-     * written to the cache.
+     * will be revalidated with the server, which either responds that the
+     * image hasn't changed, so the cached image is used, or sends the new
+     * image. If the request fails, the cached image will be used. If the
+     * requested image is not in the cache, it will be requested from the URL
+     * and if that requests fails, null is returned.
      * </p>
      * 
      * @param url The URL to get the image from (also used to determine the
-     * cache filename
+     * cache key)
      * @param path The Path to use as cache directory
-     * @param prefix The cache filename prefix
-     * @param expireTime How many seconds ago the cache file was last modified
-     * for it to be considered expired and trying to request again
+     * @param prefix The cache key prefix
+     * @param expireTime How many seconds ago the image was last requested for
+     * it to be considered expired and trying to request again
      * @return The ImageIcon or null if an error occured
      */
     private static ImageIcon getCachedImage(URL url, Path path, String prefix,
             int expireTime) {
         
-        String id = sha1(url.toString());
-        
-        path = path.resolve(GLOBAL_PREFIX+prefix).resolve(id.substring(0, 1));
-        path.toFile().mkdirs();
-        Path file = path.resolve(getFilename(prefix, id));
+        String id = prefix+"__"+sha1(url.toString());
+        ImagePack pack = getPack(path);
         ImageIcon result = null;
         
         Object o = getLockObject(id);
         synchronized(o) {
-            result = getCachedImage2(url, file, expireTime);
+            result = getCachedImage2(url, pack, id, expireTime);
         }
         removeLockObject(id);
         return result;
     }
     
-    private static ImageIcon getCachedImage2(URL url, Path file, int expireTime) {
-        ImageIcon fromFile = getImageFromFile(file);
-        if (fromFile == null) {
-            // The image was NOT read from file successfully
-            //System.out.println("Loading image from server (cache not found)"+url);
-            if (saveFile(url, file)) {
-                fromFile = getImageFromFile(file);
-            }
-        } else {
-            // The image was read from file successfully
-            if (hasExpired(expireTime, file)) {
-                //System.out.println("Loading image from server (expired)"+url);
-                if (saveFile(url, file)) {
-                    // Only use new image from file if it was saved successfully
-                    fromFile = getImageFromFile(file);
-                }
+    private static ImageIcon getCachedImage2(URL url, ImagePack pack, String id,
+            int expireTime) {
+        ImagePack.Cached cached = pack.get(id);
+        if (cached != null && !hasExpired(expireTime, cached.fetched)) {
+            LOADS.inc("hit");
+            return createCachedImage(cached, pack, id, url);
+        }
+        //System.out.println("Loading image from server "+url);
+        Response response = request(url, cached);
+        if (response == Response.NOT_MODIFIED) {
+            LOADS.inc("revalidated");
+            pack.touch(id);
+            return createCachedImage(cached, pack, id, url);
+        }
+        if (response != null) {
+            byte[] data = GifUtil.normalize(response.data, url.toString());
+            ImageIcon image = createImage(data, url);
+            if (image != null) {
+                // Only store if it's a valid image
+                LOADS.inc("downloaded");
+                pack.put(id, data, response.etag, response.lastModified, NORMALIZED);
+                return image;
             }
         }
-        return fromFile;
+        if (cached != null) {
+            LOADS.inc("stale");
+            return createCachedImage(cached, pack, id, url);
+        }
+        LOADS.inc("failed");
+        return null;
     }
     
-    private static boolean hasExpired(int expireTime, Path file) {
-        long lastModified = file.toFile().lastModified();
-        long ago = (System.currentTimeMillis() - lastModified) / 1000;
-        if (lastModified == 0 || (expireTime > 0 && ago > expireTime)) {
+    private static boolean hasExpired(int expireTime, long fetched) {
+        long ago = (System.currentTimeMillis() - fetched) / 1000;
+        if (fetched <= 0 || (expireTime > 0 && ago > expireTime)) {
             return true;
         }
         return false;
     }
     
-    private static String getFilename(String prefix, String id) {
-        return GLOBAL_PREFIX+prefix+"__"+id;
-    }
-    
-    private static boolean saveFile(URL url, Path file) {
+    /**
+     * Request the image, only asking for the image data if it has been
+     * modified, if cached image data is given.
+     * 
+     * @param url The URL
+     * @param cached The currently cached image data, may be null
+     * @return The Response (or {@link Response#NOT_MODIFIED}), or null if an
+     * error occured
+     */
+    private static Response request(URL url, ImagePack.Cached cached) {
         try {
             URLConnection c = url.openConnection();
+            if (cached != null && c instanceof HttpURLConnection) {
+                if (cached.etag != null) {
+                    c.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified != null) {
+                    c.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+            }
+            if (c instanceof HttpURLConnection
+                    && ((HttpURLConnection) c).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (cached != null) {
+                    return Response.NOT_MODIFIED;
+                }
+                return null;
+            }
             try (InputStream is = c.getInputStream()) {
-                if (c.getContentLengthLong() <= 0) {
-                    LOGGER.warning("Error saving " + url + " (empty): " + c.getHeaderField(null));
+                byte[] data = GifUtil.readAllBytes(is);
+                if (data.length == 0) {
+                    LOGGER.warning("Error loading " + url + " (empty): " + c.getHeaderField(null));
                 } else {
-                    long written = Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
-                    if (written > 0) {
-                        return true;
-                    }
+                    return new Response(data, c.getHeaderField("ETag"),
+                            c.getHeaderField("Last-Modified"));
                 }
             }
         } catch (IOException ex) {
-            LOGGER.warning("Error saving " + url + " to " + file + ": " + ex);
+            LOGGER.warning("Error loading " + url + ": " + ex);
         }
-        return false;
+        return null;
+    }
+    
+    /**
+     * Create the image from cached data, normalizing and storing it again
+     * first if it has been stored before images were normalized.
+     */
+    private static ImageIcon createCachedImage(ImagePack.Cached cached,
+            ImagePack pack, String id, URL url) {
+        byte[] data = cached.data;
+        if ((cached.flags & NORMALIZED) == 0) {
+            data = GifUtil.normalize(data, url.toString());
+            if (data == cached.data) {
+                // Nothing changed, so don't write the same data again
+                pack.setFlags(id, cached.flags | NORMALIZED);
+            } else {
+                pack.update(id, data, cached.flags | NORMALIZED);
+            }
+        }
+        return createImage(data, url);
     }
     
-    private static ImageIcon getImageFromFile(Path file) {
+    private static ImageIcon createImage(byte[] data, URL url) {
         try {
-            URL url = file.toUri().toURL();
-            return GifUtil.getGifFromUrl(url);
-        } catch (FileNotFoundException ex) {
-            // Fail silently, images are expected to often be not cached yet
+            return GifUtil.createImage(data, url.toString());
         } catch (Exception ex) {
-            LOGGER.warning("Error loading image from file: "+ex);
+            LOGGER.warning("Error loading cached image: "+ex);
         }
         return null;
     }
     
+    private static class Response {
+        
+        private static final Response NOT_MODIFIED = new Response(null, null, null);
+        
+        private final byte[] data;
+        private final String etag;
+        private final String lastModified;
+        
+        Response(byte[] data, String etag, String lastModified) {
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+        
+    }
+    
     private static String sha1(String input) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
@@ -0,0 +1,774 @@
+
+package chatty.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stores image data in a few large files instead of one file per image.
+ *
+ * <p>
+ * The image data is appended to data segments (files of up to
+ * {@link #MAX_SEGMENT_SIZE}), which are memory-mapped for reading. The index
+ * file contains where each image is stored, as well as information to
+ * revalidate it with the server (ETag/Last-Modified) and flags set by the
+ * user of the pack. The index is loaded once
+ * and saved some time after changes, so reading a cached image doesn't require
+ * any file to be opened or checked. Reading only updates the access time in
+ * memory, which is saved with the next change or when the pack is closed
+ * (unless it moved by more than {@link #ACCESS_SAVE_THRESHOLD}).
+ * </p>
+ *
+ * <p>
+ * The size of all stored images is limited, with the least recently used
+ * images being removed first. Replaced or removed images leave unused space in
+ * the segments, which is reclaimed by compaction in a background thread.
+ * </p>
+ *
+ * <p>
+ * Thread-safe.
+ * </p>
+ */
+public class ImagePack {
+
+    private static final Logger LOGGER = Logger.getLogger(ImagePack.class.getName());
+
+    private static final int VERSION = 2;
+
+    private static final String INDEX_FILE = "index";
+    private static final String SEGMENT_PREFIX = "data-";
+
+    /**
+     * The size a segment can grow to before a new one is started.
+     */
+    static final int MAX_SEGMENT_SIZE = 16*1024*1024;
+
+    /**
+     * Seconds after a change before the index is saved.
+     */
+    private static final int SAVE_INDEX_DELAY = 30;
+
+    /**
+     * Milliseconds the access time of an image has to move for reading it to
+     * count as a change of the index.
+     */
+    private static final long ACCESS_SAVE_THRESHOLD = 24*60*60*1000;
+
+    /**
+     * Minimum amount of unused bytes before compaction is performed.
+     */
+    private static final long COMPACT_MIN_UNUSED = 4*1024*1024;
+
+    private final Path dir;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The stored images, in access order, so the least recently used are
+     * first.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Segment> segments = new HashMap<>();
+
+    private long maxSize;
+    private long size;
+    private int nextSegmentId;
+    private Segment active;
+    private boolean loaded;
+    private boolean indexChanged;
+    private boolean accessChanged;
+    private boolean saveScheduled;
+    private boolean compactScheduled;
+
+    /**
+     * Create a new pack in the given directory. Existing data is loaded when
+     * first accessed.
+     *
+     * @param dir The directory to store the files in
+     * @param maxSize The maximum number of bytes of stored images
+     */
+    public ImagePack(Path dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ImagePack");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Get the cached image data.
+     *
+     * @param key The key the image was stored with
+     * @return The cached image data, or null if no image with that key is
+     * stored or it couldn't be read
+     */
+    public synchronized Cached get(String key) {
+        load();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            byte[] data = read(entry);
+            long now = System.currentTimeMillis();
+            if (now - entry.lastAccessed > ACCESS_SAVE_THRESHOLD) {
+                changed();
+            } else {
+                accessChanged = true;
+            }
+            entry.lastAccessed = now;
+            return new Cached(data, entry.fetched, entry.etag, entry.lastModified, entry.flags);
+        } catch (IOException ex) {
+            LOGGER.warning("ImagePack: Error reading "+key+": "+ex);
+            remove(key);
+        }
+        return null;
+    }
+
+    /**
+     * Store image data, replacing any data previously stored with the same
+     * key. Least recently used images are removed if the size limit is
+     * exceeded.
+     *
+     * @param key The key
+     * @param data The image data
+     * @param etag The ETag header value, may be null
+     * @param lastModified The Last-Modified header value, may be null
+     * @return true if the data was stored, false otherwise
+     */
+    public synchronized boolean put(String key, byte[] data, String etag,
+            String lastModified) {
+        return put(key, data, etag, lastModified, 0);
+    }
+    
+    /**
+     * Store image data, replacing any data previously stored with the same
+     * key. Least recently used images are removed if the size limit is
+     * exceeded.
+     *
+     * @param key The key
+     * @param data The image data
+     * @param etag The ETag header value, may be null
+     * @param lastModified The Last-Modified header value, may be null
+     * @param flags Any flags, returned with the data
+     * @return true if the data was stored, false otherwise
+     */
+    public synchronized boolean put(String key, byte[] data, String etag,
+            String lastModified, int flags) {
+        load();
+        long now = System.currentTimeMillis();
+        return write(key, data, now, etag, lastModified, flags);
+    }
+    
+    /**
+     * Replace the data of an already stored image, keeping when it was
+     * fetched and the information for revalidating it.
+     *
+     * @param key The key
+     * @param data The new image data
+     * @param flags The new flags
+     * @return true if the data was stored, false otherwise (e.g. if no image
+     * with that key is stored)
+     */
+    public synchronized boolean update(String key, byte[] data, int flags) {
+        load();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        return write(key, data, entry.fetched, entry.etag, entry.lastModified, flags);
+    }
+    
+    private boolean write(String key, byte[] data, long fetched, String etag,
+            String lastModified, int flags) {
+        if (data.length == 0 || data.length > MAX_SEGMENT_SIZE
+                || data.length > maxSize) {
+            return false;
+        }
+        try {
+            if (active == null || active.size + data.length > MAX_SEGMENT_SIZE) {
+                active = createSegment();
+            }
+            long offset = active.size;
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                active.channel.write(buffer, offset + buffer.position());
+            }
+            active.size += data.length;
+            Entry entry = new Entry(key, active.id, offset, data.length, fetched,
+                    System.currentTimeMillis(), etag, lastModified, flags);
+            remove(key);
+            entries.put(key, entry);
+            size += data.length;
+            removeLeastRecentlyUsed();
+            changed();
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warning("ImagePack: Error writing "+key+": "+ex);
+        }
+        return false;
+    }
+
+    /**
+     * Change the flags of an already stored image, without writing the data
+     * again.
+     *
+     * @param key The key
+     * @param flags The new flags
+     * @return true if the flags were changed, false otherwise (e.g. if no
+     * image with that key is stored)
+     */
+    public synchronized boolean setFlags(String key, int flags) {
+        load();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.flags != flags) {
+            entry.flags = flags;
+            changed();
+        }
+        return true;
+    }
+
+    /**
+     * Set the time the image was fetched to now, for example after the server
+     * responded that it has not been modified.
+     *
+     * @param key The key
+     */
+    public synchronized void touch(String key) {
+        load();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.fetched = System.currentTimeMillis();
+            entry.lastAccessed = entry.fetched;
+            changed();
+        }
+    }
+
+    /**
+     * Remove all images whose key starts with the given prefix.
+     *
+     * @param prefix The prefix, or null to remove all images
+     * @return The number of removed images
+     */
+    public synchronized int removeByPrefix(String prefix) {
+        load();
+        int count = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (prefix == null || entry.key.startsWith(prefix)) {
+                it.remove();
+                entry.removed = true;
+                size -= entry.length;
+                count++;
+            }
+        }
+        if (count > 0) {
+            changed();
+        }
+        return count;
+    }
+
+    /**
+     * Remove all images that haven't been accessed in the given time.
+     *
+     * @param seconds The number of seconds
+     * @return The number of removed images
+     */
+    public synchronized int removeNotAccessedSince(long seconds) {
+        load();
+        long limit = System.currentTimeMillis() - seconds*1000;
+        int count = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.lastAccessed < limit) {
+                it.remove();
+                entry.removed = true;
+                size -= entry.length;
+                count++;
+            }
+        }
+        if (count > 0) {
+            changed();
+        }
+        return count;
+    }
+
+    /**
+     * Change the maximum number of bytes of stored images. If the current
+     * size exceeds the new maximum, least recently used images are removed.
+     *
+     * @param maxSize The number of bytes
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        if (loaded) {
+            removeLeastRecentlyUsed();
+            changed();
+        }
+    }
+
+    /**
+     * The number of bytes of all currently stored images.
+     *
+     * @return
+     */
+    public synchronized long getSize() {
+        load();
+        return size;
+    }
+
+    /**
+     * The number of bytes of all segment files, including unused space.
+     *
+     * @return
+     */
+    public synchronized long getSegmentsSize() {
+        load();
+        long result = 0;
+        for (Segment segment : segments.values()) {
+            result += segment.size;
+        }
+        return result;
+    }
+
+    public synchronized int getCount() {
+        load();
+        return entries.size();
+    }
+
+    /**
+     * Save the index if it has changed, including only access times.
+     */
+    public synchronized void close() {
+        if (indexChanged || accessChanged) {
+            saveIndex();
+        }
+    }
+
+    //==========================
+    // Internal
+    //==========================
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            removed.removed = true;
+            size -= removed.length;
+        }
+    }
+
+    private void removeLeastRecentlyUsed() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            entry.removed = true;
+            size -= entry.length;
+        }
+    }
+
+    /**
+     * Schedule saving the index and compaction, if necessary.
+     */
+    private void changed() {
+        indexChanged = true;
+        if (!saveScheduled) {
+            saveScheduled = true;
+            executor.schedule(() -> {
+                synchronized (this) {
+                    saveScheduled = false;
+                    if (indexChanged) {
+                        saveIndex();
+                    }
+                }
+            }, SAVE_INDEX_DELAY, TimeUnit.SECONDS);
+        }
+        if (!compactScheduled && shouldCompact()) {
+            compactScheduled = true;
+            executor.execute(() -> compact());
+        }
+    }
+
+    private boolean shouldCompact() {
+        long unused = getSegmentsSize() - size;
+        return unused > COMPACT_MIN_UNUSED && unused > size / 2;
+    }
+
+    private byte[] read(Entry entry) throws IOException {
+        Segment segment = segments.get(entry.segment);
+        if (segment == null || entry.offset + entry.length > segment.size) {
+            throw new IOException("Invalid position");
+        }
+        if (segment.mapped == null
+                || segment.mapped.capacity() < entry.offset + entry.length) {
+            segment.mapped = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        }
+        ByteBuffer buffer = segment.mapped.duplicate();
+        buffer.position((int) entry.offset);
+        byte[] data = new byte[entry.length];
+        buffer.get(data);
+        return data;
+    }
+
+    private Segment createSegment() throws IOException {
+        int id = nextSegmentId++;
+        Path file = dir.resolve(SEGMENT_PREFIX+id);
+        Files.deleteIfExists(file);
+        Segment segment = openSegment(id, file);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static Segment openSegment(int id, Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new Segment(id, file, channel, channel.size());
+    }
+
+    /**
+     * Write all images that are still used into new segments and delete the
+     * old ones. Only holds the lock for short times, so images can still be
+     * read and added while this is running.
+     */
+    void compact() {
+        List<Entry> toCopy = new ArrayList<>();
+        Set<Segment> oldSegments;
+        synchronized (this) {
+            compactScheduled = false;
+            load();
+            // New images will be added to a new segment
+            active = null;
+            oldSegments = new HashSet<>(segments.values());
+            for (Entry entry : entries.values()) {
+                toCopy.add(entry);
+            }
+        }
+        LOGGER.info(String.format("ImagePack: Compacting %d images in %d segments",
+                toCopy.size(), oldSegments.size()));
+
+        Map<Entry, long[]> copied = new HashMap<>();
+        Segment target = null;
+        try {
+            for (Entry entry : toCopy) {
+                byte[] data;
+                synchronized (this) {
+                    if (entry.removed) {
+                        continue;
+                    }
+                    data = read(entry);
+                    if (target == null || target.size + data.length > MAX_SEGMENT_SIZE) {
+                        target = createSegment();
+                    }
+                }
+                // Only this thread writes to the target segment
+                long offset = target.size;
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    target.channel.write(buffer, offset + buffer.position());
+                }
+                synchronized (this) {
+                    target.size += data.length;
+                }
+                copied.put(entry, new long[]{target.id, offset});
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("ImagePack: Error compacting: "+ex);
+        }
+
+        synchronized (this) {
+            for (Map.Entry<Entry, long[]> item : copied.entrySet()) {
+                Entry entry = item.getKey();
+                if (!entry.removed) {
+                    entry.segment = (int) item.getValue()[0];
+                    entry.offset = item.getValue()[1];
+                }
+            }
+            // Old segments that still contain images (if an error occured)
+            for (Entry entry : entries.values()) {
+                oldSegments.remove(segments.get(entry.segment));
+            }
+            for (Segment segment : oldSegments) {
+                segments.remove(segment.id);
+                if (segment == active) {
+                    active = null;
+                }
+            }
+            // Save before deleting, so the index never refers to deleted files
+            saveIndex();
+        }
+        for (Segment segment : oldSegments) {
+            segment.close();
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException ex) {
+                // May still be mapped, deleted on next load instead
+                LOGGER.info("ImagePack: Failed to delete "+segment.file+": "+ex);
+            }
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            Files.createDirectories(dir);
+            loadIndex();
+        } catch (NoSuchFileException ex) {
+            // No index yet
+        } catch (IOException ex) {
+            LOGGER.warning("ImagePack: Error loading index: "+ex);
+            entries.clear();
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            size = 0;
+        }
+        removeUnusedSegmentFiles();
+        removeLeastRecentlyUsed();
+        // Continue adding to the newest segment
+        for (Segment segment : segments.values()) {
+            if (segment.size < MAX_SEGMENT_SIZE
+                    && (active == null || segment.id > active.id)) {
+                active = segment;
+            }
+        }
+        LOGGER.info(String.format("ImagePack: Loaded %d images (%d bytes) in %d segments",
+                entries.size(), size, segments.size()));
+    }
+
+    private void loadIndex() throws IOException {
+        Path file = dir.resolve(INDEX_FILE);
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = input.readInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Invalid version");
+            }
+            nextSegmentId = input.readInt();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = input.readUTF();
+                int segmentId = input.readInt();
+                long offset = input.readLong();
+                int length = input.readInt();
+                long fetched = input.readLong();
+                long lastAccessed = input.readLong();
+                String etag = readOptionalString(input);
+                String lastModified = readOptionalString(input);
+                // Version 1 didn't have flags
+                int flags = version > 1 ? input.readInt() : 0;
+
+                Segment segment = segments.get(segmentId);
+                if (segment == null) {
+                    Path segmentFile = dir.resolve(SEGMENT_PREFIX+segmentId);
+                    if (!Files.exists(segmentFile)) {
+                        continue;
+                    }
+                    segment = openSegment(segmentId, segmentFile);
+                    segments.put(segmentId, segment);
+                }
+                if (offset + length <= segment.size) {
+                    entries.put(key, new Entry(key, segmentId, offset, length,
+                            fetched, lastAccessed, etag, lastModified, flags));
+                    size += length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove segment files that are not referred to by the index, for
+     * example left from an interrupted compaction.
+     */
+    private void removeUnusedSegmentFiles() {
+        File[] files = dir.toFile().listFiles(file -> {
+            return file.getName().startsWith(SEGMENT_PREFIX);
+        });
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try {
+                int id = Integer.parseInt(file.getName().substring(SEGMENT_PREFIX.length()));
+                if (!segments.containsKey(id)) {
+                    file.delete();
+                }
+                if (id >= nextSegmentId) {
+                    nextSegmentId = id + 1;
+                }
+            } catch (NumberFormatException ex) {
+                // Not a segment file
+            }
+        }
+    }
+
+    private void saveIndex() {
+        Path file = dir.resolve(INDEX_FILE);
+        Path tempFile = dir.resolve(INDEX_FILE+"-temp");
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                output.writeInt(VERSION);
+                output.writeInt(nextSegmentId);
+                output.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    output.writeUTF(entry.key);
+                    output.writeInt(entry.segment);
+                    output.writeLong(entry.offset);
+                    output.writeInt(entry.length);
+                    output.writeLong(entry.fetched);
+                    output.writeLong(entry.lastAccessed);
+                    writeOptionalString(output, entry.etag);
+                    writeOptionalString(output, entry.lastModified);
+                    output.writeInt(entry.flags);
+                }
+            }
+            for (Segment segment : segments.values()) {
+                segment.channel.force(false);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            indexChanged = false;
+            accessChanged = false;
+        } catch (IOException ex) {
+            LOGGER.warning("ImagePack: Error saving index: "+ex);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream input) throws IOException {
+        String value = input.readUTF();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void writeOptionalString(DataOutputStream output, String value) throws IOException {
+        output.writeUTF(value == null ? "" : value);
+    }
+
+    /**
+     * Image data returned from the cache.
+     */
+    public static class Cached {
+
+        public final byte[] data;
+
+        /**
+         * When the image was last requested from the server (or confirmed to
+         * not have been modified).
+         */
+        public final long fetched;
+        public final String etag;
+        public final String lastModified;
+        public final int flags;
+
+        private Cached(byte[] data, long fetched, String etag, String lastModified,
+                int flags) {
+            this.data = data;
+            this.fetched = fetched;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.flags = flags;
+        }
+
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private final int length;
+        private final String etag;
+        private final String lastModified;
+        private int flags;
+        private int segment;
+        private long offset;
+        private long fetched;
+        private long lastAccessed;
+
+        /**
+         * Set when this entry has been removed or replaced, so compaction
+         * doesn't update it anymore.
+         */
+        private boolean removed;
+
+        Entry(String key, int segment, long offset, int length, long fetched,
+                long lastAccessed, String etag, String lastModified, int flags) {
+            this.key = key;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.fetched = fetched;
+            this.lastAccessed = lastAccessed;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.flags = flags;
+        }
+
+    }
+
+    private static class Segment {
+
+        private final int id;
+        private final Path file;
+        private final FileChannel channel;
+        private long size;
+        private MappedByteBuffer mapped;
+
+        Segment(int id, Path file, FileChannel channel, long size) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        void close() {
+            mapped = null;
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+
+package chatty.util;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Scales images using several bilinear steps (halving the size each step when
+ * downscaling), which is much faster than the area averaging filter used by
+ * {@link Image#getScaledInstance(int, int, int)} with SCALE_SMOOTH, while
+ * still looking smooth. The result is a BufferedImage that Java2D can cache in
+ * video memory.
+ *
+ * <p>
+ * Scaled images are cached by source id and target size, so different users
+ * requesting the same emote at the same size (e.g. chat, Emotes Dialog and
+ * completion with different scaling settings ending up at the same size) only
+ * scale it once.
+ * </p>
+ */
+public class ImageScaler {
+
+    private static final Metrics.Counter SCALED = Metrics.counter(
+            "chatty_image_scaler_requests_total",
+            "Scaled images requested, by result",
+            "result");
+
+    private static final int MAX_CACHED = 1000;
+
+    private static final Map<String, BufferedImage> cache = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    /**
+     * Get the scaled image from the cache, or scale and cache it.
+     *
+     * @param id The id of the source image (e.g. the URL it was loaded from),
+     * if null the result is not cached
+     * @param source The fully loaded source image
+     * @param w The target width
+     * @param h The target height
+     * @return The scaled image
+     */
+    public static Image getScaled(String id, Image source, int w, int h) {
+        if (id == null) {
+            SCALED.inc("uncached");
+            return scale(source, w, h);
+        }
+        String key = w+"x"+h+" "+id;
+        synchronized (cache) {
+            BufferedImage cached = cache.get(key);
+            if (cached != null) {
+                SCALED.inc("hit");
+                return cached;
+            }
+        }
+        SCALED.inc("miss");
+        BufferedImage scaled = scale(source, w, h);
+        synchronized (cache) {
+            cache.put(key, scaled);
+        }
+        return scaled;
+    }
+
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Scale the given image. When downscaling, the size is halved in each
+     * step until the target size is reached, which avoids the artifacts of a
+     * single bilinear step for large ratios.
+     *
+     * @param source The fully loaded source image
+     * @param w The target width
+     * @param h The target height
+     * @return A new image with the given size
+     */
+    public static BufferedImage scale(Image source, int w, int h) {
+        int currentWidth = source.getWidth(null);
+        int currentHeight = source.getHeight(null);
+        Image current = source;
+        do {
+            currentWidth = nextSize(currentWidth, w);
+            currentHeight = nextSize(currentHeight, h);
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight,
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING,
+                    RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            g.dispose();
+            current = next;
+        } while (currentWidth != w || currentHeight != h);
+        return (BufferedImage) current;
+    }
+
+    private static int nextSize(int current, int target) {
+        if (current > target * 2) {
+            return current / 2;
+        }
+        return target;
+    }
+
+}
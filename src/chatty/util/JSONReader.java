@@ -0,0 +1,473 @@
+
+package chatty.util;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Reads JSON one token at a time, so that objects can be created directly
+ * from the data, without creating a JSONObject tree of the whole document
+ * first.
+ *
+ * <p>
+ * Example for reading {@code {"emotes":[{"id":1,"name":"Kappa"}]}}:
+ * </p>
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     if (reader.nextName().equals("emotes")) {
+ *         reader.beginArray();
+ *         while (reader.hasNext()) {
+ *             // Read emote object
+ *         }
+ *         reader.endArray();
+ *     } else {
+ *         reader.skipValue();
+ *     }
+ * }
+ * reader.endObject();
+ * </pre>
+ *
+ * <p>
+ * Errors in the JSON or reading a different token than expected throws a
+ * {@link ParseException}, same as the JSONParser.
+ * </p>
+ */
+public class JSONReader {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING,
+        NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final String in;
+    private final int length;
+    private int pos;
+
+    private int[] stack = new int[16];
+    private int stackSize;
+
+    /**
+     * The next token, if it has already been determined by {@link #peek()}.
+     * The position is at the start of the token.
+     */
+    private Token peeked;
+
+    public JSONReader(String json) {
+        this.in = json;
+        this.length = json.length();
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the type of the next token, without consuming it.
+     *
+     * @return The type of the next token
+     * @throws ParseException If the JSON is invalid
+     */
+    public Token peek() throws ParseException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int top = stack[stackSize - 1];
+        char c;
+        switch (top) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                expect(c, ',');
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (top == NONEMPTY_OBJECT) {
+                    expect(c, ',');
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw error(c);
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                expect(nextNonWhitespace(), ':');
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                skipWhitespace();
+                if (pos == length) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                throw error(in.charAt(pos));
+        }
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                return peeked = Token.STRING;
+            case 't':
+            case 'f':
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return peeked = Token.NUMBER;
+                }
+                throw error(c);
+        }
+    }
+
+    /**
+     * Whether the current array or object has another element.
+     *
+     * @return
+     * @throws ParseException
+     */
+    public boolean hasNext() throws ParseException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY
+                && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws ParseException {
+        consume(Token.BEGIN_OBJECT);
+        pos++;
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws ParseException {
+        consume(Token.END_OBJECT);
+        pos++;
+        stackSize--;
+    }
+
+    public void beginArray() throws ParseException {
+        consume(Token.BEGIN_ARRAY);
+        pos++;
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws ParseException {
+        consume(Token.END_ARRAY);
+        pos++;
+        stackSize--;
+    }
+
+    public String nextName() throws ParseException {
+        consume(Token.NAME);
+        return readString();
+    }
+
+    public String nextString() throws ParseException {
+        consume(Token.STRING);
+        return readString();
+    }
+
+    public long nextLong() throws ParseException {
+        consume(Token.NUMBER);
+        String number = readNumber();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException ex) {
+            return (long) parseDouble(number);
+        }
+    }
+
+    public int nextInt() throws ParseException {
+        return (int) nextLong();
+    }
+
+    public double nextDouble() throws ParseException {
+        consume(Token.NUMBER);
+        return parseDouble(readNumber());
+    }
+
+    public boolean nextBoolean() throws ParseException {
+        consume(Token.BOOLEAN);
+        if (in.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        }
+        if (in.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        throw error(in.charAt(pos));
+    }
+
+    public void nextNull() throws ParseException {
+        consume(Token.NULL);
+        if (!in.startsWith("null", pos)) {
+            throw error(in.charAt(pos));
+        }
+        pos += 4;
+    }
+
+    /**
+     * Gets the next value as a String, if it is a String.
+     *
+     * @return The String, or null if the next value is not a String (in which
+     * case it is skipped)
+     * @throws ParseException
+     */
+    public String nextStringOrNull() throws ParseException {
+        if (peek() == Token.STRING) {
+            return nextString();
+        }
+        skipValue();
+        return null;
+    }
+
+    /**
+     * Gets the next value as a long, if it is a number.
+     *
+     * @param errorValue The value to return if the next value is not a number
+     * @return The number, or errorValue if the next value is not a number (in
+     * which case it is skipped)
+     * @throws ParseException
+     */
+    public long nextLong(long errorValue) throws ParseException {
+        if (peek() == Token.NUMBER) {
+            return nextLong();
+        }
+        skipValue();
+        return errorValue;
+    }
+
+    /**
+     * Gets the next value as an int, if it is a number.
+     *
+     * @param errorValue The value to return if the next value is not a number
+     * @return The number, or errorValue if the next value is not a number (in
+     * which case it is skipped)
+     * @throws ParseException
+     */
+    public int nextInt(int errorValue) throws ParseException {
+        return (int) nextLong(errorValue);
+    }
+
+    /**
+     * Skips the next value, including all nested values if it is an object or
+     * array.
+     *
+     * @throws ParseException
+     */
+    public void skipValue() throws ParseException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    consume(Token.NAME);
+                    skipString();
+                    break;
+                case STRING:
+                    consume(Token.STRING);
+                    skipString();
+                    break;
+                case NUMBER:
+                    consume(Token.NUMBER);
+                    readNumber();
+                    break;
+                case BOOLEAN:
+                    nextBoolean();
+                    break;
+                case NULL:
+                    nextNull();
+                    break;
+                case END_DOCUMENT:
+                    throw error(Token.END_DOCUMENT);
+            }
+        } while (depth > 0);
+    }
+
+    //==========================
+    // Internal
+    //==========================
+
+    private void consume(Token expected) throws ParseException {
+        Token token = peek();
+        if (token != expected) {
+            throw error(token);
+        }
+        peeked = null;
+    }
+
+    private void push(int state) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = state;
+    }
+
+    private void expect(char c, char expected) throws ParseException {
+        if (c != expected) {
+            throw error(c);
+        }
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        while (pos < length) {
+            char c = in.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Returns the next non-whitespace character, without consuming it.
+     */
+    private char nextNonWhitespace() throws ParseException {
+        skipWhitespace();
+        if (pos == length) {
+            throw error(Token.END_DOCUMENT);
+        }
+        return in.charAt(pos);
+    }
+
+    /**
+     * Reads a String, starting at the opening quote.
+     */
+    private String readString() throws ParseException {
+        int start = ++pos;
+        // Fast path for Strings without escapes
+        while (pos < length) {
+            char c = in.charAt(pos);
+            if (c == '"') {
+                return in.substring(start, pos++);
+            }
+            if (c == '\\') {
+                break;
+            }
+            pos++;
+        }
+        StringBuilder b = new StringBuilder(pos - start + 16);
+        b.append(in, start, pos);
+        while (pos < length) {
+            char c = in.charAt(pos++);
+            if (c == '"') {
+                return b.toString();
+            }
+            if (c != '\\') {
+                b.append(c);
+                continue;
+            }
+            if (pos == length) {
+                break;
+            }
+            char escaped = in.charAt(pos++);
+            switch (escaped) {
+                case 'n': b.append('\n'); break;
+                case 't': b.append('\t'); break;
+                case 'r': b.append('\r'); break;
+                case 'b': b.append('\b'); break;
+                case 'f': b.append('\f'); break;
+                case 'u':
+                    if (pos + 4 > length) {
+                        throw error(Token.END_DOCUMENT);
+                    }
+                    try {
+                        b.append((char) Integer.parseInt(in.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error(in.charAt(pos));
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    // Includes quote, backslash and slash
+                    b.append(escaped);
+            }
+        }
+        throw error(Token.END_DOCUMENT);
+    }
+
+    private void skipString() throws ParseException {
+        pos++;
+        while (pos < length) {
+            char c = in.charAt(pos++);
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                pos++;
+            }
+        }
+        throw error(Token.END_DOCUMENT);
+    }
+
+    private String readNumber() {
+        int start = pos;
+        while (pos < length) {
+            char c = in.charAt(pos);
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.'
+                    || c == 'e' || c == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return in.substring(start, pos);
+    }
+
+    private double parseDouble(String number) throws ParseException {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException ex) {
+            throw new ParseException(pos, ParseException.ERROR_UNEXPECTED_TOKEN, number);
+        }
+    }
+
+    private ParseException error(char c) {
+        return new ParseException(pos, ParseException.ERROR_UNEXPECTED_CHAR, c);
+    }
+
+    private ParseException error(Token token) {
+        return new ParseException(pos, ParseException.ERROR_UNEXPECTED_TOKEN, token);
+    }
+
+}
@@ -0,0 +1,403 @@
+
+package chatty.util;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Simple registry of runtime metrics (counters, gauges and latency
+ * histograms), which can be exported in the Prometheus text format.
+ *
+ * <p>
+ * Metrics are usually created once in a static field and then updated from
+ * wherever something happens:
+ * </p>
+ * <pre>
+ * private static final Metrics.Counter LINES = Metrics.counter(
+ *         "chatty_lines_total", "Lines received", "channel");
+ * ...
+ * LINES.inc(channel);
+ * </pre>
+ *
+ * <p>
+ * Updates are thread-safe and cheap, and do nothing while metrics are not
+ * enabled.
+ * </p>
+ */
+public class Metrics {
+
+    private static final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    private static volatile boolean enabled;
+
+    static {
+        gauge("chatty_jvm_heap_used_bytes", "Used heap memory",
+                () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        gauge("chatty_jvm_threads", "Number of live threads",
+                () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("chatty_uptime_seconds", "Seconds since the program was started",
+                () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1000);
+    }
+
+    /**
+     * Enable or disable recording of metrics. Metrics recorded before stay
+     * unchanged.
+     *
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the counter with the given name, creating it if necessary.
+     *
+     * @param name The metric name
+     * @param help Description of the metric
+     * @param labelNames The names of the labels, the values have to be given
+     * in the same order when updating the counter
+     * @return The counter
+     */
+    public static Counter counter(String name, String help, String... labelNames) {
+        return (Counter) metrics.computeIfAbsent(name, n -> new Counter(n, help, labelNames));
+    }
+
+    /**
+     * Get the latency histogram with the given name, creating it if
+     * necessary.
+     *
+     * @param name The metric name, should end in "_seconds"
+     * @param help Description of the metric
+     * @param labelNames The names of the labels
+     * @return The histogram
+     */
+    public static Histogram histogram(String name, String help, String... labelNames) {
+        return (Histogram) metrics.computeIfAbsent(name, n -> new Histogram(n, help, labelNames));
+    }
+
+    /**
+     * Add a gauge, which retrieves the current value when the metrics are
+     * exported. Replaces an existing gauge with the same name.
+     *
+     * @param name The metric name
+     * @param help Description of the metric
+     * @param value Supplies the current value, must be thread-safe
+     */
+    public static void gauge(String name, String help, LongSupplier value) {
+        metrics.put(name, new Gauge(name, help, value));
+    }
+
+    /**
+     * Output all metrics in the Prometheus text exposition format.
+     *
+     * @return
+     */
+    public static String export() {
+        StringBuilder b = new StringBuilder();
+        for (Metric metric : metrics.values()) {
+            b.append("# HELP ").append(metric.name).append(" ").append(metric.help).append("\n");
+            b.append("# TYPE ").append(metric.name).append(" ").append(metric.type).append("\n");
+            metric.export(b);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Clear all recorded values (for testing).
+     */
+    static void reset() {
+        for (Metric metric : metrics.values()) {
+            metric.reset();
+        }
+    }
+
+    //==========================
+    // Metric types
+    //==========================
+
+    private static abstract class Metric {
+
+        protected final String name;
+        protected final String help;
+        protected final String type;
+
+        Metric(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        abstract void export(StringBuilder b);
+
+        void reset() {
+        }
+
+    }
+
+    /**
+     * Base for metrics with labels, each combination of label values has it's
+     * own child holding the values.
+     */
+    private static abstract class LabeledMetric<T> extends Metric {
+
+        private final String[] labelNames;
+        private final Map<String, Child<T>> children = new ConcurrentHashMap<>();
+
+        LabeledMetric(String name, String help, String type, String[] labelNames) {
+            super(name, help, type);
+            this.labelNames = labelNames;
+        }
+
+        protected T get(String[] labelValues) {
+            String key;
+            if (labelValues.length == 0) {
+                key = "";
+            } else if (labelValues.length == 1) {
+                key = labelValues[0];
+            } else {
+                key = String.join("\u0000", labelValues);
+            }
+            Child<T> child = children.get(key);
+            if (child == null) {
+                child = children.computeIfAbsent(key,
+                        k -> new Child<>(labelValues.clone(), create()));
+            }
+            return child.value;
+        }
+
+        protected abstract T create();
+
+        protected abstract void export(StringBuilder b, String labels, T value);
+
+        @Override
+        void export(StringBuilder b) {
+            for (Child<T> child : children.values()) {
+                export(b, makeLabels(child.labelValues), child.value);
+            }
+        }
+
+        @Override
+        void reset() {
+            children.clear();
+        }
+
+        private String makeLabels(String[] labelValues) {
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < labelNames.length && i < labelValues.length; i++) {
+                if (b.length() > 0) {
+                    b.append(",");
+                }
+                b.append(labelNames[i]).append("=\"").append(escape(labelValues[i])).append("\"");
+            }
+            return b.toString();
+        }
+
+    }
+
+    private static class Child<T> {
+
+        private final String[] labelValues;
+        private final T value;
+
+        Child(String[] labelValues, T value) {
+            this.labelValues = labelValues;
+            this.value = value;
+        }
+
+    }
+
+    public static class Counter extends LabeledMetric<LongAdder> {
+
+        private Counter(String name, String help, String[] labelNames) {
+            super(name, help, "counter", labelNames);
+        }
+
+        /**
+         * Increase the counter by one.
+         *
+         * @param labelValues The label values, in the order of the label names
+         */
+        public void inc(String... labelValues) {
+            add(1, labelValues);
+        }
+
+        /**
+         * Increase the counter.
+         *
+         * @param amount The amount to add
+         * @param labelValues The label values, in the order of the label names
+         */
+        public void add(long amount, String... labelValues) {
+            if (enabled) {
+                get(labelValues).add(amount);
+            }
+        }
+
+        /**
+         * Get the current count.
+         *
+         * @param labelValues
+         * @return
+         */
+        public long getCount(String... labelValues) {
+            return get(labelValues).sum();
+        }
+
+        @Override
+        protected LongAdder create() {
+            return new LongAdder();
+        }
+
+        @Override
+        protected void export(StringBuilder b, String labels, LongAdder value) {
+            b.append(name);
+            if (!labels.isEmpty()) {
+                b.append("{").append(labels).append("}");
+            }
+            b.append(" ").append(value.sum()).append("\n");
+        }
+
+    }
+
+    public static class Histogram extends LabeledMetric<HistogramValues> {
+
+        /**
+         * Upper bounds of the buckets, in nanoseconds.
+         */
+        private static final long[] BUCKETS = new long[]{
+            100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000,
+            10_000_000, 25_000_000, 50_000_000,
+            100_000_000, 250_000_000, 500_000_000,
+            1_000_000_000, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+        };
+        
+        /**
+         * Upper bounds of the buckets, in seconds, as output.
+         */
+        private static final String[] BUCKET_LABELS = new String[BUCKETS.length];
+        
+        static {
+            for (int i = 0; i < BUCKETS.length; i++) {
+                BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKETS[i], 9)
+                        .stripTrailingZeros().toPlainString();
+            }
+        }
+
+        private Histogram(String name, String help, String[] labelNames) {
+            super(name, help, "histogram", labelNames);
+        }
+
+        /**
+         * Record a duration.
+         *
+         * @param nanos The duration, in nanoseconds
+         * @param labelValues The label values, in the order of the label names
+         */
+        public void observeNanos(long nanos, String... labelValues) {
+            if (enabled) {
+                get(labelValues).observe(nanos);
+            }
+        }
+
+        /**
+         * Record the time since the given start.
+         *
+         * @param startNanos The start, as returned by {@link System#nanoTime()}
+         * @param labelValues The label values, in the order of the label names
+         */
+        public void observeSince(long startNanos, String... labelValues) {
+            if (enabled) {
+                get(labelValues).observe(System.nanoTime() - startNanos);
+            }
+        }
+
+        public long getCount(String... labelValues) {
+            return get(labelValues).count.sum();
+        }
+
+        @Override
+        protected HistogramValues create() {
+            return new HistogramValues();
+        }
+
+        @Override
+        protected void export(StringBuilder b, String labels, HistogramValues value) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += value.buckets[i].sum();
+                b.append(name).append("_bucket{").append(prefix)
+                        .append("le=\"").append(BUCKET_LABELS[i]).append("\"} ")
+                        .append(cumulative).append("\n");
+            }
+            long count = value.count.sum();
+            b.append(name).append("_bucket{").append(prefix)
+                    .append("le=\"+Inf\"} ").append(count).append("\n");
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            b.append(name).append("_sum").append(suffix).append(" ")
+                    .append(value.sumNanos.sum() / 1e9).append("\n");
+            b.append(name).append("_count").append(suffix).append(" ")
+                    .append(count).append("\n");
+        }
+
+    }
+
+    private static class HistogramValues {
+
+        private final LongAdder[] buckets = new LongAdder[Histogram.BUCKETS.length];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        HistogramValues() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(long nanos) {
+            for (int i = 0; i < Histogram.BUCKETS.length; i++) {
+                if (nanos <= Histogram.BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+    }
+
+    private static class Gauge extends Metric {
+
+        private final LongSupplier value;
+
+        Gauge(String name, String help, LongSupplier value) {
+            super(name, help, "gauge");
+            this.value = value;
+        }
+
+        @Override
+        void export(StringBuilder b) {
+            b.append(name).append(" ").append(value.getAsLong()).append("\n");
+        }
+
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
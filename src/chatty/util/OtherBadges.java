@@ -45,6 +45,7 @@ public class OtherBadges {
             //url = "http://127.0.0.1/twitch/badges/badges";
             UrlRequest request = new UrlRequest(url);
             request.setLabel("Other Badges");
+            request.setCached(true);
             request.async((result, responseCode) -> {
                 cache.dataReceived(result, forcedRefresh);
             });
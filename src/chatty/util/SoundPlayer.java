@@ -0,0 +1,437 @@
+
+package chatty.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Plays sound files. Each file is decoded only once into PCM data (and again
+ * if the file changed). Playback happens on a single audio thread, which
+ * keeps the lines of the most recently played sounds open, so they can be
+ * played again without opening a new line.
+ *
+ * <p>
+ * The actual output is done by an {@link Output}, which can be replaced (e.g.
+ * when a different sound device is selected). {@link #NO_OUTPUT} doesn't
+ * access any audio devices at all.
+ * </p>
+ */
+public class SoundPlayer {
+
+    private static final Logger LOGGER = Logger.getLogger(SoundPlayer.class.getName());
+
+    /**
+     * How many lines to keep open.
+     */
+    private static final int MAX_VOICES = 4;
+
+    private static final int MAX_VOLUME = 100;
+    private static final int MIN_VOLUME = 0;
+
+    private static final int MIN_GAIN = -40;
+
+    /**
+     * Doesn't play anything.
+     */
+    public static final Output NO_OUTPUT = sound -> new Voice() {
+
+        @Override
+        public void play(float volume) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final ExecutorService audio;
+
+    // Synchronized on itself
+    private final Map<Path, Decoded> cache = new HashMap<>();
+
+    // Synchronized on itself
+    private final Map<String, Long> lastPlayed = new HashMap<>();
+
+    // Only accessed on the audio thread
+    private final Map<Path, Voice> voices = new LinkedHashMap<>(16, 0.75f, true);
+    private Output output;
+
+    public SoundPlayer(Output output) {
+        this.output = output;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "Sound");
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.audio = pool;
+    }
+
+    /**
+     * Play the given file, unless a sound with the same id has been played
+     * less than delay seconds ago.
+     *
+     * <p>
+     * The file is decoded on the calling thread if it isn't cached yet, so
+     * errors reading the file are thrown. Errors playing the sound are only
+     * logged, since that happens on the audio thread.
+     * </p>
+     *
+     * @param file The sound file
+     * @param volume The volume (0-100)
+     * @param id The id for the cooldown
+     * @param delay The cooldown in seconds, a negative value to neither check
+     * nor update the cooldown
+     * @return true if the sound was queued for playing, false if it is on
+     * cooldown
+     * @throws Exception If the file couldn't be read
+     */
+    public boolean play(Path file, float volume, String id, int delay) throws Exception {
+        synchronized (lastPlayed) {
+            if (lastPlayed.containsKey(id)) {
+                long timePassed = (System.currentTimeMillis() - lastPlayed.get(id)) / 1000;
+                if (timePassed < delay) {
+                    return false;
+                }
+            }
+            if (delay >= 0) {
+                lastPlayed.put(id, System.currentTimeMillis());
+            }
+        }
+
+        Decoded sound;
+        try {
+            sound = getDecoded(file);
+        } catch (Exception ex) {
+            LOGGER.warning("Couldn't play sound ("+id+"/"+file+"): "+ex);
+            throw ex;
+        }
+        audio.execute(() -> playNow(sound, volume, id));
+        return true;
+    }
+
+    /**
+     * Change the output. Lines opened with the previous output are closed.
+     *
+     * @param output
+     */
+    public void setOutput(Output output) {
+        audio.execute(() -> {
+            closeVoices();
+            this.output = output;
+        });
+    }
+
+    /**
+     * Remove all cached data and close all lines.
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        audio.execute(this::closeVoices);
+    }
+
+    /**
+     * Wait for all currently queued requests to be processed by the audio
+     * thread.
+     */
+    void waitForQueue() throws InterruptedException, ExecutionException {
+        audio.submit(() -> {}).get();
+    }
+
+    /**
+     * Get the decoded data, from the cache if the file hasn't changed.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws UnsupportedAudioFileException
+     */
+    Decoded getDecoded(Path file) throws IOException, UnsupportedAudioFileException {
+        File f = file.toFile();
+        long modified = f.lastModified();
+        long length = f.length();
+        synchronized (cache) {
+            Decoded cached = cache.get(file);
+            if (cached != null && cached.modified == modified && cached.length == length) {
+                return cached;
+            }
+        }
+        Decoded decoded = decode(file, modified, length);
+        synchronized (cache) {
+            cache.put(file, decoded);
+        }
+        return decoded;
+    }
+
+    private static Decoded decode(Path file, long modified, long length)
+            throws IOException, UnsupportedAudioFileException {
+        try (AudioInputStream input = AudioSystem.getAudioInputStream(file.toFile())) {
+            AudioInputStream pcm = input;
+            AudioFormat format = input.getFormat();
+            if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+                    && format.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED) {
+                AudioFormat target = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                        format.getSampleRate(), 16, format.getChannels(),
+                        format.getChannels() * 2, format.getSampleRate(), false);
+                pcm = AudioSystem.getAudioInputStream(target, input);
+            }
+            byte[] data = readAll(pcm);
+            LOGGER.info("Decoded sound "+file+" ("+data.length+" bytes)");
+            return new Decoded(file, pcm.getFormat(), data, modified, length);
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            result.write(buffer, 0, read);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Play the sound, reusing an already open line if available. Only called
+     * on the audio thread.
+     */
+    private void playNow(Decoded sound, float volume, String id) {
+        try {
+            Voice voice = voices.get(sound.file);
+            if (voice != null && voice.getSound() != sound) {
+                // File changed
+                voices.remove(sound.file);
+                voice.close();
+                voice = null;
+            }
+            if (voice == null) {
+                voice = new TrackedVoice(sound, output.open(sound));
+                voices.put(sound.file, voice);
+                removeOldVoices();
+            }
+            voice.play(volume);
+            LOGGER.info("Playing sound "+id+"/"+sound.file+" ("+voices.size()+" open)");
+        } catch (Exception ex) {
+            LOGGER.warning("Couldn't play sound ("+id+"/"+sound.file+"): "+ex);
+            Voice voice = voices.remove(sound.file);
+            if (voice != null) {
+                voice.close();
+            }
+        }
+    }
+
+    private void removeOldVoices() {
+        Iterator<Voice> it = voices.values().iterator();
+        while (voices.size() > MAX_VOICES && it.hasNext()) {
+            Voice voice = it.next();
+            it.remove();
+            voice.close();
+        }
+    }
+
+    private void closeVoices() {
+        for (Voice voice : voices.values()) {
+            voice.close();
+        }
+        voices.clear();
+    }
+
+    /**
+     * Number of currently open lines, only for testing.
+     */
+    int getOpenCount() throws InterruptedException, ExecutionException {
+        return audio.submit(() -> voices.size()).get();
+    }
+
+    /**
+     * The decoded data of a sound file.
+     */
+    public static class Decoded {
+
+        public final Path file;
+        public final AudioFormat format;
+        public final byte[] data;
+        private final long modified;
+        private final long length;
+
+        private Decoded(Path file, AudioFormat format, byte[] data,
+                long modified, long length) {
+            this.file = file;
+            this.format = format;
+            this.data = data;
+            this.modified = modified;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * Opens a line for a sound.
+     */
+    public interface Output {
+
+        /**
+         * Open a line for the given sound, which can be played several times.
+         *
+         * @param sound
+         * @return
+         * @throws Exception
+         */
+        public Voice open(Decoded sound) throws Exception;
+
+    }
+
+    /**
+     * An open line for a single sound.
+     */
+    public interface Voice {
+
+        /**
+         * Play the sound from the beginning, stopping it first if it's still
+         * playing.
+         *
+         * @param volume The volume (0-100)
+         */
+        public void play(float volume);
+
+        public void close();
+
+        default Decoded getSound() {
+            return null;
+        }
+
+    }
+
+    /**
+     * Remembers which decoded sound a voice belongs to.
+     */
+    private static class TrackedVoice implements Voice {
+
+        private final Decoded sound;
+        private final Voice voice;
+
+        TrackedVoice(Decoded sound, Voice voice) {
+            this.sound = sound;
+            this.voice = voice;
+        }
+
+        @Override
+        public void play(float volume) {
+            voice.play(volume);
+        }
+
+        @Override
+        public void close() {
+            voice.close();
+        }
+
+        @Override
+        public Decoded getSound() {
+            return sound;
+        }
+
+    }
+
+    /**
+     * Plays sounds as a Clip on the given Mixer, or the default one if null.
+     */
+    public static class ClipOutput implements Output {
+
+        private final Mixer mixer;
+
+        public ClipOutput(Mixer mixer) {
+            this.mixer = mixer;
+        }
+
+        @Override
+        public Voice open(Decoded sound) throws Exception {
+            DataLine.Info info = new DataLine.Info(Clip.class, sound.format);
+            final Clip clip;
+            if (mixer != null) {
+                clip = (Clip)mixer.getLine(info);
+            } else {
+                clip = (Clip)AudioSystem.getLine(info);
+            }
+            clip.open(sound.format, sound.data, 0, sound.data.length);
+
+            // Volume, use what is available
+            FloatControl gain = getFirstAvailableControl(clip,
+                    FloatControl.Type.MASTER_GAIN, FloatControl.Type.VOLUME);
+            return new Voice() {
+
+                private float currentVolume = -1;
+
+                @Override
+                public void play(float volume) {
+                    clip.stop();
+                    clip.setFramePosition(0);
+                    if (gain != null && volume != currentVolume) {
+                        gain.setValue(calculateGain(volume,
+                                gain.getMinimum(), gain.getMaximum()));
+                        currentVolume = volume;
+                    }
+                    clip.start();
+                }
+
+                @Override
+                public void close() {
+                    clip.close();
+                }
+            };
+        }
+
+    }
+
+    private static FloatControl getFirstAvailableControl(Clip clip,
+            FloatControl.Type... types) {
+        for (FloatControl.Type type : types) {
+            if (clip.isControlSupported(type)) {
+                return (FloatControl)clip.getControl(type);
+            }
+        }
+        return null;
+    }
+
+    private static float calculateGain(float volume, float min, float max) {
+        // Restrict to min/max
+        if (volume > MAX_VOLUME) {
+            volume = MAX_VOLUME;
+        }
+        if (volume < MIN_VOLUME) {
+            volume = MIN_VOLUME;
+        }
+        volume = (float)(MAX_VOLUME - MAX_VOLUME*Math.pow(1.25, -0.25*volume));
+
+        if (min < MIN_GAIN) {
+            min = MIN_GAIN;
+        }
+        float range = max - min;
+        float gain = ((range * volume / (MAX_VOLUME - MIN_VOLUME)) + min);
+        return gain;
+    }
+
+}
@@ -1,19 +1,15 @@
 
 package chatty.util;
 
-import chatty.Chatty;
+import chatty.util.http.HttpClient;
+import chatty.util.http.HttpRequest;
+import chatty.util.http.HttpResponse;
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.Charset;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 /**
  * General URL Request that just reads the whole file into a String.
@@ -24,12 +20,9 @@ public class UrlRequest {
     
     private static final Logger LOGGER = Logger.getLogger(UrlRequest.class.getName());
     
-    private static final Charset CHARSET = Charset.forName("UTF-8");
     private static final int CONNECT_TIMEOUT = 10000;
     private static final int READ_TIMEOUT = 10000;
     
-    private static final String VERSION = "Chatty "+Chatty.VERSION;
-    
     private String url;
     
     /**
@@ -37,6 +30,8 @@ public class UrlRequest {
      */
     private String label = "";
     
+    private boolean cached;
+    
     /**
      * Construct without URL. The URL should be set via {@link setUrl(String)}.
      */
@@ -67,20 +62,30 @@ public class UrlRequest {
         this.label = "["+label+"]";
     }
 
+    /**
+     * Store the result and revalidate it with the server on the next request,
+     * for data that rarely changes.
+     * 
+     * @param cached 
+     */
+    public final void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
     public void async(ResultListener listener) {
-        new Thread(() -> {
+        HttpClient.get().requestAsync(makeRequest(), response -> {
             FullResult result = new FullResult();
-            performRequest(result);
+            handleResponse(result, response);
             listener.result(result.getResult(), result.getResponseCode());
-        }).start();
+        });
     }
     
     public void asyncLines(ResultLinesListener listener) {
-        new Thread(() -> {
+        HttpClient.get().requestAsync(makeRequest(), response -> {
             LinesResult result = new LinesResult();
-            performRequest(result);
+            handleResponse(result, response);
             listener.result(result.getResult(), result.getResponseCode());
-        }).start();
+        });
     }
     
     public FullResult sync() {
@@ -102,45 +107,38 @@ public class UrlRequest {
      * @return
      */
     private void performRequest(Result result) {
+        handleResponse(result, HttpClient.get().request(makeRequest()));
+    }
+    
+    private HttpRequest makeRequest() {
         LOGGER.info("<"+label+" "+url);
-        HttpURLConnection connection = null;
-        try {
-            connection = (HttpURLConnection) new URL(url).openConnection();
-            connection.setRequestProperty("User-Agent", VERSION);
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            String encoding = connection.getContentEncoding();
-            
-            // Read response
-            InputStream input = connection.getInputStream();
-            if ("gzip".equals(connection.getContentEncoding())) {
-                input = new GZIPInputStream(input);
-            }
-
-            int responseCode = connection.getResponseCode();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET))) {
-                result.fill(reader, responseCode);
-            }
-            LOGGER.info(String.format(">%s (%s, %,d%s): %s",
-                    label,
-                    responseCode,
-                    result.getLength(),
-                    (encoding != null ? ", " + encoding : ""),
-                    url));
-        } catch (IOException ex) {
-            if (ex instanceof FileNotFoundException) {
-                result.responseCode = 404;
-            }
+        HttpRequest request = new HttpRequest(url);
+        request.setTimeouts(CONNECT_TIMEOUT, READ_TIMEOUT);
+        request.setCached(cached);
+        return request;
+    }
+    
+    private void handleResponse(Result result, HttpResponse response) {
+        String encoding = response.getEncoding();
+        int responseCode = response.getResponseCode();
+        result.responseCode = responseCode;
+        if (response.getText() == null) {
             LOGGER.warning(String.format("!%s (%s): %s",
-                    label, ex, url));
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+                    label, response.getError(), url));
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new StringReader(response.getText()))) {
+            result.fill(reader, responseCode);
+        } catch (IOException ex) {
+            // Shouldn't happen when reading from a String
         }
+        LOGGER.info(String.format(">%s (%s, %,d%s%s): %s",
+                label,
+                responseCode,
+                result.getLength(),
+                (encoding != null ? ", " + encoding : ""),
+                (response.isFromCache() ? ", not modified" : ""),
+                url));
     }
     
     
@@ -12,7 +12,8 @@ import java.util.logging.Logger;
  * Simple multithreaded Webserver, that only supports the required GET request
  * and delievers hardcoded files.
  * 
- * Used for getting an access token.
+ * Used for getting an access token. Can also be started to serve only the
+ * current metrics (see {@link Metrics}).
  * 
  * @author tduva
  */
@@ -23,7 +24,10 @@ public class Webserver implements Runnable {
     public static final int ERROR_COULD_NOT_LISTEN_TO_PORT = 0;
     private static final int SO_TIMEOUT = 10*1000;
     
-    private static int port = 61324;
+    private static final int DEFAULT_PORT = 61324;
+    
+    private final int port;
+    private final boolean metrics;
     private volatile boolean running = true;
     private volatile ServerSocket serverSocket = null;
     private final WebserverListener listener;
@@ -70,7 +74,21 @@ public class Webserver implements Runnable {
      * @param listener Listener to return state information and data to 
      */
     public Webserver(WebserverListener listener) {
+        this(listener, DEFAULT_PORT, false);
+    }
+    
+    /**
+     * Construct a new webserver. Still has to be started in a new Thread.
+     * 
+     * @param listener Listener to return state information and data to
+     * @param port The port to listen on (always bound to localhost)
+     * @param metrics If true, only serve the metrics in Prometheus text format
+     * at "/metrics" instead of the token pages
+     */
+    public Webserver(WebserverListener listener, int port, boolean metrics) {
         this.listener = listener;
+        this.port = port;
+        this.metrics = metrics;
     }
     
     /**
@@ -120,7 +138,9 @@ public class Webserver implements Runnable {
         }
         
         while (running) {
-            debug("Waiting for connections on "+serverSocket.toString());
+            if (!metrics) {
+                debug("Waiting for connections on "+serverSocket.toString());
+            }
             Socket clientSocket = null;
             try {
                 clientSocket = serverSocket.accept();
@@ -178,8 +198,9 @@ public class Webserver implements Runnable {
     private void newConnection(Socket clientSocket) {
         WebserverConnection connection =
                 new WebserverConnection(clientSocket, connectionCount++);
-        new Thread(connection).start();
+        // Add first, so the connection can remove itself when it's done
         connections.add(connection);
+        new Thread(connection).start();
     }
     
     /**
@@ -228,6 +249,10 @@ public class Webserver implements Runnable {
          * @param message 
          */
         private void debugConnection(String message) {
+            if (metrics) {
+                // Polled regularly, so don't fill up the log
+                return;
+            }
             debug("["+connectionNumber+"] "+message);
         }
         
@@ -249,6 +274,8 @@ public class Webserver implements Runnable {
             } catch (IOException ex) {
                 debugConnection("Error reading: "+ex);
             }
+            // The metrics may be requested regularly, so don't keep them
+            connections.remove(this);
             debugConnection("Closed");
         }
         
@@ -262,8 +289,15 @@ public class Webserver implements Runnable {
             debugConnection("Making response for "+removeToken(request));
             try (OutputStream output = connection.getOutputStream()) {
                 String response = "";
+                if (metrics) {
+                    if (StringUtil.toLowerCase(request).startsWith("get /metrics ")) {
+                        response = makeMetricsResponse();
+                    } else {
+                        response = makeResponse(null);
+                    }
+                }
                 // Check if there should be a token in there
-                if (StringUtil.toLowerCase(request).startsWith("get /token/")) {
+                else if (StringUtil.toLowerCase(request).startsWith("get /token/")) {
                     String token = getToken(request);
                     if (token.isEmpty()) {
                         // No token, so show redirect page
@@ -377,6 +411,18 @@ public class Webserver implements Runnable {
             return makeHeader(true) + content;
         }
         
+        /**
+         * Make header and the current metrics.
+         * 
+         * @return 
+         */
+        private String makeMetricsResponse() {
+            String header = "HTTP/1.0 200 OK\n";
+            header += "Server: ChattyWebserver\n";
+            header += "Content-Type: text/plain; version=0.0.4; charset=UTF-8\n\n";
+            return header + Metrics.export();
+        }
+        
         /**
          * Make the http response header.
          * 
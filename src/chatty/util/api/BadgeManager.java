@@ -2,6 +2,7 @@
 package chatty.util.api;
 
 import chatty.Helper;
+import chatty.util.JSONReader;
 import chatty.util.api.usericons.Usericon;
 import chatty.util.api.usericons.UsericonFactory;
 import java.util.ArrayList;
@@ -10,8 +11,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
 /**
  *
@@ -62,19 +62,29 @@ public class BadgeManager {
             return result;
         }
         try {
-            JSONParser parser = new JSONParser();
-            JSONObject root = (JSONObject)parser.parse(json);
-            JSONObject badges = (JSONObject)root.get("badge_sets");
-            if (badges != null) {
-                for (Object key : badges.keySet()) {
-                    JSONObject data = (JSONObject)badges.get(key);
-                    
-                    String id = (String)key;
-                    JSONObject versions = (JSONObject)data.get("versions");
-                    if (versions != null) {
-                        parseBadgeVersions(result, versions, room, id);
+            JSONReader reader = new JSONReader(json);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("badge_sets")
+                        || reader.peek() == JSONReader.Token.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String id = reader.nextName();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("versions")
+                                && reader.peek() != JSONReader.Token.NULL) {
+                            parseBadgeVersions(result, reader, room, id);
+                        } else {
+                            reader.skipValue();
+                        }
                     }
+                    reader.endObject();
                 }
+                reader.endObject();
             }
         } catch (Exception ex) {
             LOGGER.warning("Error parsing badges: "+ex);
@@ -83,15 +93,34 @@ public class BadgeManager {
     }
     
     private static void parseBadgeVersions(List<Usericon> result,
-                JSONObject data, String room, String id) {
-        for (Object key : data.keySet()) {
-            JSONObject versionData = (JSONObject) data.get(key);
-
-            String version = (String) key;
-            String url = (String) versionData.get("image_url_1x");
-            String title = (String) versionData.get("title");
-            String description = (String) versionData.get("description");
-            String clickUrl = (String) versionData.get("click_url");
+                JSONReader reader, String room, String id) throws ParseException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String version = reader.nextName();
+            String url = null;
+            String title = null;
+            String description = null;
+            String clickUrl = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "image_url_1x":
+                        url = reader.nextStringOrNull();
+                        break;
+                    case "title":
+                        title = reader.nextStringOrNull();
+                        break;
+                    case "description":
+                        description = reader.nextStringOrNull();
+                        break;
+                    case "click_url":
+                        clickUrl = reader.nextStringOrNull();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
 
             if (id != null && version != null && url != null) {
                 Usericon icon = UsericonFactory.createTwitchBadge(id, version, 
@@ -101,6 +130,7 @@ public class BadgeManager {
                 }
             }
         }
+        reader.endObject();
     }
     
 }
@@ -7,6 +7,7 @@ import chatty.gui.components.textpane.ChannelTextPane;
 import chatty.util.DateTime;
 import chatty.util.HalfWeakSet;
 import chatty.util.ImageCache;
+import chatty.util.ImageScaler;
 import chatty.util.MiscUtil;
 import chatty.util.StringUtil;
 import java.awt.Color;
@@ -714,8 +715,19 @@ public class Emoticon {
         return new Dimension(imageWidth, imageHeight);
     }
     
-    private Image getScaledImage(Image img, int w, int h) {
-        return img.getScaledInstance(w, h, Image.SCALE_SMOOTH);
+    /**
+     * Scale the image, sharing the result with other images of the same source
+     * and size (e.g. with different scale settings that result in the same
+     * size).
+     * 
+     * @param url The URL the image was loaded from
+     * @param img The loaded image
+     * @param w The target width
+     * @param h The target height
+     * @return The scaled image
+     */
+    private Image getScaledImage(String url, Image img, int w, int h) {
+        return ImageScaler.getScaled(url, img, w, h);
     }
     
 
@@ -810,8 +822,8 @@ public class Emoticon {
             if ((icon.getIconWidth() != targetSize.width
                     || icon.getIconHeight() != targetSize.height)
                     && !gif) {
-                Image scaled = getScaledImage(icon.getImage(), targetSize.width,
-                        targetSize.height);
+                Image scaled = getScaledImage(url, icon.getImage(),
+                        targetSize.width, targetSize.height);
                 icon.setImage(scaled);
             } else if (icon.getIconWidth() > MAX_SCALED_WIDTH
                     || icon.getIconHeight() > MAX_SCALED_HEIGHT) {
@@ -1010,6 +1022,20 @@ public class Emoticon {
             return System.currentTimeMillis() - lastUsed;
         }
         
+        /**
+         * Gets the current size of this image, without loading it. If the
+         * image hasn't been requested yet, this is the size the placeholder
+         * image would have.
+         * 
+         * @return The size, may change once the image is loaded
+         */
+        public Dimension getSize() {
+            if (icon != null) {
+                return new Dimension(icon.getIconWidth(), icon.getIconHeight());
+            }
+            return getScaledSize(getDefaultSize(), scaleFactor, maxHeight);
+        }
+        
         /**
          * Get the Emoticon object this EmoticonImage is a part of.
          *
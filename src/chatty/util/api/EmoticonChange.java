@@ -0,0 +1,104 @@
+
+package chatty.util.api;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The emotes that were added and removed when a new
+ * {@link EmoticonSnapshot} was published.
+ */
+public class EmoticonChange {
+    
+    /**
+     * The version of the snapshot that resulted from this change.
+     */
+    public final long version;
+    
+    /**
+     * Emotes that were added (including emotes that replaced an equal emote).
+     */
+    public final Set<Emoticon> added;
+    
+    /**
+     * Emotes that were removed (and not replaced by an equal emote).
+     */
+    public final Set<Emoticon> removed;
+    
+    public EmoticonChange(long version, Set<Emoticon> added, Set<Emoticon> removed) {
+        this.version = version;
+        this.added = Collections.unmodifiableSet(added);
+        this.removed = Collections.unmodifiableSet(removed);
+    }
+    
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+    
+    /**
+     * Whether any emotes restricted to the given stream were added or
+     * removed.
+     * 
+     * @param stream
+     * @return 
+     */
+    public boolean hasStream(String stream) {
+        if (stream == null) {
+            return false;
+        }
+        return hasStream(added, stream) || hasStream(removed, stream);
+    }
+    
+    /**
+     * Whether any emotes without stream restriction and with a global
+     * emoteset were added or removed.
+     * 
+     * @return 
+     */
+    public boolean hasGlobal() {
+        return hasGlobal(added) || hasGlobal(removed);
+    }
+    
+    /**
+     * Whether any emotes without stream restriction that are only usable with
+     * a specific emoteset were added or removed.
+     * 
+     * @return 
+     */
+    public boolean hasEmoteset() {
+        return hasEmoteset(added) || hasEmoteset(removed);
+    }
+    
+    private static boolean hasStream(Set<Emoticon> emotes, String stream) {
+        for (Emoticon emote : emotes) {
+            if (emote.streamRestrictionContains(stream)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean hasGlobal(Set<Emoticon> emotes) {
+        for (Emoticon emote : emotes) {
+            if (!emote.hasStreamRestrictions() && emote.hasGlobalEmoteset()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean hasEmoteset(Set<Emoticon> emotes) {
+        for (Emoticon emote : emotes) {
+            if (!emote.hasStreamRestrictions() && !emote.hasGlobalEmoteset()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("v%d +%d -%d", version, added.size(), removed.size());
+    }
+    
+}
@@ -6,10 +6,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
@@ -185,6 +187,26 @@ public class EmoticonFavorites {
         }
     }
     
+    /**
+     * Try to find the favorites not found yet by looking up their code. Used
+     * for Emoji, where creating all Emoticon objects just to check them is not
+     * desirable. Should be called before the other find method, which creates
+     * the "dummy" Emoticon objects for the remaining favorites.
+     * 
+     * @param lookup Returns the Emoticon for the given code, or null
+     */
+    public final void find(Function<String, Emoticon> lookup) {
+        Iterator<Favorite> it = favoritesNotFound.values().iterator();
+        while (it.hasNext()) {
+            Favorite f = it.next();
+            Emoticon emote = lookup.apply(f.code);
+            if (emote != null && Objects.equals(f.emoteset, emote.emoteset)) {
+                favorites.put(f, emote);
+                it.remove();
+            }
+        }
+    }
+    
     /**
      * Create "dummy" Emoticon objects for not found favorites.
      */
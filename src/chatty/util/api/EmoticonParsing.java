@@ -2,12 +2,11 @@
 package chatty.util.api;
 
 import chatty.util.Debugging;
+import chatty.util.JSONReader;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Logger;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
 /**
  *
@@ -29,29 +28,36 @@ public class EmoticonParsing {
         }
         Set<Emoticon> emotes = new HashSet<>();
         Set<String> emotesets = new HashSet<>();
-        JSONParser parser = new JSONParser();
         int errors = 0;
         try {
-            JSONObject root = (JSONObject)parser.parse(json);
-            JSONObject sets = (JSONObject)root.get("emoticon_sets");
-            for (Object key : sets.keySet()) {
-                String emoteSet = (String)key;
-                JSONArray emoticons = (JSONArray)sets.get(key);
-                for (Object obj : emoticons) {
-                    JSONObject emote_json = (JSONObject)obj;
-                    Emoticon emote = parseEmoticon(emote_json, emoteSet);
-                    if (emote == null) {
-                        if (errors < 10) {
-                            LOGGER.warning("Error loading emote: "+emote_json);
-                        }
-                        errors++;
-                    } else {
-                        if (!Debugging.isEnabled("et") || !emote.code.equals("joshO")) {
-                            emotes.add(emote);
+            JSONReader reader = new JSONReader(json);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("emoticon_sets")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String emoteSet = reader.nextName();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Emoticon emote = parseEmoticon(reader, emoteSet);
+                        if (emote == null) {
+                            if (errors < 10) {
+                                LOGGER.warning("Error loading emote in set: "+emoteSet);
+                            }
+                            errors++;
+                        } else {
+                            if (!Debugging.isEnabled("et") || !emote.code.equals("joshO")) {
+                                emotes.add(emote);
+                            }
                         }
                     }
+                    reader.endArray();
+                    emotesets.add(emoteSet);
                 }
-                emotesets.add(emoteSet);
+                reader.endObject();
             }
             if (errors > 0) {
                 LOGGER.warning(errors+" emotes couldn't be loaded");
@@ -70,25 +76,49 @@ public class EmoticonParsing {
     }
     
     /**
-     * Parses an Emoticon from the given JSONObject.
+     * Parses an Emoticon.
      * 
-     * @param emote The JSONObject containing the emoticon data
-     * @return The Emoticon object or null if an error occured
+     * @param reader The reader, with the object containing the emoticon data
+     * as next value
+     * @param emoteSet The emoteset the emote is listed under
+     * @return The Emoticon object or null if required data is missing
+     * @throws ParseException 
      */
-    private static Emoticon parseEmoticon(JSONObject emote, String emoteSet) {
-        try {
-            String code = (String)emote.get("code");
-            int id = ((Number)emote.get("id")).intValue();
-            Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.TWITCH, code, null);
-            if (emote.get("emoticon_set") != null) {
-                emoteSet = String.valueOf(((Number)emote.get("emoticon_set")).longValue());
+    private static Emoticon parseEmoticon(JSONReader reader, String emoteSet) throws ParseException {
+        if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String code = null;
+        long id = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "code":
+                    code = reader.nextStringOrNull();
+                    break;
+                case "id":
+                    id = reader.nextLong(-1);
+                    break;
+                case "emoticon_set":
+                    if (reader.peek() == JSONReader.Token.NUMBER) {
+                        emoteSet = String.valueOf(reader.nextLong());
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
             }
-            b.setEmoteset(emoteSet);
-            b.setStringId(String.valueOf(id));
-            return b.build();
-        } catch (NullPointerException | ClassCastException ex) {
+        }
+        reader.endObject();
+        if (code == null || id == -1) {
             return null;
         }
+        Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.TWITCH, code, null);
+        b.setEmoteset(emoteSet);
+        b.setStringId(String.valueOf(id));
+        return b.build();
     }
-
+    
 }
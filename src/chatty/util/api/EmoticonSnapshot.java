@@ -0,0 +1,457 @@
+
+package chatty.util.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * An immutable state of the loaded emotes, sorted by their restrictions.
+ * 
+ * <p>
+ * A new snapshot is created from the previous one with a {@link Builder},
+ * which only copies the sets that are actually changed and records the
+ * emotes that were added and removed (compared to the previous snapshot, so
+ * removing an emote and adding it again unchanged is no change). Since a
+ * snapshot is never modified once it has been built, it can be read from any
+ * thread without locking.
+ * </p>
+ */
+public class EmoticonSnapshot {
+    
+    public static final EmoticonSnapshot EMPTY = new EmoticonSnapshot(0,
+            Collections.emptyMap(), Collections.emptyMap(),
+            Collections.emptySet(), Collections.emptySet());
+    
+    public final long version;
+    
+    private final Map<String, Set<Emoticon>> byEmoteset;
+    private final Map<String, Set<Emoticon>> byStream;
+    private final Set<Emoticon> globalTwitch;
+    private final Set<Emoticon> otherGlobal;
+    
+    private EmoticonSnapshot(long version,
+            Map<String, Set<Emoticon>> byEmoteset,
+            Map<String, Set<Emoticon>> byStream,
+            Set<Emoticon> globalTwitch,
+            Set<Emoticon> otherGlobal) {
+        this.version = version;
+        this.byEmoteset = byEmoteset;
+        this.byStream = byStream;
+        this.globalTwitch = globalTwitch;
+        this.otherGlobal = otherGlobal;
+    }
+    
+    /**
+     * Emotes associated with an emoteset (not including the global emoteset).
+     * 
+     * @param emoteset
+     * @return An unmodifiable Set, empty if none are found
+     */
+    public Set<Emoticon> getByEmoteset(String emoteset) {
+        Set<Emoticon> result = byEmoteset.get(emoteset);
+        return result != null ? result : Collections.emptySet();
+    }
+    
+    /**
+     * Emotes restricted to a stream (FFZ/BTTV).
+     * 
+     * @param stream
+     * @return An unmodifiable Set, empty if none are found
+     */
+    public Set<Emoticon> getByStream(String stream) {
+        Set<Emoticon> result = byStream.get(stream);
+        return result != null ? result : Collections.emptySet();
+    }
+    
+    public Set<Emoticon> getGlobalTwitch() {
+        return globalTwitch;
+    }
+    
+    public Set<Emoticon> getOtherGlobal() {
+        return otherGlobal;
+    }
+    
+    public Map<String, Set<Emoticon>> getAllByEmoteset() {
+        return byEmoteset;
+    }
+    
+    public Map<String, Set<Emoticon>> getAllByStream() {
+        return byStream;
+    }
+    
+    public int emotesetCount() {
+        return byEmoteset.size();
+    }
+    
+    public int streamCount() {
+        return byStream.size();
+    }
+    
+    public Builder builder() {
+        return new Builder(this);
+    }
+    
+    /**
+     * Creates a new snapshot based on an existing one. Not thread-safe, but
+     * the snapshot it is based on is not modified.
+     */
+    public static class Builder {
+        
+        private final long version;
+        private final Map<String, Set<Emoticon>> byEmoteset;
+        private final Map<String, Set<Emoticon>> byStream;
+        private Set<Emoticon> globalTwitch;
+        private Set<Emoticon> otherGlobal;
+        
+        /**
+         * Sets that have already been copied for this builder, so they can be
+         * modified, with the instance contained in the set for each emote.
+         */
+        private final Map<Set<Emoticon>, Map<Emoticon, Emoticon>> copied = new IdentityHashMap<>();
+        
+        /**
+         * The set each copied set was copied from.
+         */
+        private final Map<Set<Emoticon>, Set<Emoticon>> originals = new IdentityHashMap<>();
+        
+        /**
+         * The instance each changed emote had in the base snapshot (null if it
+         * wasn't in it) and the instance it has now (null if removed from all
+         * sets).
+         */
+        private final Map<Emoticon, Emoticon> before = new HashMap<>();
+        private final Map<Emoticon, Emoticon> after = new HashMap<>();
+        
+        private Builder(EmoticonSnapshot base) {
+            this.version = base.version;
+            this.byEmoteset = new HashMap<>(base.byEmoteset);
+            this.byStream = new HashMap<>(base.byStream);
+            this.globalTwitch = base.globalTwitch;
+            this.otherGlobal = base.otherGlobal;
+        }
+        
+        /**
+         * Adds the emote to the appropriate sets, depending on it's
+         * restrictions, replacing any equal emote, unless it has the same
+         * content.
+         * 
+         * @param emote 
+         * @return The instance that is in the snapshot now, which may be an
+         * equal emote that was already there
+         */
+        public Emoticon add(Emoticon emote) {
+            Set<String> streams = emote.getStreamRestrictions();
+            if (streams != null) {
+                for (String stream : streams) {
+                    add(writable(byStream, stream), emote);
+                }
+            } else if (emote.hasGlobalEmoteset()) {
+                if (emote.type == Emoticon.Type.TWITCH) {
+                    globalTwitch = writable(globalTwitch);
+                    add(globalTwitch, emote);
+                } else {
+                    otherGlobal = writable(otherGlobal);
+                    add(otherGlobal, emote);
+                }
+            } else {
+                add(writable(byEmoteset, emote.emoteset), emote);
+            }
+            return after.get(emote);
+        }
+        
+        private void add(Set<Emoticon> set, Emoticon emote) {
+            changed(emote);
+            Map<Emoticon, Emoticon> instances = copied.get(set);
+            Emoticon current = instances.get(emote);
+            Emoticon original = before.get(emote);
+            Emoticon result = emote;
+            if (current != null && sameContent(current, emote)) {
+                result = current;
+            } else if (original != null && sameContent(original, emote)) {
+                // Removed and added again unchanged
+                result = original;
+            }
+            if (result != current) {
+                set.remove(emote);
+                set.add(result);
+                instances.put(result, result);
+            }
+            after.put(emote, result);
+        }
+        
+        /**
+         * Removes the global (without stream restriction) non-Twitch emotes
+         * matching the filter.
+         * 
+         * @param filter
+         * @return The number of removed emotes
+         */
+        public int removeOtherGlobal(Predicate<Emoticon> filter) {
+            if (!containsMatch(otherGlobal, filter)) {
+                return 0;
+            }
+            otherGlobal = writable(otherGlobal);
+            return remove(otherGlobal, filter);
+        }
+        
+        /**
+         * Removes the emotes restricted to the given stream matching the
+         * filter.
+         * 
+         * @param stream
+         * @param filter
+         * @return The number of removed emotes
+         */
+        public int removeStream(String stream, Predicate<Emoticon> filter) {
+            Set<Emoticon> current = byStream.get(stream);
+            if (current == null || !containsMatch(current, filter)) {
+                return 0;
+            }
+            return remove(writable(byStream, stream), filter);
+        }
+        
+        /**
+         * Removes all emotes of the given emoteset.
+         * 
+         * @param emoteset
+         * @return The number of removed emotes
+         */
+        public int removeEmoteset(String emoteset) {
+            Set<Emoticon> current = byEmoteset.get(emoteset);
+            if (current == null) {
+                return 0;
+            }
+            for (Emoticon emote : current) {
+                changed(emote);
+            }
+            byEmoteset.remove(emoteset);
+            copied.remove(current);
+            originals.remove(current);
+            for (Emoticon emote : current) {
+                removed(emote);
+            }
+            return current.size();
+        }
+        
+        private int remove(Set<Emoticon> set, Predicate<Emoticon> filter) {
+            int count = 0;
+            Iterator<Emoticon> it = set.iterator();
+            while (it.hasNext()) {
+                Emoticon emote = it.next();
+                if (filter.test(emote)) {
+                    changed(emote);
+                    it.remove();
+                    copied.get(set).remove(emote);
+                    removed(emote);
+                    count++;
+                }
+            }
+            return count;
+        }
+        
+        /**
+         * Remember the instance the emote still has after it has been removed
+         * from a set, which is null only if it isn't in any other set.
+         * 
+         * @param emote The removed emote
+         */
+        private void removed(Emoticon emote) {
+            after.put(emote, find(emote));
+        }
+        
+        /**
+         * Remember the state before this builder, the first time an emote is
+         * changed. Must be called before the emote is modified.
+         * 
+         * @param emote The emote
+         */
+        private void changed(Emoticon emote) {
+            if (!before.containsKey(emote)) {
+                before.put(emote, find(emote));
+            }
+        }
+        
+        /**
+         * Find the instance of the emote in the sets it can be in, depending
+         * on it's restrictions (which are part of equality).
+         * 
+         * @param emote The emote
+         * @return The instance, or null if it isn't in any set
+         */
+        private Emoticon find(Emoticon emote) {
+            Set<String> streams = emote.getStreamRestrictions();
+            if (streams != null) {
+                for (String stream : streams) {
+                    Emoticon result = find(byStream.get(stream), emote);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+                return null;
+            } else if (emote.hasGlobalEmoteset()) {
+                if (emote.type == Emoticon.Type.TWITCH) {
+                    return find(globalTwitch, emote);
+                }
+                return find(otherGlobal, emote);
+            }
+            return find(byEmoteset.get(emote.emoteset), emote);
+        }
+        
+        private Emoticon find(Set<Emoticon> set, Emoticon emote) {
+            if (set == null || !set.contains(emote)) {
+                return null;
+            }
+            Map<Emoticon, Emoticon> instances = copied.get(set);
+            if (instances != null) {
+                return instances.get(emote);
+            }
+            for (Emoticon e : set) {
+                if (e.equals(emote)) {
+                    return e;
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Whether the equal emotes also have the same URLs and info, so one
+         * can stay in place of the other.
+         */
+        static boolean sameContent(Emoticon a, Emoticon b) {
+            return a.equals(b)
+                    && Objects.equals(a.url, b.url)
+                    && Objects.equals(a.urlX2, b.urlX2)
+                    && a.literal == b.literal
+                    && Objects.equals(a.stringId, b.stringId)
+                    && Objects.equals(a.stringIdAlias, b.stringIdAlias)
+                    && Objects.equals(a.creator, b.creator)
+                    && Objects.equals(a.getStream(), b.getStream())
+                    && Objects.equals(a.getEmotesetInfo(), b.getEmotesetInfo())
+                    && Objects.equals(a.getInfos(), b.getInfos())
+                    && a.isAnimated() == b.isAnimated();
+        }
+        
+        private static boolean containsMatch(Set<Emoticon> set, Predicate<Emoticon> filter) {
+            for (Emoticon emote : set) {
+                if (filter.test(emote)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Get a set that can be modified, copying it first if necessary.
+         */
+        private Set<Emoticon> writable(Set<Emoticon> set) {
+            if (copied.containsKey(set)) {
+                return set;
+            }
+            Set<Emoticon> copy = new HashSet<>(set);
+            Map<Emoticon, Emoticon> instances = new HashMap<>();
+            for (Emoticon emote : set) {
+                instances.put(emote, emote);
+            }
+            copied.put(copy, instances);
+            originals.put(copy, set);
+            return copy;
+        }
+        
+        private Set<Emoticon> writable(Map<String, Set<Emoticon>> map, String key) {
+            Set<Emoticon> set = map.get(key);
+            Set<Emoticon> result = writable(set != null ? set : Collections.emptySet());
+            if (result != set) {
+                map.put(key, result);
+            }
+            return result;
+        }
+        
+        /**
+         * Whether any emotes were added or removed, or moved between sets (for
+         * example an emote removed from only one of the streams it is in,
+         * which is not in the change).
+         * 
+         * @return 
+         */
+        public boolean hasChanged() {
+            for (Map.Entry<Emoticon, Emoticon> entry : before.entrySet()) {
+                if (entry.getValue() != after.get(entry.getKey())) {
+                    return true;
+                }
+            }
+            for (Map.Entry<Set<Emoticon>, Set<Emoticon>> entry : originals.entrySet()) {
+                if (!entry.getKey().equals(entry.getValue())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * The emotes added and removed so far, with the version the snapshot
+         * will have.
+         * 
+         * @return 
+         */
+        public EmoticonChange getChange() {
+            Set<Emoticon> added = new HashSet<>();
+            Set<Emoticon> removed = new HashSet<>();
+            for (Map.Entry<Emoticon, Emoticon> entry : before.entrySet()) {
+                Emoticon original = entry.getValue();
+                Emoticon current = after.get(entry.getKey());
+                if (current == null) {
+                    if (original != null) {
+                        removed.add(original);
+                    }
+                } else if (current != original) {
+                    // New or replaced by a changed emote
+                    added.add(current);
+                }
+            }
+            return new EmoticonChange(version + 1, added, removed);
+        }
+        
+        /**
+         * Creates the new snapshot. The builder should not be used anymore
+         * afterwards.
+         * 
+         * @return 
+         */
+        public EmoticonSnapshot build() {
+            return new EmoticonSnapshot(version + 1,
+                    freeze(byEmoteset),
+                    freeze(byStream),
+                    freeze(globalTwitch),
+                    freeze(otherGlobal));
+        }
+        
+        private Map<String, Set<Emoticon>> freeze(Map<String, Set<Emoticon>> map) {
+            Iterator<Map.Entry<String, Set<Emoticon>>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Set<Emoticon>> entry = it.next();
+                if (entry.getValue().isEmpty()) {
+                    it.remove();
+                } else if (copied.containsKey(entry.getValue())) {
+                    entry.setValue(freeze(entry.getValue()));
+                }
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        
+        private Set<Emoticon> freeze(Set<Emoticon> set) {
+            if (copied.containsKey(set)) {
+                return Collections.unmodifiableSet(set);
+            }
+            return set;
+        }
+        
+    }
+    
+}
@@ -3,6 +3,7 @@ package chatty.util.api;
 
 import chatty.Chatty;
 import chatty.Helper;
+import chatty.gui.emoji.EmojiCatalog;
 import chatty.gui.emoji.EmojiUtil;
 import chatty.util.CombinedEmoticon;
 import chatty.util.StringUtil;
@@ -19,17 +20,16 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.swing.Timer;
 
@@ -37,16 +37,23 @@ import javax.swing.Timer;
  * Add emoticons and get a list of them matching a certain emoteset.
  * 
  * <p>
- * Emotes are sorted into the {@code emoticons} map if they don't have a stream
- * restriction and into the {@code streamEmoticons} map if they have a stream
- * restriction. Emoticons in {@code streamEmoticons} may still have an emoteset
- * or other restrictions that should be checked. This is only done this way to
- * retrieve and iterate over a relatively small subset of all emotes.
+ * Emotes are sorted by emoteset if they don't have a stream restriction and
+ * by stream if they have a stream restriction. Emoticons sorted by stream may
+ * still have an emoteset or other restrictions that should be checked. This
+ * is only done this way to retrieve and iterate over a relatively small subset
+ * of all emotes.
  * </p>
  * 
  * <p>
- * This is generally not thread-safe and all methods should be only used from
- * the same thread (like in this case probably the EDT).
+ * The sorted emotes are stored in an immutable {@link EmoticonSnapshot},
+ * which is replaced as a whole when emotes are added or removed, so getting
+ * those emotes is safe from any thread. Listeners are informed about which
+ * emotes changed, see {@link #addChangeListener(ChangeListener)}.
+ * </p>
+ * 
+ * <p>
+ * Other than that this is generally not thread-safe and all methods should be
+ * only used from the same thread (like in this case probably the EDT).
  * </p>
  * 
  * @author tduva
@@ -81,9 +88,12 @@ public class Emoticons {
     }
     
     /**
-     * Emoticons associated with an emoteset (Twitch Emotes and others).
+     * The current emotes, sorted by emoteset, stream and global. Replaced
+     * with a new snapshot when emotes are added or removed.
      */
-    private final HashMap<String, HashSet<Emoticon>> emoticonsByEmoteset = new HashMap<>();
+    private volatile EmoticonSnapshot snapshot = EmoticonSnapshot.EMPTY;
+    
+    private final List<ChangeListener> listeners = new ArrayList<>();
     
     /**
      * All successfully loaded Custom Emotes.
@@ -96,38 +106,19 @@ public class Emoticons {
     private final Map<String, Emoticon> customEmotesById = new HashMap<>();
     
     /**
-     * Emoji should be sorted by length, so that longer Emoji (which can be
-     * combinations of several short Emoji characters) are checked first.
+     * The Emoji of the selected Emoji Set, Emoticon objects are only created
+     * when needed.
      */
-    private final Set<Emoticon> emoji = new TreeSet<>(new Comparator<Emoticon>() {
-            @Override
-            public int compare(Emoticon s1, Emoticon s2) {
-                int cmp = Integer.compare(s2.code.length(), s1.code.length());
-                return cmp != 0 ? cmp : s1.code.compareTo(s2.code);
-            }
-        });
-    
-    /**
-     * Only global Twitch emotes.
-     */
-    private final Set<Emoticon> globalTwitchEmotes = new HashSet<>();
+    private volatile EmojiCatalog emoji = EmojiCatalog.EMPTY;
     
     private final CheersUtil cheers = new CheersUtil();
     
     /**
-     * Only other (FFZ/BTTV) global emotes.
-     */
-    private final Set<Emoticon> otherGlobalEmotes = new HashSet<>();
-    
-    /**
-     * All loaded Twitch Emotes, by their Twitch Emote Id.
+     * All loaded Twitch Emotes, by their Twitch Emote Id. Also contains emotes
+     * only known from message tags, which are added often, so these are not
+     * part of the snapshot.
      */
-    private final HashMap<String,Emoticon> twitchEmotesById = new HashMap<>();
-    
-    /**
-     * Emoticons restricted to a channel (FrankerFaceZ/BTTV).
-     */
-    private final HashMap<String,HashSet<Emoticon>> streamEmoticons = new HashMap<>();
+    private final Map<String,Emoticon> twitchEmotesById = new ConcurrentHashMap<>();
     
     private final Map<String, Emoticon> combinedEmotes = new HashMap<>();
     
@@ -161,8 +152,6 @@ public class Emoticons {
     // Meta Information
     //==================
     
-    private static final HashSet<Emoticon> EMPTY_SET = new HashSet<>();
-    
     private final Set<String> ignoredEmotes = new HashSet<>();
     
     private final EmoticonFavorites favorites = new EmoticonFavorites();
@@ -171,8 +160,9 @@ public class Emoticons {
         Timer timer = new Timer(1*60*60*1000, e -> {
             int removedCount = 0;
             removedCount += clearOldEmoticonImages(twitchEmotesById.values());
-            removedCount += clearOldEmoticonImages(otherGlobalEmotes);
-            for (Set<Emoticon> emotes : streamEmoticons.values()) {
+            EmoticonSnapshot current = snapshot;
+            removedCount += clearOldEmoticonImages(current.getOtherGlobal());
+            for (Set<Emoticon> emotes : current.getAllByStream().values()) {
                 removedCount += clearOldEmoticonImages(emotes);
             }
             LOGGER.info("Cleared " + removedCount + " unused emoticon images");
@@ -181,14 +171,23 @@ public class Emoticons {
         timer.start();
     }
     
+    /**
+     * Removes and adds emotes as specified in the update, publishing a new
+     * snapshot if anything changed.
+     * 
+     * @param update 
+     */
     public void updateEmoticons(EmoticonUpdate update) {
-        removeEmoticons(update);
+        EmoticonSnapshot.Builder builder = snapshot.builder();
+        removeEmoticons(builder, update);
         if (!update.emotesToAdd.isEmpty()) {
-            addEmoticons(update.emotesToAdd);
+            addEmoticons(builder, update.emotesToAdd);
         }
+        publish(builder);
     }
     
-    private void removeEmoticons(EmoticonUpdate update) {
+    private void removeEmoticons(EmoticonSnapshot.Builder builder,
+            EmoticonUpdate update) {
         // If used for other types as well, may have to handle favorites
         if (update.typeToRemove == null) {
             return;
@@ -196,43 +195,24 @@ public class Emoticons {
         int removedCount = 0;
         if (update.typeToRemove == Emoticon.Type.FFZ
                 || update.typeToRemove == Emoticon.Type.BTTV) {
-            Iterator<Emoticon> it;
+            Predicate<Emoticon> filter = emote -> {
+                return emote.type == update.typeToRemove
+                        && (update.subTypeToRemove == null
+                            || emote.subType == update.subTypeToRemove);
+            };
             if (update.roomToRemove == null) {
                 // Global Non-Twitch
-                it = otherGlobalEmotes.iterator();
+                removedCount += builder.removeOtherGlobal(filter);
             }
             else {
                 // Channel-specific
-                if (!streamEmoticons.containsKey(update.roomToRemove)) {
-                    return;
-                }
-                it = streamEmoticons.get(update.roomToRemove).iterator();
-            }
-            // Check selected for removal
-            while (it.hasNext()) {
-                Emoticon emote = it.next();
-                if (emote.type == update.typeToRemove) {
-                    if (update.subTypeToRemove == null
-                            || emote.subType == update.subTypeToRemove) {
-                        it.remove();
-                        usableGlobalEmotes.remove(emote);
-                        if (update.roomToRemove != null &&
-                                usableStreamEmotes.containsKey(update.roomToRemove)) {
-                            usableStreamEmotes.get(update.roomToRemove).remove(emote);
-                        }
-                        removedCount++;
-                    }
-                }
+                removedCount += builder.removeStream(update.roomToRemove, filter);
             }
         }
         if (update.typeToRemove == Emoticon.Type.TWITCH
                 && update.setsToRemove != null) {
             for (String set : update.setsToRemove) {
-                Set<Emoticon> removed = emoticonsByEmoteset.remove(set);
-                if (removed != null) {
-                    removedCount += removed.size();
-                    removed.forEach(e -> usableGlobalEmotes.remove(e));
-                }
+                removedCount += builder.removeEmoteset(set);
             }
         }
         if (removedCount >= 0) {
@@ -246,17 +226,16 @@ public class Emoticons {
     }
     
     /**
-     * Adds the given emoticons and sorts them into different maps, depending
+     * Adds the given emoticons and sorts them into different sets, depending
      * on their restrictions.
      * 
      * <ul>
-     * <li>If they have a stream restriction, they will be put in the
-     * {@code streamEmoticons} map, with the stream name as the key. If there
-     * is more than one stream in the restriction, it will be added under
-     * several keys.</li>
-     * <li>If there is no stream restriction, then they will be put in the
-     * {@code emoticons} map, with the emoteset as the key. If no emoteset is
-     * defined, then {@code null} will be used as key.</li>
+     * <li>If they have a stream restriction, they will be put in the set for
+     * the stream. If there is more than one stream in the restriction, it will
+     * be added to several sets.</li>
+     * <li>If there is no stream restriction, then they will be put in the set
+     * for their emoteset, or in one of the global sets if they have a global
+     * emoteset.</li>
      * </ul>
      * 
      * <p>
@@ -266,75 +245,117 @@ public class Emoticons {
      * @param newEmoticons 
      */
     public void addEmoticons(Set<Emoticon> newEmoticons) {
-        for (Emoticon emote : newEmoticons) {
-            Set<String> channelRestrictions = emote.getStreamRestrictions();
-            if (channelRestrictions != null) {
-                // With channel restriction
-                for (String channel : channelRestrictions) {
-                    // Create channel set if necessary
-                    if (!streamEmoticons.containsKey(channel)) {
-                        streamEmoticons.put(channel, new HashSet<Emoticon>());
-                    }
-                    addEmote(streamEmoticons.get(channel), emote);
-                }
-            } else {
-                if (emote.hasGlobalEmoteset()) {
-                    // Global emotes
-                    if (emote.type == Emoticon.Type.TWITCH) {
-                        addEmote(globalTwitchEmotes, emote);
-                    } else {
-                        addEmote(otherGlobalEmotes, emote);
-                    }
-                } else {
-                    // Emoteset based
-                    String emoteset = emote.emoteset;
-                    if (!emoticonsByEmoteset.containsKey(emoteset)) {
-                        emoticonsByEmoteset.put(emoteset, new HashSet<>());
-                    }
-                    addEmote(emoticonsByEmoteset.get(emoteset), emote);
-                }
-            }
+        EmoticonSnapshot.Builder builder = snapshot.builder();
+        addEmoticons(builder, newEmoticons);
+        publish(builder);
+    }
+    
+    private void addEmoticons(EmoticonSnapshot.Builder builder,
+            Set<Emoticon> newEmoticons) {
+        for (Emoticon added : newEmoticons) {
+            Emoticon emote = builder.add(added);
             // By Twitch Emote ID
             if (emote.type == Emoticon.Type.TWITCH && emote.stringId != null) {
                 twitchEmotesById.put(emote.stringId, emote);
             }
         }
-        LOGGER.info("Added "+newEmoticons.size()+" emotes."
-                + " Now "+emoticonsByEmoteset.size()+" emotesets and "
-                +streamEmoticons.size()+" channels with exclusive emotes ("
-                +getGlobalTwitchEmotes().size()+" global emotes).");
+        LOGGER.info("Added "+newEmoticons.size()+" emotes.");
+    }
+    
+    /**
+     * Makes the new snapshot the current one, if anything changed, and
+     * informs the listeners about the added/removed emotes.
+     * 
+     * @param builder 
+     */
+    private void publish(EmoticonSnapshot.Builder builder) {
+        if (!builder.hasChanged()) {
+            return;
+        }
+        EmoticonChange change = builder.getChange();
+        snapshot = builder.build();
+        updateUsableEmotes(change);
         findFavorites();
+        LOGGER.info("Emotes "+change+". Now "+snapshot.emotesetCount()
+                +" emotesets and "+snapshot.streamCount()
+                +" channels with exclusive emotes ("
+                +snapshot.getGlobalTwitch().size()+" global emotes).");
+        for (ChangeListener listener : listeners) {
+            listener.emoticonsChanged(change);
+        }
     }
     
     /**
-     * Helper method to add an emote to a Collection.
+     * Update the emotes for TAB Completion with only the emotes that were
+     * actually added or removed.
      * 
-     * @param collection
-     * @param emote 
+     * @param change 
      */
-    private void addEmote(Collection<Emoticon> collection, Emoticon emote) {
-        /**
-         * Add emote codes for TAB Completion. Only add emotes the local user
-         * has access to.
-         */
+    private void updateUsableEmotes(EmoticonChange change) {
+        for (Emoticon emote : change.removed) {
+            usableGlobalEmotes.remove(emote);
+            Set<String> streams = emote.getStreamRestrictions();
+            if (streams != null) {
+                for (String stream : streams) {
+                    Set<Emoticon> usable = usableStreamEmotes.get(stream);
+                    if (usable != null) {
+                        usable.remove(emote);
+                    }
+                }
+            }
+        }
+        for (Emoticon emote : change.added) {
+            addUsable(emote);
+        }
+    }
+    
+    /**
+     * Add emote codes for TAB Completion. Only add emotes the local user has
+     * access to.
+     *
+     * @param emote
+     */
+    private void addUsable(Emoticon emote) {
         if ((emote.hasGlobalEmoteset() || localEmotesets.contains(emote.emoteset))) {
             if (!emote.hasStreamRestrictions()) {
+                usableGlobalEmotes.remove(emote);
                 usableGlobalEmotes.add(emote);
             } else {
                 for (String stream : emote.getStreamRestrictions()) {
                     if (!usableStreamEmotes.containsKey(stream)) {
                         usableStreamEmotes.put(stream, new HashSet<>());
                     }
+                    usableStreamEmotes.get(stream).remove(emote);
                     usableStreamEmotes.get(stream).add(emote);
                 }
             }
         }
+    }
+    
+    /**
+     * The current state of the emotes. The returned snapshot is immutable, so
+     * it can be used from any thread and it will always be consistent, even
+     * if a new one has been published in the meantime.
+     * 
+     * @return 
+     */
+    public EmoticonSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Add a listener that is informed when emotes were added or removed.
+     * Called in the thread that updated the emotes (usually the EDT).
+     * 
+     * @param listener 
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    public interface ChangeListener {
         
-        /**
-         * Add to collection.
-         */
-        collection.remove(emote);
-        collection.add(emote);
+        void emoticonsChanged(EmoticonChange change);
     }
     
     /**
@@ -363,23 +384,34 @@ public class Emoticons {
     }
     
     /**
-     * Get the sorted set of all Emoji. Note that this returns the original set,
-     * so it should not be modified and only be accessed out of the EDT.
+     * Get the catalog of the Emoji, which can be used to find Emoji without
+     * creating Emoticon objects for all of them.
      * 
      * @return 
      */
-    public Set<Emoticon> getEmoji() {
+    public EmojiCatalog getEmojiCatalog() {
         return emoji;
     }
     
+    /**
+     * Get all Emoji, sorted by length (longest first). This creates Emoticon
+     * objects for all Emoji, so it should only be used if all are actually
+     * needed.
+     * 
+     * @return 
+     */
+    public List<Emoticon> getEmoji() {
+        return emoji.getAll();
+    }
+    
     /**
      * Gets a list of all emoticons that don't have an emoteset associated
-     * with them. This returns the original Set, so it should not be modified.
+     * with them. This returns the unmodifiable Set of the current snapshot.
      * 
      * @return 
      */
     public Set<Emoticon> getGlobalTwitchEmotes() {
-        return globalTwitchEmotes;
+        return snapshot.getGlobalTwitch();
     }
     
     public Set<CheerEmoticon> getCheerEmotes() {
@@ -398,42 +430,34 @@ public class Emoticons {
     }
     
     public Set<Emoticon> getOtherGlobalEmotes() {
-        return otherGlobalEmotes;
+        return snapshot.getOtherGlobal();
     }
     
-    public HashMap<String, Emoticon> getEmoticonsById() {
+    public Map<String, Emoticon> getEmoticonsById() {
         return twitchEmotesById;
     }
     
     /**
      * Gets a list of emoticons that are associated with the given emoteset.
-     * This returns the original Set, so it should not be modified. Does not
+     * This returns the unmodifiable Set of the current snapshot. Does not
      * return emotes for the global emoteset (0).
      *
      * @param emoteSet
      * @return
      */
-    public HashSet<Emoticon> getEmoticonsBySet(String emoteSet) {
-        HashSet<Emoticon> result = emoticonsByEmoteset.get(emoteSet);
-        if (result == null) {
-            result = EMPTY_SET;
-        }
-        return result;
+    public Set<Emoticon> getEmoticonsBySet(String emoteSet) {
+        return snapshot.getByEmoteset(emoteSet);
     }
     
     /**
      * Gets a list of emoticons that are associated with the given channel. This
-     * returns the original Set, so it should not be modified.
+     * returns the unmodifiable Set of the current snapshot.
      *
      * @param stream The name of the channel
      * @return
      */
-    public HashSet<Emoticon> getEmoticonsByStream(String stream) {
-        HashSet<Emoticon> result = streamEmoticons.get(stream);
-        if (result == null) {
-            result = EMPTY_SET;
-        }
-        return result;
+    public Set<Emoticon> getEmoticonsByStream(String stream) {
+        return snapshot.getByStream(stream);
     }
     
     public Emoticon getCombinedEmote(List<Emoticon> emotes) {
@@ -454,7 +478,7 @@ public class Emoticons {
     
     public Collection<Emoticon> getUsableEmotesByStream(String stream) {
         Collection<Emoticon> names = usableStreamEmotes.get(stream);
-        return names == null ? EMPTY_SET : names;
+        return names == null ? Collections.emptySet() : names;
     }
     
     /**
@@ -634,8 +658,9 @@ public class Emoticons {
      */
     public Set<Emoticon> findMatchingEmoticons(String emoteCode) {
         Set<Emoticon> found = new HashSet<>();
-        found.addAll(findMatchingEmoticons(emoteCode, emoticonsByEmoteset.values()));
-        found.addAll(findMatchingEmoticons(emoteCode, streamEmoticons.values()));
+        EmoticonSnapshot current = snapshot;
+        found.addAll(findMatchingEmoticons(emoteCode, current.getAllByEmoteset().values()));
+        found.addAll(findMatchingEmoticons(emoteCode, current.getAllByStream().values()));
         return found;
     }
     
@@ -647,7 +672,7 @@ public class Emoticons {
      * @return 
      */
     public Set<Emoticon> findMatchingEmoticons(String emoteCode,
-            Collection<HashSet<Emoticon>> values) {
+            Collection<Set<Emoticon>> values) {
         Set<Emoticon> found = new HashSet<>();
         for (Collection<Emoticon> emotes : values) {
             for (Emoticon emote : emotes) {
@@ -740,7 +765,8 @@ public class Emoticons {
     }
     
     private void findFavorites() {
-        favorites.find(twitchEmotesById, otherGlobalEmotes, emoji, customEmotes);
+        favorites.find(emoji::getByCode);
+        favorites.find(twitchEmotesById, snapshot.getOtherGlobal(), customEmotes);
     }
     
     public Set<String> getFavoritesNonGlobalEmotesets() {
@@ -915,54 +941,27 @@ public class Emoticons {
     }
     
     /**
-     * Parses the Twitch emotes tag into an easier usable format.
+     * Parses the Twitch emotes tag into a compact format, with the ranges
+     * already converted to indices of the given text. Should be called on the
+     * thread that received the message, so the EDT doesn't have to.
      * 
      * @param tag The value of the emotes tag, can be null if no emotes are
      * supplied
-     * @return The TagEmotes object containing the Map of emotes and ranges, or
-     * null if the tag value was null (used for local messages for example,
+     * @param text The text the emotes tag refers to, may be null (in which
+     * case there are no emotes)
+     * @return The TagEmotes object containing the emotes and ranges, or null
+     * if the tag value was null (used for local messages for example,
      * indicating twitch emotes have to be parsed using regex)
      */
-    public static TagEmotes parseEmotesTag(String tag) {
-        Map<Integer, TagEmote> result = new HashMap<>();
+    public static TagEmotes parseEmotesTag(String tag, String text) {
         if (tag == null) {
             return null;
         }
-        String[] emotes = tag.split("/");
-        for (String emote : emotes) {
-            // Go through all emotes
-            int idEnd = emote.indexOf(":");
-            if (idEnd > 0) {
-                try {
-                    /**
-                     * Parse the emote id and ranges. If the format isn't as
-                     * expected, this emote or at least any further ranges for
-                     * this emote are ignored.
-                     */
-                    String id = emote.substring(0, idEnd);
-                    String[] emoteRanges = emote.substring(idEnd+1).split(",");
-                    
-                    // Save all ranges for this emote
-                    for (String range : emoteRanges) {
-                        String[] rangeSplit = range.split("-");
-                        int start = Integer.parseInt(rangeSplit[0]);
-                        int end = Integer.parseInt(rangeSplit[1]);
-                        if (end > start && start >= 0) {
-                            // Every start index should only appear once anyway,
-                            // so it can be used as key
-                            result.put(start, new TagEmote(id, end));
-                        }
-                    }
-                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
-                    // Simply ignore error and continue with the next emote
-                }
-            }
-        }
-        return new TagEmotes(result);
+        return TagEmotes.parse(tag, text);
     }
     
     public static void main(String[] args) {
-        System.out.println(parseEmotesTag("131:1-2,4-5/43:1-7"));
+        System.out.println(parseEmotesTag("131:1-2,4-5/43:1-7", "abcdefgh"));
         Set<Emoticon> a = new HashSet<>();
         Set<Emoticon> b = new HashSet<>();
         a.add(testBuild("abc"));
@@ -977,78 +976,363 @@ public class Emoticons {
     }
     
     /**
-     * Wrapping class for the Map of emote ids and their ranges.
+     * The emotes from the Twitch emotes tag, as parallel arrays of emote id,
+     * start and end (inclusive), sorted by start. The ranges are indices of
+     * the message text (UTF-16, not code points as in the tag).
+     * 
+     * <p>
+     * Emote ids are shared across messages, so that parsing or using this
+     * doesn't have to create objects for every single emote.
+     * </p>
+     * 
+     * <p>
+     * Immutable.
+     * </p>
      */
     public static class TagEmotes {
-        public final Map<Integer, TagEmote> emotes;
         
-        public TagEmotes(Map<Integer, TagEmote> emotes) {
-            this.emotes = emotes;
+        private static final TagEmotes EMPTY = new TagEmotes(null, new int[0], new int[0], new int[0], 0);
+        
+        /**
+         * The table new ids are added to. Replaced with a new one once it is
+         * full, so ids that aren't used anymore don't stay in memory forever.
+         * Parsed emotes keep a reference to the table they were added to.
+         */
+        private static volatile IdTable currentIds = new IdTable();
+        
+        private final IdTable idTable;
+        private final int[] ids;
+        private final int[] starts;
+        private final int[] ends;
+        private final int size;
+        
+        private TagEmotes(IdTable idTable, int[] ids, int[] starts, int[] ends, int size) {
+            this.idTable = idTable;
+            this.ids = ids;
+            this.starts = starts;
+            this.ends = ends;
+            this.size = size;
+        }
+        
+        /**
+         * The number of emote occurences.
+         * 
+         * @return 
+         */
+        public int size() {
+            return size;
+        }
+        
+        public String getId(int index) {
+            return idTable.get(ids[index]);
+        }
+        
+        /**
+         * The index in the text where the emote starts.
+         * 
+         * @param index The index of the emote occurence
+         * @return 
+         */
+        public int getStart(int index) {
+            return starts[index];
+        }
+        
+        /**
+         * The index in the text of the last character of the emote.
+         * 
+         * @param index The index of the emote occurence
+         * @return 
+         */
+        public int getEnd(int index) {
+            return ends[index];
+        }
+        
+        /**
+         * Parse the tag in the format "id:start-end,start-end/id:start-end".
+         * Invalid emotes or ranges, or ranges outside the text, are ignored.
+         * If several ranges have the same start, the last one is used.
+         * 
+         * @param tag The emotes tag, not null
+         * @param text The text, may be null
+         * @return The emotes, never null
+         */
+        private static TagEmotes parse(String tag, String text) {
+            if (tag.isEmpty() || text == null) {
+                return EMPTY;
+            }
+            // Number of ranges is at most the number of "-"
+            int capacity = 0;
+            for (int i = 0; i < tag.length(); i++) {
+                if (tag.charAt(i) == '-') {
+                    capacity++;
+                }
+            }
+            IdTable idTable = currentIds;
+            if (idTable.isFull()) {
+                idTable = new IdTable();
+                currentIds = idTable;
+            }
+            int[] ids = new int[capacity];
+            int[] starts = new int[capacity];
+            int[] ends = new int[capacity];
+            int size = 0;
+            
+            // Only needed if the text contains supplementary characters
+            int[] charIndices = getCharIndices(text);
+            int length = charIndices != null ? charIndices.length : text.length();
+            
+            int pos = 0;
+            while (pos < tag.length()) {
+                int emoteEnd = tag.indexOf('/', pos);
+                if (emoteEnd == -1) {
+                    emoteEnd = tag.length();
+                }
+                int idEnd = tag.indexOf(':', pos);
+                if (idEnd > pos && idEnd < emoteEnd) {
+                    int id = idTable.getIndex(tag, pos, idEnd);
+                    int rangePos = idEnd + 1;
+                    while (rangePos < emoteEnd) {
+                        int rangeEnd = tag.indexOf(',', rangePos);
+                        if (rangeEnd == -1 || rangeEnd > emoteEnd) {
+                            rangeEnd = emoteEnd;
+                        }
+                        int sep = tag.indexOf('-', rangePos);
+                        if (sep == -1 || sep > rangeEnd) {
+                            // Ignore any further ranges of this emote
+                            break;
+                        }
+                        int start = parseInt(tag, rangePos, sep);
+                        int end = parseInt(tag, sep + 1, rangeEnd);
+                        if (start == -1 || end == -1) {
+                            break;
+                        }
+                        if (end > start && end < length) {
+                            if (charIndices != null) {
+                                start = charIndices[start];
+                                // Include both chars if last is supplementary
+                                end = end + 1 < charIndices.length
+                                        ? charIndices[end + 1] - 1
+                                        : text.length() - 1;
+                            }
+                            size = insert(ids, starts, ends, size, id, start, end);
+                        }
+                        rangePos = rangeEnd + 1;
+                    }
+                }
+                pos = emoteEnd + 1;
+            }
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new TagEmotes(idTable, ids, starts, ends, size);
+        }
+        
+        /**
+         * Insert sorted by start, replacing an existing entry with the same
+         * start.
+         * 
+         * @return The new size
+         */
+        private static int insert(int[] ids, int[] starts, int[] ends, int size,
+                int id, int start, int end) {
+            int i = size;
+            while (i > 0 && starts[i - 1] > start) {
+                i--;
+            }
+            if (i > 0 && starts[i - 1] == start) {
+                ids[i - 1] = id;
+                ends[i - 1] = end;
+                return size;
+            }
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            System.arraycopy(starts, i, starts, i + 1, size - i);
+            System.arraycopy(ends, i, ends, i + 1, size - i);
+            ids[i] = id;
+            starts[i] = start;
+            ends[i] = end;
+            return size + 1;
+        }
+        
+        /**
+         * Parse a non-negative int.
+         * 
+         * @return The int, or -1 if invalid
+         */
+        private static int parseInt(String input, int start, int end) {
+            if (start >= end || end - start > 9) {
+                return -1;
+            }
+            int result = 0;
+            for (int i = start; i < end; i++) {
+                char c = input.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                result = result * 10 + (c - '0');
+            }
+            return result;
+        }
+        
+        /**
+         * Get the char index for each code point index, since Twitch counts
+         * supplementary characters (e.g. some Emoji) as one character.
+         * 
+         * @param text
+         * @return The char indices, or null if the text only contains BMP
+         * characters (so code point and char indices are equal)
+         */
+        private static int[] getCharIndices(String text) {
+            boolean supplementary = false;
+            for (int i = 0; i < text.length(); i++) {
+                if (Character.isHighSurrogate(text.charAt(i))) {
+                    supplementary = true;
+                    break;
+                }
+            }
+            if (!supplementary) {
+                return null;
+            }
+            int[] result = new int[text.codePointCount(0, text.length())];
+            int cp = 0;
+            for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+                result[cp++] = i;
+            }
+            return result;
         }
         
         @Override
         public String toString() {
-            return emotes.toString();
+            StringBuilder b = new StringBuilder("[");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    b.append(", ");
+                }
+                b.append(getId(i)).append(":").append(starts[i]).append("-").append(ends[i]);
+            }
+            return b.append("]").toString();
         }
 
         @Override
         public boolean equals(Object obj) {
-            if (obj == null) {
-                return false;
+            if (this == obj) {
+                return true;
             }
-            if (getClass() != obj.getClass()) {
+            if (obj == null || getClass() != obj.getClass()) {
                 return false;
             }
             final TagEmotes other = (TagEmotes) obj;
-            if (!Objects.equals(this.emotes, other.emotes)) {
+            if (size != other.size
+                    || !Arrays.equals(Arrays.copyOf(starts, size), Arrays.copyOf(other.starts, size))
+                    || !Arrays.equals(Arrays.copyOf(ends, size), Arrays.copyOf(other.ends, size))) {
                 return false;
             }
+            for (int i = 0; i < size; i++) {
+                // Different tables may use different numbers for the same id
+                if (idTable == other.idTable
+                        ? ids[i] != other.ids[i]
+                        : !getId(i).equals(other.getId(i))) {
+                    return false;
+                }
+            }
             return true;
         }
 
         @Override
         public int hashCode() {
             int hash = 3;
-            hash = 37 * hash + Objects.hashCode(this.emotes);
+            for (int i = 0; i < size; i++) {
+                hash = 37 * hash + getId(i).hashCode();
+                hash = 37 * hash + starts[i];
+            }
             return hash;
         }
     }
     
     /**
-     * Tag Emote with an id and a range end (the start should be the key
-     * referring to this object.
+     * Assigns each emote id a number, so ids can be stored as ints. Lookups
+     * can be done on part of a String, so no String has to be created for
+     * ids that are already known.
+     * 
+     * <p>
+     * Adding ids is synchronized, getting them is not, so rendering doesn't
+     * have to wait for parsing.
+     * </p>
      */
-    public static class TagEmote {
+    private static class IdTable {
+        
+        /**
+         * How many ids can be added before a new table should be used.
+         */
+        private static final int MAX_SIZE = 50000;
+        
+        /**
+         * Elements are only written before the array is (re)assigned, which
+         * publishes them to readers.
+         */
+        private volatile String[] byIndex = new String[256];
         
-        public final String id;
-        public final int end;
+        // Guarded by this
+        private int[] table = new int[512];
+        private int size;
         
-        public TagEmote(String id, int end) {
-            this.id = id;
-            this.end = end;
+        IdTable() {
+            Arrays.fill(table, -1);
         }
         
-        @Override
-        public String toString() {
-            return ">"+id+":"+end;
+        String get(int index) {
+            return byIndex[index];
         }
-    }
-    
-    private volatile Map<Pattern, String> emojiReplacement;
-    
-    public void addEmoji(String sourceId) {
-        emoji.clear();
-        emoji.addAll(EmojiUtil.makeEmoticons(sourceId));
-        Map<Pattern, String> replacements = new HashMap<>();
-        for (Emoticon e : emoji) {
-            if (e.stringId != null) {
-                replacements.put(Pattern.compile(e.stringId, Pattern.LITERAL), e.code);
+        
+        synchronized boolean isFull() {
+            return size >= MAX_SIZE;
+        }
+        
+        synchronized int getIndex(String input, int start, int end) {
+            String[] ids = byIndex;
+            int length = end - start;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + input.charAt(i);
+            }
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != -1) {
+                String id = ids[table[slot]];
+                if (id.length() == length && input.regionMatches(start, id, 0, length)) {
+                    return table[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size] = input.substring(start, end);
+            byIndex = ids;
+            table[slot] = size;
+            size++;
+            if (size * 2 > table.length) {
+                rehash();
             }
-            if (e.stringIdAlias != null) {
-                replacements.put(Pattern.compile(e.stringIdAlias, Pattern.LITERAL), e.code);
+            return size - 1;
+        }
+        
+        private void rehash() {
+            table = new int[table.length * 2];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = byIndex[i].hashCode() & mask;
+                while (table[slot] != -1) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i;
             }
         }
-        emojiReplacement = replacements;
+        
+    }
+    
+    public void addEmoji(String sourceId) {
+        emoji = EmojiUtil.makeCatalog(sourceId);
     }
     
     /**
@@ -1059,13 +1343,7 @@ public class Emoticons {
      * @return 
      */
     public String emojiReplace(String input) {
-        for (Pattern p : emojiReplacement.keySet()) {
-            Matcher m = p.matcher(input);
-            if (m.find()) {
-                input = p.matcher(input).replaceAll(emojiReplacement.get(p));
-            }
-        }
-        return input;
+        return emoji.replaceShortcodes(input);
     }
     
     public void setCheerEmotes(Set<CheerEmoticon> newCheerEmotes) {
@@ -2,7 +2,7 @@
 package chatty.util.api;
 
 import chatty.util.DateTime;
-import chatty.util.JSONUtil;
+import chatty.util.JSONReader;
 import chatty.util.StringUtil;
 import chatty.util.api.Follower.Type;
 import java.util.ArrayList;
@@ -14,7 +14,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 import java.util.Optional;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -227,57 +226,106 @@ public class FollowerManager {
             LOGGER.warning(type+" data null.");
             return null;
         }
+        String listName = type == Follower.Type.SUBSCRIBER ? "subscriptions" : "follows";
+        boolean listFound = false;
         try {
-            JSONParser parser = new JSONParser();
-            Object root = parser.parse(json);
-            if (!(root instanceof JSONObject)) {
+            JSONReader reader = new JSONReader(json);
+            if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
                 LOGGER.warning("Error parsing "+type+": root should be object");
                 return null;
             }
-            JSONObject data = (JSONObject)root;
-            
-            Object follows = data.get("follows");
-            if (type == Follower.Type.SUBSCRIBER) {
-                follows = data.get("subscriptions");
-            }
-            if (!(follows instanceof JSONArray)) {
-                LOGGER.warning("Error parsing "+type+": follows/subs should be object");
-                return null;
-            }
-            for (Object o : (JSONArray)follows) {
-                Follower follower = parseFollower(stream, o);
-                if (follower != null) {
-                    result.add(follower);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals(listName)
+                        && reader.peek() == JSONReader.Token.BEGIN_ARRAY) {
+                    listFound = true;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Follower follower = parseFollower(stream, reader);
+                        if (follower != null) {
+                            result.add(follower);
+                        }
+                    }
+                    reader.endArray();
+                } else if (name.equals("_total")) {
+                    total = reader.nextInt(-1);
+                } else {
+                    reader.skipValue();
                 }
             }
-            Object totalObject = data.get("_total");
-            if (totalObject instanceof Number) {
-                total = ((Number)totalObject).intValue();
-            }
+            reader.endObject();
         } catch (ParseException ex) {
             LOGGER.warning("Error parsing "+type+": "+ex);
             return null;
         }
+        if (!listFound) {
+            LOGGER.warning("Error parsing "+type+": follows/subs should be object");
+            return null;
+        }
         return new FollowerInfo(type, stream, result, total);
     }
     
-    private Follower parseFollower(String stream, Object o) {
+    /**
+     * Parses a single entry of the list.
+     * 
+     * @param stream
+     * @param reader The reader, with the entry object as next value
+     * @return The Follower, or null if required data is missing
+     * @throws ParseException 
+     */
+    private Follower parseFollower(String stream, JSONReader reader) throws ParseException {
+        if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String created_at = null;
+        String display_name = null;
+        String name = null;
+        String userCreatedString = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "created_at":
+                    created_at = reader.nextStringOrNull();
+                    break;
+                case "user":
+                    if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "display_name":
+                                display_name = reader.nextStringOrNull();
+                                break;
+                            case "name":
+                                name = reader.nextStringOrNull();
+                                break;
+                            case "created_at":
+                                userCreatedString = reader.nextStringOrNull();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
         try {
-            JSONObject data = (JSONObject)o;
-            String created_at = (String)data.get("created_at");
             long time = DateTime.parseDatetime(created_at);
-            JSONObject user = (JSONObject)data.get("user");
-            String display_name = (String)user.get("display_name");
-            String name = (String)user.get("name");
-            String userCreatedString = JSONUtil.getString(user, "created_at");
             long userCreated = -1;
             if (userCreatedString != null) {
                 userCreated = DateTime.parseDatetime(userCreatedString);
             }
-            
             return createFollowerItem(stream, name, display_name, time, userCreated);
         } catch (Exception ex) {
-            LOGGER.warning("Error parsing entry of "+type+": "+o+" ["+ex+"]");
+            LOGGER.warning("Error parsing entry of "+type+": "+name+" ["+ex+"]");
         }
         return null;
     }
@@ -26,8 +26,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.json.simple.JSONObject;
@@ -40,13 +38,11 @@ public class Requests {
     
     private static final Logger LOGGER = Logger.getLogger(Requests.class.getName());
     
-    private final ExecutorService executor;
     private final TwitchApi api;
     private final QueuedApi newApi;
     private final TwitchApiResultListener listener;
     
     public Requests(TwitchApi api, TwitchApiResultListener listener) {
-        executor = Executors.newCachedThreadPool();
         this.api = api;
         this.listener = listener;
         this.newApi = new QueuedApi();
@@ -316,7 +312,7 @@ public class Requests {
         if (allTagsRequestCount > 10) {
             return;
         }
-        newApi.add(url, "GET", token, (result, responseCode) -> {
+        newApi.addCached(url, token, (result, responseCode) -> {
             if (responseCode == 200) {
                 StreamTagsResult data = StreamTagManager.parseAllTags(result);
                 if (data != null) {
@@ -507,6 +503,7 @@ public class Requests {
         String url = "https://badges.twitch.tv/v1/badges/global/display?language=en";
         if (attemptRequest(url)) {
             TwitchApiRequest request = new TwitchApiRequest(url, "v5");
+            request.setCached(true);
             execute(request, r -> {
                 listener.receivedUsericons(api.badgeManager.handleGlobalBadgesResult(r.text));
             });
@@ -517,6 +514,7 @@ public class Requests {
         String url = "https://badges.twitch.tv/v1/badges/channels/"+roomId+"/display?language=en";
         if (attemptRequest(url)) {
             TwitchApiRequest request = new TwitchApiRequest(url, "v5");
+            request.setCached(true);
             execute(request, r -> {
                 listener.receivedUsericons(api.badgeManager.handleRoomBadgesResult(r.text, stream));
             });
@@ -529,6 +527,7 @@ public class Requests {
             String url = "https://api.twitch.tv/kraken/chat/emoticon_images?emotesets="+emotesetsParam;
             if (attemptRequest(url)) {
                 TwitchApiRequest request = new TwitchApiRequest(url, "v5");
+                request.setCached(true);
                 execute(request, r -> {
                     EmoticonUpdate result = EmoticonParsing.parseEmoticonSets(r.text, EmoticonUpdate.Source.OTHER);
                     if (result != null) {
@@ -571,6 +570,7 @@ public class Requests {
         String url = "https://api.twitch.tv/kraken/bits/actions?channel_id="+channelId+"&include_sponsored=1";
         if (attemptRequest(url)) {
             TwitchApiRequest request = new TwitchApiRequest(url, "v5");
+            request.setCached(true);
             execute(request, r -> {
                 api.cheersManager2.dataReceived(r.text, stream, channelId);
             });
@@ -613,7 +613,7 @@ public class Requests {
                 listener.result(new RequestResult(result, responseCode));
             }
         });
-        executor.execute(request);
+        request.runAsync();
     }
     
     public interface RequestResultListener {
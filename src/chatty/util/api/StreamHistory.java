@@ -0,0 +1,662 @@
+
+package chatty.util.api;
+
+import chatty.util.api.StreamInfo.StreamType;
+import chatty.util.api.StreamTagManager.StreamTag;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Stores the history of viewercount and stream status of a single stream.
+ *
+ * <p>
+ * Times (in seconds, relative to a base time) and viewercounts are stored in
+ * primitive arrays. The stream status (title, game, type, tags) only changes
+ * occasionally, so it is stored as segments, each covering a range of
+ * entries. Offline entries are stored as a viewercount of -1 in an offline
+ * segment.
+ * </p>
+ *
+ * <p>
+ * The arrays are only appended to and replaced when they have to grow, so a
+ * {@link Snapshot} can share them without copying. Entries older than
+ * {@link #MAX_AGE} are removed when the arrays grow.
+ * </p>
+ *
+ * <p>
+ * Persisted with timestamps and viewercounts delta encoded as variable length
+ * integers.
+ * </p>
+ */
+public class StreamHistory {
+
+    /**
+     * How long to keep entries, in milliseconds (30 days).
+     */
+    public static final long MAX_AGE = 30L*24*60*60*1000;
+
+    private static final int VERSION = 1;
+
+    private static final Status OFFLINE = new Status(false, null, null, null,
+            null, -1, -1);
+
+    private long baseTime = -1;
+    private int[] times = new int[16];
+    private int[] viewers = new int[16];
+    private int size;
+
+    private int[] segmentStart = new int[4];
+    private Status[] segments = new Status[4];
+    private int segmentCount;
+
+    private boolean changed;
+
+    public synchronized void add(long time, int viewerCount, String status,
+            String game, StreamType streamType, List<StreamTag> communities,
+            long started, long startedWithPicnic) {
+        add(time, viewerCount, new Status(true, status, game, streamType,
+                communities, started, startedWithPicnic));
+    }
+
+    public synchronized void addOffline(long time) {
+        add(time, -1, OFFLINE);
+    }
+
+    private void add(long time, int viewerCount, Status status) {
+        if (baseTime == -1) {
+            baseTime = time;
+        }
+        if (size == times.length) {
+            grow(time);
+        }
+        int offset = (int)((time - baseTime) / 1000);
+        if (size > 0 && offset < times[size - 1]) {
+            // Time went backwards (e.g. clock changed), keep sorted
+            offset = times[size - 1];
+        }
+        times[size] = offset;
+        viewers[size] = viewerCount;
+        if (segmentCount == 0 || !segments[segmentCount - 1].equals(status)) {
+            if (segmentCount == segments.length) {
+                segmentStart = Arrays.copyOf(segmentStart, segmentCount * 2);
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            segmentStart[segmentCount] = size;
+            segments[segmentCount] = status;
+            segmentCount++;
+        }
+        size++;
+        changed = true;
+    }
+
+    /**
+     * Replace the arrays with larger ones, removing entries that are too old.
+     * Existing snapshots keep using the old arrays.
+     */
+    private void grow(long now) {
+        int remove = 0;
+        long removeBefore = now - MAX_AGE;
+        while (remove < size && getTime(baseTime, times[remove]) < removeBefore) {
+            remove++;
+        }
+        int newSize = size - remove;
+        int capacity = Math.max(16, newSize * 2);
+        int[] newTimes = new int[capacity];
+        int[] newViewers = new int[capacity];
+        System.arraycopy(times, remove, newTimes, 0, newSize);
+        System.arraycopy(viewers, remove, newViewers, 0, newSize);
+
+        // Keep the segment covering the first remaining entry
+        int firstSegment = findSegment(segmentStart, segmentCount, remove);
+        if (firstSegment == -1) {
+            firstSegment = 0;
+        }
+        int newSegmentCount = segmentCount - firstSegment;
+        int[] newSegmentStart = new int[Math.max(4, segmentCount)];
+        Status[] newSegments = new Status[newSegmentStart.length];
+        for (int i = 0; i < newSegmentCount; i++) {
+            newSegmentStart[i] = Math.max(0, segmentStart[firstSegment + i] - remove);
+            newSegments[i] = segments[firstSegment + i];
+        }
+        if (newSize == 0) {
+            newSegmentCount = 0;
+        }
+
+        // Rebase, so offsets don't grow indefinitely
+        if (newSize > 0 && newTimes[0] > 0) {
+            int shift = newTimes[0];
+            for (int i = 0; i < newSize; i++) {
+                newTimes[i] -= shift;
+            }
+            baseTime += shift * 1000L;
+        } else if (newSize == 0) {
+            baseTime = now;
+        }
+
+        times = newTimes;
+        viewers = newViewers;
+        size = newSize;
+        segmentStart = newSegmentStart;
+        segments = newSegments;
+        segmentCount = newSegmentCount;
+    }
+
+    private static long getTime(long baseTime, int offset) {
+        return baseTime + offset * 1000L;
+    }
+
+    /**
+     * Find the segment containing the given entry index.
+     */
+    private static int findSegment(int[] segmentStart, int segmentCount, int index) {
+        int low = 0;
+        int high = segmentCount - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (segmentStart[mid] <= index) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get an immutable view of the current data. This doesn't copy the data.
+     *
+     * @return
+     */
+    public synchronized Snapshot getSnapshot() {
+        return new Snapshot(baseTime, times, viewers, size,
+                segmentStart, segments, segmentCount);
+    }
+
+    /**
+     * Whether entries have been added since the last time this was called.
+     *
+     * @return
+     */
+    public synchronized boolean checkChanged() {
+        boolean result = changed;
+        changed = false;
+        return result;
+    }
+
+    //=============
+    // Persistence
+    //=============
+
+    public void write(OutputStream output) throws IOException {
+        Snapshot s = getSnapshot();
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(VERSION);
+        writeVarLong(out, s.size);
+        long prevTime = 0;
+        int prevViewers = 0;
+        for (int i = 0; i < s.size; i++) {
+            long time = s.getTime(i) / 1000;
+            writeVarLong(out, time - prevTime);
+            writeVarLong(out, zigzag(s.getViewers(i) - prevViewers));
+            prevTime = time;
+            prevViewers = s.getViewers(i);
+        }
+        writeVarLong(out, s.segmentCount);
+        for (int i = 0; i < s.segmentCount; i++) {
+            writeVarLong(out, s.segmentStart[i]);
+            Status status = s.segments[i];
+            out.writeBoolean(status == OFFLINE);
+            if (status != OFFLINE) {
+                writeString(out, status.status);
+                writeString(out, status.game);
+                writeString(out, status.streamType != null ? status.streamType.name() : null);
+                out.writeLong(status.started);
+                out.writeLong(status.startedWithPicnic);
+                writeVarLong(out, status.communities != null ? status.communities.size() : 0);
+                if (status.communities != null) {
+                    for (StreamTag tag : status.communities) {
+                        writeString(out, tag.getId());
+                        writeString(out, tag.getDisplayName());
+                    }
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read data previously written with {@link #write(OutputStream)}. The
+     * read data is added before any entries already in this history.
+     *
+     * @param input
+     * @throws IOException If the data couldn't be read
+     */
+    public void read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unknown version "+version);
+        }
+        int count = (int)readVarLong(in);
+        long[] readTimes = new long[count];
+        int[] readViewers = new int[count];
+        long time = 0;
+        int viewerCount = 0;
+        for (int i = 0; i < count; i++) {
+            time += readVarLong(in);
+            viewerCount += unzigzag(readVarLong(in));
+            readTimes[i] = time * 1000;
+            readViewers[i] = viewerCount;
+        }
+        int readSegmentCount = (int)readVarLong(in);
+        int[] readSegmentStart = new int[readSegmentCount];
+        Status[] readSegments = new Status[readSegmentCount];
+        for (int i = 0; i < readSegmentCount; i++) {
+            readSegmentStart[i] = (int)readVarLong(in);
+            if (in.readBoolean()) {
+                readSegments[i] = OFFLINE;
+            } else {
+                String status = readString(in);
+                String game = readString(in);
+                String type = readString(in);
+                long started = in.readLong();
+                long startedWithPicnic = in.readLong();
+                int tagCount = (int)readVarLong(in);
+                List<StreamTag> tags = tagCount > 0 ? new ArrayList<>() : null;
+                for (int t = 0; t < tagCount; t++) {
+                    String id = readString(in);
+                    String name = readString(in);
+                    tags.add(new StreamTag(id, name, null, false));
+                }
+                readSegments[i] = new Status(true, status, game,
+                        parseStreamType(type), tags, started, startedWithPicnic);
+            }
+        }
+
+        synchronized (this) {
+            Snapshot current = getSnapshot();
+            long minTime = System.currentTimeMillis() - MAX_AGE;
+            long[] allTimes = new long[count + current.size];
+            int[] allViewers = new int[allTimes.length];
+            Status[] allStatus = new Status[allTimes.length];
+            int segment = 0;
+            for (int i = 0; i < count; i++) {
+                while (segment + 1 < readSegmentCount && readSegmentStart[segment + 1] <= i) {
+                    segment++;
+                }
+                allTimes[i] = readTimes[i];
+                allViewers[i] = readViewers[i];
+                allStatus[i] = readSegmentCount > 0 ? readSegments[segment] : OFFLINE;
+            }
+            for (int i = 0; i < current.size; i++) {
+                allTimes[count + i] = current.getTime(i);
+                allViewers[count + i] = current.getViewers(i);
+                allStatus[count + i] = current.getStatus(i);
+            }
+            baseTime = -1;
+            times = new int[Math.max(16, allTimes.length * 2)];
+            viewers = new int[times.length];
+            size = 0;
+            segmentStart = new int[4];
+            segments = new Status[4];
+            segmentCount = 0;
+            boolean prevChanged = changed;
+            for (int i = 0; i < allTimes.length; i++) {
+                if (allTimes[i] >= minTime) {
+                    add(allTimes[i], allViewers[i], allStatus[i]);
+                }
+            }
+            changed = prevChanged;
+        }
+    }
+
+    private static StreamType parseStreamType(String type) {
+        if (type != null) {
+            for (StreamType t : StreamType.values()) {
+                if (t.name().equals(type)) {
+                    return t;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(long value) {
+        return (int)((value >>> 1) ^ -(value & 1));
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new EOFException("Invalid varint");
+    }
+
+    //===========
+    // Snapshot
+    //===========
+
+    /**
+     * An immutable view of the history at the time it was created.
+     */
+    public static class Snapshot {
+
+        public static final Snapshot EMPTY = new StreamHistory().getSnapshot();
+
+        private final long baseTime;
+        private final int[] times;
+        private final int[] viewers;
+        private final int size;
+        private final int[] segmentStart;
+        private final Status[] segments;
+        private final int segmentCount;
+
+        private Snapshot(long baseTime, int[] times, int[] viewers, int size,
+                int[] segmentStart, Status[] segments, int segmentCount) {
+            this.baseTime = baseTime;
+            this.times = times;
+            this.viewers = viewers;
+            this.size = size;
+            this.segmentStart = segmentStart;
+            this.segments = segments;
+            this.segmentCount = segmentCount;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * The time of the entry.
+         *
+         * @param index
+         * @return The time in milliseconds
+         */
+        public long getTime(int index) {
+            return StreamHistory.getTime(baseTime, times[index]);
+        }
+
+        /**
+         * The viewercount of the entry.
+         *
+         * @param index
+         * @return The viewercount, -1 if the stream was offline
+         */
+        public int getViewers(int index) {
+            return viewers[index];
+        }
+
+        public boolean isOnline(int index) {
+            return getStatus(index) != OFFLINE;
+        }
+
+        public StreamType getStreamType(int index) {
+            return getStatus(index).streamType;
+        }
+
+        public List<StreamTag> getCommunities(int index) {
+            return getStatus(index).communities;
+        }
+
+        /**
+         * The index of the status segment this entry belongs to. Consecutive
+         * entries with the same status have the same segment.
+         *
+         * @param index
+         * @return
+         */
+        public int getSegment(int index) {
+            return findSegment(segmentStart, segmentCount, index);
+        }
+
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        /**
+         * The status and game of the segment.
+         *
+         * @param segment
+         * @return The concatenated status and game, or null if offline
+         */
+        public String getSegmentStatusAndGame(int segment) {
+            return segments[segment].statusAndGame;
+        }
+
+        private Status getStatus(int index) {
+            return segments[getSegment(index)];
+        }
+
+        /**
+         * Create an item with all information about an entry.
+         *
+         * @param index
+         * @return
+         */
+        public StreamInfoHistoryItem getItem(int index) {
+            Status status = getStatus(index);
+            if (status == OFFLINE) {
+                return new StreamInfoHistoryItem(getTime(index));
+            }
+            return new StreamInfoHistoryItem(getTime(index), viewers[index],
+                    status.status, status.game, status.streamType,
+                    status.communities, status.started, status.startedWithPicnic);
+        }
+
+        /**
+         * Find the first entry with a time equal to or larger than the given
+         * time.
+         *
+         * @param time The time in milliseconds
+         * @return The index, or size() if all entries are before the time
+         */
+        public int findFirstAtOrAfter(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getTime(mid) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Find the last entry with a time equal to or smaller than the given
+         * time.
+         *
+         * @param time The time in milliseconds
+         * @return The index, or -1 if all entries are after the time
+         */
+        public int findLastAtOrBefore(long time) {
+            return findFirstAtOrAfter(time + 1) - 1;
+        }
+
+        /**
+         * Find the entry with exactly the given time.
+         *
+         * @param time The time in milliseconds
+         * @return The index, or -1 if no entry has that time
+         */
+        public int indexOf(long time) {
+            int index = findFirstAtOrAfter(time);
+            if (index < size && getTime(index) == time) {
+                return index;
+            }
+            return -1;
+        }
+
+        /**
+         * Select entries in the given range that are enough to draw it at the
+         * given resolution. If there are more entries than buckets, the range
+         * is split into buckets of equal time and the entries with the
+         * minimum and maximum viewercount of each bucket are selected (as well
+         * as the first and last entry and status changes), so the shape of
+         * the graph stays the same.
+         *
+         * @param from The first index (inclusive)
+         * @param to The last index (inclusive)
+         * @param buckets The number of buckets, usually the width in pixels
+         * @return The selected indices, in ascending order
+         */
+        public int[] downsample(int from, int to, int buckets) {
+            if (from > to) {
+                return new int[0];
+            }
+            int count = to - from + 1;
+            if (count <= buckets * 2 || buckets < 1) {
+                int[] result = new int[count];
+                for (int i = 0; i < count; i++) {
+                    result[i] = from + i;
+                }
+                return result;
+            }
+            int[] result = new int[buckets * 4 + 2];
+            int resultCount = 0;
+            long start = getTime(from);
+            double bucketLength = (getTime(to) - start + 1) / (double)buckets;
+            int index = from;
+            int prevSegment = -1;
+            while (index <= to) {
+                int bucket = (int)((getTime(index) - start) / bucketLength);
+                long bucketEnd = start + (long)Math.ceil((bucket + 1) * bucketLength);
+                int min = index;
+                int max = index;
+                int first = index;
+                int segmentChange = -1;
+                for (; index <= to && getTime(index) < bucketEnd; index++) {
+                    if (viewers[index] < viewers[min]) {
+                        min = index;
+                    }
+                    if (viewers[index] > viewers[max]) {
+                        max = index;
+                    }
+                    int segment = getSegment(index);
+                    if (segment != prevSegment && segmentChange == -1) {
+                        segmentChange = index;
+                    }
+                    prevSegment = segment;
+                }
+                if (index == first) {
+                    // Rounding, make sure to always advance
+                    index++;
+                }
+                int last = index - 1;
+                int[] selected = new int[]{first, min, max, segmentChange, last};
+                Arrays.sort(selected);
+                for (int i : selected) {
+                    if (i != -1 && (resultCount == 0 || result[resultCount - 1] != i)) {
+                        if (resultCount == result.length) {
+                            result = Arrays.copyOf(result, result.length * 2);
+                        }
+                        result[resultCount++] = i;
+                    }
+                }
+            }
+            return Arrays.copyOf(result, resultCount);
+        }
+
+    }
+
+    /**
+     * The status of the stream, which is the same for many entries.
+     */
+    private static class Status {
+
+        private final boolean online;
+        private final String status;
+        private final String game;
+        private final String statusAndGame;
+        private final StreamType streamType;
+        private final List<StreamTag> communities;
+        private final long started;
+        private final long startedWithPicnic;
+
+        Status(boolean online, String status, String game, StreamType streamType,
+                List<StreamTag> communities, long started, long startedWithPicnic) {
+            this.online = online;
+            this.status = status;
+            this.game = game;
+            this.statusAndGame = online ? status+game : null;
+            this.streamType = streamType;
+            this.communities = communities;
+            this.started = started;
+            this.startedWithPicnic = startedWithPicnic;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Status other = (Status) obj;
+            return online == other.online
+                    && started == other.started
+                    && startedWithPicnic == other.startedWithPicnic
+                    && streamType == other.streamType
+                    && Objects.equals(status, other.status)
+                    && Objects.equals(game, other.game)
+                    && Objects.equals(communities, other.communities);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(status, game, streamType, started);
+        }
+
+    }
+
+}
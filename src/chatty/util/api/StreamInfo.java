@@ -7,7 +7,6 @@ import chatty.util.ElapsedTime;
 import chatty.util.StringUtil;
 import chatty.util.api.StreamTagManager.StreamTag;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -101,7 +100,7 @@ public class StreamInfo {
     private String currentFullStatus;
     private String prevFullStatus;
     
-    private final LinkedHashMap<Long, StreamInfoHistoryItem> history = new LinkedHashMap<>();
+    private final StreamHistory history = new StreamHistory();
     
     private int expiresAfter = 300;
     
@@ -228,11 +227,10 @@ public class StreamInfo {
             this.online = true;
 
             if (saveToHistory) {
-                addHistoryItem(System.currentTimeMillis(),
-                        new StreamInfoHistoryItem(System.currentTimeMillis(),
-                                viewers, status, game,
-                                streamType, getCommunities(),
-                                getTimeStarted(), getTimeStartedWithPicnic()));
+                history.add(System.currentTimeMillis(),
+                        viewers, status, game,
+                        streamType, getCommunities(),
+                        getTimeStarted(), getTimeStartedWithPicnic());
             }
             result = setUpdateSucceeded(true);
         }
@@ -259,7 +257,7 @@ public class StreamInfo {
                 }
                 recheckOffline = -1;
                 this.online = false;
-                addHistoryItem(System.currentTimeMillis(), new StreamInfoHistoryItem(System.currentTimeMillis()));
+                history.addOffline(System.currentTimeMillis());
             }
             result = setUpdateSucceeded(true);
         }
@@ -670,16 +668,23 @@ public class StreamInfo {
                 " Viewers: "+viewers;
     }
     
-    private void addHistoryItem(Long time, StreamInfoHistoryItem item) {
-        synchronized(history) {
-            history.put(time, item);
-        }
+    /**
+     * Get the current history. This doesn't copy the data, so it's cheap to
+     * call often.
+     * 
+     * @return An immutable view of the current history
+     */
+    public StreamHistory.Snapshot getHistory() {
+        return history.getSnapshot();
     }
     
-    public LinkedHashMap<Long,StreamInfoHistoryItem> getHistory() {
-        synchronized(history) {
-            return new LinkedHashMap<>(history);
-        }
+    /**
+     * The history store itself, for loading and saving.
+     * 
+     * @return 
+     */
+    public StreamHistory getHistoryStore() {
+        return history;
     }
     
     /**
@@ -714,17 +719,15 @@ public class StreamInfo {
             StringBuilder b = new StringBuilder();
             // Initiate with -2, because -1 already means offline
             int prevViewers = -2;
-            for (long time : history.keySet()) {
-                if (time < startAt) {
-                    continue;
-                }
-                // Start doing anything for values >= startAt
+            StreamHistory.Snapshot data = history.getSnapshot();
+            for (int i = data.findFirstAtOrAfter(startAt); i < data.size(); i++) {
+                long time = data.getTime(i);
                 
                 // Update so that it contains the last value that was looked at
                 // at the end of this method
                 lastViewerStats = time;
                 
-                int viewers = history.get(time).getViewers();
+                int viewers = data.getViewers(i);
 
                 // Append to viewercount development String
                 if (prevViewers > -1 && viewers != -1) {
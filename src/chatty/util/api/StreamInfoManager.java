@@ -6,10 +6,20 @@ import chatty.util.ElapsedTime;
 import chatty.util.JSONUtil;
 import chatty.util.StringUtil;
 import chatty.util.api.StreamInfo.StreamType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -89,6 +99,27 @@ public class StreamInfoManager {
     private final StreamInfoListener listener;
     private final TwitchApi api;
     
+    /**
+     * Where to load and save the history of streams, null to not persist it.
+     */
+    private Path historyDir;
+    
+    /**
+     * Loads the history files, so that the file access doesn't happen while
+     * holding the lock (getStreamInfo() is also called from the EDT).
+     */
+    private final ExecutorService historyLoader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "StreamHistoryLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /**
+     * StreamInfo objects whose history hasn't been loaded yet, which must not
+     * be saved, since that would overwrite the file.
+     */
+    private final Set<StreamInfo> historyLoading = new HashSet<>();
+    
     /**
      * A StreamInfo object to represent invalid stream info.
      */
@@ -192,10 +223,101 @@ public class StreamInfoManager {
             cached = new StreamInfo(stream, listener);
             cached.setExpiresAfter(UPDATE_STREAMINFO_DELAY);
             cachedStreamInfo.put(stream, cached);
+            loadHistory(cached);
         }
         return cached;
     }
     
+    //=========
+    // History
+    //=========
+    
+    /**
+     * Set the directory to persist the history of streams in. Should be set
+     * before any StreamInfo is requested, since the history is only loaded
+     * when the StreamInfo is created.
+     * 
+     * @param dir The directory, or null to not persist the history
+     */
+    public synchronized void setHistoryDirectory(Path dir) {
+        this.historyDir = dir;
+    }
+    
+    private Path getHistoryFile(String stream) {
+        if (historyDir == null || !stream.matches("[a-z0-9_]+")) {
+            return null;
+        }
+        return historyDir.resolve(stream);
+    }
+    
+    /**
+     * Load the history of the given stream in the background. The loaded
+     * entries are merged with any already added in the meantime, and will be
+     * shown with the next update of the stream info.
+     * 
+     * @param info 
+     */
+    private void loadHistory(StreamInfo info) {
+        Path file = getHistoryFile(info.stream);
+        if (file == null) {
+            return;
+        }
+        historyLoading.add(info);
+        historyLoader.execute(() -> {
+            try {
+                if (Files.isRegularFile(file)) {
+                    try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+                        info.getHistoryStore().read(input);
+                        LOGGER.info("Loaded history of "+info.stream+" ("+info.getHistory().size()+" entries)");
+                    } catch (IOException ex) {
+                        LOGGER.warning("Error loading history of "+info.stream+": "+ex);
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    historyLoading.remove(info);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Save the history of all streams that have changed since the last save.
+     */
+    public synchronized void saveHistory() {
+        if (historyDir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(historyDir);
+        } catch (IOException ex) {
+            LOGGER.warning("Error creating history directory: "+ex);
+            return;
+        }
+        int saved = 0;
+        for (StreamInfo info : cachedStreamInfo.values()) {
+            Path file = getHistoryFile(info.stream);
+            if (file == null || historyLoading.contains(info)
+                    || !info.getHistoryStore().checkChanged()) {
+                continue;
+            }
+            Path temp = file.resolveSibling(file.getFileName()+".tmp");
+            try {
+                try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    info.getHistoryStore().write(output);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                saved++;
+            } catch (IOException ex) {
+                LOGGER.warning("Error saving history of "+info.stream+": "+ex);
+            }
+        }
+        if (saved > 0) {
+            LOGGER.info("Saved history of "+saved+" streams");
+        }
+    }
+    
     /**
      * Check the given channels whether they meet the criteria for rechecking
      * offline status. This check is performed relatively often, but as opposed
@@ -9,6 +9,7 @@ import chatty.util.api.StreamTagManager.StreamTag;
 import chatty.util.api.StreamTagManager.StreamTagListener;
 import chatty.util.api.StreamTagManager.StreamTagPutListener;
 import chatty.util.api.UserIDs.UserIdResult;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.logging.Logger;
 
@@ -276,6 +277,19 @@ public class TwitchApi {
     public void manualRefreshStreams() {
         streamInfoManager.manualRefresh();
     }
+    
+    /**
+     * Persist the viewer/status history of streams in the given directory.
+     * 
+     * @param dir The directory, or null to not persist the history
+     */
+    public void setStreamHistoryDirectory(Path dir) {
+        streamInfoManager.setHistoryDirectory(dir);
+    }
+    
+    public void saveStreamHistory() {
+        streamInfoManager.saveHistory();
+    }
 
     //======
     // Token
@@ -2,13 +2,10 @@
 package chatty.util.api;
 
 import chatty.Chatty;
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.nio.charset.Charset;
+import chatty.util.http.HttpClient;
+import chatty.util.http.HttpRequest;
+import chatty.util.http.HttpResponse;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 /**
  * A request to the Twitch API that is running in a separate Thread. Does the
@@ -42,6 +39,7 @@ public class TwitchApiRequest implements Runnable {
     private String apiVersion = null;
     private String error;
     private String info;
+    private boolean cached;
     
     /**
      * Construct a new request with the given type, url and token. The token
@@ -92,6 +90,16 @@ public class TwitchApiRequest implements Runnable {
         this.contentType = contentType;
     }
     
+    /**
+     * Store the response and revalidate it on the next request, for data that
+     * rarely changes.
+     * 
+     * @param cached 
+     */
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+    
     public void setInfo(String info) {
         this.info = info;
     }
@@ -105,18 +113,32 @@ public class TwitchApiRequest implements Runnable {
         if (origin == null) {
             return;
         }
-        String result = getUrl(url);
+        String result = getResult(HttpClient.get().request(makeRequest(url)));
         origin.requestResult(url, result, responseCode, error, encoding, token, info);
     }
     
     /**
-     * Request the given URL, with the properties (request type, token, data)
-     * as definied in the creation of this object.
+     * Perform the request in the HttpClient thread pool, without blocking a
+     * thread while waiting for the request to be performed.
+     */
+    public void runAsync() {
+        if (origin == null) {
+            return;
+        }
+        HttpClient.get().requestAsync(makeRequest(url), response -> {
+            String result = getResult(response);
+            origin.requestResult(url, result, responseCode, error, encoding, token, info);
+        });
+    }
+    
+    /**
+     * Create the request for the given URL, with the properties (request
+     * type, token, data) as definied in the creation of this object.
      * 
      * @param targetUrl
      * @return 
      */
-    private String getUrl(String targetUrl) {
+    private HttpRequest makeRequest(String targetUrl) {
         // Debug output
         if (token != null) {
             LOGGER.info(requestMethod + " (" + apiVersion + "): " + Requests.filterToken(targetUrl, token) + " "
@@ -125,76 +147,34 @@ public class TwitchApiRequest implements Runnable {
             LOGGER.info(requestMethod + " (" + apiVersion + "): " + targetUrl);
         }
         
-        Charset charset = Charset.forName("UTF-8");
-        URL url;
-        HttpURLConnection connection = null;
-
-        try {
-            url = new URL(targetUrl);
-            connection = (HttpURLConnection)url.openConnection();
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
+        HttpRequest request = new HttpRequest(targetUrl);
+        request.setTimeouts(CONNECT_TIMEOUT, READ_TIMEOUT);
+        request.setMethod(requestMethod);
+        request.setCached(cached);
         
-            // Request properties
-            if (apiVersion != null) {
-                connection.setRequestProperty("Accept", "application/vnd.twitchtv."+apiVersion+"+json");
-            }
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            connection.setRequestProperty("Client-ID", CLIENT_ID);
-            // Add token if necessary
-            if (token != null) {
-                connection.setRequestProperty("Authorization", "OAuth "+token);
-            }
-            
-            connection.setRequestMethod(requestMethod);
-            if (data != null) {
-                // Send data if necessary
-                connection.setRequestProperty("Content-Type", contentType);
-                connection.setDoOutput(true);
-                try (OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream(), charset)) {
-                    out.write(data);
-                }
-                LOGGER.info("Sending data: "+data);
-            }
-
-            
-            
-            encoding = connection.getContentEncoding();
-            //System.out.println(connection.getHeaderFields());
-            
-            // Read response
-            InputStream input = connection.getInputStream();
-            if ("gzip".equals(connection.getContentEncoding())) {
-                input = new GZIPInputStream(input);
-            }
-
-            StringBuilder response;
-            try (BufferedReader reader
-                    = new BufferedReader(new InputStreamReader(input, charset))) {
-                String line;
-                response = new StringBuilder();
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-            }
-            
-            return response.toString();
-        } catch (SocketTimeoutException ex) {
-            error = ex.toString();
-            return null;
-        } catch (IOException ex) {
-            error = ex.toString();
-            return null;
-        } finally {
-            if (connection != null) {
-                try {
-                    responseCode = connection.getResponseCode();
-                } catch (IOException ex) {
-//                    LOGGER.warning("IOException2: " + ex);
-                }
-                connection.disconnect();
-            }
+        // Request properties
+        if (apiVersion != null) {
+            request.setHeader("Accept", "application/vnd.twitchtv."+apiVersion+"+json");
+        }
+        request.setHeader("Client-ID", CLIENT_ID);
+        // Add token if necessary
+        if (token != null) {
+            request.setHeader("Authorization", "OAuth "+token);
+        }
+        if (data != null) {
+            // Send data if necessary
+            request.setData(data, contentType);
+            LOGGER.info("Sending data: "+data);
         }
+        
+        return request;
+    }
+    
+    private String getResult(HttpResponse response) {
+        responseCode = response.getResponseCode();
+        encoding = response.getEncoding();
+        error = response.getError();
+        return response.getText();
     }
     
     public interface TwitchApiRequestResult {
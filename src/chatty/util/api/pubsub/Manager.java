@@ -16,6 +16,8 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 /**
@@ -38,6 +40,16 @@ public class Manager {
     
     private final Set<Topic> pendingTopics = Collections.synchronizedSet(new HashSet<Topic>());
     
+    /**
+     * Parses and dispatches received messages, so the websocket thread isn't
+     * held up. Single thread to keep the order of messages.
+     */
+    private final ExecutorService receiveExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "PubSub");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     private volatile String token;
     private volatile String localUserId;
     private volatile String localUsername;
@@ -57,21 +69,7 @@ public class Manager {
                     listener.info(String.format("[%d]--> %s",
                             id,
                             StringUtil.trim(received)));
-                    Message message = Message.fromJson(received, userIds);
-                    if (message != null) {
-                        if (message.data instanceof ModeratorActionData) {
-                            ModeratorActionData data = (ModeratorActionData) message.data;
-                            if (data.type == ModeratorActionData.Type.UNMODDED) {
-                                unlistenModLog(data.stream);
-                            }
-                        }
-                        if (message.type.equals("MESSAGE")) {
-                            listener.messageReceived(message);
-                        }
-                        if (message.error != null && !message.error.isEmpty()) {
-                            LOGGER.warning("[PubSub]["+id+"] Errror: " + message);
-                        }
-                    }
+                    receiveExecutor.execute(() -> handleMessage(id, received));
                 }
                 
                 @Override
@@ -99,6 +97,25 @@ public class Manager {
     }
     
     
+    private void handleMessage(int id, String received) {
+        Message message = Message.fromJson(received, userIds);
+        if (message != null) {
+            if (message.data instanceof ModeratorActionData) {
+                ModeratorActionData data = (ModeratorActionData) message.data;
+                if (data.type == ModeratorActionData.Type.UNMODDED) {
+                    unlistenModLog(data.stream);
+                }
+            }
+            if (message.type.equals("MESSAGE")) {
+                listener.messageReceived(message);
+            }
+            if (message.error != null && !message.error.isEmpty()) {
+                LOGGER.warning("[PubSub]["+id+"] Errror: " + message);
+            }
+        }
+    }
+    
+    
     //==========================
     // Topics / various
     //==========================
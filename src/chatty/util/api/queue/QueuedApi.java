@@ -74,6 +74,21 @@ public class QueuedApi {
         addRequest(1, request, listener);
     }
     
+    /**
+     * Add a GET request whose response is stored and revalidated with the
+     * server on the next request, for data that rarely changes.
+     * 
+     * @param url
+     * @param token
+     * @param listener 
+     */
+    public void addCached(String url, String token, ResultListener listener) {
+        Request request = new Request(url);
+        request.setToken(token);
+        request.setCached(true);
+        addRequest(1, request, listener);
+    }
+    
     public void add(String url, String requestMethod, String jsonData,
             String token, ResultListener listener) {
         Request request = new Request(url);
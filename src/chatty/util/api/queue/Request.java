@@ -2,19 +2,12 @@
 package chatty.util.api.queue;
 
 import chatty.Chatty;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.nio.charset.Charset;
+import chatty.util.http.HttpClient;
+import chatty.util.http.HttpRequest;
+import chatty.util.http.HttpResponse;
 import java.util.Map;
 import java.util.Objects;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 import org.json.simple.JSONObject;
 
 /**
@@ -25,8 +18,6 @@ public class Request implements Runnable {
 
     private static final Logger LOGGER = Logger.getLogger(Request.class.getName());
     
-    private static final Charset CHARSET = Charset.forName("UTF-8");
-    
     /**
      * Timeout for connecting in milliseconds.
      */
@@ -44,6 +35,7 @@ public class Request implements Runnable {
     private String data = null;
     private String requestMethod = "GET";
     private String contentType = "application/json";
+    private boolean cached;
     
     /**
      * Construct a new request with the given type, url and token. The token
@@ -70,6 +62,15 @@ public class Request implements Runnable {
         setJSONData(requestMethod, new JSONObject(data).toJSONString());
     }
     
+    /**
+     * Store the response and revalidate it on the next request.
+     * 
+     * @param cached 
+     */
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+    
     /**
      * Set the request type (like GET, POST, ..)
      * 
@@ -104,80 +105,34 @@ public class Request implements Runnable {
         if (listener == null) {
             return;
         }
-        String responseText = null;
-        int responseCode = -1;
-        int ratelimitRemaining = -1;
-        String responseEncoding = null;
-        String requestError = null;
-
         LOGGER.info(String.format("%s%s: %s",
                 requestMethod,
                 token != null ? " (auth) " : "",
                 url));
         
-        HttpURLConnection connection = null;
-        try {
-            connection = (HttpURLConnection)new URL(url).openConnection();
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
+        HttpRequest request = new HttpRequest(url);
+        request.setTimeouts(CONNECT_TIMEOUT, READ_TIMEOUT);
+        request.setMethod(requestMethod);
+        request.setCached(cached);
         
-            //---------------------------
-            // Request properties / Data
-            //---------------------------
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            connection.setRequestProperty("Client-ID", CLIENT_ID);
-            if (token != null) {
-                connection.setRequestProperty("Authorization", "Bearer "+token);
-            }
-            connection.setRequestMethod(requestMethod);
-            
-            if (data != null) {
-                connection.setRequestProperty("Content-Type", contentType);
-                connection.setDoOutput(true);
-                try (OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream(), CHARSET)) {
-                    out.write(data);
-                }
-                LOGGER.info("Sending data: "+data);
-            }
-
-            //------------------
-            // Response Headers
-            //------------------
-            responseEncoding = connection.getContentEncoding();
-            ratelimitRemaining = connection.getHeaderFieldInt("Ratelimit-Remaining", -1);
-            
-            //--------------------
-            // Read response text
-            //--------------------
-            InputStream input = connection.getInputStream();
-            if ("gzip".equals(connection.getContentEncoding())) {
-                input = new GZIPInputStream(input);
-            }
-
-            StringBuilder response;
-            try (BufferedReader reader
-                    = new BufferedReader(new InputStreamReader(input, CHARSET))) {
-                String line;
-                response = new StringBuilder();
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-            }
-            responseText = response.toString();
-        } catch (SocketTimeoutException ex) {
-            requestError = ex.toString();
-        } catch (IOException ex) {
-            requestError = ex.toString();
-        } finally {
-            if (connection != null) {
-                try {
-                    responseCode = connection.getResponseCode();
-                } catch (IOException ex) {
-                    // Do nothing, responseCode will simply be -1
-                }
-                connection.disconnect();
-            }
+        //---------------------------
+        // Request properties / Data
+        //---------------------------
+        request.setHeader("Client-ID", CLIENT_ID);
+        if (token != null) {
+            request.setHeader("Authorization", "Bearer "+token);
         }
+        if (data != null) {
+            request.setData(data, contentType);
+            LOGGER.info("Sending data: "+data);
+        }
+        
+        HttpResponse response = HttpClient.get().request(request);
+        String responseText = response.getText();
+        int responseCode = response.getResponseCode();
+        String responseEncoding = response.getEncoding();
+        int ratelimitRemaining = response.getHeaderInt("Ratelimit-Remaining", -1);
+        String requestError = response.getError();
         
         //-----------------------
         // Debug output / Output
@@ -10,13 +10,18 @@ import chatty.util.StringUtil;
 import chatty.util.api.ChannelInfo;
 import chatty.util.api.StreamInfo.ViewerStats;
 import chatty.util.api.pubsub.ModeratorActionData;
+import chatty.util.search.LogIndex;
 import chatty.util.settings.Settings;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -41,13 +46,31 @@ public class ChatLog {
      */
     private final LogManager log;
     
+    /**
+     * Index for searching the log files. This is null if the log path was
+     * invalid.
+     */
+    private final LogIndex index;
+    
+    /**
+     * The log directory, null if invalid.
+     */
+    private final Path path;
+    
+    /**
+     * Reads history from the log files, created when first needed.
+     */
+    private ExecutorService tailExecutor;
+    
     public ChatLog(Settings settings) {
         this.settings = settings;
 
-        Path path = getPath();
+        path = getPath();
         if (path == null) {
             log = null;
+            index = null;
         } else {
+            index = new LogIndex(path, Paths.get(Chatty.getCacheDirectory()+"logindex"));
             String logSplit = settings.getString("logSplit");
             boolean logSubdirectories = settings.getBoolean("logSubdirectories");
             boolean lockFiles = settings.getBoolean("logLockFiles");
@@ -88,6 +111,7 @@ public class ChatLog {
     public void start() {
         if (log != null) {
             log.start();
+            index.start();
         }
     }
 
@@ -230,7 +254,47 @@ public class ChatLog {
         if (log != null) {
             compactClose(null);
             log.close();
+            index.close();
+        }
+    }
+    
+    /**
+     * The index for searching the log files.
+     * 
+     * @return The LogIndex, or null if the log path is invalid
+     */
+    public LogIndex getIndex() {
+        return index;
+    }
+    
+    /**
+     * Read the last lines logged for the given channel in a background
+     * thread. Lines that are still waiting to be written aren't included.
+     * 
+     * @param channel The channel (as used for logging)
+     * @param count The maximum number of lines
+     * @param listener Receives the lines (oldest first, may be empty) in the
+     * background thread, not called if the log path is invalid
+     */
+    public synchronized void getLastLines(String channel, int count,
+            Consumer<List<String>> listener) {
+        if (path == null || channel == null || channel.isEmpty()) {
+            return;
         }
+        if (tailExecutor == null) {
+            tailExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "LogTail");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        tailExecutor.submit(() -> {
+            long start = System.nanoTime();
+            List<String> lines = LogTail.getLastLines(path, channel, count);
+            LOGGER.info(String.format("Read %d history lines for %s (%dms)",
+                    lines.size(), channel, (System.nanoTime() - start) / 1000000));
+            listener.accept(lines);
+        });
     }
     
     public void closeChannel(String channel) {
@@ -0,0 +1,181 @@
+
+package chatty.util.chatlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the last lines of the log files of a channel, for showing them as
+ * history when the channel is opened.
+ *
+ * The files are memory-mapped in windows from the end and scanned backwards
+ * for newlines, so only the part of the file containing the requested lines
+ * is actually read, no matter how large the file is.
+ */
+public class LogTail {
+
+    private static final Logger LOGGER = Logger.getLogger(LogTail.class.getName());
+
+    /**
+     * How much of the file is mapped at once.
+     */
+    private static final int WINDOW_SIZE = 1024*1024;
+
+    /**
+     * Longer lines are cut off, which shouldn't happen for regular messages.
+     */
+    private static final int MAX_LINE_LENGTH = 64*1024;
+
+    /**
+     * Don't continue into older files after this many, which would only
+     * happen with daily split logs of channels with almost no messages.
+     */
+    private static final int MAX_FILES = 10;
+
+    /**
+     * Get the last lines logged for the given channel, continuing into older
+     * log files if the most recent one doesn't contain enough lines. Lines
+     * added by the logging itself (log started/closed) are skipped.
+     *
+     * @param path The log directory
+     * @param channel The channel (as used for the filename)
+     * @param count The maximum number of lines to return
+     * @return The lines, oldest first (never null)
+     */
+    public static List<String> getLastLines(Path path, String channel, int count) {
+        List<String> result = new ArrayList<>();
+        List<File> files = getFiles(path, channel);
+        for (int i = 0; i < files.size() && i < MAX_FILES && result.size() < count; i++) {
+            try {
+                List<String> lines = readLastLines(files.get(i).toPath(), count - result.size());
+                result.addAll(0, lines);
+            } catch (IOException ex) {
+                LOGGER.warning("LogTail: Error reading "+files.get(i)+" "+ex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the log files of the given channel, most recently modified first.
+     * Checks the log directory and the channel's subdirectory.
+     *
+     * @param path
+     * @param channel
+     * @return
+     */
+    static List<File> getFiles(Path path, String channel) {
+        // Same replacement as in LogFile
+        String name = channel.replace("*", "_");
+        Pattern fileName = Pattern.compile(
+                "(\\d{4}-\\d{2}-\\d{2}_)?"+Pattern.quote(name)+"(-\\d+)?\\.log");
+        List<File> result = new ArrayList<>();
+        for (File dir : new File[]{path.toFile(), path.resolve(channel).toFile()}) {
+            File[] files = dir.listFiles((d, n) -> fileName.matcher(n).matches());
+            if (files != null) {
+                result.addAll(Arrays.asList(files));
+            }
+        }
+        Collections.sort(result, Comparator.comparingLong(File::lastModified).reversed());
+        return result;
+    }
+
+    /**
+     * Read the last lines of the given file.
+     *
+     * @param file
+     * @param count The maximum number of lines to return
+     * @return The lines, oldest first
+     * @throws IOException
+     */
+    static List<String> readLastLines(Path file, int count) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // Absolute position after the current line (excluding newline)
+            long lineEnd = size;
+            long windowEnd = size;
+            while (windowEnd > 0 && result.size() < count) {
+                long windowStart = Math.max(0, windowEnd - WINDOW_SIZE);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        windowStart, windowEnd - windowStart);
+                for (int i = buffer.limit() - 1; i >= 0 && result.size() < count; i--) {
+                    if (buffer.get(i) == '\n') {
+                        long lineStart = windowStart + i + 1;
+                        addLine(result, channel, buffer, windowStart, lineStart, lineEnd);
+                        lineEnd = windowStart + i;
+                    }
+                }
+                if (windowStart == 0 && result.size() < count) {
+                    // First line of the file
+                    addLine(result, channel, buffer, 0, 0, lineEnd);
+                }
+                windowEnd = windowStart;
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static void addLine(List<String> result, FileChannel channel,
+            ByteBuffer buffer, long windowStart, long start, long end) throws IOException {
+        if (end > start && getByte(channel, buffer, windowStart, end - 1) == '\r') {
+            end--;
+        }
+        int length = (int) Math.min(end - start, MAX_LINE_LENGTH);
+        if (length <= 0) {
+            return;
+        }
+        byte[] data = new byte[length];
+        if (start - windowStart + length <= buffer.limit()) {
+            // Line within the current window
+            for (int i = 0; i < length; i++) {
+                data[i] = buffer.get((int) (start - windowStart) + i);
+            }
+        } else {
+            // Line continues after the current window
+            ByteBuffer target = ByteBuffer.wrap(data);
+            while (target.hasRemaining()) {
+                if (channel.read(target, start + target.position()) == -1) {
+                    break;
+                }
+            }
+        }
+        String line = new String(data, StandardCharsets.UTF_8);
+        if (!isLogMarker(line)) {
+            result.add(line);
+        }
+    }
+
+    private static byte getByte(FileChannel channel, ByteBuffer buffer,
+            long windowStart, long pos) throws IOException {
+        if (pos - windowStart < buffer.limit()) {
+            return buffer.get((int) (pos - windowStart));
+        }
+        ByteBuffer single = ByteBuffer.allocate(1);
+        channel.read(single, pos);
+        return single.get(0);
+    }
+
+    /**
+     * Lines written by LogWriter when opening or closing a file.
+     */
+    private static boolean isLogMarker(String line) {
+        return line.equals("-") || line.startsWith("# Log started: ")
+                || line.startsWith("# Log closed: ");
+    }
+
+}
@@ -1,6 +1,7 @@
 
 package chatty.util.chatlog;
 
+import chatty.util.Metrics;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -48,6 +49,9 @@ public class LogWriter implements Runnable {
         this.splitLogs = splitLogs;
         this.useSubdirectories = useSubdirectories;
         this.lockFiles = lockFiles;
+        Metrics.gauge("chatty_log_queue_size",
+                "Number of lines waiting to be written to the log files",
+                queue::size);
     }
 
     @Override
@@ -6,6 +6,8 @@ import chatty.util.Debugging;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Defines some HTML color names and provides several methods about Colors.
@@ -17,6 +19,14 @@ public class HtmlColors {
     private static volatile Color defaultColor = Color.BLACK;
     private static final ArrayList<NamedColor> colors = new ArrayList<>();
     
+    private static final int MAX_CACHED = 2000;
+    
+    /**
+     * Decoded colors that aren't named colors, so that e.g. the same user
+     * color from many messages results in the same Color object.
+     */
+    private static final Map<String, Color> decoded = new ConcurrentHashMap<>();
+    
     
     static {
         
@@ -233,7 +243,11 @@ public class HtmlColors {
         if (color == null) {
             return defaultColor;
         }
-        Color c = getNamedColor(color);
+        // Only contains colors that aren't named, so can be checked first
+        Color c = decoded.get(color);
+        if (c == null) {
+            c = getNamedColor(color);
+        }
         if (c == null) {
             // No recognized named color
             try {
@@ -242,6 +256,10 @@ public class HtmlColors {
                 // If neither color, return default
                 return defaultColor;
             }
+            if (decoded.size() >= MAX_CACHED) {
+                decoded.clear();
+            }
+            decoded.put(color, c);
         }
         return c;
     }
@@ -178,6 +178,7 @@ public class FrankerFaceZ {
         UrlRequest request = new UrlRequest();
         request.setLabel("FFZ/"+stream);
         request.setUrl(url);
+        request.setCached(true);
         request.async((result, responseCode) -> {
             if (Integer.toString(responseCode).startsWith("4")) {
                 RetryManager.getInstance().setNotFound(url);
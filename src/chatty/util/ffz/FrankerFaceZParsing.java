@@ -2,10 +2,14 @@
 package chatty.util.ffz;
 
 import chatty.util.api.usericons.Usericon;
-import chatty.util.JSONUtil;
+import chatty.util.JSONReader;
 import chatty.util.api.Emoticon;
 import chatty.util.api.usericons.UsericonFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 import org.json.simple.JSONArray;
@@ -60,14 +64,28 @@ public class FrankerFaceZParsing {
      */
     public static Set<Emoticon> parseGlobalEmotes(String json) {
         try {
-            JSONParser parser = new JSONParser();
-            JSONObject o = (JSONObject)parser.parse(json);
-            JSONArray defaultSets = (JSONArray)o.get("default_sets");
-            JSONObject sets = (JSONObject)o.get("sets");
-            for (Object setObject : defaultSets) {
-                int set = ((Number)setObject).intValue();
-                JSONObject setData = (JSONObject)sets.get(String.valueOf(set));
-                return parseEmoteSet(setData, null, null);
+            JSONReader reader = new JSONReader(json);
+            List<Long> defaultSets = new ArrayList<>();
+            Map<String, Set<Emoticon>> sets = new HashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "default_sets":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            defaultSets.add(reader.nextLong());
+                        }
+                        reader.endArray();
+                        break;
+                    case "sets":
+                        sets = parseEmoteSets(reader, null, null);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            for (long set : defaultSets) {
+                return sets.getOrDefault(String.valueOf(set), new HashSet<>());
             }
         } catch (ParseException | ClassCastException | NullPointerException ex) {
             LOGGER.warning("Error parsing global FFZ emotes: "+ex);
@@ -87,15 +105,35 @@ public class FrankerFaceZParsing {
      */
     public static Set<Emoticon> parseRoomEmotes(String json, String stream) {
         try {
-            JSONParser parser = new JSONParser();
-            JSONObject o = (JSONObject)parser.parse(json);
-            JSONObject room = (JSONObject)o.get("room");
-            // Room ID (name) may not be correct if name changed
-            String roomId = (String)room.get("id");
-            int set = ((Number)room.get("set")).intValue();
-            JSONObject sets = (JSONObject)o.get("sets");
-            JSONObject setData = (JSONObject)sets.get(String.valueOf(set));
-            return parseEmoteSet(setData, stream, null);
+            JSONReader reader = new JSONReader(json);
+            long set = -1;
+            Map<String, Set<Emoticon>> sets = new HashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "room":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("set")) {
+                                set = reader.nextLong();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    case "sets":
+                        sets = parseEmoteSets(reader, stream, null);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            Set<Emoticon> result = sets.get(String.valueOf(set));
+            if (result != null) {
+                return result;
+            }
+            LOGGER.warning("Error parsing FFZ emotes: Set "+set+" not found");
         } catch (ParseException | ClassCastException | NullPointerException ex) {
             LOGGER.warning("Error parsing FFZ emotes: "+ex);
         }
@@ -114,10 +152,17 @@ public class FrankerFaceZParsing {
     public static Set<Emoticon> parseSetEmotes(String json, Emoticon.SubType subType,
             String room) {
         try {
-            JSONParser parser = new JSONParser();
-            JSONObject root = (JSONObject)parser.parse(json);
-            JSONObject setData = (JSONObject)root.get("set");
-            return parseEmoteSet(setData, room, subType);
+            JSONReader reader = new JSONReader(json);
+            Set<Emoticon> result = new HashSet<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("set")) {
+                    result = parseEmoteSet(reader, room, subType);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            return result;
         } catch (ParseException | ClassCastException | NullPointerException ex) {
             LOGGER.warning("Error parsing FFZ emotes: "+ex);
         }
@@ -125,52 +170,74 @@ public class FrankerFaceZParsing {
     }
     
     /**
-     * Parses a single emote set. Emote set in this context is a set of emotes
-     * that users have access to either globally or in a single room.
+     * Parses an object of emote sets, with the set id as key.
      * 
-     * @param setData The set JSONObject, containing the list of emotes and meta
-     * information
-     * @param streamRestriction The stream this emote set should be restricted
+     * @param reader The reader, with the object as next value
+     * @param streamRestriction The stream the emote sets should be restricted
      * to or null for no restriction
      * @param subType The subType to be set for the Emoticons
-     * @return The set of parsed emotes, can be empty if no emotes were found or
-     * an error occured
+     * @return The emotes of each set, by set id
+     * @throws ParseException 
      */
-    public static Set<Emoticon> parseEmoteSet(JSONObject setData,
-            String streamRestriction, Emoticon.SubType subType) {
-        try {
-            JSONArray emoticons = (JSONArray)setData.get("emoticons");
-            String title = JSONUtil.getString(setData, "title");
-            return parseEmoticons(emoticons, streamRestriction, title, subType);
-        } catch (ClassCastException | NullPointerException ex) {
-            LOGGER.warning("Error parsing FFZ emote set: "+ex);
+    private static Map<String, Set<Emoticon>> parseEmoteSets(JSONReader reader,
+            String streamRestriction, Emoticon.SubType subType) throws ParseException {
+        Map<String, Set<Emoticon>> result = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String id = reader.nextName();
+            result.put(id, parseEmoteSet(reader, streamRestriction, subType));
         }
-        return new HashSet<>();
+        reader.endObject();
+        return result;
     }
-
+    
     /**
-     * Parses the list of emotes.
+     * Parses a single emote set. Emote set in this context is a set of emotes
+     * that users have access to either globally or in a single room.
      * 
-     * @param emotes The JSONArray containing the emote objects
-     * @param streamRestriction The stream these emotes should be restricted to
-     * or null for no restriction
-     * @param info The info to be set for the Emoticons
+     * @param reader The reader, with the set object as next value, containing
+     * the list of emotes and meta information
+     * @param streamRestriction The stream this emote set should be restricted
+     * to or null for no restriction
      * @param subType The subType to be set for the Emoticons
-     * @return 
+     * @return The set of parsed emotes, can be empty if no emotes were found
+     * @throws ParseException 
      */
-    public static Set<Emoticon> parseEmoticons(JSONArray emotes,
-            String streamRestriction, String info, Emoticon.SubType subType) {
-        Set<Emoticon> result = new HashSet<>();
-        if (emotes != null) {
-            for (Object emote : emotes) {
-                if (emote != null && emote instanceof JSONObject) {
-                    Emoticon createdEmote = parseEmote((JSONObject)emote, streamRestriction, info, subType);
-                    if (createdEmote != null) {
-                        result.add(createdEmote);
+    private static Set<Emoticon> parseEmoteSet(JSONReader reader,
+            String streamRestriction, Emoticon.SubType subType) throws ParseException {
+        // The title may come after the emotes, so only build when it's known
+        List<Emoticon.Builder> emotes = new ArrayList<>();
+        String title = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "emoticons":
+                    if (reader.peek() != JSONReader.Token.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
                     }
-                }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Emoticon.Builder b = parseEmote(reader, streamRestriction, subType);
+                        if (b != null) {
+                            emotes.add(b);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                case "title":
+                    title = reader.nextStringOrNull();
+                    break;
+                default:
+                    reader.skipValue();
             }
         }
+        reader.endObject();
+        Set<Emoticon> result = new HashSet<>();
+        for (Emoticon.Builder b : emotes) {
+            b.addInfo(title);
+            result.add(b.build());
+        }
         return result;
     }
     
@@ -178,7 +245,7 @@ public class FrankerFaceZParsing {
      * Parses a single emote. Required for creating an emote are the emote code,
      * the id and the x1 URL.
      * 
-     * @param emote The emote data as a JSONObject
+     * @param reader The reader, with the emote object as next value
      * @param streamRestriction The stream restriction to use for this emote,
      * can be null if the emote is global
      * @param info The info to set for this emote, can be null if no info should
@@ -186,46 +253,116 @@ public class FrankerFaceZParsing {
      * @param subType The subType to be set for the Emoticon
      * @return The Emoticon object or null if an error occured
      */
-    public static Emoticon parseEmote(JSONObject emote, String streamRestriction,
+    public static Emoticon parseEmote(JSONReader reader, String streamRestriction,
             String info, Emoticon.SubType subType) {
         try {
-            // Base information
-            int width = JSONUtil.getInteger(emote, "width", -1);
-            int height = JSONUtil.getInteger(emote, "height", -1);
-            String code = (String)emote.get("name");
-            JSONObject urls = (JSONObject)emote.get("urls");
-            String url1 = (String)urls.get("1");
-            String url2 = (String)urls.get("2");
-            int id = ((Number)emote.get("id")).intValue();
-            
-            // Creator
-            Object owner = emote.get("owner");
-            String creator = null;
-            if (owner != null && owner instanceof JSONObject) {
-                creator = (String)((JSONObject)owner).get("display_name");
-            }
-            
-            // Check if required data is there
-            if (code == null || code.isEmpty()) {
-                return null;
-            }
-            if (url1 == null || url1.isEmpty()) {
-                return null;
+            Emoticon.Builder b = parseEmote(reader, streamRestriction, subType);
+            if (b != null) {
+                b.addInfo(info);
+                return b.build();
             }
-            
-            Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.FFZ, code, url1);
-            b.setX2Url(url2);
-            b.setSize(width, height);
-            b.setCreator(creator);
-            b.setStringId(String.valueOf(id));
-            b.addStreamRestriction(streamRestriction);
-            b.addInfo(info);
-            b.setSubType(subType);
-            return b.build();
-        } catch (ClassCastException | NullPointerException ex) {
+        } catch (ParseException ex) {
             LOGGER.warning("Error parsing FFZ emote: "+ex);
+        }
+        return null;
+    }
+    
+    /**
+     * Parses a single emote. Required for creating an emote are the emote code,
+     * the id and the x1 URL.
+     * 
+     * @param reader The reader, with the emote object as next value
+     * @param streamRestriction The stream restriction to use for this emote,
+     * can be null if the emote is global
+     * @param subType The subType to be set for the Emoticon
+     * @return The Emoticon.Builder or null if required data is missing
+     * @throws ParseException 
+     */
+    private static Emoticon.Builder parseEmote(JSONReader reader,
+            String streamRestriction, Emoticon.SubType subType) throws ParseException {
+        if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        int width = -1;
+        int height = -1;
+        String code = null;
+        String url1 = null;
+        String url2 = null;
+        long id = -1;
+        String creator = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "width":
+                    width = reader.nextInt(-1);
+                    break;
+                case "height":
+                    height = reader.nextInt(-1);
+                    break;
+                case "name":
+                    code = reader.nextStringOrNull();
+                    break;
+                case "id":
+                    id = reader.nextLong(-1);
+                    break;
+                case "urls":
+                    if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "1":
+                                url1 = reader.nextStringOrNull();
+                                break;
+                            case "2":
+                                url2 = reader.nextStringOrNull();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "owner":
+                    if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("display_name")) {
+                            creator = reader.nextStringOrNull();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        
+        // Check if required data is there
+        if (code == null || code.isEmpty() || id == -1) {
+            return null;
+        }
+        if (url1 == null || url1.isEmpty()) {
             return null;
         }
+        
+        Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.FFZ, code, url1);
+        b.setX2Url(url2);
+        b.setSize(width, height);
+        b.setCreator(creator);
+        b.setStringId(String.valueOf(id));
+        b.addStreamRestriction(streamRestriction);
+        b.setSubType(subType);
+        return b;
     }
     
     public static Set<String> getBotNames(String json) {
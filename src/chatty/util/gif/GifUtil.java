@@ -33,7 +33,6 @@ public class GifUtil {
      * @throws Exception When an error occured loading the image
      */
     public static ImageIcon getGifFromUrl(URL url) throws Exception {
-        ImageIcon image = null;
         URLConnection c = url.openConnection();
         try (InputStream input = c.getInputStream()) {
             if (c.getContentLengthLong() <= 0) {
@@ -41,38 +40,103 @@ public class GifUtil {
             } else {
                 // Use readAllBytes() because GifDecoder doesn't handle streams well
                 byte[] imageData = readAllBytes(input);
-                
-                try {
-                    //System.out.println(hash(imageData)+" "+url);
-                    image = fixGifFps(imageData);
-                } catch (Exception ex) {
-                    /**
-                     * If not a GIF, or another error occured, just create the
-                     * image normally.
-                     */
-                    image = new ImageIcon(imageData);
-                    if (image.getIconWidth() == -1) {
-                        // new ImageIcon() breaks with some images (rare)
-                        // Checking for MediaTracker.ERRORED seems to sometimes
-                        // not work.
-                        LOGGER.info("Using ImageIO for "+url);
-                        Image loadedImage = ImageIO.read(new ByteArrayInputStream(imageData));
-                        if (loadedImage != null) {
-                            image.setImage(loadedImage);
-                            image.setDescription("ImageIO");
-                        }
-                    }
-                }
-
-                //System.out.println(url+" "+image.getImageLoadStatus()+" "+image.getIconHeight());
-                if (image.getImageLoadStatus() == MediaTracker.ERRORED
-                        || image.getIconWidth() == -1) {
-                    return null;
-                }
+                return getGifFromBytes(imageData, url.toString());
             }
         }
+        return null;
+    }
+    
+    /**
+     * Creates an image from the given image data, fixing FPS if it's a GIF.
+     * 
+     * @param imageData The image data
+     * @param source Where the image data is from, only used for logging
+     * @return The created ImageIcon, or null if an error occured creating the
+     * image
+     * @throws IOException When an error occured loading the image
+     * @see #normalize(byte[], String)
+     * @see #createImage(byte[], String)
+     */
+    public static ImageIcon getGifFromBytes(byte[] imageData, String source) throws IOException {
+        return createImage(normalize(imageData, source), source);
+    }
+    
+    /**
+     * Re-writes animated GIFs to fix frame delays (according to browser
+     * standard) and use better decoding than the built-in one. Other image
+     * data is returned unchanged.
+     * 
+     * <p>
+     * The result can be stored, so that this only has to be done once for
+     * each image.
+     * </p>
+     * 
+     * @param imageData The image data
+     * @param source Where the image data is from, only used for logging
+     * @return The normalized image data, or the given image data if it's not
+     * a GIF or can't be decoded
+     */
+    public static byte[] normalize(byte[] imageData, String source) {
+        if (!isGif(imageData)) {
+            return imageData;
+        }
+        try {
+            return fixGifFps(imageData);
+        } catch (Exception ex) {
+            LOGGER.info("Using GIF as is for "+source+": "+ex);
+            return imageData;
+        }
+    }
+    
+    /**
+     * Creates an image from the given image data, without any further
+     * changes.
+     * 
+     * @param imageData The image data (should already be normalized)
+     * @param source Where the image data is from, only used for logging
+     * @return The created ImageIcon, or null if an error occured creating the
+     * image
+     * @throws IOException When an error occured loading the image
+     */
+    public static ImageIcon createImage(byte[] imageData, String source) throws IOException {
+        ImageIcon image = new ImageIcon(imageData);
+        if (image.getIconWidth() == -1) {
+            // new ImageIcon() breaks with some images (rare)
+            // Checking for MediaTracker.ERRORED seems to sometimes
+            // not work.
+            LOGGER.info("Using ImageIO for "+source);
+            Image loadedImage = ImageIO.read(new ByteArrayInputStream(imageData));
+            if (loadedImage != null) {
+                image.setImage(loadedImage);
+                image.setDescription("ImageIO");
+            }
+        } else if (isGif(imageData)) {
+            image.setDescription("GIF");
+        }
+
+        //System.out.println(url+" "+image.getImageLoadStatus()+" "+image.getIconHeight());
+        if (image.getImageLoadStatus() == MediaTracker.ERRORED
+                || image.getIconWidth() == -1) {
+            return null;
+        }
         return image;
     }
+    
+    /**
+     * Checks the magic bytes of the image data.
+     * 
+     * @param imageData
+     * @return true if the data starts with a GIF87a or GIF89a header
+     */
+    public static boolean isGif(byte[] imageData) {
+        return imageData.length >= 6
+                && imageData[0] == 'G'
+                && imageData[1] == 'I'
+                && imageData[2] == 'F'
+                && imageData[3] == '8'
+                && (imageData[4] == '7' || imageData[4] == '9')
+                && imageData[5] == 'a';
+    }
 
     /**
      * Decodes and re-writes the animated GIF to fix frame delays (according to
@@ -82,7 +146,7 @@ public class GifUtil {
      * @return
      * @throws IOException 
      */
-    private static ImageIcon fixGifFps(byte[] imageData) throws IOException {
+    private static byte[] fixGifFps(byte[] imageData) throws IOException {
         GifDecoderFMS gif = new GifDecoderFMS();
         gif.read(new ByteArrayInputStream(imageData));
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -94,9 +158,7 @@ public class GifUtil {
             }
             w.close();
         }
-        ImageIcon icon = new ImageIcon(bos.toByteArray());
-        icon.setDescription("GIF");
-        return icon;
+        return bos.toByteArray();
     }
 
     /**
@@ -106,7 +168,7 @@ public class GifUtil {
      * @return
      * @throws IOException 
      */
-    private static byte[] readAllBytes(InputStream input) throws IOException {
+    public static byte[] readAllBytes(InputStream input) throws IOException {
         ByteArrayOutputStream result = new ByteArrayOutputStream();
         byte[] buffer = new byte[1024];
         int length;
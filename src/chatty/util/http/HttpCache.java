@@ -0,0 +1,221 @@
+
+package chatty.util.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+/**
+ * Stores responses on disk, together with the ETag and Last-Modified headers
+ * needed to revalidate them with the server. Each response is stored in a
+ * separate file, named by a hash of the request key.
+ *
+ * <p>
+ * The modification time of a file is updated when the response is stored or
+ * revalidated, and responses that haven't been used for
+ * {@link #DELETE_OLDER_THAN} or exceed {@link #MAX_SIZE} (oldest first) are
+ * deleted by {@link #deleteExpired()}.
+ * </p>
+ */
+public class HttpCache {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpCache.class.getName());
+
+    private static final int VERSION = 1;
+
+    private static final String PREFIX = "http-";
+
+    /**
+     * Seconds after which an unused response is deleted.
+     */
+    private static final long DELETE_OLDER_THAN = 60*60*24*30;
+
+    /**
+     * Maximum number of bytes of all stored responses.
+     */
+    private static final long MAX_SIZE = 50*1024*1024;
+
+    private final Path dir;
+
+    public HttpCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Get the cached response for the given key.
+     *
+     * @param key The request key
+     * @return The cached response, or null if none is cached or it couldn't be
+     * read
+     */
+    public Entry get(String key) {
+        Path file = getFile(key);
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != VERSION) {
+                return null;
+            }
+            String etag = readOptionalString(input);
+            String lastModified = readOptionalString(input);
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            return new Entry(etag, lastModified, new String(body, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException ex) {
+            // Not cached
+        } catch (IOException ex) {
+            LOGGER.warning("HttpCache: Error reading "+file+": "+ex);
+        }
+        return null;
+    }
+
+    /**
+     * Store a response. Only useful if at least one of etag or lastModified
+     * is set.
+     *
+     * @param key The request key
+     * @param etag The ETag header value, may be null
+     * @param lastModified The Last-Modified header value, may be null
+     * @param text The response body
+     */
+    public void put(String key, String etag, String lastModified, String text) {
+        Path file = getFile(key);
+        Path tempFile = file.resolveSibling(file.getFileName()+"-temp");
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                output.writeInt(VERSION);
+                writeOptionalString(output, etag);
+                writeOptionalString(output, lastModified);
+                byte[] body = text.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(body.length);
+                output.write(body);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("HttpCache: Error writing "+file+": "+ex);
+        }
+    }
+
+    /**
+     * Mark the response as used now, for example after the server responded
+     * that it has not been modified.
+     *
+     * @param key The request key
+     */
+    public void touch(String key) {
+        try {
+            Files.setLastModifiedTime(getFile(key), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // Not cached anymore, nothing to do
+        }
+    }
+
+    /**
+     * Delete responses that haven't been used in a while and the oldest ones
+     * if the size limit is exceeded.
+     *
+     * @return The number of deleted responses
+     */
+    public int deleteExpired() {
+        return deleteExpired(DELETE_OLDER_THAN, MAX_SIZE);
+    }
+
+    int deleteExpired(long maxAgeSeconds, long maxSize) {
+        File[] files = dir.toFile().listFiles(file -> {
+            return file.getName().startsWith(PREFIX);
+        });
+        if (files == null) {
+            return 0;
+        }
+        // Newest first
+        long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> modified[i]).reversed());
+        long limit = System.currentTimeMillis() - maxAgeSeconds*1000;
+        long size = 0;
+        int count = 0;
+        for (Integer i : order) {
+            size += files[i].length();
+            if ((modified[i] < limit || size > maxSize) && files[i].delete()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void remove(String key) {
+        try {
+            Files.deleteIfExists(getFile(key));
+        } catch (IOException ex) {
+            LOGGER.warning("HttpCache: Error removing: "+ex);
+        }
+    }
+
+    private Path getFile(String key) {
+        return dir.resolve(PREFIX+sha1(key));
+    }
+
+    private static String sha1(String input) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] hash = md.digest(input.getBytes(StandardCharsets.UTF_8));
+            StringBuilder b = new StringBuilder();
+            for (byte value : hash) {
+                b.append(String.format("%02x", value));
+            }
+            return b.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-1 should always be available
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream input) throws IOException {
+        String value = input.readUTF();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void writeOptionalString(DataOutputStream output, String value) throws IOException {
+        output.writeUTF(value == null ? "" : value);
+    }
+
+    public static class Entry {
+
+        public final String etag;
+        public final String lastModified;
+        public final String text;
+
+        private Entry(String etag, String lastModified, String text) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.text = text;
+        }
+
+    }
+
+}
@@ -0,0 +1,449 @@
+
+package chatty.util.http;
+
+import chatty.Chatty;
+import chatty.util.Metrics;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Performs HTTP requests, shared by the different API request classes.
+ *
+ * <ul>
+ * <li>Responses of requests that are set to be cached are stored on disk and
+ * revalidated with the server using ETag/Last-Modified, so unchanged data
+ * doesn't have to be downloaded again.</li>
+ * <li>Identical requests (GET without data) that are performed at the same
+ * time only send one request, with all of them receiving the response.</li>
+ * <li>The number of concurrent requests to the same host is limited.</li>
+ * <li>Async requests are performed on a bounded thread pool. Waiting for a
+ * free slot for the host or for an identical request doesn't occupy a pool
+ * thread.</li>
+ * <li>Cached responses that haven't been used for a while are deleted.</li>
+ * <li>Response bodies are always read completely and the connection not
+ * disconnected, so the connection can be reused (keep-alive).</li>
+ * </ul>
+ *
+ * <p>
+ * Thread-safe.
+ * </p>
+ */
+public class HttpClient {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpClient.class.getName());
+
+    private static final String USER_AGENT = "Chatty "+Chatty.VERSION;
+
+    private static final Metrics.Histogram REQUEST_TIME = Metrics.histogram(
+            "chatty_http_request_seconds",
+            "Time to perform an HTTP request (excluding waiting for the host limit)",
+            "host");
+    
+    private static final Metrics.Counter REQUESTS = Metrics.counter(
+            "chatty_http_requests_total",
+            "HTTP requests performed, by host and result",
+            "host", "result");
+
+    private static final int DEFAULT_THREADS = 8;
+    private static final int DEFAULT_PER_HOST = 4;
+
+    private static final HttpClient DEFAULT = new HttpClient(null,
+            DEFAULT_THREADS, DEFAULT_PER_HOST);
+
+    /**
+     * Get the shared client.
+     *
+     * @return
+     */
+    public static HttpClient get() {
+        return DEFAULT;
+    }
+
+    private final ExecutorService executor;
+    private final int maxPerHost;
+    private final Map<String, HostLimit> hostLimits = new HashMap<>();
+    private final Map<String, CompletableFuture<HttpResponse>> inFlight = new HashMap<>();
+    private volatile HttpCache cache;
+
+    /**
+     * Create a new client.
+     *
+     * @param cacheDir The directory to store cached responses in, may be null
+     * to not cache responses
+     * @param threads The number of threads for async requests
+     * @param maxPerHost The number of requests that can be performed at the
+     * same time to the same host
+     */
+    public HttpClient(Path cacheDir, int threads, int maxPerHost) {
+        this.maxPerHost = maxPerHost;
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "HttpClient-"+count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        setCacheDirectory(cacheDir);
+    }
+
+    /**
+     * Set the directory to store cached responses in. Expired responses are
+     * deleted from it in the background.
+     *
+     * @param dir The directory, or null to not cache responses
+     */
+    public final void setCacheDirectory(Path dir) {
+        HttpCache newCache = dir != null ? new HttpCache(dir) : null;
+        cache = newCache;
+        if (newCache != null) {
+            executor.execute(() -> {
+                int count = newCache.deleteExpired();
+                LOGGER.info("HttpCache: Deleted "+count+" expired responses");
+            });
+        }
+    }
+
+    /**
+     * The thread pool used for async requests, which may also be used for
+     * other short tasks related to requests.
+     *
+     * @return
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Perform the request in the thread pool. If the host limit is reached,
+     * the request is queued until another request to the host finishes. If
+     * an identical request is already in progress, the listener receives the
+     * same response.
+     *
+     * @param request The request
+     * @param listener Receives the response, in a thread of the pool
+     */
+    public void requestAsync(HttpRequest request, Consumer<HttpResponse> listener) {
+        requestFuture(request).thenAccept(response -> {
+            executor.execute(() -> listener.accept(response));
+        });
+    }
+
+    private CompletableFuture<HttpResponse> requestFuture(HttpRequest request) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        if (request.isIdempotent()) {
+            synchronized (inFlight) {
+                CompletableFuture<HttpResponse> existing = inFlight.get(request.getKey());
+                if (existing != null) {
+                    LOGGER.info("Waiting for identical request: "+request.getUrl());
+                    return existing;
+                }
+                inFlight.put(request.getKey(), future);
+            }
+        }
+        String host;
+        try {
+            host = new URL(request.getUrl()).getHost();
+        } catch (IOException ex) {
+            complete(request, future, HttpResponse.error(-1, ex.toString()));
+            return future;
+        }
+        getHostLimit(host).submit(() -> {
+            HttpResponse response = HttpResponse.error(-1, "Unknown error");
+            try {
+                response = performTimed(request, host);
+            } finally {
+                complete(request, future, response);
+            }
+        });
+        return future;
+    }
+
+    private void complete(HttpRequest request,
+            CompletableFuture<HttpResponse> future, HttpResponse response) {
+        if (request.isIdempotent()) {
+            synchronized (inFlight) {
+                inFlight.remove(request.getKey(), future);
+            }
+        }
+        future.complete(response);
+    }
+
+    /**
+     * Perform the request in the current thread. If an identical request is
+     * already in progress, this waits for it and returns the same response.
+     * Since this may wait, it should not be used in a thread of the pool
+     * ({@link #requestAsync(HttpRequest, Consumer)} can be used instead).
+     *
+     * @param request The request
+     * @return The response, never null
+     */
+    public HttpResponse request(HttpRequest request) {
+        if (!request.isIdempotent()) {
+            return performLimited(request);
+        }
+        String key = request.getKey();
+        CompletableFuture<HttpResponse> future;
+        boolean perform = false;
+        synchronized (inFlight) {
+            future = inFlight.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                inFlight.put(key, future);
+                perform = true;
+            }
+        }
+        if (!perform) {
+            LOGGER.info("Waiting for identical request: "+request.getUrl());
+            try {
+                return future.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                return HttpResponse.error(-1, ex.toString());
+            }
+        }
+        HttpResponse response = HttpResponse.error(-1, "Unknown error");
+        try {
+            response = performLimited(request);
+        } finally {
+            synchronized (inFlight) {
+                inFlight.remove(key);
+            }
+            future.complete(response);
+        }
+        return response;
+    }
+
+    private HttpResponse performLimited(HttpRequest request) {
+        HostLimit limit;
+        String host;
+        try {
+            host = new URL(request.getUrl()).getHost();
+            limit = getHostLimit(host);
+        } catch (IOException ex) {
+            return HttpResponse.error(-1, ex.toString());
+        }
+        try {
+            limit.acquire();
+        } catch (InterruptedException ex) {
+            return HttpResponse.error(-1, ex.toString());
+        }
+        try {
+            return performTimed(request, host);
+        } finally {
+            limit.release();
+        }
+    }
+
+    private HttpResponse performTimed(HttpRequest request, String host) {
+        long start = System.nanoTime();
+        HttpResponse response = perform(request);
+        REQUEST_TIME.observeSince(start, host);
+        REQUESTS.inc(host, getResultLabel(response));
+        return response;
+    }
+
+    private static String getResultLabel(HttpResponse response) {
+        if (response.isFromCache()) {
+            return "cached";
+        }
+        if (response.getResponseCode() == -1) {
+            return "error";
+        }
+        return String.valueOf(response.getResponseCode());
+    }
+
+    private HostLimit getHostLimit(String host) {
+        synchronized (hostLimits) {
+            HostLimit limit = hostLimits.get(host);
+            if (limit == null) {
+                limit = new HostLimit();
+                hostLimits.put(host, limit);
+            }
+            return limit;
+        }
+    }
+
+    /**
+     * Limits the number of concurrent requests to a host. Async requests
+     * that have to wait are queued and submitted to the pool once a slot is
+     * free, while sync requests wait in their own thread.
+     */
+    private class HostLimit {
+
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+
+        synchronized void acquire() throws InterruptedException {
+            while (running >= maxPerHost) {
+                wait();
+            }
+            running++;
+        }
+
+        void submit(Runnable task) {
+            synchronized (this) {
+                if (running >= maxPerHost) {
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            }
+            execute(task);
+        }
+
+        /**
+         * Free the slot, or hand it to the next queued async request.
+         */
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    notifyAll();
+                    return;
+                }
+            }
+            execute(next);
+        }
+
+        private void execute(Runnable task) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release();
+                }
+            });
+        }
+
+    }
+
+    private HttpResponse perform(HttpRequest request) {
+        HttpCache cache = this.cache;
+        boolean useCache = cache != null && request.isCached() && request.isIdempotent();
+        HttpCache.Entry cached = useCache ? cache.get(request.getKey()) : null;
+
+        HttpURLConnection connection = null;
+        int responseCode = -1;
+        try {
+            connection = (HttpURLConnection) new URL(request.getUrl()).openConnection();
+            connection.setConnectTimeout(request.getConnectTimeout());
+            connection.setReadTimeout(request.getReadTimeout());
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (cached != null) {
+                if (cached.etag != null) {
+                    connection.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+            }
+            connection.setRequestMethod(request.getMethod());
+            if (request.getData() != null) {
+                connection.setRequestProperty("Content-Type", request.getContentType());
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request.getData().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            responseCode = connection.getResponseCode();
+            String encoding = connection.getContentEncoding();
+            Map<String, String> headers = getHeaders(connection);
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                readFully(connection.getInputStream(), null);
+                cache.touch(request.getKey());
+                return new HttpResponse(200, cached.text, null, encoding, true, headers);
+            }
+            if (responseCode >= 400) {
+                // Read error body, so the connection can be reused
+                readFully(connection.getErrorStream(), null);
+                return new HttpResponse(responseCode, null,
+                        "HTTP "+responseCode+" "+connection.getResponseMessage(),
+                        encoding, false, headers);
+            }
+            String text = readFully(connection.getInputStream(), encoding);
+            if (useCache) {
+                String etag = connection.getHeaderField("ETag");
+                String lastModified = connection.getHeaderField("Last-Modified");
+                if (responseCode == 200 && (etag != null || lastModified != null)) {
+                    cache.put(request.getKey(), etag, lastModified, text);
+                } else if (cached != null) {
+                    cache.remove(request.getKey());
+                }
+            }
+            return new HttpResponse(responseCode, text, null, encoding, false, headers);
+        } catch (IOException ex) {
+            if (connection != null) {
+                // Errors can leave the connection in an unknown state
+                connection.disconnect();
+            }
+            return HttpResponse.error(responseCode, ex.toString());
+        }
+    }
+
+    private static Map<String, String> getHeaders(HttpURLConnection connection) {
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+            if (entry.getKey() != null && !entry.getValue().isEmpty()) {
+                result.put(entry.getKey().toLowerCase(), entry.getValue().get(0));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read and close the stream.
+     *
+     * @param input The stream, may be null
+     * @param encoding The content encoding, to decompress if necessary
+     * @return The text, or null if the stream was null
+     * @throws IOException
+     */
+    private static String readFully(InputStream input, String encoding) throws IOException {
+        if (input == null) {
+            return null;
+        }
+        if ("gzip".equals(encoding)) {
+            input = new GZIPInputStream(input);
+        }
+        try (InputStream in = input) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                result.write(buffer, 0, length);
+            }
+            return new String(result.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
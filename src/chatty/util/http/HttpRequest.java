@@ -0,0 +1,130 @@
+
+package chatty.util.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The properties of a request performed by {@link HttpClient}.
+ */
+public class HttpRequest {
+
+    private final String url;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private String method = "GET";
+    private String data;
+    private String contentType = "application/json";
+    private String cacheScope;
+    private boolean cached;
+    private int connectTimeout = 10000;
+    private int readTimeout = 10000;
+
+    public HttpRequest(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Set the request method (like GET, POST, ..).
+     *
+     * @param method
+     */
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Set the data to be sent, as well as the content type of the data.
+     *
+     * @param data The data, or null to not send data
+     * @param contentType The content type
+     */
+    public void setData(String data, String contentType) {
+        this.data = data;
+        this.contentType = contentType;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Set whether the response should be stored in the persistent cache and
+     * revalidated with the server on the next request (if the server provides
+     * an ETag or Last-Modified header). Only used for GET requests.
+     *
+     * @param cached
+     */
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Set the scope the response is valid for, for example the token that is
+     * used, so that responses for different tokens are kept apart in the cache
+     * and when combining identical requests.
+     *
+     * @param scope The scope (only stored hashed), may be null
+     */
+    public void setCacheScope(String scope) {
+        this.cacheScope = scope;
+    }
+
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Whether the request only retrieves data, so identical requests that are
+     * performed at the same time can share the response.
+     *
+     * @return
+     */
+    boolean isIdempotent() {
+        return method.equals("GET") && data == null;
+    }
+
+    /**
+     * A key that is the same for requests that should return the same
+     * response. This may contain the token, so it should only be stored
+     * hashed.
+     *
+     * @return
+     */
+    String getKey() {
+        return method+" "+url+" "+headers+" "+cacheScope;
+    }
+
+}
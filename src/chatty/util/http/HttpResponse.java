@@ -0,0 +1,104 @@
+
+package chatty.util.http;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of a request performed by {@link HttpClient}. Immutable, since
+ * the same response may be given to several identical requests.
+ */
+public class HttpResponse {
+
+    private final int responseCode;
+    private final String text;
+    private final String error;
+    private final String encoding;
+    private final boolean fromCache;
+    private final Map<String, String> headers;
+
+    HttpResponse(int responseCode, String text, String error, String encoding,
+            boolean fromCache, Map<String, String> headers) {
+        this.responseCode = responseCode;
+        this.text = text;
+        this.error = error;
+        this.encoding = encoding;
+        this.fromCache = fromCache;
+        this.headers = headers;
+    }
+
+    static HttpResponse error(int responseCode, String error) {
+        return new HttpResponse(responseCode, null, error, null, false,
+                Collections.emptyMap());
+    }
+
+    /**
+     * The HTTP response code. If the cached response was used because the
+     * server responded with 304 (Not Modified), then this is 200.
+     *
+     * @return The response code, or -1 if none was received
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * The response body.
+     *
+     * @return The text, or null if an error occured
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * A description of the error that occured.
+     *
+     * @return The error, or null if no error occured
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * The content encoding the response was sent with.
+     *
+     * @return The encoding, or null if none was set
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Whether the text is from the cache, after the server responded that
+     * it has not been modified.
+     *
+     * @return
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * Get a response header.
+     *
+     * @param name The header name (case-insensitive)
+     * @return The header value, or null if the header was not set
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    public int getHeaderInt(String name, int defaultValue) {
+        try {
+            String value = getHeader(name);
+            if (value != null) {
+                return Integer.parseInt(value);
+            }
+        } catch (NumberFormatException ex) {
+            // Use default value
+        }
+        return defaultValue;
+    }
+
+}
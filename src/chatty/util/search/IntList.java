@@ -0,0 +1,72 @@
+
+package chatty.util.search;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints, used for the postings of the indices (ids in
+ * ascending order), to avoid boxing.
+ */
+class IntList {
+    
+    private int[] data;
+    private int size;
+    
+    IntList() {
+        data = new int[4];
+    }
+    
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+    
+    /**
+     * Adds the value, unless it is equal to the last value (since ids are
+     * added in ascending order, this prevents duplicates).
+     * 
+     * @param value 
+     */
+    public void addUnique(int value) {
+        if (size == 0 || data[size - 1] != value) {
+            add(value);
+        }
+    }
+    
+    public int get(int index) {
+        return data[index];
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Index of the first value that is equal to or larger than the given
+     * value, requires the values to be sorted in ascending order.
+     * 
+     * @param value
+     * @return The index, or {@code size()} if all values are smaller
+     */
+    public int lowerBound(int value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (data[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    public boolean contains(int value) {
+        int index = lowerBound(value);
+        return index < size && data[index] == value;
+    }
+    
+}
@@ -0,0 +1,707 @@
+
+package chatty.util.search;
+
+import chatty.util.StringUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Searches the chat log files, using an index that is stored on disk and
+ * updated in the background.
+ *
+ * Each log file is split into blocks of about {@link #BLOCK_SIZE} bytes (at
+ * line boundaries), and for each block a bloom filter of the trigrams of the
+ * lowercase lines is stored. A search only has to read the blocks whose
+ * filter contains all trigrams of the search text (and the username, if
+ * given). Since log files are only appended to, only new blocks have to be
+ * added when the file has grown (the last, incomplete block is indexed
+ * again).
+ *
+ * Each block also stores the time range of its lines, taken from the line
+ * timestamps and the "Log started/closed" lines, so a search for a time range
+ * only has to read the blocks in that range. Lines that have their own
+ * timestamp are also checked against the time range individually.
+ *
+ * All indexing and searching is done in a single background thread.
+ */
+public class LogIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(LogIndex.class.getName());
+
+    private static final int VERSION = 2;
+
+    static final int BLOCK_SIZE = 16*1024;
+    private static final int BLOOM_WORDS = 256;
+    private static final int BLOOM_BITS = BLOOM_WORDS * 64;
+    private static final int BLOOM_HASHES = 2;
+
+    /**
+     * Delay before indexing all log files after {@link #start()}, so it
+     * doesn't add to the load during startup.
+     */
+    private static final int START_DELAY = 120;
+
+    /**
+     * Matches a log file name (without the ".log"), with the optional date
+     * prefix and the number added for locked files.
+     */
+    private static final Pattern FILE_NAME = Pattern.compile(
+            "(?:(\\d{4}-\\d{2}-\\d{2})_)?(.+?)(?:-\\d+)?");
+
+    /**
+     * Matches a user message line, with the optional timestamp in front.
+     */
+    private static final Pattern USER_LINE = Pattern.compile("^[^<]*<([^>]+)>\\*? ");
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final ExecutorService executor;
+
+    /**
+     *
+     * @param logPath The directory containing the log files (also checks one
+     * level of subdirectories)
+     * @param indexPath The directory to store the index files in
+     */
+    public LogIndex(Path logPath, Path indexPath) {
+        this.logPath = logPath;
+        this.indexPath = indexPath;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "LogIndex");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Index all log files in the background after a delay, so that the first
+     * search is faster.
+     */
+    public void start() {
+        executor.submit(() -> {
+            try {
+                TimeUnit.SECONDS.sleep(START_DELAY);
+                for (LogFileInfo file : getFiles()) {
+                    updateIndex(file);
+                }
+            } catch (InterruptedException ex) {
+                // Shutting down
+            } catch (Exception ex) {
+                LOGGER.warning("LogIndex: Error indexing "+ex);
+            }
+        });
+    }
+
+    /**
+     * Search the log files in the background. The index of log files that
+     * have changed since the last search is updated first.
+     *
+     * @param query The query (messages in log files have no highlighted
+     * status, so a query for only highlighted messages has no results)
+     * @param listener Receives the results, newest first, in the background
+     * thread
+     */
+    public void search(SearchQuery query, Consumer<List<SearchResult>> listener) {
+        executor.submit(() -> {
+            List<SearchResult> result = new ArrayList<>();
+            try {
+                result = search(query);
+            } catch (Exception ex) {
+                LOGGER.warning("LogIndex: Error searching "+ex);
+            }
+            listener.accept(result);
+        });
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    //==========================
+    // Searching
+    //==========================
+
+    /**
+     * Search the log files. Must be run in the background thread.
+     *
+     * @param query
+     * @return
+     */
+    private List<SearchResult> search(SearchQuery query) {
+        List<SearchResult> result = new ArrayList<>();
+        if (query.highlightedOnly) {
+            return result;
+        }
+        long[] queryBloom = queryBloom(query);
+        for (LogFileInfo file : getFiles()) {
+            if (!query.matchesChannel(file.channel)
+                    || file.lastModified < query.from
+                    || file.startDate > query.to) {
+                continue;
+            }
+            FileIndex index = updateIndex(file);
+            if (index == null) {
+                continue;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file.file.toFile(), "r")) {
+                for (int i = index.blocks.size() - 1; i >= 0; i--) {
+                    Block block = index.blocks.get(i);
+                    if (block.overlaps(query.from, query.to, file.lastModified)
+                            && block.mightContain(queryBloom)) {
+                        searchBlock(raf, block, file, query, result);
+                        if (result.size() >= query.limit) {
+                            return result;
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                LOGGER.warning("LogIndex: Error reading "+file.file+" "+ex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check the lines of a block that passed the bloom filter, adding matching
+     * lines to the result, newest first.
+     */
+    private static void searchBlock(RandomAccessFile raf, Block block,
+            LogFileInfo file, SearchQuery query, List<SearchResult> result) throws IOException {
+        byte[] data = new byte[(int) (block.end - block.start)];
+        raf.seek(block.start);
+        raf.readFully(data);
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                lines.add(new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+        // Times of the lines that have their own timestamp, -1 for others
+        long[] times = new long[lines.size()];
+        TimeParser timeParser = new TimeParser(block.from);
+        for (int i = 0; i < lines.size(); i++) {
+            times[i] = timeParser.parse(lines.get(i));
+        }
+        for (int i = lines.size() - 1; i >= 0 && result.size() < query.limit; i--) {
+            if (times[i] != -1 && !query.matchesTime(times[i])) {
+                continue;
+            }
+            String line = StringUtil.trim(lines.get(i));
+            String user = getUser(line);
+            if (query.matchesUser(user)
+                    && query.matchesText(StringUtil.toLowerCase(line))) {
+                result.add(new SearchResult(file.channel, -1, user, line, false, true));
+            }
+        }
+    }
+
+    /**
+     * The bloom filter bits that have to be set in a block that could contain
+     * a match for the query.
+     */
+    private static long[] queryBloom(SearchQuery query) {
+        long[] bloom = new long[BLOOM_WORDS];
+        addToBloom(bloom, query.text);
+        if (query.user != null) {
+            addToBloom(bloom, query.user);
+        }
+        return bloom;
+    }
+
+    /**
+     * Get the lowercase username from a log line.
+     *
+     * @param line
+     * @return The username, or null if this doesn't appear to be a user
+     * message
+     */
+    static String getUser(String line) {
+        Matcher m = USER_LINE.matcher(line);
+        if (!m.find()) {
+            return null;
+        }
+        String name = m.group(1);
+        int loginStart = name.lastIndexOf(" (");
+        if (loginStart != -1 && name.endsWith(")")) {
+            // Localized display name with login name
+            return StringUtil.toLowerCase(name.substring(loginStart + 2, name.length() - 1));
+        }
+        // Remove symbols in front (mod, sub, ..)
+        int start = 0;
+        while (start < name.length() && !Character.isLetterOrDigit(name.charAt(start))) {
+            start++;
+        }
+        return StringUtil.toLowerCase(name.substring(start));
+    }
+
+    //==========================
+    // Indexing
+    //==========================
+
+    /**
+     * Get the log files, most recently modified first.
+     */
+    private List<LogFileInfo> getFiles() {
+        List<LogFileInfo> result = new ArrayList<>();
+        if (!Files.isDirectory(logPath)) {
+            return result;
+        }
+        try (Stream<Path> files = Files.walk(logPath, 2)) {
+            files.forEach(p -> {
+                LogFileInfo info = LogFileInfo.create(p);
+                if (info != null) {
+                    result.add(info);
+                }
+            });
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warning("LogIndex: Error listing files "+ex);
+        }
+        Collections.sort(result, Comparator.comparingLong((LogFileInfo f) -> f.lastModified).reversed());
+        return result;
+    }
+
+    /**
+     * Load the index for the given file, adding blocks for anything appended
+     * to the file since it was last indexed, or creating a new index if
+     * necessary.
+     *
+     * @param file
+     * @return The index, or null if an error occured
+     */
+    private FileIndex updateIndex(LogFileInfo file) {
+        Path indexFile = getIndexFile(file);
+        FileIndex index = loadIndex(indexFile, file);
+        if (index != null && index.length == file.length) {
+            return index;
+        }
+        if (index == null || index.length > file.length) {
+            // New or changed in a way that isn't just appending
+            index = new FileIndex(file.file.toString());
+        }
+        try {
+            if (index.addBlocks(file.file)) {
+                saveIndex(indexFile, index);
+            }
+            return index;
+        } catch (IOException ex) {
+            LOGGER.warning("LogIndex: Error indexing "+file.file+" "+ex);
+            return null;
+        }
+    }
+
+    private Path getIndexFile(LogFileInfo file) {
+        String name = file.file.getFileName().toString();
+        String path = file.file.toAbsolutePath().toString();
+        return indexPath.resolve(name+"-"+Integer.toHexString(path.hashCode())+".idx");
+    }
+
+    private static FileIndex loadIndex(Path indexFile, LogFileInfo file) {
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            String path = in.readUTF();
+            if (!path.equals(file.file.toString())) {
+                return null;
+            }
+            FileIndex index = new FileIndex(path);
+            index.length = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Block block = new Block(in.readLong(), in.readLong());
+                block.from = in.readLong();
+                block.last = in.readLong();
+                block.to = in.readLong();
+                for (int w = 0; w < BLOOM_WORDS; w++) {
+                    block.bloom[w] = in.readLong();
+                }
+                index.blocks.add(block);
+            }
+            return index;
+        } catch (IOException ex) {
+            LOGGER.warning("LogIndex: Error loading "+indexFile+" "+ex);
+            return null;
+        }
+    }
+
+    private void saveIndex(Path indexFile, FileIndex index) throws IOException {
+        Files.createDirectories(indexPath);
+        Path temp = indexFile.resolveSibling(indexFile.getFileName()+"-temp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(index.path);
+            out.writeLong(index.length);
+            out.writeInt(index.blocks.size());
+            for (Block block : index.blocks) {
+                out.writeLong(block.start);
+                out.writeLong(block.end);
+                out.writeLong(block.from);
+                out.writeLong(block.last);
+                out.writeLong(block.to);
+                for (long word : block.bloom) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void addToBloom(long[] bloom, String lowercaseText) {
+        int count = Trigrams.count(lowercaseText);
+        for (int i = 0; i < count; i++) {
+            long trigram = Trigrams.get(lowercaseText, i);
+            for (int k = 0; k < BLOOM_HASHES; k++) {
+                int bit = Trigrams.hash(trigram, k) & (BLOOM_BITS - 1);
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * The index of a single log file.
+     */
+    static class FileIndex {
+
+        private final String path;
+        private final List<Block> blocks = new ArrayList<>();
+
+        /**
+         * The length of the file up to which it has been indexed (the end of
+         * the last complete line).
+         */
+        private long length;
+
+        FileIndex(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Index anything added to the file since the last indexing.
+         *
+         * @param file
+         * @return true if the index changed
+         * @throws IOException
+         */
+        boolean addBlocks(Path file) throws IOException {
+            long offset = length;
+            long time = 0;
+            // Redo the last block if it wasn't full, so blocks don't get small
+            if (!blocks.isEmpty()) {
+                Block last = blocks.get(blocks.size() - 1);
+                time = last.last;
+                if (last.end - last.start < BLOCK_SIZE) {
+                    blocks.remove(blocks.size() - 1);
+                    offset = last.start;
+                    time = last.from;
+                }
+            }
+            // Blocks ending with lines without a time, waiting for the next
+            // known time
+            List<Block> open = new ArrayList<>();
+            for (Block block : blocks) {
+                if (block.to == -1) {
+                    open.add(block);
+                }
+            }
+            TimeParser timeParser = new TimeParser(time);
+            boolean changed = false;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                long skipped = 0;
+                while (skipped < offset) {
+                    long s = in.skip(offset - skipped);
+                    if (s <= 0) {
+                        return false;
+                    }
+                    skipped += s;
+                }
+                Block block = new Block(offset, offset);
+                block.from = timeParser.getLast();
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                long position = offset;
+                int b;
+                while ((b = in.read()) != -1) {
+                    position++;
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                    long lineTime = timeParser.parse(text);
+                    if (lineTime != -1) {
+                        for (Block openBlock : open) {
+                            openBlock.to = lineTime;
+                        }
+                        open.clear();
+                        if (block.end == block.start) {
+                            // First line of the block
+                            block.from = lineTime;
+                        }
+                        block.to = lineTime;
+                    } else {
+                        block.to = -1;
+                    }
+                    block.last = timeParser.getLast();
+                    addToBloom(block.bloom, StringUtil.toLowerCase(text));
+                    line.reset();
+                    block.end = position;
+                    if (block.end - block.start >= BLOCK_SIZE) {
+                        blocks.add(block);
+                        if (block.to == -1) {
+                            open.add(block);
+                        }
+                        block = new Block(position, position);
+                        block.from = timeParser.getLast();
+                    }
+                    length = position;
+                    changed = true;
+                }
+                if (block.end > block.start) {
+                    blocks.add(block);
+                }
+            }
+            return changed;
+        }
+
+    }
+
+    /**
+     * A part of a log file, containing only complete lines.
+     */
+    static class Block {
+
+        private final long start;
+        private long end;
+        private final long[] bloom = new long[BLOOM_WORDS];
+
+        /**
+         * The time of the first line (or the last known time before it), 0
+         * if unknown.
+         */
+        private long from;
+
+        /**
+         * The last known time at the end of the block.
+         */
+        private long last;
+
+        /**
+         * The time of the last line, or -1 if the last lines have no time,
+         * until the next time later in the file is known.
+         */
+        private long to = -1;
+
+        Block(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Whether the lines of this block could be in the given time range.
+         *
+         * @param from
+         * @param to
+         * @param fileEnd The time of the end of the file (last modified), for
+         * lines without a known time at the end
+         * @return
+         */
+        boolean overlaps(long from, long to, long fileEnd) {
+            long end = this.to != -1 ? this.to : fileEnd;
+            return this.from <= to && end >= from;
+        }
+
+        boolean mightContain(long[] queryBloom) {
+            for (int i = 0; i < BLOOM_WORDS; i++) {
+                if ((bloom[i] & queryBloom[i]) != queryBloom[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * Gets the times of log lines, from the timestamp in front of the line
+     * (only the formats that can be selected in the settings) or from the
+     * "Log started/closed" lines. Timestamps without a date are based on the
+     * date of the last known time.
+     */
+    static class TimeParser {
+
+        private static final Pattern LOG_MARKER = Pattern.compile(
+                "^# Log (?:started|closed): (\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2} [+-]\\d{4})");
+
+        private static final Pattern TIMESTAMP = Pattern.compile(
+                "^\\[(?:(\\d{4})-(\\d{2})-(\\d{2}) )?(\\d{2}):(\\d{2}):(\\d{2}) ?([AaPp][Mm])?\\]");
+
+        private static final long HALF_DAY = 12*60*60*1000L;
+
+        private final Calendar cal = Calendar.getInstance();
+        private long last;
+
+        /**
+         * @param last The last known time before the lines that will be
+         * parsed, 0 if unknown
+         */
+        TimeParser(long last) {
+            this.last = last;
+        }
+
+        /**
+         * Get the time of the given line, which should be the line after the
+         * one previously parsed.
+         *
+         * @param line
+         * @return The time, or -1 if the line doesn't have a (complete)
+         * timestamp
+         */
+        long parse(String line) {
+            long result = parseTime(line);
+            if (result != -1) {
+                last = result;
+            }
+            return result;
+        }
+
+        /**
+         * The last known time, either from the last line that had a time or
+         * the initial value.
+         *
+         * @return
+         */
+        long getLast() {
+            return last;
+        }
+
+        private long parseTime(String line) {
+            if (line.startsWith("#")) {
+                Matcher m = LOG_MARKER.matcher(line);
+                if (m.find()) {
+                    try {
+                        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z").parse(m.group(1)).getTime();
+                    } catch (ParseException ex) {
+                        return -1;
+                    }
+                }
+                return -1;
+            }
+            if (!line.startsWith("[")) {
+                return -1;
+            }
+            Matcher m = TIMESTAMP.matcher(line);
+            if (!m.find()) {
+                return -1;
+            }
+            int hour = Integer.parseInt(m.group(4));
+            if (m.group(7) != null) {
+                boolean pm = m.group(7).equalsIgnoreCase("pm");
+                hour = hour % 12 + (pm ? 12 : 0);
+            }
+            if (m.group(1) != null) {
+                cal.clear();
+                cal.set(Integer.parseInt(m.group(1)),
+                        Integer.parseInt(m.group(2)) - 1,
+                        Integer.parseInt(m.group(3)));
+            } else if (last > 0) {
+                cal.setTimeInMillis(last);
+            } else {
+                // No date known
+                return -1;
+            }
+            cal.set(Calendar.HOUR_OF_DAY, hour);
+            cal.set(Calendar.MINUTE, Integer.parseInt(m.group(5)));
+            cal.set(Calendar.SECOND, Integer.parseInt(m.group(6)));
+            cal.set(Calendar.MILLISECOND, 0);
+            long result = cal.getTimeInMillis();
+            if (m.group(1) == null && result + HALF_DAY < last) {
+                // Time of day is much earlier, so it's probably the next day
+                cal.add(Calendar.DAY_OF_MONTH, 1);
+                result = cal.getTimeInMillis();
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * A log file, with the channel and date taken from the file name.
+     */
+    private static class LogFileInfo {
+
+        private final Path file;
+        private final String channel;
+        private final long startDate;
+        private final long lastModified;
+        private final long length;
+
+        private LogFileInfo(Path file, String channel, long startDate,
+                long lastModified, long length) {
+            this.file = file;
+            this.channel = channel;
+            this.startDate = startDate;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        public static LogFileInfo create(Path path) {
+            String fileName = path.getFileName().toString();
+            if (!fileName.endsWith(".log")) {
+                return null;
+            }
+            File file = path.toFile();
+            if (!file.isFile()) {
+                return null;
+            }
+            Matcher m = FILE_NAME.matcher(fileName.substring(0, fileName.length() - 4));
+            if (!m.matches()) {
+                return null;
+            }
+            long startDate = 0;
+            if (m.group(1) != null) {
+                try {
+                    startDate = new SimpleDateFormat("yyyy-MM-dd").parse(m.group(1)).getTime();
+                } catch (ParseException ex) {
+                    // Just don't use date
+                }
+            }
+            return new LogFileInfo(path, m.group(2), startDate,
+                    file.lastModified(), file.length());
+        }
+
+    }
+
+}
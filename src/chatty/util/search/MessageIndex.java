@@ -0,0 +1,328 @@
+
+package chatty.util.search;
+
+import chatty.util.StringUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the recent messages of all channels, so that text can be
+ * found in any channel without going through the chat documents.
+ * 
+ * Each channel keeps up to a fixed number of messages, with postings lists of
+ * message ids for each trigram of the text and for each user. A query for a
+ * text of at least three characters only has to check the messages that
+ * contain all of its trigrams, which are then verified against the full
+ * query. Shorter texts fall back to checking all messages in the channel
+ * (within the time range).
+ * 
+ * Thread-safe.
+ */
+public class MessageIndex {
+    
+    public static final int DEFAULT_CAPACITY = 5000;
+    
+    private static final Comparator<SearchResult> NEWEST_FIRST = (a, b) -> {
+        return Long.compare(b.time, a.time);
+    };
+    
+    private final Map<String, ChannelIndex> channels = new HashMap<>();
+    
+    private int capacity;
+    
+    public MessageIndex(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+    
+    public MessageIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Add a message to the index.
+     * 
+     * @param channel The channel the message was received in
+     * @param user The username, or null if this is not a user message
+     * @param text The text of the message
+     * @param highlighted Whether the message was highlighted
+     * @param time The time the message was received (milliseconds)
+     */
+    public synchronized void add(String channel, String user, String text,
+            boolean highlighted, long time) {
+        if (channel == null || text == null) {
+            return;
+        }
+        ChannelIndex index = channels.get(channel);
+        if (index == null) {
+            index = new ChannelIndex(channel, capacity);
+            channels.put(channel, index);
+        }
+        index.add(new Entry(StringUtil.toLowerCase(user), text, highlighted, time));
+    }
+    
+    /**
+     * Remove all messages of the given channel.
+     * 
+     * @param channel 
+     */
+    public synchronized void clear(String channel) {
+        channels.remove(channel);
+    }
+    
+    public synchronized void clear() {
+        channels.clear();
+    }
+    
+    /**
+     * Number of messages currently stored for the given channel.
+     * 
+     * @param channel
+     * @return 
+     */
+    public synchronized int size(String channel) {
+        ChannelIndex index = channels.get(channel);
+        return index != null ? index.size : 0;
+    }
+    
+    /**
+     * Find the messages matching the query.
+     * 
+     * @param query
+     * @return The newest matching messages (at most the query limit), newest
+     * first
+     */
+    public synchronized List<SearchResult> search(SearchQuery query) {
+        List<SearchResult> result = new ArrayList<>();
+        for (ChannelIndex index : channels.values()) {
+            if (query.matchesChannel(index.channel)) {
+                index.search(query, result);
+            }
+        }
+        Collections.sort(result, NEWEST_FIRST);
+        if (result.size() > query.limit) {
+            return new ArrayList<>(result.subList(0, query.limit));
+        }
+        return result;
+    }
+    
+    private static class Entry {
+        
+        private final String user;
+        private final String text;
+        private final String lowercaseText;
+        private final boolean highlighted;
+        private final long time;
+        
+        private Entry(String user, String text, boolean highlighted, long time) {
+            this.user = user;
+            this.text = text;
+            this.lowercaseText = StringUtil.toLowerCase(text);
+            this.highlighted = highlighted;
+            this.time = time;
+        }
+        
+        private boolean matches(SearchQuery query) {
+            return (!query.highlightedOnly || highlighted)
+                    && query.matchesUser(user)
+                    && query.matchesTime(time)
+                    && query.matchesText(lowercaseText);
+        }
+        
+    }
+    
+    /**
+     * The messages of a single channel, stored in a circular array. Message
+     * ids keep increasing, so the ids of removed messages remaining in the
+     * postings lists are simply ignored, until enough have accumulated to
+     * rebuild the postings.
+     */
+    private static class ChannelIndex {
+        
+        private final String channel;
+        private final Entry[] entries;
+        private final Map<Long, IntList> trigrams = new HashMap<>();
+        private final Map<String, IntList> users = new HashMap<>();
+        
+        /**
+         * Index in the array of the oldest entry.
+         */
+        private int start;
+        
+        /**
+         * Current number of entries.
+         */
+        private int size;
+        
+        /**
+         * The id of the oldest entry.
+         */
+        private int firstId;
+        
+        /**
+         * Number of entries removed since the postings were last rebuilt.
+         */
+        private int removed;
+        
+        ChannelIndex(String channel, int capacity) {
+            this.channel = channel;
+            this.entries = new Entry[capacity];
+        }
+        
+        void add(Entry entry) {
+            if (size == entries.length) {
+                entries[start] = entry;
+                start = (start + 1) % entries.length;
+                firstId++;
+                removed++;
+            } else {
+                entries[(start + size) % entries.length] = entry;
+                size++;
+            }
+            if (removed >= entries.length) {
+                rebuild();
+            } else {
+                addPostings(entry, firstId + size - 1);
+            }
+        }
+        
+        Entry get(int id) {
+            return entries[(start + id - firstId) % entries.length];
+        }
+        
+        private void addPostings(Entry entry, int id) {
+            String text = entry.lowercaseText;
+            int count = Trigrams.count(text);
+            for (int i = 0; i < count; i++) {
+                Long trigram = Trigrams.get(text, i);
+                IntList list = trigrams.get(trigram);
+                if (list == null) {
+                    list = new IntList();
+                    trigrams.put(trigram, list);
+                }
+                list.addUnique(id);
+            }
+            if (entry.user != null) {
+                IntList list = users.get(entry.user);
+                if (list == null) {
+                    list = new IntList();
+                    users.put(entry.user, list);
+                }
+                list.add(id);
+            }
+        }
+        
+        /**
+         * Create the postings again from only the current entries, which
+         * removes the ids of removed entries and postings lists that are no
+         * longer used at all.
+         */
+        private void rebuild() {
+            trigrams.clear();
+            users.clear();
+            for (int id = firstId; id < firstId + size; id++) {
+                addPostings(get(id), id);
+            }
+            removed = 0;
+        }
+        
+        /**
+         * The id of the first entry with a time equal to or larger than the
+         * given time (entries are added in order of time).
+         */
+        private int idFromTime(long time) {
+            int low = firstId;
+            int high = firstId + size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid).time < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        void search(SearchQuery query, List<SearchResult> result) {
+            if (size == 0) {
+                return;
+            }
+            int fromId = query.from > 0 ? idFromTime(query.from) : firstId;
+            int toId = query.to < Long.MAX_VALUE ? idFromTime(query.to + 1) : firstId + size;
+            if (fromId >= toId) {
+                return;
+            }
+            
+            //--------------------------
+            // Collect postings lists
+            //--------------------------
+            List<IntList> lists = new ArrayList<>();
+            int count = Trigrams.count(query.text);
+            for (int i = 0; i < count; i++) {
+                IntList list = trigrams.get(Trigrams.get(query.text, i));
+                if (list == null) {
+                    // A trigram that isn't in any message
+                    return;
+                }
+                lists.add(list);
+            }
+            if (query.user != null) {
+                IntList list = users.get(query.user);
+                if (list == null) {
+                    return;
+                }
+                lists.add(list);
+            }
+            
+            int found = 0;
+            if (lists.isEmpty()) {
+                for (int id = toId - 1; id >= fromId && found < query.limit; id--) {
+                    if (check(get(id), query, result)) {
+                        found++;
+                    }
+                }
+                return;
+            }
+            
+            //--------------------------
+            // Intersect, newest first
+            //--------------------------
+            Collections.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+            IntList smallest = lists.get(0);
+            int index = smallest.lowerBound(toId) - 1;
+            for (; index >= 0 && found < query.limit; index--) {
+                int id = smallest.get(index);
+                if (id < fromId) {
+                    break;
+                }
+                if (containsAll(lists, id) && check(get(id), query, result)) {
+                    found++;
+                }
+            }
+        }
+        
+        private static boolean containsAll(List<IntList> lists, int id) {
+            for (int i = 1; i < lists.size(); i++) {
+                if (!lists.get(i).contains(id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private boolean check(Entry entry, SearchQuery query, List<SearchResult> result) {
+            if (entry.matches(query)) {
+                result.add(new SearchResult(channel, entry.time, entry.user,
+                        entry.text, entry.highlighted, false));
+                return true;
+            }
+            return false;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,95 @@
+
+package chatty.util.search;
+
+import chatty.util.StringUtil;
+
+/**
+ * A search for messages, with optional filters. Used for both the in-memory
+ * {@link MessageIndex} and the {@link LogIndex}.
+ */
+public class SearchQuery {
+    
+    public static final int DEFAULT_LIMIT = 200;
+    
+    /**
+     * The lowercase text to search for, can be empty to match all messages
+     * (that match the other filters).
+     */
+    public final String text;
+    
+    /**
+     * The channel to search in, or null for all channels.
+     */
+    public final String channel;
+    
+    /**
+     * The lowercase username of the author, or null for any user.
+     */
+    public final String user;
+    
+    /**
+     * Only messages from this time on (inclusive, milliseconds).
+     */
+    public final long from;
+    
+    /**
+     * Only messages up to this time (inclusive, milliseconds).
+     */
+    public final long to;
+    
+    public final boolean highlightedOnly;
+    
+    /**
+     * The maximum number of results, the newest results are returned.
+     */
+    public final int limit;
+    
+    public SearchQuery(String text, String channel, String user, long from,
+            long to, boolean highlightedOnly, int limit) {
+        this.text = text == null ? "" : StringUtil.toLowerCase(text);
+        this.channel = StringUtil.isNullOrEmpty(channel) ? null : channel;
+        this.user = StringUtil.isNullOrEmpty(user) ? null : StringUtil.toLowerCase(user);
+        this.from = from;
+        this.to = to > 0 ? to : Long.MAX_VALUE;
+        this.highlightedOnly = highlightedOnly;
+        this.limit = limit > 0 ? limit : DEFAULT_LIMIT;
+    }
+    
+    /**
+     * Search for text in all channels, without other filters.
+     * 
+     * @param text
+     */
+    public SearchQuery(String text) {
+        this(text, null, null, 0, 0, false, DEFAULT_LIMIT);
+    }
+    
+    public boolean matchesChannel(String channel) {
+        return this.channel == null || this.channel.equalsIgnoreCase(channel);
+    }
+    
+    public boolean matchesUser(String user) {
+        return this.user == null || this.user.equals(user);
+    }
+    
+    public boolean matchesTime(long time) {
+        return time >= from && time <= to;
+    }
+    
+    /**
+     * Check if the given lowercase text contains the search text.
+     * 
+     * @param lowercaseText
+     * @return 
+     */
+    public boolean matchesText(String lowercaseText) {
+        return lowercaseText.contains(text);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("'%s' (channel: %s, user: %s, %d-%d%s)",
+                text, channel, user, from, to, highlightedOnly ? ", highlighted" : "");
+    }
+    
+}
@@ -0,0 +1,47 @@
+
+package chatty.util.search;
+
+/**
+ * A single message found by a search.
+ */
+public class SearchResult {
+    
+    public final String channel;
+    
+    /**
+     * The time of the message in milliseconds, or -1 if not known (for
+     * results from log files, which may contain the time in the text itself
+     * in the format configured for logging).
+     */
+    public final long time;
+    
+    /**
+     * The lowercase username, or null if this is not a user message.
+     */
+    public final String user;
+    
+    public final String text;
+    public final boolean highlighted;
+    
+    /**
+     * Whether this result was found in a log file, instead of the messages
+     * received this session.
+     */
+    public final boolean fromLog;
+    
+    public SearchResult(String channel, long time, String user, String text,
+            boolean highlighted, boolean fromLog) {
+        this.channel = channel;
+        this.time = time;
+        this.user = user;
+        this.text = text;
+        this.highlighted = highlighted;
+        this.fromLog = fromLog;
+    }
+    
+    @Override
+    public String toString() {
+        return channel+" "+time+" "+user+": "+text;
+    }
+    
+}
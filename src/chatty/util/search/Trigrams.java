@@ -0,0 +1,48 @@
+
+package chatty.util.search;
+
+/**
+ * Helper for splitting lowercase text into trigrams (three consecutive
+ * characters), which are used as index terms, so that any substring of at
+ * least three characters can be looked up.
+ */
+class Trigrams {
+    
+    /**
+     * Texts shorter than this don't have any trigrams and can't use the index.
+     */
+    public static final int MIN_LENGTH = 3;
+    
+    /**
+     * The trigram starting at the given index, packed into a long.
+     * 
+     * @param text
+     * @param index
+     * @return 
+     */
+    public static long get(String text, int index) {
+        return ((long) text.charAt(index) << 32)
+                | ((long) text.charAt(index + 1) << 16)
+                | text.charAt(index + 2);
+    }
+    
+    public static int count(String text) {
+        return Math.max(0, text.length() - MIN_LENGTH + 1);
+    }
+    
+    /**
+     * A well distributed hash of a trigram, for use in bloom filters.
+     * 
+     * @param trigram
+     * @param seed
+     * @return 
+     */
+    public static int hash(long trigram, int seed) {
+        long h = trigram * 0x9E3779B97F4A7C15L + seed * 0xC2B2AE3D27D4EB4FL;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return (int) h;
+    }
+    
+}
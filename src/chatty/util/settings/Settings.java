@@ -2,9 +2,9 @@
 package chatty.util.settings;
 
 import chatty.Logging;
+import chatty.util.Metrics;
 import chatty.util.MiscUtil;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -13,6 +13,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -25,6 +29,10 @@ import org.json.simple.parser.ParseException;
  * settings and checking type isn't synchronized, but if settings are only
  * added once at the beginning this shouldn't be a problem.
  * 
+ * Files are only written if settings saved in them have been changed since
+ * they were last written. Building the JSON and writing can be done in a
+ * background thread, which also coalesces several save requests into one.
+ * 
  * @author tduva
  */
 public class Settings {
@@ -45,6 +53,43 @@ public class Settings {
     
     private static final Charset CHARSET = Charset.forName("UTF-8");
     
+    private static final Metrics.Histogram SAVE_TIME = Metrics.histogram(
+            "chatty_settings_save_seconds",
+            "Time to build the JSON and write a settings file",
+            "file");
+    
+    private static final Metrics.Counter SAVED_BYTES = Metrics.counter(
+            "chatty_settings_saved_bytes_total",
+            "Bytes written to settings files",
+            "file");
+    
+    /**
+     * Delay (in seconds) before automatically saving changed settings, so a
+     * burst of changes only results in one write.
+     */
+    private static final int AUTO_SAVE_DELAY = 10;
+    
+    /**
+     * Files with settings that changed since they were last written, guarded
+     * by LOCK.
+     */
+    private final Set<String> changedFiles = new HashSet<>();
+    
+    /**
+     * Held while taking a snapshot and writing it, so snapshots are always
+     * written in the order they were taken.
+     */
+    private final Object WRITE_LOCK = new Object();
+    
+    private final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SettingsWriter");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private ScheduledFuture<?> scheduledSave;
+    private boolean autoSave;
+    
     private boolean saved;
     
     public Settings(String path) {
@@ -86,6 +131,22 @@ public class Settings {
         setting.setFile(fileName);
     }
     
+    /**
+     * Remember that the file the given setting is saved in has to be written.
+     * Should be called while holding LOCK.
+     * 
+     * @param settingName The name of the changed setting
+     */
+    private void changed(String settingName) {
+        Setting setting = settings.get(settingName);
+        if (setting != null && setting.allowedToSave()) {
+            changedFiles.add(setting.getFile());
+            if (autoSave) {
+                scheduleSave(AUTO_SAVE_DELAY);
+            }
+        }
+    }
+    
     private boolean isSetting(String settingName) {
         if (getType(settingName) != Setting.UNDEFINED) {
             return true;
@@ -232,6 +293,9 @@ public class Settings {
             } else {
                 changed = setting.setValue(value);
             }
+            if (changed) {
+                changed(settingName);
+            }
         }
         if (changed) {
             settingChanged(settingName,type,value);
@@ -366,6 +430,9 @@ public class Settings {
             boolean changed = !settingMap.equals(map);
             settingMap.clear();
             settingMap.putAll(map);
+            if (changed) {
+                changed(settingName);
+            }
             return changed;
         }
     }
@@ -390,6 +457,7 @@ public class Settings {
     public void mapPut(String settingName, Object key, Object value) {
         synchronized(LOCK) {
             getMapInternal(settingName).put(key, value);
+            changed(settingName);
         }
     }
     
@@ -405,6 +473,7 @@ public class Settings {
     public void mapClear(String settingName) {
         synchronized(LOCK) {
             getMapInternal(settingName).clear();
+            changed(settingName);
         }
     }
     
@@ -422,6 +491,7 @@ public class Settings {
     public void mapRemove(String settingName, Object key) {
         synchronized (LOCK) {
             getMapInternal(settingName).remove(key);
+            changed(settingName);
         }
     }
 
@@ -469,6 +539,7 @@ public class Settings {
             Collection settingList = (Collection) get(settingName, Setting.LIST);
             settingList.clear();
             settingList.addAll(list);
+            changed(settingName);
         }
     }
     
@@ -498,19 +569,25 @@ public class Settings {
      */
     public boolean listRemove(String settingName, Object value) {
         synchronized(LOCK) {
-            return getListInternal(settingName).remove(value);
+            boolean removed = getListInternal(settingName).remove(value);
+            if (removed) {
+                changed(settingName);
+            }
+            return removed;
         }
     }
     
     public void listAdd(String settingName, Object value) {
         synchronized(LOCK) {
             getListInternal(settingName).add(value);
+            changed(settingName);
         }
     }
     
     public void listClear(String settingName) {
         synchronized(LOCK) {
             getListInternal(settingName).clear();
+            changed(settingName);
         }
     }
     
@@ -528,6 +605,7 @@ public class Settings {
             Collection settingList = getListInternal(settingName);
             if (!settingList.contains(value)) {
                 settingList.add(value);
+                changed(settingName);
                 return true;
             }
             return false;
@@ -793,11 +871,13 @@ public class Settings {
     }
     
     /**
-     * Turns all settings into a JSON String.
+     * Creates a JSON object of all settings saved in the given file. Lists
+     * and Maps are copied, so the object can be turned into a String without
+     * holding LOCK.
      * 
-     * @return The JSON
+     * @return The JSON object, or null if no settings are saved in this file
      */
-    private String settingsToJson(String file) {
+    private JSONObject settingsToJson(String file) {
         JSONObject obj = new JSONObject();
         
         Set<Map.Entry<String,Setting>> set = settings.entrySet();
@@ -809,7 +889,9 @@ public class Settings {
                 
                 // JSON Simple only supports List in this version
                 if (value instanceof Collection) {
-                    value = new ArrayList((Collection)value);
+                    value = new ArrayList<>((Collection<?>)value);
+                } else if (value instanceof Map) {
+                    value = new HashMap<>((Map<?, ?>)value);
                 }
                 obj.put(key, value);
             }
@@ -818,7 +900,7 @@ public class Settings {
         if (obj.isEmpty()) {
             return null;
         }
-        return obj.toJSONString();
+        return obj;
     }
     
     /**
@@ -899,25 +981,103 @@ public class Settings {
     }
     
     /**
-     * Saves the settings to a file as JSON.
-     * 
-     * @throws IOException 
+     * Saves the changed settings to file as JSON and waits for it to finish.
+     * Any save that is currently scheduled or running is included.
      */
     public void saveSettingsToJson() {
         aboutToSaveSettings();
         synchronized(LOCK) {
-            System.out.println("Saving settings to JSON.");
-            saveSettingsToJson(defaultFile);
-            for (String fileName : files) {
-                saveSettingsToJson(fileName);
+            if (scheduledSave != null) {
+                scheduledSave.cancel(false);
+                scheduledSave = null;
             }
         }
+        System.out.println("Saving settings to JSON.");
+        writeChangedFiles();
     }
     
-    private void saveSettingsToJson(String fileName) {
-        String json = settingsToJson(fileName);
+    /**
+     * Saves the changed settings to file as JSON in a background thread. The
+     * listeners are informed in the calling thread, so they can still add
+     * their data to the settings beforehand.
+     */
+    public void saveSettingsToJsonAsync() {
+        aboutToSaveSettings();
+        synchronized(LOCK) {
+            scheduleSave(0);
+        }
+    }
+    
+    /**
+     * Automatically save changed settings in a background thread, a short
+     * while after they have been changed. The listeners are not informed
+     * before such a save.
+     * 
+     * @param enabled 
+     */
+    public void setAutoSave(boolean enabled) {
+        synchronized(LOCK) {
+            autoSave = enabled;
+            if (enabled && !changedFiles.isEmpty()) {
+                scheduleSave(AUTO_SAVE_DELAY);
+            }
+        }
+    }
+    
+    /**
+     * Schedule writing the changed files. If a save is already scheduled to
+     * run within the given delay, no additional one is scheduled. Should be
+     * called while holding LOCK.
+     * 
+     * @param delay The delay in seconds
+     */
+    private void scheduleSave(int delay) {
+        if (scheduledSave != null && !scheduledSave.isDone()) {
+            if (scheduledSave.getDelay(TimeUnit.SECONDS) <= delay) {
+                return;
+            }
+            scheduledSave.cancel(false);
+        }
+        scheduledSave = saveExecutor.schedule(this::writeChangedFiles, delay, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Take a snapshot of the files with changed settings and write them.
+     */
+    private void writeChangedFiles() {
+        synchronized(WRITE_LOCK) {
+            Map<String, JSONObject> snapshot = new LinkedHashMap<>();
+            synchronized(LOCK) {
+                if (changedFiles.contains(defaultFile)) {
+                    snapshot.put(defaultFile, settingsToJson(defaultFile));
+                }
+                for (String fileName : files) {
+                    if (changedFiles.contains(fileName)) {
+                        snapshot.put(fileName, settingsToJson(fileName));
+                    }
+                }
+                changedFiles.clear();
+                // Changes after this need another save
+                scheduledSave = null;
+            }
+            if (snapshot.isEmpty()) {
+                LOGGER.info("No changed settings to save");
+                return;
+            }
+            for (Map.Entry<String, JSONObject> entry : snapshot.entrySet()) {
+                if (!saveSettingsToJson(entry.getKey(), entry.getValue())) {
+                    // Try again next time
+                    synchronized(LOCK) {
+                        changedFiles.add(entry.getKey());
+                    }
+                }
+            }
+        }
+    }
+    
+    private boolean saveSettingsToJson(String fileName, JSONObject data) {
         Path file = Paths.get(fileName);
-        if (json == null) {
+        if (data == null) {
             try {
                 if (Files.exists(file)) {
                     LOGGER.info("Removing unused file: "+fileName);
@@ -927,20 +1087,28 @@ public class Settings {
                 // Don't need to remove non-existing file
             } catch (IOException ex) {
                 LOGGER.warning("Error removing unused file: "+ex);
+                return false;
             }
         } else {
-            LOGGER.info("Saving settings to file: "+fileName);
+            long start = System.nanoTime();
             try {
+                byte[] json = data.toJSONString().getBytes(CHARSET);
                 Path tempFile = Paths.get(fileName + "-temp");
-                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, CHARSET)) {
-                    writer.write(json);
-                }
+                Files.write(tempFile, json);
                 MiscUtil.moveFile(tempFile, file);
+                String name = file.getFileName().toString();
+                SAVE_TIME.observeSince(start, name);
+                SAVED_BYTES.add(json.length, name);
+                LOGGER.info(String.format("Saved settings to file: %s (%d bytes, %dms)",
+                        fileName, json.length,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
             } catch (IOException ex) {
                 LOGGER.warning("Error saving settings to file: " + ex);
                 System.out.println("Error saving settings to file: " + ex);
+                return false;
             }
         }
+        return true;
     }
 
     /**
@@ -0,0 +1,34 @@
+package chatty;
+
+import chatty.util.irc.MsgTags;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TwitchConnectionTest {
+
+    @Test
+    public void testUpdateUserFromTags() {
+        User user = new User("abc", Room.EMPTY);
+        MsgTags tags = MsgTags.create("badges", "moderator/1", "color", "#FF0000",
+                "user-id", "123", "display-name", "Abc");
+        assertTrue(TwitchConnection.updateUserFromTags(user, tags, true));
+        assertTrue(user.isModerator());
+        assertEquals("Abc", user.getDisplayNick());
+        User.TagState state = user.getTagState();
+        assertTrue(state.matches(tags, true));
+
+        // Same tags, returns early without setting a new state
+        assertFalse(TwitchConnection.updateUserFromTags(user,
+                MsgTags.create("badges", "moderator/1", "color", "#FF0000",
+                        "user-id", "123", "display-name", "Abc"), true));
+        assertSame(state, user.getTagState());
+
+        // Changed otherwise, so updated again
+        user.setModerator(false);
+        assertTrue(TwitchConnection.updateUserFromTags(user, tags, true));
+        assertTrue(user.isModerator());
+        assertNotSame(state, user.getTagState());
+        assertTrue(user.getTagState().matches(tags, true));
+    }
+
+}
@@ -1,6 +1,7 @@
 
 package chatty;
 
+import chatty.util.irc.MsgTags;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -91,4 +92,41 @@ public class UserTest {
         assertTrue(otherTypes.maxLinesExceeded());
     }
     
+    @Test
+    public void tagStateTest() {
+        MsgTags tags = MsgTags.create("badges", "moderator/1", "color", "#FF0000", "user-id", "123", "display-name", "Abc");
+        User.TagState state = new User.TagState(tags, true);
+        assertTrue(state.matches(MsgTags.create("badges", "moderator/1", "color", "#FF0000", "user-id", "123", "display-name", "Abc"), true));
+        assertFalse(state.matches(MsgTags.create("badges", "moderator/1", "color", "#FF0000", "user-id", "123", "display-name", "abc"), true));
+        assertFalse(state.matches(tags, false));
+        assertFalse(state.matches(MsgTags.create("badges", "moderator/1", "color", "#FF0000", "user-id", "123", "display-name", "Abc", "turbo", "1"), true));
+        assertTrue(new User.TagState(tags, false).matches(MsgTags.create("badges", "moderator/1", "color", "#FF0000", "user-id", "123", "display-name", "abc"), false));
+        
+        // Cleared by changes
+        User user = new User("abc", Room.EMPTY);
+        assertFalse(user.getTagState().matches(tags, true));
+        assertTrue(user.setTagState(user.getTagState(), state));
+        user.setModerator(false);
+        assertSame(state, user.getTagState());
+        user.setModerator(true);
+        assertFalse(user.getTagState().matches(tags, true));
+        assertTrue(user.setTagState(user.getTagState(), state));
+        user.setColor("#FF0000");
+        assertFalse(user.getTagState().matches(tags, true));
+        assertTrue(user.setTagState(user.getTagState(), state));
+        user.setDisplayNick("Abc");
+        assertFalse(user.getTagState().matches(tags, true));
+        
+        // Not set if changed after retrieving the state
+        User.TagState before = user.getTagState();
+        user.setModerator(false);
+        assertFalse(user.setTagState(before, state));
+        assertFalse(user.getTagState().matches(tags, true));
+        before = user.getTagState();
+        assertTrue(user.setTagState(before, state));
+        
+        // Shared parsed values
+        assertSame(Helper.parseBadges("moderator/1,subscriber/12"), Helper.parseBadges("moderator/1,subscriber/12"));
+    }
+    
 }
@@ -0,0 +1,49 @@
+
+package chatty.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EdtWatchdogTest {
+
+    @Test
+    public void testStall() throws Exception {
+        EdtWatchdog.setThreshold(50);
+        EdtWatchdog.invokeLater("quickTask", () -> {});
+        EdtWatchdog.invokeLater("slowTask", () -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                // Ignore
+            }
+        });
+        List<EdtWatchdog.Stall> stalls = new ArrayList<>();
+        StringBuilder summary = new StringBuilder();
+        SwingUtilities.invokeAndWait(() -> {
+            stalls.addAll(EdtWatchdog.getStalls());
+            summary.append(EdtWatchdog.getSummary());
+        });
+        assertEquals(1, stalls.size());
+        EdtWatchdog.Stall stall = stalls.get(0);
+        assertEquals("slowTask", stall.origin);
+        assertTrue(stall.duration >= 300_000_000L);
+        assertNotNull(stall.getStack());
+        // Captured while the task was still running
+        assertTrue(containsClass(stall.getStack(), EdtWatchdogTest.class.getName()));
+        assertTrue(summary.toString().contains("quickTask"));
+        assertTrue(summary.toString().contains("slowTask"));
+    }
+
+    private static boolean containsClass(StackTraceElement[] stack, String className) {
+        for (StackTraceElement element : stack) {
+            if (element.getClassName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,125 @@
+
+package chatty.gui;
+
+import chatty.Room;
+import chatty.User;
+import chatty.util.api.pubsub.ModeratorActionData;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ModerationEventQueueTest {
+
+    private static final User USER = new User("abc", Room.createRegular("#test"));
+
+    private static ModeratorActionData action(String action, String... args) {
+        return new ModeratorActionData("", "", "", "test", action,
+                Arrays.asList(args), "mod", "");
+    }
+
+    @Test
+    public void testMerge() {
+        ModerationEventQueue queue = new ModerationEventQueue(null);
+
+        // PubSub first, waits for IRC
+        ModeratorActionData ban = action("timeout", "Abc", "600");
+        queue.addModAction(ban, false, 1000);
+        assertTrue(queue.takeReady(1010).isEmpty());
+        assertEquals(490, queue.getNextDelay(1010));
+        queue.addIrc(USER, 600, null, null, null, 1100);
+        List<ModerationEventQueue.Event> events = queue.takeReady(1100);
+        assertEquals(1, events.size());
+        assertSame(USER, events.get(0).user);
+        assertEquals(600, events.get(0).duration);
+        assertSame(ban, events.get(0).modAction);
+        assertEquals(-1, queue.getNextDelay(1100));
+
+        // IRC first, PubSub merged before applying
+        ModeratorActionData delete = action("delete", "abc", "message", "id1");
+        queue.addIrc(USER, -2, null, "id1", "message", 2000);
+        queue.addModAction(delete, true, 2005);
+        events = queue.takeReady(2010);
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).isMsgDeleted());
+        assertEquals("message", events.get(0).msg);
+        assertSame(delete, events.get(0).modAction);
+        assertTrue(events.get(0).ownAction);
+    }
+
+    @Test
+    public void testNoMatch() {
+        ModerationEventQueue queue = new ModerationEventQueue(null);
+
+        // Applied when the window has passed
+        queue.addModAction(action("ban", "abc"), false, 1000);
+        assertTrue(queue.takeReady(1499).isEmpty());
+        assertEquals(1, queue.takeReady(1500).size());
+
+        // Different message id doesn't match
+        queue.addModAction(action("delete", "abc", "message", "id1"), false, 2000);
+        queue.addIrc(USER, -2, null, "id2", "message", 2000);
+        List<ModerationEventQueue.Event> events = queue.takeReady(2000);
+        assertEquals(1, events.size());
+        assertNull(events.get(0).modAction);
+        assertEquals(1, queue.takeReady(2500).size());
+
+        // Not waiting for actions without IRC event
+        queue.addModAction(action("slow", "10"), false, 3000);
+        assertEquals(1, queue.takeReady(3000).size());
+
+        // IRC event already applied
+        queue.addIrc(USER, 0, null, null, null, 4000);
+        assertEquals(1, queue.takeReady(4000).size());
+        queue.addModAction(action("ban", "abc"), false, 4100);
+        events = queue.takeReady(4100);
+        assertEquals(1, events.size());
+        assertNull(events.get(0).user);
+    }
+
+    @Test
+    public void testDuplicate() {
+        ModerationEventQueue queue = new ModerationEventQueue(null);
+        queue.addModAction(action("slow", "10"), false, 1000);
+        queue.addModAction(action("slow", "10"), false, 1100);
+        assertEquals(1, queue.takeReady(1100).size());
+        queue.addModAction(action("slow", "10"), false, 1200);
+        assertTrue(queue.takeReady(1200).isEmpty());
+        queue.addModAction(action("slow", "10"), false, 1600);
+        assertEquals(1, queue.takeReady(1600).size());
+    }
+
+    @Test
+    public void testTimer() throws InterruptedException {
+        BlockingQueue<List<ModerationEventQueue.Event>> flushed = new LinkedBlockingQueue<>();
+        ModerationEventQueue queue = new ModerationEventQueue(flushed::add);
+
+        // Held back PubSub action, timer rescheduled until the window ends
+        long start = System.currentTimeMillis();
+        queue.addModAction(action("ban", "xyz"), false, start);
+        Thread.sleep(100);
+        assertTrue(flushed.isEmpty());
+        long heldTime = queue.getScheduledTime();
+        assertTrue(heldTime >= start + ModerationEventQueue.WINDOW);
+
+        // Ready event restarts the timer sooner
+        long now = System.currentTimeMillis();
+        queue.addIrc(USER, 0, null, null, null, now);
+        assertTrue(queue.getScheduledTime() < heldTime);
+        List<ModerationEventQueue.Event> events = flushed.poll(200, TimeUnit.MILLISECONDS);
+        assertNotNull(events);
+        assertEquals(1, events.size());
+        assertSame(USER, events.get(0).user);
+
+        // Held back action still applied after the window
+        events = flushed.poll(1000, TimeUnit.MILLISECONDS);
+        assertNotNull(events);
+        assertEquals(1, events.size());
+        assertNull(events.get(0).user);
+        assertEquals(-1, queue.getScheduledTime());
+    }
+
+}
@@ -0,0 +1,94 @@
+
+package chatty.gui;
+
+import chatty.gui.Highlighter.HighlightItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RuleIndexTest {
+
+    private static class Rule {
+
+        private final String raw;
+        private final HighlightItem item;
+
+        Rule(String raw) {
+            this.raw = raw;
+            this.item = new HighlightItem(raw);
+        }
+
+    }
+
+    private static List<Rule> rules(String... items) {
+        List<Rule> result = new ArrayList<>();
+        for (String item : items) {
+            result.add(new Rule(item));
+        }
+        return result;
+    }
+
+    private static RuleIndex<Rule> index(String... items) {
+        return new RuleIndex<>(rules(items), rule -> rule.item);
+    }
+
+    private static List<String> find(RuleIndex<Rule> index, String text) {
+        List<String> result = new ArrayList<>();
+        for (Rule rule : index.findAll(text, null, rule -> rule.item.matchesAny(text, null))) {
+            result.add(rule.raw);
+        }
+        return result;
+    }
+
+    @Test
+    public void testText() {
+        RuleIndex<Rule> index = index("abc", "text:bc", "w:cd", "start:x",
+                "cs:Test", "reg:A.C", "user:joshimuz", "he", "she", "hers");
+
+        assertEquals(Arrays.asList("abc", "text:bc", "reg:A.C"), find(index, "ABCD"));
+        assertEquals(Arrays.asList("w:cd"), find(index, "ab cd"));
+        assertEquals(Arrays.asList(), find(index, "test"));
+        assertEquals(Arrays.asList("cs:Test"), find(index, "Test"));
+        assertEquals(Arrays.asList(), find(index, "abx"));
+        assertEquals(Arrays.asList("start:x"), find(index, "xab"));
+
+        // Overlapping texts
+        assertEquals(Arrays.asList("he", "she", "hers"), find(index, "ushers"));
+
+        // Candidates don't have to match, but all matching ones are included
+        assertTrue(index.getCandidates("abc", null).get(0));
+        assertFalse(index.getCandidates("ab", null).get(0));
+        assertTrue(index.getCandidates("ab", null).get(5));
+        assertTrue(index.getCandidates("ab", null).get(6));
+        assertEquals(10, index.getCandidates(null, null).cardinality());
+    }
+
+    @Test
+    public void testCaseFolding() {
+        RuleIndex<Rule> index = index("straße", "Äpfel", "kelvin");
+        assertEquals(Arrays.asList("Äpfel"), find(index, "äPFEL"));
+        assertEquals(Arrays.asList("straße"), find(index, "STRAßE"));
+        // Kelvin sign matches "k" with case-insensitive Unicode regex
+        assertEquals(Arrays.asList("kelvin"), find(index, "Kelvin"));
+    }
+
+    @Test
+    public void testGroups() {
+        List<String> rules = Arrays.asList("a", "b", "c");
+        RuleIndex<String> index = new RuleIndex<>(rules, rule -> null,
+                rule -> rule.equals("a") ? null : (rule.equals("b") ? "#Chan" : "#other"));
+        assertEquals(Arrays.asList("a", "b", "c"), index.findCandidates("text", null));
+        assertEquals(Arrays.asList("a", "b"), index.findCandidates("text", "#chan"));
+        assertEquals(Arrays.asList("a"), index.findCandidates(null, "#abc"));
+    }
+
+    @Test
+    public void testEmpty() {
+        RuleIndex<Rule> index = index();
+        assertTrue(index.isEmpty());
+        assertNull(index.findFirst("abc", null, item -> true));
+    }
+
+}
@@ -0,0 +1,104 @@
+
+package chatty.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UserlistModelTest {
+
+    private static class Item implements Comparable<Item> {
+
+        private String name;
+
+        Item(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Item o) {
+            return name.compareTo(o.name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    private static class Events implements ListDataListener {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            events.add("added "+e.getIndex0()+"-"+e.getIndex1());
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            events.add("removed "+e.getIndex0()+"-"+e.getIndex1());
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            events.add("changed "+e.getIndex0()+"-"+e.getIndex1());
+        }
+
+    }
+
+    private static String data(UserlistModel<Item> model) {
+        return model.getData().toString();
+    }
+
+    @Test
+    public void testApplyChanges() {
+        UserlistModel<Item> model = new UserlistModel<>();
+        Item a = new Item("a");
+        Item c = new Item("c");
+        Item e = new Item("e");
+        Item g = new Item("g");
+        model.add(e);
+        model.add(a);
+        model.add(g);
+        model.add(c);
+        assertEquals("[a, c, e, g]", data(model));
+
+        Events events = new Events();
+        model.addListDataListener(events);
+
+        // Add one
+        Item d = new Item("d");
+        model.applyChanges(Collections.singleton(d), Arrays.asList(d));
+        assertEquals("[a, c, d, e, g]", data(model));
+        assertEquals(Arrays.asList("added 2-2"), events.events);
+        events.events.clear();
+
+        // Remove one, add one and change the sorting of one
+        Item b = new Item("b");
+        g.name = "ab";
+        model.applyChanges(new HashSet<>(Arrays.asList(d, b, g)), Arrays.asList(b, g));
+        assertEquals("[a, ab, b, c, e]", data(model));
+        assertEquals(Arrays.asList("changed 1-4"), events.events);
+        events.events.clear();
+
+        // Remove several
+        model.applyChanges(new HashSet<>(Arrays.asList(a, g, c)), Collections.emptyList());
+        assertEquals("[b, e]", data(model));
+        assertEquals(Arrays.asList("removed 1-3", "changed 0-0"), events.events);
+        events.events.clear();
+
+        // Nothing actually changed
+        model.applyChanges(Collections.singleton(e), Arrays.asList(e));
+        assertEquals("[b, e]", data(model));
+        assertTrue(events.events.isEmpty());
+    }
+
+}
@@ -0,0 +1,73 @@
+
+package chatty.gui.components;
+
+import chatty.util.api.Emoticon;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EmoteGridTest {
+
+    private static List<Emoticon> emotes(String... emotesets) {
+        List<Emoticon> result = new ArrayList<>();
+        for (String emoteset : emotesets) {
+            Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.FFZ, "emote"+result.size(), null);
+            b.setSize(28, 28);
+            b.setEmoteset(emoteset);
+            result.add(b.build());
+        }
+        return result;
+    }
+
+    @Test
+    public void testLayout() {
+        EmoteGrid grid = new EmoteGrid(emotes("a", "a", "a", "a", "a", "a", "a"), 1);
+        grid.setSize(200, 1);
+        assertEquals(7, grid.getEmoteCount());
+
+        // Two rows, centered
+        assertEquals(new Rectangle(10, 5, 32, 32), grid.getEmoteBounds(0));
+        assertEquals(new Rectangle(47, 5, 32, 32), grid.getEmoteBounds(1));
+        assertEquals(new Rectangle(65, 42, 32, 32), grid.getEmoteBounds(5));
+        assertEquals(79, grid.getPreferredSize().height);
+
+        // Hit testing
+        assertEquals(0, grid.getIndexAt(10, 5));
+        assertEquals(0, grid.getIndexAt(41, 36));
+        assertEquals(-1, grid.getIndexAt(9, 5));
+        assertEquals(-1, grid.getIndexAt(44, 5));
+        assertEquals(-1, grid.getIndexAt(10, 40));
+        assertEquals(5, grid.getIndexAt(65, 42));
+        assertEquals(6, grid.getIndexAt(110, 60));
+        assertEquals(-1, grid.getIndexAt(140, 60));
+        assertEquals(-1, grid.getIndexAt(50, 500));
+        assertEquals(-1, grid.getIndexAt(50, -1));
+        assertNotNull(grid.getEmoteAt(new Point(10, 5)));
+
+        // Wider, one row
+        grid.setSize(400, 79);
+        assertEquals(42, grid.getPreferredSize().height);
+        assertEquals(6, grid.getIndexAt(grid.getEmoteBounds(6).x, 5));
+    }
+
+    @Test
+    public void testSeparator() {
+        EmoteGrid grid = new EmoteGrid(emotes("a", "a", "b"), 1);
+        grid.setSize(200, 1);
+        assertEquals(new Rectangle(43, 5, 32, 32), grid.getEmoteBounds(0));
+        assertEquals(new Rectangle(124, 5, 32, 32), grid.getEmoteBounds(2));
+        assertEquals(-1, grid.getIndexAt(117, 10));
+    }
+
+    @Test
+    public void testEmpty() {
+        EmoteGrid grid = new EmoteGrid(emotes(), 1);
+        grid.setSize(200, 1);
+        assertEquals(0, grid.getPreferredSize().height);
+        assertEquals(-1, grid.getIndexAt(10, 10));
+    }
+
+}
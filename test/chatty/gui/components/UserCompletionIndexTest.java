@@ -0,0 +1,77 @@
+
+package chatty.gui.components;
+
+import chatty.Room;
+import chatty.User;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UserCompletionIndexTest {
+
+    private static final Comparator<User> ALPHABETICAL = (a, b) -> a.getName().compareTo(b.getName());
+
+    @Test
+    public void testFind() {
+        UserCompletionIndex index = new UserCompletionIndex();
+        User abc = new User("abc", Room.EMPTY);
+        User abd = new User("abd", Room.EMPTY);
+        User localized = new User("xyz", "アビ", Room.EMPTY);
+        User custom = new User("qwe", Room.EMPTY);
+        custom.setCustomNick("Abby");
+        index.add(abc);
+        index.add(abd);
+        index.add(localized);
+        index.add(custom);
+        index.add(new User("b", Room.EMPTY));
+
+        UserCompletionIndex.Result result = index.find("ab", ALPHABETICAL, 10);
+        assertEquals(Arrays.asList(abc, abd, custom), result.users);
+        assertEquals(3, result.total);
+        assertTrue(result.matched(abc, UserCompletionIndex.REGULAR));
+        assertTrue(result.matched(custom, UserCompletionIndex.CUSTOM));
+        assertFalse(result.matched(custom, UserCompletionIndex.REGULAR));
+
+        result = index.find("ア", ALPHABETICAL, 10);
+        assertEquals(Arrays.asList(localized), result.users);
+        assertTrue(result.matched(localized, UserCompletionIndex.LOCALIZED));
+
+        assertTrue(index.find("abcd", ALPHABETICAL, 10).users.isEmpty());
+        assertEquals(5, index.find("", ALPHABETICAL, 10).total);
+
+        // Limit
+        result = index.find("ab", ALPHABETICAL, 2);
+        assertEquals(Arrays.asList(abc, abd), result.users);
+        assertEquals(3, result.total);
+        result = index.find("ab", ALPHABETICAL.reversed(), 1);
+        assertEquals(Arrays.asList(custom), result.users);
+    }
+
+    @Test
+    public void testUpdate() {
+        UserCompletionIndex index = new UserCompletionIndex();
+        User user = new User("abc", Room.EMPTY);
+        index.add(user);
+        assertTrue(index.containsName("abc"));
+        assertEquals(1, index.find("a", ALPHABETICAL, 10).total);
+
+        user.setCustomNick("Zed");
+        index.update(user);
+        assertEquals(1, index.find("z", ALPHABETICAL, 10).total);
+        assertEquals(1, index.size());
+
+        user.setCustomNick(null);
+        index.update(user);
+        assertEquals(0, index.find("z", ALPHABETICAL, 10).total);
+
+        index.remove(user);
+        assertFalse(index.containsName("abc"));
+        assertEquals(0, index.find("a", ALPHABETICAL, 10).total);
+
+        index.add(user);
+        index.clear();
+        assertEquals(0, index.size());
+    }
+
+}
@@ -0,0 +1,74 @@
+
+package chatty.gui.components.textpane;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScrollbackTest {
+
+    @Test
+    public void testAdd() {
+        Scrollback s = new Scrollback();
+        assertFalse(s.isEnabled());
+        assertEquals(-1, s.add("a"));
+        assertEquals(0, s.endId());
+
+        s.setCapacity(3);
+        assertTrue(s.isEnabled());
+        assertEquals(0, s.add("a"));
+        assertEquals(1, s.add("b"));
+        assertEquals(2, s.add("c"));
+        assertEquals(0, s.firstId());
+        assertEquals("a", s.get(0).message);
+
+        // Capacity reached, oldest is removed, ids stay the same
+        assertEquals(3, s.add("d"));
+        assertEquals(1, s.firstId());
+        assertEquals(4, s.endId());
+        assertNull(s.get(0));
+        assertEquals("b", s.get(1).message);
+        assertEquals("d", s.get(3).message);
+        assertNull(s.get(4));
+    }
+
+    @Test
+    public void testSetCapacity() {
+        Scrollback s = new Scrollback();
+        s.setCapacity(4);
+        for (int i = 0; i < 6; i++) {
+            s.add(String.valueOf(i));
+        }
+        // Reduce, keeps the newest
+        s.setCapacity(2);
+        assertEquals(4, s.firstId());
+        assertEquals(6, s.endId());
+        assertEquals("4", s.get(4).message);
+        assertEquals("5", s.get(5).message);
+
+        // Increase, keeps all
+        s.setCapacity(5);
+        assertEquals(4, s.firstId());
+        assertEquals(6, s.add("6"));
+        assertEquals("6", s.get(6).message);
+        assertEquals("4", s.get(4).message);
+
+        s.setCapacity(0);
+        assertFalse(s.isEnabled());
+        assertNull(s.get(6));
+        assertEquals(7, s.endId());
+    }
+
+    @Test
+    public void testClear() {
+        Scrollback s = new Scrollback();
+        s.setCapacity(2);
+        s.add("a");
+        s.add("b");
+        s.clear();
+        assertNull(s.get(1));
+        assertEquals(s.firstId(), s.endId());
+        assertEquals(2, s.add("c"));
+        assertEquals("c", s.get(2).message);
+    }
+
+}
@@ -0,0 +1,78 @@
+
+package chatty.gui.emoji;
+
+import chatty.util.api.Emoticon;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EmojiCatalogTest {
+
+    private static List<String> find(EmojiCatalog catalog, String text) {
+        List<String> result = new ArrayList<>();
+        catalog.find(text, (emote, start, end) -> {
+            result.add(start+"-"+end+":"+emote.stringId);
+        });
+        return result;
+    }
+
+    @Test
+    public void testFind() {
+        EmojiCatalog catalog = new EmojiCatalog("twemoji");
+        assertTrue(catalog.size() > 1000);
+
+        assertTrue(find(catalog, "abc").isEmpty());
+        assertEquals("[2-3::mahjong:]", find(catalog, "a 🀄 b").toString());
+        // Variation selectors
+        assertEquals("[0-1::star:]", find(catalog, "⭐️").toString());
+        assertTrue(find(catalog, "⭐︎").isEmpty());
+
+        Emoticon emote = catalog.getByCode("⭐");
+        assertEquals(Emoticon.Type.EMOJI, emote.type);
+        assertSame(emote, catalog.getByCode("⭐"));
+        assertNull(catalog.getByCode("abc"));
+    }
+
+    @Test
+    public void testReplace() {
+        EmojiCatalog catalog = new EmojiCatalog("twemoji");
+        assertEquals("a ⭐ b", catalog.replaceShortcodes("a :star: b"));
+        assertEquals("x:foo⭐⭐", catalog.replaceShortcodes("x:foo:star::star:"));
+        assertEquals("no :shortcode: here", catalog.replaceShortcodes("no :shortcode: here"));
+
+        List<Emoticon> found = catalog.findByName(name -> name.startsWith(":mahj"));
+        assertEquals(1, found.size());
+        assertEquals("🀄", found.get(0).code);
+    }
+
+    @Test
+    public void testLazy() {
+        EmojiCatalog catalog = new EmojiCatalog("twemoji");
+        // Regular emote codes don't load the catalog
+        assertNull(catalog.getByCode("Kappa"));
+        assertFalse(catalog.isLoaded());
+        assertNotNull(catalog.getByCode("⭐"));
+        assertTrue(catalog.isLoaded());
+
+        List<String> categories = catalog.getCategories();
+        assertTrue(categories.contains("Symbols"));
+        assertEquals(categories.size(), new HashSet<>(categories).size());
+        List<Emoticon> symbols = catalog.getByCategory("Symbols");
+        assertFalse(symbols.isEmpty());
+        assertTrue(symbols.size() < catalog.size());
+        for (Emoticon emote : symbols) {
+            assertTrue(emote.getInfos().iterator().next().startsWith("Symbols"));
+        }
+        assertTrue(catalog.getByCategory("abc").isEmpty());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, EmojiCatalog.EMPTY.size());
+        assertTrue(find(EmojiCatalog.EMPTY, "⭐").isEmpty());
+        assertEquals(":star:", EmojiCatalog.EMPTY.replaceShortcodes(":star:"));
+    }
+
+}
@@ -3,6 +3,7 @@ package chatty.gui.emoji;
 
 import chatty.util.api.Emoticon;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -20,7 +21,7 @@ public class EmojiUtilTest {
     @Test
     public void testContainsEmoji() {
         for (EmojiUtil.EmojiSet set : EmojiUtil.EmojiSet.values()) {
-            Set<Emoticon> emotes = EmojiUtil.makeEmoticons(set.id);
+            List<Emoticon> emotes = EmojiUtil.makeCatalog(set.id).getAll();
             for (Emoticon emoji : emotes) {
                 assertTrue("Failed to detect "+emoji.stringId+" ("+emoji.code+")",
                         EmojiUtil.mightContainEmoji(emoji.code));
@@ -35,7 +36,7 @@ public class EmojiUtilTest {
     public void testShortCodeUnique() {
         for (EmojiUtil.EmojiSet set : EmojiUtil.EmojiSet.values()) {
             Set<String> shortCodes = new HashSet<>();
-            Set<Emoticon> emotes = EmojiUtil.makeEmoticons(set.id);
+            List<Emoticon> emotes = EmojiUtil.makeCatalog(set.id).getAll();
             for (Emoticon emoji : emotes) {
                 assertFalse("Duplicate shortcode "+emoji.stringId,
                         shortCodes.contains(emoji.stringId));
@@ -9,8 +9,8 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import java.util.HashSet;
+import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -22,17 +22,14 @@ public class FrankerFaceZTest {
 
     @Test
     public void testParseEmote() throws Exception {
-        JSONParser parser = new JSONParser();
-        JSONObject obj = (JSONObject) parser.parse(loadJSON("FFZ_emote_regular"));
-        Emoticon emote = FrankerFaceZParsing.parseEmote(obj, null, null, null);
+        Emoticon emote = parseEmote("FFZ_emote_regular");
         assertNotNull(emote);
         assertEquals(emote.code, "joshWASTED");
         assertEquals(emote.creator, "Joshimuz");
         assertEquals(emote.getWidth(), 100);
         assertEquals(emote.getHeight(), 16);
         
-        obj = (JSONObject) parser.parse(loadJSON("FFZ_emote_no_height"));
-        emote = FrankerFaceZParsing.parseEmote(obj, null, null, null);
+        emote = parseEmote("FFZ_emote_no_height");
         assertNotNull(emote);
         assertEquals(emote.code, "joshWASTED");
         assertEquals(emote.creator, "Joshimuz");
@@ -42,11 +39,28 @@ public class FrankerFaceZTest {
         testParseEmoteError("FFZ_emote_id_string");
     }
     
+    @Test
+    public void testParseRoomEmotes() throws Exception {
+        Set<Emoticon> emotes = FrankerFaceZParsing.parseRoomEmotes(loadJSON("FFZTest_regular"), "joshimuz");
+        assertEquals(2, emotes.size());
+        Set<String> codes = new HashSet<>();
+        for (Emoticon emote : emotes) {
+            codes.add(emote.code);
+            assertTrue(emote.streamRestrictionContains("joshimuz"));
+        }
+        assertTrue(codes.contains("joshWASTED"));
+        assertTrue(codes.contains("joshBUSTED"));
+        
+        assertTrue(FrankerFaceZParsing.parseRoomEmotes("{\"room\":", "joshimuz").isEmpty());
+    }
+    
     private void testParseEmoteError(String fileName) throws Exception {
-        JSONParser parser = new JSONParser();
-        JSONObject obj = (JSONObject) parser.parse(loadJSON(fileName));
-        Emoticon emote = FrankerFaceZParsing.parseEmote(obj, null, null, null);
-        assertNull(emote);
+        assertNull(parseEmote(fileName));
+    }
+    
+    private Emoticon parseEmote(String fileName) throws Exception {
+        return FrankerFaceZParsing.parseEmote(new JSONReader(loadJSON(fileName)),
+                null, null, null);
     }
     
     private String loadJSON(String fileName) throws Exception {
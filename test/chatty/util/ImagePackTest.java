@@ -0,0 +1,185 @@
+
+package chatty.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ImagePackTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("imagepacktest");
+    }
+
+    @After
+    public void tearDown() {
+        MiscUtil.deleteInDir(dir.toFile(), "", true);
+    }
+
+    private static byte[] data(int length, int value) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (value + i);
+        }
+        return result;
+    }
+
+    @Test
+    public void testPutGet() {
+        ImagePack pack = new ImagePack(dir, 1000);
+        assertNull(pack.get("a"));
+        assertTrue(pack.put("a", data(100, 1), "etag", null));
+        assertTrue(pack.put("b", data(50, 2), null, "date"));
+
+        ImagePack.Cached a = pack.get("a");
+        assertArrayEquals(data(100, 1), a.data);
+        assertEquals("etag", a.etag);
+        assertNull(a.lastModified);
+        assertEquals("date", pack.get("b").lastModified);
+        assertEquals(150, pack.getSize());
+
+        // Replace
+        assertTrue(pack.put("a", data(10, 3), null, null));
+        assertArrayEquals(data(10, 3), pack.get("a").data);
+        assertEquals(60, pack.getSize());
+        assertEquals(160, pack.getSegmentsSize());
+
+        // Too large or empty
+        assertFalse(pack.put("c", data(1001, 0), null, null));
+        assertFalse(pack.put("c", new byte[0], null, null));
+        assertNull(pack.get("c"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsed() {
+        ImagePack pack = new ImagePack(dir, 300);
+        pack.put("a", data(100, 1), null, null);
+        pack.put("b", data(100, 2), null, null);
+        pack.put("c", data(100, 3), null, null);
+        // Access "a", so "b" is the least recently used
+        assertNotNull(pack.get("a"));
+        pack.put("d", data(100, 4), null, null);
+        assertNull(pack.get("b"));
+        assertNotNull(pack.get("a"));
+        assertNotNull(pack.get("c"));
+        assertNotNull(pack.get("d"));
+        assertEquals(300, pack.getSize());
+
+        pack.setMaxSize(150);
+        assertEquals(1, pack.getCount());
+        assertNotNull(pack.get("d"));
+    }
+
+    @Test
+    public void testReload() {
+        ImagePack pack = new ImagePack(dir, 1000);
+        pack.put("emote__a", data(100, 1), "etag", "date");
+        pack.put("emote__b", data(200, 2), null, null);
+        pack.put("usericon__c", data(50, 3), null, null);
+        pack.get("emote__a");
+        pack.close();
+
+        ImagePack loaded = new ImagePack(dir, 1000);
+        assertEquals(3, loaded.getCount());
+        ImagePack.Cached a = loaded.get("emote__a");
+        assertArrayEquals(data(100, 1), a.data);
+        assertEquals("etag", a.etag);
+        assertEquals("date", a.lastModified);
+        assertArrayEquals(data(200, 2), loaded.get("emote__b").data);
+
+        assertEquals(2, loaded.removeByPrefix("emote__"));
+        assertNull(loaded.get("emote__b"));
+        assertNotNull(loaded.get("usericon__c"));
+        assertEquals(1, loaded.removeByPrefix(null));
+        assertEquals(0, loaded.getCount());
+    }
+
+    @Test
+    public void testAccessSavedOnClose() {
+        ImagePack pack = new ImagePack(dir, 300);
+        pack.put("a", data(100, 1), null, null);
+        pack.put("b", data(100, 2), null, null);
+        pack.put("c", data(100, 3), null, null);
+        pack.close();
+
+        // Only the access changed, still saved when closing
+        pack = new ImagePack(dir, 300);
+        assertNotNull(pack.get("a"));
+        pack.close();
+
+        pack = new ImagePack(dir, 300);
+        pack.put("d", data(100, 4), null, null);
+        assertNull(pack.get("b"));
+        assertNotNull(pack.get("a"));
+    }
+
+    @Test
+    public void testFlags() {
+        ImagePack pack = new ImagePack(dir, 1000);
+        pack.put("a", data(100, 1), "etag", "date");
+        pack.put("b", data(100, 2), null, null, 1);
+        assertEquals(0, pack.get("a").flags);
+        assertEquals(1, pack.get("b").flags);
+
+        // Update keeps the other information
+        long fetched = pack.get("a").fetched;
+        assertTrue(pack.update("a", data(50, 3), 1));
+        assertFalse(pack.update("c", data(50, 3), 1));
+        ImagePack.Cached a = pack.get("a");
+        assertArrayEquals(data(50, 3), a.data);
+        assertEquals(1, a.flags);
+        assertEquals(fetched, a.fetched);
+        assertEquals("etag", a.etag);
+        assertEquals("date", a.lastModified);
+        assertEquals(150, pack.getSize());
+
+        // Only the flags, without writing the data again
+        assertTrue(pack.setFlags("b", 3));
+        assertFalse(pack.setFlags("c", 3));
+        assertEquals(3, pack.get("b").flags);
+        assertArrayEquals(data(100, 2), pack.get("b").data);
+        assertEquals(250, pack.getSegmentsSize());
+        pack.close();
+
+        ImagePack loaded = new ImagePack(dir, 1000);
+        assertEquals(1, loaded.get("a").flags);
+        assertEquals(3, loaded.get("b").flags);
+    }
+
+    @Test
+    public void testCompact() {
+        ImagePack pack = new ImagePack(dir, 100000);
+        for (int i = 0; i < 100; i++) {
+            pack.put("a"+i, data(500, i), null, null);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            pack.put("a"+i, data(200, i+1), null, null);
+        }
+        pack.removeByPrefix("a1");
+        long size = pack.getSize();
+        assertTrue(pack.getSegmentsSize() > size);
+
+        pack.compact();
+        assertEquals(size, pack.getSize());
+        assertEquals(size, pack.getSegmentsSize());
+        assertArrayEquals(data(200, 1), pack.get("a0").data);
+        assertArrayEquals(data(500, 3), pack.get("a3").data);
+        assertNull(pack.get("a11"));
+
+        // Still valid after reload
+        pack.put("b", data(10, 0), null, null);
+        pack.close();
+        ImagePack loaded = new ImagePack(dir, 100000);
+        assertEquals(size + 10, loaded.getSize());
+        assertArrayEquals(data(500, 99), loaded.get("a99").data);
+        assertArrayEquals(data(10, 0), loaded.get("b").data);
+    }
+
+}
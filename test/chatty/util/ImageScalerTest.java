@@ -0,0 +1,50 @@
+
+package chatty.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ImageScalerTest {
+
+    private static BufferedImage image(int w, int h) {
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, w, h);
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    public void testScale() {
+        BufferedImage scaled = ImageScaler.scale(image(112, 100), 28, 25);
+        assertEquals(28, scaled.getWidth());
+        assertEquals(25, scaled.getHeight());
+        assertEquals(Color.RED.getRGB(), scaled.getRGB(14, 12));
+
+        scaled = ImageScaler.scale(image(28, 28), 56, 56);
+        assertEquals(56, scaled.getWidth());
+        assertEquals(Color.RED.getRGB(), scaled.getRGB(55, 55));
+
+        scaled = ImageScaler.scale(image(28, 28), 28, 28);
+        assertEquals(28, scaled.getWidth());
+    }
+
+    @Test
+    public void testCache() {
+        BufferedImage source = image(56, 56);
+        Image a = ImageScaler.getScaled("test", source, 28, 28);
+        assertSame(a, ImageScaler.getScaled("test", source, 28, 28));
+        assertNotSame(a, ImageScaler.getScaled("test", source, 20, 20));
+        assertNotSame(a, ImageScaler.getScaled("test2", source, 28, 28));
+        assertNotSame(a, ImageScaler.getScaled(null, source, 28, 28));
+
+        ImageScaler.clearCache();
+        assertNotSame(a, ImageScaler.getScaled("test", source, 28, 28));
+    }
+
+}
@@ -0,0 +1,119 @@
+
+package chatty.util;
+
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JSONReaderTest {
+
+    @Test
+    public void testTokens() throws Exception {
+        JSONReader r = new JSONReader(" {\"a\": [1, -2.5e1, \"b\", true, false, null], \"c\" : {}}\n");
+        assertEquals(JSONReader.Token.BEGIN_OBJECT, r.peek());
+        r.beginObject();
+        assertEquals(JSONReader.Token.NAME, r.peek());
+        assertEquals("a", r.nextName());
+        r.beginArray();
+        assertEquals(1, r.nextLong());
+        assertEquals(-25.0, r.nextDouble(), 0);
+        assertEquals("b", r.nextString());
+        assertTrue(r.nextBoolean());
+        assertFalse(r.nextBoolean());
+        assertEquals(JSONReader.Token.NULL, r.peek());
+        r.nextNull();
+        assertFalse(r.hasNext());
+        r.endArray();
+        assertEquals("c", r.nextName());
+        r.beginObject();
+        assertFalse(r.hasNext());
+        r.endObject();
+        r.endObject();
+        assertEquals(JSONReader.Token.END_DOCUMENT, r.peek());
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        JSONReader r = new JSONReader("[\"a\\\"b\\\\c\\/d\", \"\\n\\t\\u00e4\\u2764x\", \"\"]");
+        r.beginArray();
+        assertEquals("a\"b\\c/d", r.nextString());
+        assertEquals("\n\t\u00e4\u2764x", r.nextString());
+        assertEquals("", r.nextString());
+        r.endArray();
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        JSONReader r = new JSONReader("{\"skip\": {\"a\": [1, {\"b\": \"}\"}], \"c\": null}, \"id\": 123}");
+        r.beginObject();
+        assertEquals("skip", r.nextName());
+        r.skipValue();
+        assertEquals("id", r.nextName());
+        assertEquals(123, r.nextInt());
+        r.endObject();
+    }
+
+    @Test
+    public void testLenientGetters() throws Exception {
+        JSONReader r = new JSONReader("[\"a\", 1, null, {\"x\": 1}, 12345678901]");
+        r.beginArray();
+        assertEquals(-1, r.nextLong(-1));
+        assertNull(r.nextStringOrNull());
+        assertEquals(-1, r.nextInt(-1));
+        assertNull(r.nextStringOrNull());
+        assertEquals(12345678901L, r.nextLong(-1));
+        r.endArray();
+    }
+
+    @Test
+    public void testErrors() {
+        assertError("");
+        assertError("{\"a\" 1}");
+        assertError("{\"a\": 1,}");
+        assertError("[1 2]");
+        assertError("[\"abc]");
+        assertError("{a: 1}");
+        assertError("[tru]");
+        assertError("[1] x");
+    }
+
+    private static void assertError(String json) {
+        try {
+            JSONReader r = new JSONReader(json);
+            r.skipValue();
+            r.peek();
+            fail("Expected error: "+json);
+        } catch (ParseException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testWrongToken() throws Exception {
+        JSONReader r = new JSONReader("{\"a\": 1}");
+        try {
+            r.beginArray();
+            fail("Expected error");
+        } catch (ParseException ex) {
+            // Expected
+        }
+        r.beginObject();
+        try {
+            r.nextString();
+            fail("Expected error");
+        } catch (ParseException ex) {
+            // Expected
+        }
+        assertEquals("a", r.nextName());
+        
+        r = new JSONReader("[\"\\u12\"]");
+        r.beginArray();
+        try {
+            r.nextString();
+            fail("Expected error");
+        } catch (ParseException ex) {
+            // Expected
+        }
+    }
+
+}
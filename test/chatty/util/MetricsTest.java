@@ -0,0 +1,69 @@
+
+package chatty.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Before
+    public void before() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void after() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void testCounter() {
+        Metrics.Counter counter = Metrics.counter("test_lines_total", "Test lines", "channel");
+        assertSame(counter, Metrics.counter("test_lines_total", "Test lines", "channel"));
+        counter.inc("#abc");
+        counter.inc("#abc");
+        counter.add(5, "#a\"b");
+        assertEquals(2, counter.getCount("#abc"));
+
+        String output = Metrics.export();
+        assertTrue(output.contains("# HELP test_lines_total Test lines\n"));
+        assertTrue(output.contains("# TYPE test_lines_total counter\n"));
+        assertTrue(output.contains("test_lines_total{channel=\"#abc\"} 2\n"));
+        assertTrue(output.contains("test_lines_total{channel=\"#a\\\"b\"} 5\n"));
+
+        // Not recorded while disabled
+        Metrics.setEnabled(false);
+        counter.inc("#abc");
+        assertEquals(2, counter.getCount("#abc"));
+    }
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram histogram = Metrics.histogram("test_seconds", "Test time");
+        histogram.observeNanos(50_000);
+        histogram.observeNanos(2_000_000);
+        histogram.observeNanos(20_000_000_000L);
+        assertEquals(3, histogram.getCount());
+
+        String output = Metrics.export();
+        assertTrue(output.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(output.contains("test_seconds_bucket{le=\"0.0001\"} 1\n"));
+        assertTrue(output.contains("test_seconds_bucket{le=\"0.001\"} 1\n"));
+        assertTrue(output.contains("test_seconds_bucket{le=\"0.0025\"} 2\n"));
+        assertTrue(output.contains("test_seconds_bucket{le=\"10\"} 2\n"));
+        assertTrue(output.contains("test_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(output.contains("test_seconds_count 3\n"));
+        assertTrue(output.contains("test_seconds_sum 20.00205\n"));
+    }
+
+    @Test
+    public void testGauge() {
+        Metrics.gauge("test_size", "Test size", () -> 42);
+        assertTrue(Metrics.export().contains("# TYPE test_size gauge\ntest_size 42\n"));
+    }
+
+}
@@ -0,0 +1,134 @@
+
+package chatty.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SoundPlayerTest {
+
+    private static class TestOutput implements SoundPlayer.Output {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public SoundPlayer.Voice open(SoundPlayer.Decoded sound) throws Exception {
+            String name = sound.file.getFileName().toString();
+            synchronized (events) {
+                events.add("open "+name);
+            }
+            return new SoundPlayer.Voice() {
+
+                @Override
+                public void play(float volume) {
+                    synchronized (events) {
+                        events.add("play "+name+" "+(int)volume);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    synchronized (events) {
+                        events.add("close "+name);
+                    }
+                }
+            };
+        }
+
+    }
+
+    private static Path createSound(Path dir, String name, int frames) throws Exception {
+        AudioFormat format = new AudioFormat(8000, 16, 1, true, false);
+        byte[] data = new byte[frames * 2];
+        AudioInputStream input = new AudioInputStream(
+                new ByteArrayInputStream(data), format, frames);
+        File file = dir.resolve(name).toFile();
+        AudioSystem.write(input, AudioFileFormat.Type.WAVE, file);
+        return file.toPath();
+    }
+
+    @Test
+    public void testPlay() throws Exception {
+        Path dir = Files.createTempDirectory("chattySoundTest");
+        try {
+            Path a = createSound(dir, "a.wav", 100);
+            TestOutput output = new TestOutput();
+            SoundPlayer player = new SoundPlayer(output);
+
+            // Decoded once
+            SoundPlayer.Decoded decoded = player.getDecoded(a);
+            assertEquals(200, decoded.data.length);
+            assertSame(decoded, player.getDecoded(a));
+
+            // Line reused
+            assertTrue(player.play(a, 50, "id", 0));
+            assertTrue(player.play(a, 60, "id", 0));
+            player.waitForQueue();
+            assertEquals("[open a.wav, play a.wav 50, play a.wav 60]", output.events.toString());
+
+            // Cooldown
+            assertFalse(player.play(a, 50, "id", 10));
+            assertTrue(player.play(a, 50, "id2", 10));
+            assertTrue(player.play(a, 50, "id2", -1));
+            player.waitForQueue();
+            assertEquals(5, output.events.size());
+
+            // Changed file is decoded again and the line replaced
+            output.events.clear();
+            createSound(dir, "a.wav", 200);
+            assertNotSame(decoded, player.getDecoded(a));
+            player.play(a, 50, "id", -1);
+            player.waitForQueue();
+            assertEquals("[close a.wav, open a.wav, play a.wav 50]", output.events.toString());
+
+            // Only a few lines stay open
+            output.events.clear();
+            for (int i = 0; i < 6; i++) {
+                player.play(createSound(dir, i+".wav", 10), 50, "id", -1);
+            }
+            assertEquals(4, player.getOpenCount());
+            assertTrue(output.events.contains("close a.wav"));
+            assertTrue(output.events.contains("close 0.wav"));
+            assertFalse(output.events.contains("close 5.wav"));
+
+            // Output changed
+            output.events.clear();
+            player.setOutput(SoundPlayer.NO_OUTPUT);
+            player.play(a, 50, "id", -1);
+            assertEquals(1, player.getOpenCount());
+            assertEquals(4, output.events.size());
+        } finally {
+            for (File file : dir.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testInvalidFile() throws Exception {
+        Path file = Files.createTempFile("chattySoundTest", ".wav");
+        try {
+            Files.write(file, new byte[]{1, 2, 3});
+            SoundPlayer player = new SoundPlayer(SoundPlayer.NO_OUTPUT);
+            try {
+                player.play(file, 50, "id", 0);
+                fail("Exception expected");
+            } catch (Exception ex) {
+                // Expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package chatty.util.api;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EmoticonSnapshotTest {
+    
+    private static Emoticon emote(Emoticon.Type type, String code, String emoteset, String stream) {
+        return emote(type, code, emoteset, stream, null);
+    }
+    
+    private static Emoticon emote(Emoticon.Type type, String code, String emoteset, String stream, String url) {
+        Emoticon.Builder b = new Emoticon.Builder(type, code, url);
+        b.setEmoteset(emoteset);
+        if (stream != null) {
+            b.addStreamRestriction(stream);
+        }
+        return b.build();
+    }
+    
+    @Test
+    public void testUpdate() {
+        Emoticon global = emote(Emoticon.Type.TWITCH, "Kappa", Emoticon.SET_GLOBAL, null);
+        Emoticon sub = emote(Emoticon.Type.TWITCH, "abcHi", "123", null);
+        Emoticon ffz = emote(Emoticon.Type.FFZ, "OMEGALUL", null, null);
+        Emoticon bttv = emote(Emoticon.Type.BTTV, "monkaS", null, "test");
+        
+        EmoticonSnapshot.Builder b = EmoticonSnapshot.EMPTY.builder();
+        for (Emoticon emote : Arrays.asList(global, sub, ffz, bttv)) {
+            b.add(emote);
+        }
+        EmoticonChange change = b.getChange();
+        EmoticonSnapshot s1 = b.build();
+        assertEquals(1, s1.version);
+        assertEquals(1, change.version);
+        assertEquals(new HashSet<>(Arrays.asList(global, sub, ffz, bttv)), change.added);
+        assertTrue(change.removed.isEmpty());
+        assertTrue(change.hasGlobal());
+        assertTrue(change.hasEmoteset());
+        assertTrue(change.hasStream("test"));
+        assertFalse(change.hasStream("other"));
+        
+        assertTrue(s1.getGlobalTwitch().contains(global));
+        assertTrue(s1.getOtherGlobal().contains(ffz));
+        assertTrue(s1.getByEmoteset("123").contains(sub));
+        assertTrue(s1.getByStream("test").contains(bttv));
+        assertTrue(s1.getByStream("other").isEmpty());
+        
+        // Remove some, previous snapshot stays the same
+        b = s1.builder();
+        assertEquals(1, b.removeStream("test", e -> e.type == Emoticon.Type.BTTV));
+        assertEquals(0, b.removeOtherGlobal(e -> e.type == Emoticon.Type.BTTV));
+        assertEquals(1, b.removeEmoteset("123"));
+        change = b.getChange();
+        EmoticonSnapshot s2 = b.build();
+        assertEquals(2, s2.version);
+        assertTrue(change.added.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(sub, bttv)), change.removed);
+        assertFalse(change.hasGlobal());
+        
+        assertTrue(s2.getByStream("test").isEmpty());
+        assertTrue(s2.getByEmoteset("123").isEmpty());
+        assertEquals(0, s2.emotesetCount());
+        assertSame(s1.getGlobalTwitch(), s2.getGlobalTwitch());
+        assertTrue(s1.getByStream("test").contains(bttv));
+        assertTrue(s1.getByEmoteset("123").contains(sub));
+        
+        // Removing and adding again unchanged is no change
+        b = s2.builder();
+        b.removeOtherGlobal(e -> true);
+        assertSame(ffz, b.add(emote(Emoticon.Type.FFZ, "OMEGALUL", null, null)));
+        assertFalse(b.hasChanged());
+        change = b.getChange();
+        assertTrue(change.added.isEmpty());
+        assertTrue(change.removed.isEmpty());
+        assertSame(ffz, b.build().getOtherGlobal().iterator().next());
+        
+        // Adding an equal emote again unchanged is no change
+        b = s2.builder();
+        b.add(emote(Emoticon.Type.FFZ, "OMEGALUL", null, null));
+        assertFalse(b.hasChanged());
+        
+        // Removing and adding again with a different URL is a replacement
+        b = s2.builder();
+        b.removeOtherGlobal(e -> true);
+        Emoticon changed = emote(Emoticon.Type.FFZ, "OMEGALUL", null, null, "http://example.com/1");
+        assertSame(changed, b.add(changed));
+        change = b.getChange();
+        assertEquals(1, change.added.size());
+        assertSame(changed, change.added.iterator().next());
+        assertTrue(change.removed.isEmpty());
+        
+        // Adding and removing again is no change
+        b = s2.builder();
+        b.add(emote(Emoticon.Type.TWITCH, "abcHi", "123", null));
+        b.removeEmoteset("123");
+        assertFalse(b.hasChanged());
+        
+        // Replacing and then removing is a removal
+        b = s2.builder();
+        b.add(changed);
+        b.removeOtherGlobal(e -> true);
+        change = b.getChange();
+        assertTrue(change.added.isEmpty());
+        assertSame(ffz, change.removed.iterator().next());
+        
+        // No changes
+        assertFalse(s2.builder().hasChanged());
+    }
+    
+    @Test
+    public void testSeveralStreams() {
+        Emoticon.Builder eb = new Emoticon.Builder(Emoticon.Type.FFZ, "Shared", null);
+        eb.addStreamRestriction("a");
+        eb.addStreamRestriction("b");
+        Emoticon shared = eb.build();
+        EmoticonSnapshot.Builder b = EmoticonSnapshot.EMPTY.builder();
+        b.add(shared);
+        EmoticonSnapshot s1 = b.build();
+        assertTrue(s1.getByStream("a").contains(shared));
+        assertTrue(s1.getByStream("b").contains(shared));
+        
+        // Still in the other stream, so not removed
+        b = s1.builder();
+        assertEquals(1, b.removeStream("a", e -> true));
+        assertTrue(b.hasChanged());
+        EmoticonChange change = b.getChange();
+        assertTrue(change.removed.isEmpty());
+        assertTrue(change.added.isEmpty());
+        EmoticonSnapshot s2 = b.build();
+        assertTrue(s2.getByStream("a").isEmpty());
+        assertTrue(s2.getByStream("b").contains(shared));
+        
+        // Removed from both
+        b = s2.builder();
+        assertEquals(1, b.removeStream("b", e -> true));
+        change = b.getChange();
+        assertEquals(new HashSet<>(Arrays.asList(shared)), change.removed);
+        
+        // Added to a stream while already in another, so not added
+        b = s2.builder();
+        assertSame(shared, b.add(shared));
+        assertTrue(b.hasChanged());
+        assertTrue(b.getChange().added.isEmpty());
+        assertTrue(b.build().getByStream("a").contains(shared));
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        EmoticonSnapshot.Builder b = EmoticonSnapshot.EMPTY.builder();
+        b.add(emote(Emoticon.Type.TWITCH, "Kappa", Emoticon.SET_GLOBAL, null));
+        b.build().getGlobalTwitch().clear();
+    }
+    
+}
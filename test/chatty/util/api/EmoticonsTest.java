@@ -18,17 +18,71 @@ public class EmoticonsTest {
      */
     @Test
     public void testParseEmotesTag() {
-        System.out.println("parseEmotesTag (Errors)");
-        System.out.println(Emoticons.parseEmotesTag(null));
-        System.out.println(Emoticons.parseEmotesTag(""));
-        System.out.println(Emoticons.parseEmotesTag("/"));
-        System.out.println(Emoticons.parseEmotesTag(""));
-        System.out.println(Emoticons.parseEmotesTag("1/2"));
-        System.out.println(Emoticons.parseEmotesTag("1:1-2,3-/2:1"));
+        String text = "abc Kappa def Kappa xyz";
+        Assert.assertNull(Emoticons.parseEmotesTag(null, text));
+        Assert.assertEquals("[]", Emoticons.parseEmotesTag("", text).toString());
+        Assert.assertEquals("[]", Emoticons.parseEmotesTag("/", text).toString());
+        Assert.assertEquals("[]", Emoticons.parseEmotesTag("1/2", text).toString());
+        Assert.assertEquals("[1:1-2]", Emoticons.parseEmotesTag("1:1-2,3-/2:1", text).toString());
+        Assert.assertEquals("[]", Emoticons.parseEmotesTag("1:1-2", null).toString());
+        Assert.assertEquals("[]", Emoticons.parseEmotesTag("1:5-2,a-b,1-99999999999", text).toString());
+        // Outside of text
+        Assert.assertEquals("[1:4-8]", Emoticons.parseEmotesTag("1:4-8,20-30", text).toString());
         
-        System.out.println("parseEmotesTag (Regular)");
-        System.out.println(Emoticons.parseEmotesTag("1:2-4/2:6-7"));
-        System.out.println(Emoticons.parseEmotesTag("4:2-7,10-12/13:2-3"));
+        Assert.assertEquals("[1:2-4, 2:6-7]", Emoticons.parseEmotesTag("1:2-4/2:6-7", text).toString());
+        Assert.assertEquals("[13:2-3, 4:5-7, 4:10-12]",
+                Emoticons.parseEmotesTag("4:10-12,5-7/13:2-3", text).toString());
+        
+        // Same start, last one is used
+        Assert.assertEquals("[13:2-3]", Emoticons.parseEmotesTag("4:2-7/13:2-3", text).toString());
+        
+        Emoticons.TagEmotes emotes = Emoticons.parseEmotesTag("25:4-8,14-18", text);
+        Assert.assertEquals(2, emotes.size());
+        Assert.assertEquals("25", emotes.getId(0));
+        Assert.assertEquals(4, emotes.getStart(0));
+        Assert.assertEquals(8, emotes.getEnd(0));
+        Assert.assertEquals(14, emotes.getStart(1));
+        Assert.assertEquals(18, emotes.getEnd(1));
+        Assert.assertEquals(emotes, Emoticons.parseEmotesTag("25:14-18/25:4-8", text));
+        
+        // Ids are shared
+        Assert.assertSame(emotes.getId(0), emotes.getId(1));
+        Assert.assertSame(emotes.getId(0), Emoticons.parseEmotesTag("1:1-2/25:4-8", text).getId(1));
+    }
+    
+    @Test
+    public void testParseEmotesTagSupplementary() {
+        // Twitch counts supplementary characters as one character
+        String text = "Kappa \uD841\uDF0E Kappa \uD841\uDF0E\uD841\uDF0EKappa";
+        Emoticons.TagEmotes emotes = Emoticons.parseEmotesTag("25:0-4,8-12,16-20", text);
+        Assert.assertEquals("[25:0-4, 25:9-13, 25:19-23]", emotes.toString());
+        for (int i = 0; i < emotes.size(); i++) {
+            Assert.assertEquals("Kappa", text.substring(emotes.getStart(i), emotes.getEnd(i) + 1));
+        }
+        
+        // Supplementary character at the end of the emote
+        emotes = Emoticons.parseEmotesTag("1:6-7", text);
+        Assert.assertEquals("\uD841\uDF0E ", text.substring(emotes.getStart(0), emotes.getEnd(0) + 1));
+        emotes = Emoticons.parseEmotesTag("1:14-15", text);
+        Assert.assertEquals("\uD841\uDF0E\uD841\uDF0E", text.substring(emotes.getStart(0), emotes.getEnd(0) + 1));
+    }
+    
+    @Test
+    public void testParseEmotesTagNewIdTable() {
+        String text = "Kappa abc";
+        Emoticons.TagEmotes before = Emoticons.parseEmotesTag("25:0-4", text);
+        // Add enough ids for a new table to be started
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 60000; i++) {
+            b.append("new").append(i).append(":0-4/");
+        }
+        Emoticons.parseEmotesTag(b.toString(), text);
+        Emoticons.TagEmotes after = Emoticons.parseEmotesTag("25:0-4", text);
+        Assert.assertEquals("25", before.getId(0));
+        Assert.assertEquals("25", after.getId(0));
+        Assert.assertEquals(before, after);
+        Assert.assertEquals(before.hashCode(), after.hashCode());
+        Assert.assertFalse(before.equals(Emoticons.parseEmotesTag("26:0-4", text)));
     }
     
     @Test
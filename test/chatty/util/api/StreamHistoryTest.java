@@ -0,0 +1,142 @@
+
+package chatty.util.api;
+
+import chatty.util.api.StreamInfo.StreamType;
+import chatty.util.api.StreamTagManager.StreamTag;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StreamHistoryTest {
+
+    private static final long START = (System.currentTimeMillis() / 1000) * 1000 - 24*60*60*1000;
+    private static final List<StreamTag> TAGS = Arrays.asList(new StreamTag("1", "Speedrunning", null, false));
+
+    private static void add(StreamHistory history, int minute, int viewers, String title) {
+        history.add(START + minute*60*1000L, viewers, title, "Game",
+                StreamType.LIVE, TAGS, START, START);
+    }
+
+    @Test
+    public void testAdd() {
+        StreamHistory history = new StreamHistory();
+        assertTrue(history.getSnapshot().isEmpty());
+        add(history, 0, 10, "a");
+        add(history, 2, 12, "a");
+        add(history, 4, 15, "b");
+        history.addOffline(START + 6*60*1000);
+        StreamHistory.Snapshot s = history.getSnapshot();
+
+        // Later changes don't affect the snapshot
+        for (int i = 0; i < 40; i++) {
+            add(history, 8 + i, i, "c");
+        }
+        assertEquals(4, s.size());
+        assertEquals(44, history.getSnapshot().size());
+
+        assertEquals(START + 2*60*1000, s.getTime(1));
+        assertEquals(15, s.getViewers(2));
+        assertEquals(-1, s.getViewers(3));
+        assertTrue(s.isOnline(2));
+        assertFalse(s.isOnline(3));
+        assertEquals(StreamType.LIVE, s.getStreamType(0));
+        assertNull(s.getStreamType(3));
+        assertEquals(TAGS, s.getCommunities(0));
+
+        // Segments
+        assertEquals(3, s.getSegmentCount());
+        assertEquals(0, s.getSegment(1));
+        assertEquals(1, s.getSegment(2));
+        assertEquals("bGame", s.getSegmentStatusAndGame(1));
+        assertNull(s.getSegmentStatusAndGame(2));
+
+        StreamInfoHistoryItem item = s.getItem(2);
+        assertEquals("b", item.getTitle());
+        assertEquals(15, item.getViewers());
+        assertTrue(item.isOnline());
+        assertFalse(s.getItem(3).isOnline());
+
+        // Searching
+        assertEquals(1, s.findFirstAtOrAfter(START + 1));
+        assertEquals(0, s.findLastAtOrBefore(START + 1));
+        assertEquals(4, s.findFirstAtOrAfter(START + 60*60*1000));
+        assertEquals(-1, s.findLastAtOrBefore(START - 1));
+        assertEquals(2, s.indexOf(START + 4*60*1000));
+        assertEquals(-1, s.indexOf(START + 1));
+    }
+
+    @Test
+    public void testRemoveOld() {
+        StreamHistory history = new StreamHistory();
+        history.add(START - StreamHistory.MAX_AGE, 1, "old", "Game",
+                StreamType.LIVE, TAGS, START, START);
+        for (int i = 0; i < 20; i++) {
+            add(history, i, i, "a");
+        }
+        StreamHistory.Snapshot s = history.getSnapshot();
+        assertEquals(20, s.size());
+        assertEquals(START, s.getTime(0));
+        assertEquals(1, s.getSegmentCount());
+        assertEquals("aGame", s.getSegmentStatusAndGame(0));
+    }
+
+    @Test
+    public void testPersist() throws IOException {
+        StreamHistory history = new StreamHistory();
+        add(history, 0, 10, "a");
+        add(history, 2, 1000000, "a");
+        add(history, 4, 5, null);
+        history.addOffline(START + 6*60*1000);
+        assertTrue(history.checkChanged());
+        assertFalse(history.checkChanged());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        history.write(output);
+
+        StreamHistory loaded = new StreamHistory();
+        add(loaded, 10, 20, "b");
+        loaded.read(new ByteArrayInputStream(output.toByteArray()));
+        StreamHistory.Snapshot s = loaded.getSnapshot();
+        assertEquals(5, s.size());
+        assertEquals(START + 2*60*1000, s.getTime(1));
+        assertEquals(1000000, s.getViewers(1));
+        assertEquals(5, s.getViewers(2));
+        assertEquals(-1, s.getViewers(3));
+        assertEquals(20, s.getViewers(4));
+        assertEquals("aGame", s.getSegmentStatusAndGame(s.getSegment(0)));
+        assertEquals("nullGame", s.getSegmentStatusAndGame(s.getSegment(2)));
+        assertFalse(s.isOnline(3));
+        assertEquals("Speedrunning", s.getCommunities(0).get(0).getDisplayName());
+        assertEquals(StreamType.LIVE, s.getStreamType(4));
+        assertEquals(4, s.getSegmentCount());
+    }
+
+    @Test
+    public void testDownsample() {
+        StreamHistory history = new StreamHistory();
+        for (int i = 0; i < 1000; i++) {
+            add(history, i, i == 500 ? 10000 : (i == 700 ? 0 : 100), i < 900 ? "a" : "b");
+        }
+        StreamHistory.Snapshot s = history.getSnapshot();
+
+        // Few entries, all returned
+        assertArrayEquals(new int[]{10, 11, 12}, s.downsample(10, 12, 10));
+        assertEquals(0, s.downsample(5, 4, 10).length);
+
+        int[] result = s.downsample(0, 999, 10);
+        assertTrue(result.length <= 10 * 5);
+        assertEquals(0, result[0]);
+        assertEquals(999, result[result.length - 1]);
+        for (int i = 1; i < result.length; i++) {
+            assertTrue(result[i] > result[i - 1]);
+        }
+        assertTrue(Arrays.stream(result).anyMatch(i -> i == 500));
+        assertTrue(Arrays.stream(result).anyMatch(i -> i == 700));
+        assertTrue(Arrays.stream(result).anyMatch(i -> i == 900));
+    }
+
+}
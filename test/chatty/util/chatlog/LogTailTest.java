@@ -0,0 +1,87 @@
+
+package chatty.util.chatlog;
+
+import chatty.util.MiscUtil;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LogTailTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("logtailtest");
+    }
+
+    @After
+    public void tearDown() {
+        MiscUtil.deleteInDir(dir.toFile(), "", true);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = dir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testReadLastLines() throws IOException {
+        Path file = write("#test.log", "# Log started: a\na\r\nb\n\nc ä\n# Log closed: a\n-\n");
+        assertEquals(Arrays.asList("b", "c ä"), LogTail.readLastLines(file, 2));
+        assertEquals(Arrays.asList("a", "b", "c ä"), LogTail.readLastLines(file, 10));
+        assertTrue(LogTail.readLastLines(file, 0).isEmpty());
+
+        // No newline at the end
+        file = write("#test2.log", "first\nsecond");
+        assertEquals(Arrays.asList("first", "second"), LogTail.readLastLines(file, 5));
+
+        file = write("#empty.log", "");
+        assertTrue(LogTail.readLastLines(file, 5).isEmpty());
+    }
+
+    @Test
+    public void testLargeFile() throws IOException {
+        // Lines crossing the mapped windows
+        StringBuilder b = new StringBuilder();
+        int count = 0;
+        while (b.length() < 3*1024*1024) {
+            b.append("line ").append(count++).append(" ");
+            for (int i = 0; i < count % 100; i++) {
+                b.append("abcdefghij");
+            }
+            b.append("\n");
+        }
+        Path file = write("#large.log", b.toString());
+        List<String> lines = LogTail.readLastLines(file, count);
+        assertEquals(count, lines.size());
+        for (int i = 0; i < count; i++) {
+            assertTrue(lines.get(i).startsWith("line "+i+" "));
+            assertEquals(6 + String.valueOf(i).length() + (i + 1) % 100 * 10, lines.get(i).length());
+        }
+    }
+
+    @Test
+    public void testGetLastLines() throws IOException {
+        Path old = write("2020-01-01_#test.log", "1\n2\n3\n");
+        old.toFile().setLastModified(1000000);
+        write("#test/2020-02-01_#test.log", "4\n5\n");
+        write("#other.log", "other\n");
+        write("#test2.log", "other\n");
+        assertEquals(Arrays.asList("5"), LogTail.getLastLines(dir, "#test", 1));
+        assertEquals(Arrays.asList("2", "3", "4", "5"), LogTail.getLastLines(dir, "#test", 4));
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), LogTail.getLastLines(dir, "#test", 10));
+        assertTrue(LogTail.getLastLines(dir, "#nothing", 10).isEmpty());
+        assertTrue(LogTail.getLastLines(dir.resolve("invalid"), "#test", 10).isEmpty());
+    }
+
+}
@@ -0,0 +1,55 @@
+
+package chatty.util.gif;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GifUtilTest {
+
+    private static byte[] image(String format) throws IOException {
+        BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, format, output);
+        return output.toByteArray();
+    }
+
+    @Test
+    public void testIsGif() throws IOException {
+        assertTrue(GifUtil.isGif(image("gif")));
+        assertTrue(GifUtil.isGif("GIF87a".getBytes()));
+        assertFalse(GifUtil.isGif(image("png")));
+        assertFalse(GifUtil.isGif("GIF8".getBytes()));
+        assertFalse(GifUtil.isGif("GIF88a".getBytes()));
+        assertFalse(GifUtil.isGif(new byte[0]));
+    }
+
+    @Test
+    public void testNormalize() throws IOException {
+        // Not a GIF, unchanged
+        byte[] png = image("png");
+        assertSame(png, GifUtil.normalize(png, "test"));
+
+        // Invalid GIF, unchanged
+        byte[] invalid = "GIF89a-invalid".getBytes();
+        assertSame(invalid, GifUtil.normalize(invalid, "test"));
+
+        byte[] gif = image("gif");
+        byte[] normalized = GifUtil.normalize(gif, "test");
+        assertTrue(GifUtil.isGif(normalized));
+
+        ImageIcon icon = GifUtil.createImage(normalized, "test");
+        assertEquals(4, icon.getIconWidth());
+        assertEquals(3, icon.getIconHeight());
+        assertEquals("GIF", icon.getDescription());
+
+        icon = GifUtil.createImage(png, "test");
+        assertEquals(4, icon.getIconWidth());
+        assertNull(GifUtil.createImage("invalid".getBytes(), "test"));
+    }
+
+}
@@ -0,0 +1,241 @@
+
+package chatty.util.http;
+
+import chatty.util.MiscUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the HttpClient against a local server.
+ */
+public class HttpClientTest {
+
+    private HttpServer server;
+    private Path cacheDir;
+    private String baseUrl;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private volatile String etag = "\"v1\"";
+    private volatile CountDownLatch block;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("httpclienttest");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/data", exchange -> {
+            requests.incrementAndGet();
+            int current = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            try {
+                if (block != null) {
+                    block.await(5, TimeUnit.SECONDS);
+                }
+                String currentEtag = etag;
+                if (currentEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                } else {
+                    exchange.getResponseHeaders().add("ETag", currentEtag);
+                    send(exchange, 200, "data "+currentEtag+" "+exchange.getRequestURI().getQuery());
+                }
+            } catch (InterruptedException ex) {
+                exchange.close();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            send(exchange, 404, "not found");
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:"+server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        MiscUtil.deleteInDir(cacheDir.toFile(), "", true);
+    }
+
+    private static void send(HttpExchange exchange, int code, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private HttpRequest request(String path, boolean cached) {
+        HttpRequest request = new HttpRequest(baseUrl+path);
+        request.setCached(cached);
+        return request;
+    }
+
+    @Test
+    public void testRevalidation() {
+        HttpClient client = new HttpClient(cacheDir, 2, 2);
+        HttpResponse response = client.request(request("/data?a", true));
+        assertEquals(200, response.getResponseCode());
+        assertEquals("data \"v1\" a", response.getText());
+        assertFalse(response.isFromCache());
+
+        // Not modified, so cached text is used
+        response = client.request(request("/data?a", true));
+        assertEquals(200, response.getResponseCode());
+        assertEquals("data \"v1\" a", response.getText());
+        assertTrue(response.isFromCache());
+        assertEquals(1, notModified.get());
+
+        // Cache is persistent
+        HttpClient client2 = new HttpClient(cacheDir, 2, 2);
+        response = client2.request(request("/data?a", true));
+        assertTrue(response.isFromCache());
+        assertEquals("data \"v1\" a", response.getText());
+
+        // Modified
+        etag = "\"v2\"";
+        response = client2.request(request("/data?a", true));
+        assertFalse(response.isFromCache());
+        assertEquals("data \"v2\" a", response.getText());
+
+        // Not cached, so no conditional request
+        response = client.request(request("/data?a", false));
+        assertFalse(response.isFromCache());
+        assertEquals(2, notModified.get());
+
+        // Different scope
+        HttpRequest scoped = request("/data?a", true);
+        scoped.setCacheScope("token");
+        assertFalse(client.request(scoped).isFromCache());
+        assertTrue(client.request(scoped).isFromCache());
+    }
+
+    @Test
+    public void testError() {
+        HttpClient client = new HttpClient(cacheDir, 2, 2);
+        HttpResponse response = client.request(request("/missing", true));
+        assertEquals(404, response.getResponseCode());
+        assertNull(response.getText());
+        assertNotNull(response.getError());
+
+        // Connection refused
+        response = client.request(new HttpRequest("http://127.0.0.1:1/data"));
+        assertEquals(-1, response.getResponseCode());
+        assertNull(response.getText());
+        assertNotNull(response.getError());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        HttpClient client = new HttpClient(null, 8, 8);
+        block = new CountDownLatch(1);
+        List<HttpResponse> responses = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            client.requestAsync(request("/data?same", false), r -> {
+                synchronized (responses) {
+                    responses.add(r);
+                }
+                done.countDown();
+            });
+        }
+        // Give all requests time to start
+        Thread.sleep(300);
+        block.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        for (HttpResponse response : responses) {
+            assertEquals("data \"v1\" same", response.getText());
+        }
+    }
+
+    @Test
+    public void testHostLimit() throws Exception {
+        HttpClient client = new HttpClient(null, 8, 2);
+        block = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            client.requestAsync(request("/data?"+i, false), r -> done.countDown());
+        }
+        Thread.sleep(300);
+        assertEquals(2, concurrent.get());
+        block.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(6, requests.get());
+        assertEquals(2, maxConcurrent.get());
+    }
+
+    @Test
+    public void testWaitingDoesntBlockPool() throws Exception {
+        HttpClient client = new HttpClient(null, 2, 1);
+        block = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 3; i++) {
+            client.requestAsync(request("/data?"+i, false), r -> done.countDown());
+        }
+        // Identical to the first request
+        client.requestAsync(request("/data?0", false), r -> done.countDown());
+        Thread.sleep(300);
+        assertEquals(1, concurrent.get());
+
+        // Queued requests don't occupy the second thread
+        CountDownLatch other = new CountDownLatch(1);
+        client.getExecutor().execute(other::countDown);
+        assertTrue(other.await(1, TimeUnit.SECONDS));
+
+        block.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testCacheExpired() throws Exception {
+        HttpCache cache = new HttpCache(cacheDir);
+        cache.put("a", "etag", null, "aaaaaaaaaa");
+        cache.put("b", "etag", null, "bbbbbbbbbb");
+        cache.put("c", "etag", null, "cccccccccc");
+        long old = System.currentTimeMillis() - 60*1000;
+        for (File file : cacheDir.toFile().listFiles()) {
+            file.setLastModified(old);
+        }
+        cache.touch("a");
+        assertEquals(0, cache.deleteExpired(120, 1000));
+        assertEquals(2, cache.deleteExpired(30, 1000));
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+
+        // Size limit, oldest removed first
+        cache.put("b", "etag", null, "bbbbbbbbbb");
+        for (File file : cacheDir.toFile().listFiles()) {
+            file.setLastModified(old);
+        }
+        cache.touch("b");
+        long size = cacheDir.toFile().listFiles()[0].length();
+        assertEquals(1, cache.deleteExpired(120, size + 1));
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+    }
+
+}
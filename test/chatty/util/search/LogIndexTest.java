@@ -0,0 +1,126 @@
+
+package chatty.util.search;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LogIndexTest {
+    
+    @Test
+    public void testGetUser() {
+        assertEquals("abc", LogIndex.getUser("[12:00:00] <Abc> test"));
+        assertEquals("abc", LogIndex.getUser("<@Abc>* test"));
+        assertEquals("abc", LogIndex.getUser("[12:00:00] <~Name (abc)> test <b> "));
+        assertNull(LogIndex.getUser("[12:00:00] BAN: abc"));
+    }
+    
+    @Test
+    public void testSearch() throws Exception {
+        Path dir = Files.createTempDirectory("logindextest");
+        Path logs = dir.resolve("logs");
+        Files.createDirectories(logs);
+        Path file = logs.resolve("2020-01-01_#test.log");
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            b.append("[12:00:00] <User").append(i % 10).append("> line number ").append(i).append("\n");
+        }
+        write(file, b.toString());
+        write(logs.resolve("#other.log"), "[12:00:00] <Abc> line number 4123\nincomplete");
+        
+        LogIndex index = new LogIndex(logs, dir.resolve("index"));
+        List<SearchResult> r = search(index, new SearchQuery("number 4123"));
+        assertEquals(2, r.size());
+        assertTrue(r.get(0).fromLog);
+        
+        r = search(index, new SearchQuery("number 4123", "#test", null, 0, 0, false, 0));
+        assertEquals(1, r.size());
+        assertEquals("#test", r.get(0).channel);
+        assertEquals("user3", r.get(0).user);
+        assertEquals("[12:00:00] <User3> line number 4123", r.get(0).text);
+        
+        assertEquals(500, search(index, new SearchQuery("line", "#test", "user3", 0, 0, false, 1000)).size());
+        assertEquals(0, search(index, new SearchQuery("number 4123", null, null, 0, 0, true, 0)).size());
+        
+        // Appended lines, the index is updated
+        write(file, "[12:00:01] <User1> something new\n");
+        r = search(index, new SearchQuery("something new"));
+        assertEquals(1, r.size());
+        
+        // New LogIndex loading the stored index
+        index.close();
+        index = new LogIndex(logs, dir.resolve("index"));
+        assertEquals(1, search(index, new SearchQuery("something new")).size());
+        assertEquals(5000, search(index, new SearchQuery("line", "#test", null, 0, 0, false, 10000)).size());
+        index.close();
+    }
+    
+    @Test
+    public void testTimeParser() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        LogIndex.TimeParser parser = new LogIndex.TimeParser(0);
+        assertEquals(-1, parser.parse("[12:00:00] <Abc> no date known yet"));
+        long start = parser.parse("# Log started: 2020-01-01 23:00:00 +0000");
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z").parse("2020-01-01 23:00:00 +0000").getTime(), start);
+        assertEquals(-1, parser.parse("<Abc> no timestamp"));
+        assertEquals(start, parser.getLast());
+        
+        parser = new LogIndex.TimeParser(format.parse("2020-01-01 23:00:00").getTime());
+        assertEquals(format.parse("2020-01-01 23:30:00").getTime(), parser.parse("[23:30:00] <Abc> test"));
+        // Next day
+        assertEquals(format.parse("2020-01-02 00:10:00").getTime(), parser.parse("[12:10:00 AM] <Abc> test"));
+        assertEquals(format.parse("2020-01-02 13:00:05").getTime(), parser.parse("[01:00:05pm] <Abc> test"));
+        assertEquals(format.parse("2021-05-06 07:08:09").getTime(), parser.parse("[2021-05-06 07:08:09] <Abc> test"));
+    }
+    
+    @Test
+    public void testTimeRange() throws Exception {
+        Path dir = Files.createTempDirectory("logindextest");
+        Path logs = dir.resolve("logs");
+        Files.createDirectories(logs);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        SimpleDateFormat lineFormat = new SimpleDateFormat("[yyyy-MM-dd HH:mm:ss] ");
+        long start = format.parse("2020-01-01 00:00:00").getTime();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            // One line every minute
+            b.append(lineFormat.format(start + i*60*1000L)).append("<Abc> line ").append(i).append("\n");
+        }
+        write(logs.resolve("#test.log"), b.toString());
+        
+        LogIndex index = new LogIndex(logs, dir.resolve("index"));
+        // Only the lines within the hour
+        long from = start + 1000*60*1000L;
+        List<SearchResult> r = search(index, new SearchQuery("line", null, null, from, from + 59*60*1000L, false, 1000));
+        assertEquals(60, r.size());
+        assertTrue(r.get(0).text.endsWith("line 1059"));
+        assertTrue(r.get(59).text.endsWith("line 1000"));
+        
+        // Lines without timestamp, in the range of the surrounding ones
+        write(logs.resolve("#test2.log"), "# Log started: 2020-01-01 00:00:00 +0000\n<Abc> line a\n# Log closed: 2020-01-01 01:00:00 +0000\n");
+        long logStart = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z").parse("2020-01-01 00:30:00 +0000").getTime();
+        assertEquals(1, search(index, new SearchQuery("line a", "#test2", null, logStart, logStart + 1000, false, 0)).size());
+        assertEquals(0, search(index, new SearchQuery("line a", "#test2", null, logStart + 60*60*1000L, 0, false, 0)).size());
+        index.close();
+    }
+    
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+    
+    private static List<SearchResult> search(LogIndex index, SearchQuery query) throws Exception {
+        CompletableFuture<List<SearchResult>> result = new CompletableFuture<>();
+        index.search(query, r -> result.complete(r));
+        return result.get(10, TimeUnit.SECONDS);
+    }
+    
+}
@@ -0,0 +1,62 @@
+
+package chatty.util.search;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MessageIndexTest {
+    
+    @Test
+    public void testSearch() {
+        MessageIndex index = new MessageIndex(10);
+        index.add("#a", "User1", "Hello World", false, 1000);
+        index.add("#a", "user2", "hello there", true, 2000);
+        index.add("#b", "user1", "Another hello", false, 1500);
+        index.add("#b", "user3", "nothing", false, 3000);
+        
+        List<SearchResult> r = index.search(new SearchQuery("HELLO"));
+        assertEquals(3, r.size());
+        // Newest first
+        assertEquals("hello there", r.get(0).text);
+        assertEquals("#b", r.get(1).channel);
+        assertEquals("Hello World", r.get(2).text);
+        
+        assertEquals(2, index.search(new SearchQuery("hello", null, "user1", 0, 0, false, 0)).size());
+        assertEquals(1, index.search(new SearchQuery("hello", "#a", "user1", 0, 0, false, 0)).size());
+        assertEquals(1, index.search(new SearchQuery("hello", null, null, 0, 0, true, 0)).size());
+        assertEquals(2, index.search(new SearchQuery("hello", null, null, 1500, 2000, false, 0)).size());
+        assertEquals(1, index.search(new SearchQuery("hello", null, null, 0, 0, false, 1)).size());
+        assertEquals(0, index.search(new SearchQuery("hello!")).size());
+        assertEquals(0, index.search(new SearchQuery("hello", null, "user4", 0, 0, false, 0)).size());
+        
+        // Short search texts
+        assertEquals(3, index.search(new SearchQuery("th")).size());
+        assertEquals(4, index.search(new SearchQuery("")).size());
+        assertEquals(1, index.search(new SearchQuery("", null, "user3", 0, 0, false, 0)).size());
+        
+        // Trigrams that occur in different messages, but not together
+        assertEquals(0, index.search(new SearchQuery("world there")).size());
+    }
+    
+    @Test
+    public void testCapacity() {
+        MessageIndex index = new MessageIndex(3);
+        for (int i = 0; i < 20; i++) {
+            index.add("#a", "user", "message "+i, false, i);
+            assertEquals(Math.min(i + 1, 3), index.size("#a"));
+            List<SearchResult> r = index.search(new SearchQuery("message"));
+            assertEquals(Math.min(i + 1, 3), r.size());
+            assertEquals("message "+i, r.get(0).text);
+        }
+        assertEquals(0, index.search(new SearchQuery("message 16")).size());
+        assertEquals(1, index.search(new SearchQuery("message 17")).size());
+        assertEquals(3, index.search(new SearchQuery("", null, "user", 0, 0, false, 0)).size());
+        assertEquals(1, index.search(new SearchQuery("", null, null, 18, 18, false, 0)).size());
+        
+        index.clear("#a");
+        assertEquals(0, index.size("#a"));
+        assertEquals(0, index.search(new SearchQuery("message")).size());
+    }
+    
+}
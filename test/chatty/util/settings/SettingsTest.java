@@ -0,0 +1,106 @@
+
+package chatty.util.settings;
+
+import chatty.util.MiscUtil;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SettingsTest {
+
+    private Path dir;
+    private String mainFile;
+    private String otherFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("settingstest");
+        mainFile = dir.resolve("settings").toString();
+        otherFile = dir.resolve("other").toString();
+    }
+
+    @After
+    public void tearDown() {
+        MiscUtil.deleteInDir(dir.toFile(), "", true);
+    }
+
+    private Settings create() {
+        Settings settings = new Settings(mainFile);
+        settings.addFile(otherFile);
+        settings.addString("a", "default");
+        settings.addLong("b", 1);
+        settings.addList("list", new ArrayList(), Setting.STRING);
+        settings.addMap("map", new HashMap(), Setting.STRING);
+        settings.setFile("map", otherFile);
+        settings.addString("notSaved", "", false);
+        return settings;
+    }
+
+    private static String read(String file) throws IOException {
+        return new String(Files.readAllBytes(path(file)), StandardCharsets.UTF_8);
+    }
+
+    private static Path path(String file) {
+        return Paths.get(file);
+    }
+
+    @Test
+    public void testOnlyChangedFiles() throws IOException {
+        Settings settings = create();
+        settings.saveSettingsToJson();
+        assertFalse(Files.exists(path(mainFile)));
+
+        // Only the file with the changed setting is written
+        settings.setString("a", "abc");
+        settings.saveSettingsToJson();
+        assertTrue(read(mainFile).contains("\"a\":\"abc\""));
+        assertFalse(Files.exists(path(otherFile)));
+
+        // Setting the same value or a not saved setting is not a change
+        Files.delete(path(mainFile));
+        settings.setString("a", "abc");
+        settings.setString("notSaved", "abc");
+        settings.saveSettingsToJson();
+        assertFalse(Files.exists(path(mainFile)));
+
+        settings.mapPut("map", "key", "value");
+        settings.saveSettingsToJson();
+        assertTrue(read(otherFile).contains("\"key\":\"value\""));
+        assertFalse(Files.exists(path(mainFile)));
+        assertFalse(Files.exists(path(otherFile + "-temp")));
+
+        // Load again
+        Settings loaded = create();
+        loaded.loadSettingsFromJson();
+        assertEquals("value", loaded.mapGet("map", "key"));
+        assertEquals("default", loaded.getString("a"));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        Settings settings = create();
+        settings.listAdd("list", "a");
+        settings.saveSettingsToJsonAsync();
+        for (int i = 0; i < 100 && !Files.exists(path(mainFile)); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(read(mainFile).contains("\"list\":[\"a\"]"));
+
+        // Waits for the scheduled save and writes remaining changes
+        settings.setAutoSave(true);
+        settings.listAdd("list", "b");
+        settings.setLong("b", 5);
+        settings.saveSettingsToJson();
+        assertTrue(read(mainFile).contains("\"list\":[\"a\",\"b\"]"));
+        assertTrue(read(mainFile).contains("\"b\":5"));
+    }
+
+}